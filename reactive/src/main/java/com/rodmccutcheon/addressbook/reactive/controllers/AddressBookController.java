@@ -0,0 +1,89 @@
+package com.rodmccutcheon.addressbook.reactive.controllers;
+
+import com.rodmccutcheon.addressbook.reactive.entities.AddressBook;
+import com.rodmccutcheon.addressbook.reactive.services.AddressBookService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.NoSuchElementException;
+
+import static com.rodmccutcheon.addressbook.reactive.controllers.AddressBookController.BASE_URL;
+
+@RestController
+@RequestMapping(BASE_URL)
+public class AddressBookController {
+
+    public static final String BASE_URL = "/api/v1/address-book";
+
+    private final AddressBookService addressBookService;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+
+    public AddressBookController(AddressBookService addressBookService,
+                                 @Value("${address-book.pagination.default-page-size}") int defaultPageSize,
+                                 @Value("${address-book.pagination.max-page-size}") int maxPageSize) {
+        this.addressBookService = addressBookService;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    @PostMapping
+    public Mono<ResponseEntity<AddressBook>> createAddressBook(@RequestBody AddressBook addressBook) {
+        return addressBookService.createAddressBook(addressBook).map(ResponseEntity::ok);
+    }
+
+    /**
+     * Lists address books one page at a time, keyed on the last id seen, streaming each address book as it is read.
+     * When more results may follow, the URL of the next page is returned in a {@code Link: <...>; rel="next"} header.
+     */
+    @GetMapping
+    public Mono<ResponseEntity<Flux<?>>> getAllAddressBooks(
+            ServerHttpRequest request,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(defaultValue = "true") boolean includeContacts) {
+        final int pageSize = size == null ? defaultPageSize : Math.max(1, Math.min(size, maxPageSize));
+        return addressBookService.getAddressBookIds(after, pageSize).map(ids -> {
+            final var response = ResponseEntity.ok();
+            if (ids.size() == pageSize) {
+                final var nextPage = UriComponentsBuilder.fromHttpRequest(request)
+                        .replaceQueryParam("after", ids.get(ids.size() - 1))
+                        .replaceQueryParam("size", pageSize)
+                        .toUriString();
+                response.header(HttpHeaders.LINK, "<" + nextPage + ">; rel=\"next\"");
+            }
+            return response.body(includeContacts
+                    ? addressBookService.getAddressBooks(ids)
+                    : addressBookService.getAddressBookSummaries(ids));
+        });
+    }
+
+    @GetMapping("/{addressBookId}")
+    public Mono<ResponseEntity<AddressBook>> getAddressBook(@PathVariable long addressBookId) {
+        return addressBookService.getAddressBook(addressBookId).map(ResponseEntity::ok);
+    }
+
+    @PutMapping("/{addressBookId}")
+    public Mono<ResponseEntity<AddressBook>> updateAddressBook(@PathVariable long addressBookId,
+                                                               @RequestBody AddressBook changedAddressBook) {
+        return addressBookService.updateAddressBook(addressBookId, changedAddressBook).map(ResponseEntity::ok);
+    }
+
+    @DeleteMapping("/{addressBookId}")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<Void> deleteAddressBook(@PathVariable long addressBookId) {
+        return addressBookService.deleteAddressBook(addressBookId);
+    }
+
+    @ExceptionHandler(NoSuchElementException.class)
+    private ResponseEntity<String> handleException(Exception exception) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
+    }
+}
@@ -0,0 +1,51 @@
+package com.rodmccutcheon.addressbook.reactive.controllers;
+
+import com.rodmccutcheon.addressbook.reactive.entities.Contact;
+import com.rodmccutcheon.addressbook.reactive.services.ContactService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.NoSuchElementException;
+
+import static com.rodmccutcheon.addressbook.reactive.controllers.AddressBookController.BASE_URL;
+
+@RestController
+public class ContactController {
+
+    private final ContactService contactService;
+
+    public ContactController(ContactService contactService) {
+        this.contactService = contactService;
+    }
+
+    /**
+     * Always streams: as a JSON array, or as one JSON document per line when the client accepts
+     * {@code application/x-ndjson}. Rows are only read from the database as the client consumes them.
+     */
+    @GetMapping(value = BASE_URL + "/unique-contacts",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Contact> getUniqueContactsAcrossAllAddressBooks() {
+        return contactService.getUniqueContacts();
+    }
+
+    @PostMapping(BASE_URL + "/{addressBookId}/contact")
+    public Mono<ResponseEntity<Contact>> addContactToAddressBook(@PathVariable long addressBookId,
+                                                                 @RequestBody Contact contact) {
+        return contactService.addContactToAddressBook(addressBookId, contact).map(ResponseEntity::ok);
+    }
+
+    @DeleteMapping(BASE_URL + "/{addressBookId}/contact/{contactId}")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<Void> deleteContactFromAddressBook(@PathVariable long addressBookId, @PathVariable long contactId) {
+        return contactService.deleteContactFromAddressBook(addressBookId, contactId);
+    }
+
+    @ExceptionHandler(NoSuchElementException.class)
+    private ResponseEntity<String> handleException(Exception exception) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
+    }
+}
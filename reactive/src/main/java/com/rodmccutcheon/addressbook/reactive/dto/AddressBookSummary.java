@@ -0,0 +1,12 @@
+package com.rodmccutcheon.addressbook.reactive.dto;
+
+import lombok.Value;
+
+/**
+ * Lightweight projection of an address book without its contacts.
+ */
+@Value
+public class AddressBookSummary {
+    Long id;
+    String name;
+}
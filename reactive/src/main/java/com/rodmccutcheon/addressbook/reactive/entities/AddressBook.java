@@ -0,0 +1,29 @@
+package com.rodmccutcheon.addressbook.reactive.entities;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Table("address_book")
+@Data
+@NoArgsConstructor
+public class AddressBook {
+
+    @Id
+    private Long id;
+
+    private String name;
+
+    @Transient
+    private List<Contact> contacts = new ArrayList<>();
+
+    public AddressBook(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+}
@@ -0,0 +1,29 @@
+package com.rodmccutcheon.addressbook.reactive.entities;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@Table("contact")
+@Data
+@NoArgsConstructor
+public class Contact {
+
+    @Id
+    private Long id;
+
+    private String name;
+
+    @Transient
+    private Map<PhoneNumberType, String> phoneNumbers = new EnumMap<>(PhoneNumberType.class);
+
+    public Contact(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+}
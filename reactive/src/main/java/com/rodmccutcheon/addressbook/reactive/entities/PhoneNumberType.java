@@ -0,0 +1,5 @@
+package com.rodmccutcheon.addressbook.reactive.entities;
+
+public enum PhoneNumberType {
+    HOME, WORK, MOBILE, OTHER
+}
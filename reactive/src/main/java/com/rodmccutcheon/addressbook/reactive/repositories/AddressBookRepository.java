@@ -0,0 +1,65 @@
+package com.rodmccutcheon.addressbook.reactive.repositories;
+
+import com.rodmccutcheon.addressbook.reactive.dto.AddressBookSummary;
+import com.rodmccutcheon.addressbook.reactive.entities.AddressBook;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+@Repository
+public interface AddressBookRepository extends ReactiveCrudRepository<AddressBook, Long> {
+
+    /**
+     * Claims the next value of the sequence the servlet application allocates ids in blocks from. Every value
+     * belongs to exactly one caller, so using it directly as an id never collides with an id allocated there.
+     */
+    @Query("select nextval('address_book_seq')")
+    Mono<Long> nextId();
+
+    @Modifying
+    @Query("insert into address_book (id, name) values (:id, :name)")
+    Mono<Integer> insert(long id, String name);
+
+    @Modifying
+    @Query("update address_book set version = version + 1 where id = :id")
+    Mono<Integer> incrementVersion(long id);
+
+    /**
+     * Records the removal of the contacts of one address book from every other address book they belong to, each
+     * under a new version of that address book, before the contacts are deleted.
+     */
+    default Mono<Void> recordRemovalsFromOtherAddressBooks(long addressBookId) {
+        return incrementVersionsOfAddressBooksSharingContactsWith(addressBookId)
+                .then(insertRemovalsFromOtherAddressBooks(addressBookId))
+                .then();
+    }
+
+    @Modifying
+    @Query("update address_book set version = version + 1 where id <> :addressBookId and id in " +
+            "(select cab.address_book_id from contact_address_books cab where cab.contact_id in " +
+            "(select contact_id from contact_address_books where address_book_id = :addressBookId))")
+    Mono<Integer> incrementVersionsOfAddressBooksSharingContactsWith(long addressBookId);
+
+    @Modifying
+    @Query("insert into address_book_change (address_book_id, version, contact_id, change_type) " +
+            "select ab.id, ab.version, cab.contact_id, 'REMOVED' " +
+            "from contact_address_books cab join address_book ab on ab.id = cab.address_book_id " +
+            "where cab.address_book_id <> :addressBookId and cab.contact_id in " +
+            "(select contact_id from contact_address_books where address_book_id = :addressBookId)")
+    Mono<Integer> insertRemovalsFromOtherAddressBooks(long addressBookId);
+
+    @Modifying
+    @Query("delete from address_book_change where address_book_id = :addressBookId")
+    Mono<Integer> deleteChangesByAddressBookId(long addressBookId);
+
+    @Query("select id from address_book where id > :after order by id limit :size")
+    Flux<Long> findIdsAfter(long after, int size);
+
+    @Query("select id, name from address_book where id in (:ids) order by id")
+    Flux<AddressBookSummary> findSummariesByIdIn(Collection<Long> ids);
+}
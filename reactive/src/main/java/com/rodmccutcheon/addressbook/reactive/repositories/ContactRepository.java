@@ -0,0 +1,143 @@
+package com.rodmccutcheon.addressbook.reactive.repositories;
+
+import com.rodmccutcheon.addressbook.reactive.entities.Contact;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+@Repository
+public interface ContactRepository extends ReactiveCrudRepository<Contact, Long> {
+
+    /**
+     * @see AddressBookRepository#nextId()
+     */
+    @Query("select nextval('contact_seq')")
+    Mono<Long> nextId();
+
+    @Modifying
+    @Query("insert into contact (id, name) values (:id, :name)")
+    Mono<Integer> insert(long id, String name);
+
+    @Modifying
+    @Query("insert into contact_phone_numbers (contact_id, phone_number_type, phone_number) " +
+            "values (:contactId, :phoneNumberType, :phoneNumber)")
+    Mono<Integer> insertPhoneNumber(long contactId, String phoneNumberType, String phoneNumber);
+
+    @Query("select count(*) from contact_address_books where contact_id = :contactId")
+    Mono<Long> countAddressBooks(long contactId);
+
+    @Query("select count(*) from contact_address_books " +
+            "where contact_id = :contactId and address_book_id = :addressBookId")
+    Mono<Long> countMemberships(long contactId, long addressBookId);
+
+    @Modifying
+    @Query("insert into contact_address_books (contact_id, address_book_id) values (:contactId, :addressBookId)")
+    Mono<Integer> addToAddressBook(long contactId, long addressBookId);
+
+    @Modifying
+    @Query("delete from contact_address_books where contact_id = :contactId and address_book_id = :addressBookId")
+    Mono<Integer> removeFromAddressBook(long contactId, long addressBookId);
+
+    @Modifying
+    @Query("insert into unique_contact (contact_id, address_book_count) values (:contactId, 1)")
+    Mono<Integer> insertUniqueContact(long contactId);
+
+    @Modifying
+    @Query("update unique_contact set address_book_count = address_book_count + :delta where contact_id = :contactId")
+    Mono<Integer> adjustAddressBookCount(long contactId, int delta);
+
+    @Modifying
+    @Query("delete from unique_contact where contact_id in (:contactIds)")
+    Mono<Integer> deleteUniqueContactsByContactIdIn(Collection<Long> contactIds);
+
+    /**
+     * Increments the contact's optimistic lock version, so that a concurrent change to its memberships in the servlet
+     * application fails and is retried instead of overwriting this one.
+     */
+    @Modifying
+    @Query("update contact set version = version + 1 where id = :contactId")
+    Mono<Integer> incrementVersion(long contactId);
+
+    /**
+     * Increments the address book's version, as every change to its contacts does in the servlet application.
+     */
+    @Modifying
+    @Query("update address_book set version = version + 1 where id = :addressBookId")
+    Mono<Integer> incrementAddressBookVersion(long addressBookId);
+
+    @Modifying
+    @Query("insert into address_book_change (address_book_id, version, contact_id, change_type) " +
+            "select id, version, :contactId, :changeType from address_book where id = :addressBookId")
+    Mono<Integer> insertAddressBookChange(long addressBookId, long contactId, String changeType);
+
+    @Query("select contact_id from contact_address_books where address_book_id = :addressBookId")
+    Flux<Long> findIdsByAddressBookId(long addressBookId);
+
+    @Modifying
+    @Query("delete from contact_address_books where contact_id in (:contactIds)")
+    Mono<Integer> deleteMembershipsByContactIdIn(Collection<Long> contactIds);
+
+    @Modifying
+    @Query("delete from contact_phone_numbers where contact_id in (:contactIds)")
+    Mono<Integer> deletePhoneNumbersByContactIdIn(Collection<Long> contactIds);
+
+    @Modifying
+    @Query("delete from contact_match_keys where contact_id in (:contactIds)")
+    Mono<Integer> deleteMatchKeysByContactIdIn(Collection<Long> contactIds);
+
+    @Modifying
+    @Query("delete from contact where id in (:contactIds)")
+    Mono<Integer> deleteByIdIn(Collection<Long> contactIds);
+
+    /**
+     * Adds the contact to the address book, counts the membership in the unique contacts view, which the
+     * servlet application lists unique contacts from, and records the change under a new address book version.
+     */
+    default Mono<Void> addMembership(long contactId, long addressBookId) {
+        return addToAddressBook(contactId, addressBookId)
+                .then(adjustAddressBookCount(contactId, 1))
+                .flatMap(updated -> updated == 0 ? insertUniqueContact(contactId) : Mono.just(updated))
+                .then(recordAddressBookChange(addressBookId, contactId, "ADDED"));
+    }
+
+    /**
+     * Removes the contact from the address book, and from the count in the unique contacts view and records the
+     * change if it was in it.
+     */
+    default Mono<Void> removeMembership(long contactId, long addressBookId) {
+        return removeFromAddressBook(contactId, addressBookId)
+                .flatMap(removed -> removed > 0
+                        ? adjustAddressBookCount(contactId, -removed)
+                                .then(recordAddressBookChange(addressBookId, contactId, "REMOVED"))
+                        : Mono.empty())
+                .then();
+    }
+
+    private Mono<Void> recordAddressBookChange(long addressBookId, long contactId, String changeType) {
+        return incrementVersion(contactId)
+                .then(incrementAddressBookVersion(addressBookId))
+                .then(insertAddressBookChange(addressBookId, contactId, changeType))
+                .then();
+    }
+
+    /**
+     * Deletes the contacts along with their phone numbers, match keys, rows in the unique contacts view and
+     * membership of every address book.
+     */
+    default Mono<Void> deleteWithPhoneNumbersAndMemberships(Collection<Long> contactIds) {
+        if (contactIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return deleteMembershipsByContactIdIn(contactIds)
+                .then(deletePhoneNumbersByContactIdIn(contactIds))
+                .then(deleteMatchKeysByContactIdIn(contactIds))
+                .then(deleteUniqueContactsByContactIdIn(contactIds))
+                .then(deleteByIdIn(contactIds))
+                .then();
+    }
+}
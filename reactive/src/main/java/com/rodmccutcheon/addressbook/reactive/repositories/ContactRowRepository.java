@@ -0,0 +1,134 @@
+package com.rodmccutcheon.addressbook.reactive.repositories;
+
+import com.rodmccutcheon.addressbook.reactive.entities.AddressBook;
+import com.rodmccutcheon.addressbook.reactive.entities.Contact;
+import com.rodmccutcheon.addressbook.reactive.entities.PhoneNumberType;
+import io.r2dbc.spi.Row;
+import lombok.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads contacts together with their phone numbers in a single query, and address books together with their
+ * contacts in another. Each query returns one row per phone number, ordered so that the rows of a contact (and of an
+ * address book) are adjacent. The rows are folded into objects as they arrive, so only one object is held at a time
+ * and the database is only read as fast as the subscriber requests results.
+ */
+@Repository
+public class ContactRowRepository {
+
+    private static final String UNIQUE_CONTACTS_SQL =
+            "select c.id as contact_id, c.name as contact_name, p.phone_number_type, p.phone_number " +
+            "from contact c " +
+            "left join contact_phone_numbers p on p.contact_id = c.id " +
+            "where exists (select 1 from contact_address_books cab where cab.contact_id = c.id) " +
+            "order by c.id";
+
+    private static final String CONTACT_SQL =
+            "select c.id as contact_id, c.name as contact_name, p.phone_number_type, p.phone_number " +
+            "from contact c " +
+            "left join contact_phone_numbers p on p.contact_id = c.id " +
+            "where c.id = :id";
+
+    private static final String ADDRESS_BOOKS_WITH_CONTACTS_SQL =
+            "select a.id as address_book_id, a.name as address_book_name, " +
+            "c.id as contact_id, c.name as contact_name, p.phone_number_type, p.phone_number " +
+            "from address_book a " +
+            "left join contact_address_books cab on cab.address_book_id = a.id " +
+            "left join contact c on c.id = cab.contact_id " +
+            "left join contact_phone_numbers p on p.contact_id = c.id " +
+            "where a.id in (:ids) " +
+            "order by a.id, c.id";
+
+    private final DatabaseClient databaseClient;
+
+    public ContactRowRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    public Flux<Contact> findUniqueContacts() {
+        return databaseClient.sql(UNIQUE_CONTACTS_SQL)
+                .map(ContactRow::of)
+                .all()
+                .bufferUntilChanged(ContactRow::getContactId)
+                .map(ContactRowRepository::contact);
+    }
+
+    public Mono<Contact> findContactById(long id) {
+        return databaseClient.sql(CONTACT_SQL)
+                .bind("id", id)
+                .map(ContactRow::of)
+                .all()
+                .collectList()
+                .filter(rows -> !rows.isEmpty())
+                .map(ContactRowRepository::contact);
+    }
+
+    public Flux<AddressBook> findWithContactsByIdIn(Collection<Long> ids) {
+        return databaseClient.sql(ADDRESS_BOOKS_WITH_CONTACTS_SQL)
+                .bind("ids", ids)
+                .map(AddressBookRow::of)
+                .all()
+                .bufferUntilChanged(AddressBookRow::getAddressBookId)
+                .map(ContactRowRepository::addressBook);
+    }
+
+    private static AddressBook addressBook(List<AddressBookRow> rows) {
+        final var addressBook = new AddressBook(rows.get(0).getAddressBookId(), rows.get(0).getAddressBookName());
+        Contact contact = null;
+        for (AddressBookRow row : rows) {
+            final var contactRow = row.getContact();
+            if (contactRow.getContactId() == null) {
+                continue;
+            }
+            if (contact == null || !contact.getId().equals(contactRow.getContactId())) {
+                contact = new Contact(contactRow.getContactId(), contactRow.getContactName());
+                addressBook.getContacts().add(contact);
+            }
+            contactRow.addPhoneNumberTo(contact);
+        }
+        return addressBook;
+    }
+
+    private static Contact contact(List<ContactRow> rows) {
+        final var contact = new Contact(rows.get(0).getContactId(), rows.get(0).getContactName());
+        rows.forEach(row -> row.addPhoneNumberTo(contact));
+        return contact;
+    }
+
+    @Value
+    private static class ContactRow {
+        Long contactId;
+        String contactName;
+        String phoneNumberType;
+        String phoneNumber;
+
+        private static ContactRow of(Row row) {
+            return new ContactRow(row.get("contact_id", Long.class), row.get("contact_name", String.class),
+                    row.get("phone_number_type", String.class), row.get("phone_number", String.class));
+        }
+
+        private void addPhoneNumberTo(Contact contact) {
+            if (phoneNumberType != null) {
+                contact.getPhoneNumbers().put(PhoneNumberType.valueOf(phoneNumberType), phoneNumber);
+            }
+        }
+    }
+
+    @Value
+    private static class AddressBookRow {
+        Long addressBookId;
+        String addressBookName;
+        ContactRow contact;
+
+        private static AddressBookRow of(Row row) {
+            return new AddressBookRow(row.get("address_book_id", Long.class),
+                    row.get("address_book_name", String.class), ContactRow.of(row));
+        }
+    }
+}
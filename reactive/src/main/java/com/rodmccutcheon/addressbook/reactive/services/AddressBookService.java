@@ -0,0 +1,97 @@
+package com.rodmccutcheon.addressbook.reactive.services;
+
+import com.rodmccutcheon.addressbook.reactive.dto.AddressBookSummary;
+import com.rodmccutcheon.addressbook.reactive.entities.AddressBook;
+import com.rodmccutcheon.addressbook.reactive.repositories.AddressBookRepository;
+import com.rodmccutcheon.addressbook.reactive.repositories.ContactRepository;
+import com.rodmccutcheon.addressbook.reactive.repositories.ContactRowRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Non-blocking counterpart of the servlet application's address book service, over the same schema. Lists are
+ * returned as {@link Flux}es that read from the database only as fast as they are consumed.
+ */
+@Service
+@Transactional
+public class AddressBookService {
+
+    private final AddressBookRepository addressBookRepository;
+    private final ContactRepository contactRepository;
+    private final ContactRowRepository contactRowRepository;
+
+    public AddressBookService(AddressBookRepository addressBookRepository, ContactRepository contactRepository,
+                              ContactRowRepository contactRowRepository) {
+        this.addressBookRepository = addressBookRepository;
+        this.contactRepository = contactRepository;
+        this.contactRowRepository = contactRowRepository;
+    }
+
+    public Mono<AddressBook> createAddressBook(AddressBook addressBook) {
+        return addressBookRepository.nextId()
+                .flatMap(id -> addressBookRepository.insert(id, addressBook.getName())
+                        .thenReturn(new AddressBook(id, addressBook.getName())));
+    }
+
+    /**
+     * Returns the ids of up to {@code size} address books with an id greater than {@code after}, in order. A page
+     * is listed by looking up its ids first and then streaming the address books with those ids.
+     */
+    @Transactional(readOnly = true)
+    public Mono<List<Long>> getAddressBookIds(long after, int size) {
+        return addressBookRepository.findIdsAfter(after, size).collectList();
+    }
+
+    @Transactional(readOnly = true)
+    public Flux<AddressBook> getAddressBooks(List<Long> ids) {
+        return ids.isEmpty() ? Flux.empty() : contactRowRepository.findWithContactsByIdIn(ids);
+    }
+
+    @Transactional(readOnly = true)
+    public Flux<AddressBookSummary> getAddressBookSummaries(List<Long> ids) {
+        return ids.isEmpty() ? Flux.empty() : addressBookRepository.findSummariesByIdIn(ids);
+    }
+
+    @Transactional(readOnly = true)
+    public Mono<AddressBook> getAddressBook(long addressBookId) {
+        return contactRowRepository.findWithContactsByIdIn(List.of(addressBookId)).next()
+                .switchIfEmpty(noSuchElement());
+    }
+
+    public Mono<AddressBook> updateAddressBook(long addressBookId, AddressBook changedAddressBook) {
+        return addressBookRepository.incrementVersion(addressBookId)
+                .flatMap(updated -> updated == 0 ? noSuchElement() : addressBookRepository.findById(addressBookId))
+                .flatMap(addressBook -> {
+                    addressBook.setName(changedAddressBook.getName());
+                    return addressBookRepository.save(addressBook);
+                })
+                .then(getAddressBook(addressBookId));
+    }
+
+    /**
+     * Deleting an address book also deletes its contacts, as it does in the servlet application.
+     */
+    public Mono<Void> deleteAddressBook(long addressBookId) {
+        return requireAddressBook(addressBookId)
+                .then(addressBookRepository.recordRemovalsFromOtherAddressBooks(addressBookId))
+                .then(addressBookRepository.deleteChangesByAddressBookId(addressBookId))
+                .thenMany(contactRepository.findIdsByAddressBookId(addressBookId))
+                .collectList()
+                .flatMap(contactRepository::deleteWithPhoneNumbersAndMemberships)
+                .then(addressBookRepository.deleteById(addressBookId));
+    }
+
+    Mono<Void> requireAddressBook(long addressBookId) {
+        return addressBookRepository.existsById(addressBookId)
+                .flatMap(exists -> exists ? Mono.empty() : noSuchElement());
+    }
+
+    static <T> Mono<T> noSuchElement() {
+        return Mono.error(() -> new NoSuchElementException("No value present"));
+    }
+}
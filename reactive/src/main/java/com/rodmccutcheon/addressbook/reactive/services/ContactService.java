@@ -0,0 +1,79 @@
+package com.rodmccutcheon.addressbook.reactive.services;
+
+import com.rodmccutcheon.addressbook.reactive.entities.Contact;
+import com.rodmccutcheon.addressbook.reactive.repositories.ContactRepository;
+import com.rodmccutcheon.addressbook.reactive.repositories.ContactRowRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static com.rodmccutcheon.addressbook.reactive.services.AddressBookService.noSuchElement;
+
+@Service
+@Transactional
+public class ContactService {
+
+    private final ContactRepository contactRepository;
+    private final ContactRowRepository contactRowRepository;
+    private final AddressBookService addressBookService;
+
+    public ContactService(ContactRepository contactRepository, ContactRowRepository contactRowRepository,
+                          AddressBookService addressBookService) {
+        this.contactRepository = contactRepository;
+        this.contactRowRepository = contactRowRepository;
+        this.addressBookService = addressBookService;
+    }
+
+    /**
+     * Adds an existing contact, identified by its id, or a new one to the address book.
+     */
+    public Mono<Contact> addContactToAddressBook(long addressBookId, Contact contact) {
+        return addressBookService.requireAddressBook(addressBookId)
+                .then(contact.getId() != null ? findContact(contact.getId()) : createContact(contact))
+                .flatMap(savedContact -> contactRepository.countMemberships(savedContact.getId(), addressBookId)
+                        .flatMap(memberships -> memberships > 0
+                                ? Mono.just(savedContact)
+                                : contactRepository.addMembership(savedContact.getId(), addressBookId)
+                                        .thenReturn(savedContact)));
+    }
+
+    /**
+     * Removes the contact from the address book, and deletes it once it no longer belongs to any address book.
+     */
+    public Mono<Void> deleteContactFromAddressBook(long addressBookId, long contactId) {
+        return contactRepository.existsById(contactId)
+                .flatMap(exists -> exists ? addressBookService.requireAddressBook(addressBookId) : noSuchElement())
+                .then(contactRepository.removeMembership(contactId, addressBookId))
+                .then(contactRepository.countAddressBooks(contactId))
+                .flatMap(memberships -> memberships == 0
+                        ? contactRepository.deleteWithPhoneNumbersAndMemberships(List.of(contactId))
+                        : Mono.empty());
+    }
+
+    /**
+     * Streams every contact that belongs to at least one address book, at the pace the subscriber requests them.
+     */
+    @Transactional(readOnly = true)
+    public Flux<Contact> getUniqueContacts() {
+        return contactRowRepository.findUniqueContacts();
+    }
+
+    private Mono<Contact> findContact(long contactId) {
+        return contactRowRepository.findContactById(contactId).switchIfEmpty(noSuchElement());
+    }
+
+    private Mono<Contact> createContact(Contact contact) {
+        return contactRepository.nextId()
+                .flatMap(id -> contactRepository.insert(id, contact.getName())
+                        .thenMany(Flux.fromIterable(contact.getPhoneNumbers().entrySet()))
+                        .concatMap(phoneNumber -> contactRepository.insertPhoneNumber(id,
+                                phoneNumber.getKey().name(), phoneNumber.getValue()))
+                        .then(Mono.fromSupplier(() -> {
+                            contact.setId(id);
+                            return contact;
+                        })));
+    }
+}
@@ -0,0 +1,46 @@
+-- The same tables and sequences Hibernate generates for the servlet application
+create sequence if not exists address_book_seq start with 1 increment by 50;
+create sequence if not exists contact_seq start with 1 increment by 50;
+
+create table if not exists address_book (
+    id bigint not null,
+    name varchar(255) not null,
+    version bigint default 0 not null,
+    primary key (id)
+);
+create table if not exists address_book_change (
+    address_book_id bigint not null,
+    contact_id bigint not null,
+    version bigint not null,
+    change_type varchar(255),
+    primary key (address_book_id, version, contact_id)
+);
+create table if not exists contact (
+    id bigint not null,
+    cluster_id bigint,
+    name varchar(255) not null,
+    version bigint default 0 not null,
+    primary key (id)
+);
+create index if not exists contact_cluster_id_idx on contact (cluster_id);
+create table if not exists contact_address_books (
+    contact_id bigint not null references contact,
+    address_book_id bigint not null references address_book,
+    primary key (contact_id, address_book_id)
+);
+create table if not exists contact_phone_numbers (
+    contact_id bigint not null references contact,
+    phone_number varchar(255),
+    phone_number_type varchar(255) not null,
+    primary key (contact_id, phone_number_type)
+);
+create table if not exists contact_match_keys (
+    contact_id bigint not null references contact,
+    match_key varchar(255)
+);
+create index if not exists contact_match_keys_match_key_idx on contact_match_keys (match_key);
+create table if not exists unique_contact (
+    contact_id bigint not null,
+    address_book_count integer not null,
+    primary key (contact_id)
+);
@@ -0,0 +1,202 @@
+package com.rodmccutcheon.addressbook.reactive;
+
+import com.rodmccutcheon.addressbook.reactive.entities.AddressBook;
+import com.rodmccutcheon.addressbook.reactive.entities.Contact;
+import com.rodmccutcheon.addressbook.reactive.entities.PhoneNumberType;
+import com.rodmccutcheon.addressbook.reactive.services.ContactService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+
+import static com.rodmccutcheon.addressbook.reactive.controllers.AddressBookController.BASE_URL;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Exercises the reactive API end to end, against the R2DBC equivalent of the servlet application's H2 database.
+ */
+@SpringBootTest(properties = "spring.r2dbc.url=r2dbc:h2:mem:///reactive-api;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+@AutoConfigureWebTestClient
+class ReactiveAddressBookApiTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ContactService contactService;
+
+    @Test
+    @DisplayName("Should return an address book with the contacts and phone numbers added to it")
+    void testAddContactsAndGetAddressBook() {
+        final var addressBook = createAddressBook("McNulty's address book");
+        addContact(addressBook.getId(), contact("Stringer Bell"));
+        addContact(addressBook.getId(), new Contact(null, "Bubbles"));
+
+        webTestClient.get().uri(BASE_URL + "/" + addressBook.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("McNulty's address book")
+                .jsonPath("$.contacts.length()").isEqualTo(2)
+                .jsonPath("$.contacts[0].name").isEqualTo("Stringer Bell")
+                .jsonPath("$.contacts[0].phoneNumbers.MOBILE").isEqualTo("+61406747789")
+                .jsonPath("$.contacts[1].phoneNumbers").isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should page address books by id and link to the next page when the page is full")
+    void testGetAllAddressBooksPaged() {
+        final var first = createAddressBook("Bunk's address book");
+        final var second = createAddressBook("Kima's address book");
+        addContact(second.getId(), contact("Omar"));
+
+        webTestClient.get().uri(BASE_URL + "?after=" + (first.getId() - 1) + "&size=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value(HttpHeaders.LINK, link -> assertTrue(
+                        link.contains("after=" + second.getId()) && link.endsWith("rel=\"next\"")))
+                .expectBody()
+                .jsonPath("$[0].id").isEqualTo(first.getId().intValue())
+                .jsonPath("$[0].contacts").isEmpty()
+                .jsonPath("$[1].contacts[0].name").isEqualTo("Omar");
+
+        webTestClient.get().uri(BASE_URL + "?after=" + (first.getId() - 1) + "&size=2&includeContacts=false")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[1].name").isEqualTo("Kima's address book")
+                .jsonPath("$[1].contacts").doesNotExist();
+    }
+
+    @Test
+    @DisplayName("Should stream each contact once, however many address books it belongs to, as NDJSON")
+    void testStreamUniqueContacts() {
+        final var addressBook = createAddressBook("Daniels' address book");
+        final var addressBook2 = createAddressBook("Rhonda's address book");
+        final var contact = addContact(addressBook.getId(), contact("Cedric Daniels"));
+        addContact(addressBook2.getId(), new Contact(contact.getId(), null));
+
+        final var body = webTestClient.get().uri(BASE_URL + "/unique-contacts")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertEquals(1, body.lines().filter(line -> line.contains("\"id\":" + contact.getId() + ",")).count());
+    }
+
+    @Test
+    @DisplayName("Should only read as many unique contacts as the subscriber requests")
+    void testUniqueContactsHonourBackpressure() {
+        final var addressBook = createAddressBook("Freamon's address book");
+        addContact(addressBook.getId(), contact("Lester Freamon"));
+        addContact(addressBook.getId(), contact("Roland Pryzbylewski"));
+
+        StepVerifier.create(contactService.getUniqueContacts(), 1)
+                .expectNextCount(1)
+                .thenRequest(1)
+                .expectNextCount(1)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Should keep a shared contact when it is removed from one address book, and delete it from the last")
+    void testRemoveContactFromAddressBooks() {
+        final var addressBook = createAddressBook("Carver's address book");
+        final var addressBook2 = createAddressBook("Herc's address book");
+        final var contact = addContact(addressBook.getId(), contact("Reginald Cousins"));
+        addContact(addressBook2.getId(), new Contact(contact.getId(), null));
+
+        webTestClient.delete().uri(BASE_URL + "/" + addressBook.getId() + "/contact/" + contact.getId())
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.get().uri(BASE_URL + "/" + addressBook2.getId())
+                .exchange()
+                .expectBody()
+                .jsonPath("$.contacts[0].id").isEqualTo(contact.getId().intValue());
+
+        webTestClient.delete().uri(BASE_URL + "/" + addressBook2.getId() + "/contact/" + contact.getId())
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.get().uri(BASE_URL + "/unique-contacts")
+                .exchange()
+                .expectBody()
+                .jsonPath("$[*].id").value(not(hasItem(contact.getId().intValue())));
+    }
+
+    @Test
+    @DisplayName("Should rename an address book and delete it along with its contacts")
+    void testUpdateAndDeleteAddressBook() {
+        final var addressBook = createAddressBook("Valchek's address book");
+        final var contact = addContact(addressBook.getId(), contact("Stanislaus Valchek"));
+
+        webTestClient.put().uri(BASE_URL + "/" + addressBook.getId())
+                .bodyValue(new AddressBook(null, "Burrell's address book"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Burrell's address book")
+                .jsonPath("$.contacts[0].id").isEqualTo(contact.getId().intValue());
+
+        webTestClient.delete().uri(BASE_URL + "/" + addressBook.getId())
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.get().uri(BASE_URL + "/unique-contacts")
+                .exchange()
+                .expectBody()
+                .jsonPath("$[*].id").value(not(hasItem(contact.getId().intValue())));
+    }
+
+    @Test
+    @DisplayName("Should return 400 for an address book that doesn't exist")
+    void testAddressBookThatDoesntExist() {
+        webTestClient.get().uri(BASE_URL + "/" + Long.MAX_VALUE)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("No value present");
+
+        webTestClient.post().uri(BASE_URL + "/" + Long.MAX_VALUE + "/contact")
+                .bodyValue(contact("Marlo Stanfield"))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("No value present");
+    }
+
+    private AddressBook createAddressBook(String name) {
+        return webTestClient.post().uri(BASE_URL)
+                .bodyValue(new AddressBook(null, name))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(AddressBook.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private Contact addContact(long addressBookId, Contact contact) {
+        return webTestClient.post().uri(BASE_URL + "/" + addressBookId + "/contact")
+                .bodyValue(contact)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Contact.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private static Contact contact(String name) {
+        final var contact = new Contact(null, name);
+        contact.getPhoneNumbers().put(PhoneNumberType.MOBILE, "+61406747789");
+        return contact;
+    }
+}
@@ -0,0 +1,60 @@
+package com.rodmccutcheon.addressbook.benchmarks;
+
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.repositories.ContactRepository;
+import com.rodmccutcheon.addressbook.services.AddressBookService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds a new contact to an address book that already holds {@code contactsPerAddressBook} contacts. The time taken
+ * should not depend on the size of the address book, from 10 contacts up to a million. Seeding the largest address
+ * book takes a minute or so before the first warmup iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AddressBookServiceBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000", "1000000"})
+    private int contactsPerAddressBook;
+
+    private ConfigurableApplicationContext context;
+    private AddressBookService addressBookService;
+    private ContactRepository contactRepository;
+    private TransactionTemplate transactionTemplate;
+    private long addressBookId;
+    private long contactId;
+
+    @Setup
+    public void startApplication() {
+        context = BenchmarkData.startApplication("address-book-service-benchmark");
+        addressBookId = BenchmarkData.seed(context, 1, contactsPerAddressBook, 0).get(0);
+        addressBookService = context.getBean(AddressBookService.class);
+        contactRepository = context.getBean(ContactRepository.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        contactId = contactsPerAddressBook;
+    }
+
+    @TearDown
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public Contact addContact() {
+        final var contact = BenchmarkData.contact(++contactId);
+        contact.setId(null);
+        return transactionTemplate.execute(status -> {
+            final var savedContact = contactRepository.save(contact);
+            addressBookService.addContact(addressBookId, savedContact);
+            return savedContact;
+        });
+    }
+}
@@ -0,0 +1,163 @@
+package com.rodmccutcheon.addressbook.benchmarks;
+
+import com.rodmccutcheon.addressbook.AddressBookApplication;
+import com.rodmccutcheon.addressbook.data.SampleData;
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import com.rodmccutcheon.addressbook.entities.UniqueContact;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Generates address books shaped like {@link SampleData}, scaled up. Every address book holds the same number of
+ * contacts with a mobile and a work number, and a fraction of each address book's contacts also belong to the
+ * next address book. Names and numbers are derived from the contact's position, so every run sees the same data.
+ */
+final class BenchmarkData {
+
+    private static final String[] FIRST_NAMES = {
+            "Stringer", "Omar", "Jimmy", "Bunk", "Lester", "Kima", "Cedric", "Rhonda", "Marlo", "Chris",
+            "Reginald", "Avon", "Russell", "Ellis", "Thomas", "Roland", "Beatrice", "Dennis", "Howard", "Felicia"
+    };
+    private static final String[] LAST_NAMES = {
+            "Bell", "Little", "McNulty", "Moreland", "Freamon", "Greggs", "Daniels", "Pearlman", "Stanfield",
+            "Partlow", "Cousins", "Barksdale", "Carcetti", "Carver", "Pryzbylewski", "Russell", "Wise", "Colvin"
+    };
+    private static final int SEED_BATCH_SIZE = 500;
+
+    private BenchmarkData() {
+    }
+
+    static Contact contact(long id) {
+        final var contact = new Contact(id, name(id));
+        contact.addPhoneNumber(PhoneNumberType.MOBILE, String.format("+614%08d", id % 100_000_000));
+        contact.addPhoneNumber(PhoneNumberType.WORK, String.format("+613%08d", (id * 7919) % 100_000_000));
+        return contact;
+    }
+
+    static ContactView contactView(long id) {
+        return ContactView.of(contact(id));
+    }
+
+    /**
+     * Builds the address books in memory, with ids assigned and both sides of every membership linked.
+     */
+    static List<AddressBook> addressBooks(int addressBooks, int contactsPerAddressBook, double sharedFraction) {
+        final var books = new ArrayList<AddressBook>(addressBooks);
+        for (int i = 0; i < addressBooks; i++) {
+            books.add(new AddressBook(i + 1, "Address book " + (i + 1)));
+        }
+        forEachContact(addressBooks, contactsPerAddressBook, sharedFraction, (contactId, memberships) -> {
+            final var contact = contact(contactId);
+            for (int addressBookIndex : memberships) {
+                books.get(addressBookIndex).addContact(contact);
+            }
+        });
+        return books;
+    }
+
+    /**
+     * Writes the address books to the application's database, flushing in batches like the contact import does,
+     * and returns their ids.
+     */
+    static List<Long> seed(ConfigurableApplicationContext context, int addressBooks, int contactsPerAddressBook,
+                           double sharedFraction) {
+        final var entityManager = context.getBean(EntityManagerFactory.class).createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            final var ids = new ArrayList<Long>(addressBooks);
+            for (int i = 0; i < addressBooks; i++) {
+                final var addressBook = new AddressBook("Address book " + (i + 1));
+                entityManager.persist(addressBook);
+                ids.add(addressBook.getId());
+            }
+            flushAndClear(entityManager);
+            forEachContact(addressBooks, contactsPerAddressBook, sharedFraction, (contactId, memberships) -> {
+                final var contact = contact(contactId);
+                contact.setId(null);
+                for (int addressBookIndex : memberships) {
+                    contact.getAddressBooks()
+                            .add(entityManager.getReference(AddressBook.class, ids.get(addressBookIndex)));
+                }
+                entityManager.persist(contact);
+                entityManager.persist(new UniqueContact(contact.getId(), memberships.length));
+                if (contactId % SEED_BATCH_SIZE == 0) {
+                    flushAndClear(entityManager);
+                }
+            });
+            flushAndClear(entityManager);
+            entityManager.getTransaction().commit();
+            return ids;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Starts the application without a web server against its own in-memory database. Caching is switched off so
+     * the benchmarks measure the work behind each service method rather than a cache lookup.
+     */
+    static ConfigurableApplicationContext startApplication(String database) {
+        return start(WebApplicationType.NONE, database);
+    }
+
+    /**
+     * Starts the application like {@link #startApplication}, but serving HTTP on a random port, with
+     * {@code arguments} added to the command line.
+     */
+    static ConfigurableApplicationContext startWebApplication(String database, String... arguments) {
+        return start(WebApplicationType.SERVLET, database,
+                Stream.concat(Stream.of("--server.port=0"), Arrays.stream(arguments)).toArray(String[]::new));
+    }
+
+    private static ConfigurableApplicationContext start(WebApplicationType webApplicationType, String database,
+                                                        String... arguments) {
+        final var commandLine = Stream.concat(Stream.of(
+                "--spring.datasource.url=jdbc:h2:mem:" + database + ";MODE=PostgreSQL",
+                "--spring.cache.type=none",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=warn"), Arrays.stream(arguments));
+        return new SpringApplicationBuilder(AddressBookApplication.class)
+                .web(webApplicationType)
+                .run(commandLine.toArray(String[]::new));
+    }
+
+    /**
+     * Hands every generated contact id to {@code consumer} with the indexes of the address books it belongs to:
+     * its own and, for every {@code 1 / sharedFraction}th contact, the next one as well.
+     */
+    private static void forEachContact(int addressBooks, int contactsPerAddressBook, double sharedFraction,
+                                       BiConsumer<Long, int[]> consumer) {
+        final long sharedInterval = sharedFraction > 0 ? Math.max(1, Math.round(1 / sharedFraction)) : Long.MAX_VALUE;
+        long contactId = 1;
+        for (int addressBookIndex = 0; addressBookIndex < addressBooks; addressBookIndex++) {
+            for (int i = 0; i < contactsPerAddressBook; i++, contactId++) {
+                final boolean shared = addressBooks > 1 && contactId % sharedInterval == 0;
+                consumer.accept(contactId, shared
+                        ? new int[]{addressBookIndex, (addressBookIndex + 1) % addressBooks}
+                        : new int[]{addressBookIndex});
+            }
+        }
+    }
+
+    private static void flushAndClear(EntityManager entityManager) {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private static String name(long id) {
+        return FIRST_NAMES[(int) (id % FIRST_NAMES.length)] + " "
+                + LAST_NAMES[(int) ((id / FIRST_NAMES.length) % LAST_NAMES.length)] + " " + id;
+    }
+}
@@ -0,0 +1,84 @@
+package com.rodmccutcheon.addressbook.benchmarks;
+
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.services.AddressBookService;
+import com.rodmccutcheon.addressbook.services.ContactService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how the throughput of contact changes scales with the number of concurrent writers. Each operation adds a
+ * new contact to an address book and removes it again. Writers either all share one address book, so every change
+ * takes the same version row lock and retries its conflicts, or each have an address book of their own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@OperationsPerInvocation(ConcurrentMutationBenchmark.BURST_SIZE)
+public class ConcurrentMutationBenchmark {
+
+    static final int BURST_SIZE = 256;
+
+    @Param({"1", "2", "4", "8"})
+    private int writers;
+
+    @Param({"true", "false"})
+    private boolean sharedAddressBook;
+
+    private ConfigurableApplicationContext context;
+    private ContactService contactService;
+    private ExecutorService executor;
+    private List<Long> addressBookIds;
+    // Numbered past the seeded contacts, so new contacts have no duplicates to cluster with
+    private final AtomicLong contactNumber = new AtomicLong(1_000_000);
+
+    @Setup
+    public void startApplication() {
+        context = BenchmarkData.startApplication("concurrent-mutation-benchmark");
+        BenchmarkData.seed(context, 10, 1000, 0.1);
+        contactService = context.getBean(ContactService.class);
+        final var addressBookService = context.getBean(AddressBookService.class);
+        addressBookIds = new ArrayList<>();
+        for (int writer = 0; writer < (sharedAddressBook ? 1 : writers); writer++) {
+            addressBookIds.add(addressBookService.createAddressBook(new AddressBook("Writer " + writer)).getId());
+        }
+        executor = Executors.newFixedThreadPool(writers);
+    }
+
+    @TearDown
+    public void stopApplication() {
+        executor.shutdownNow();
+        context.close();
+    }
+
+    @Benchmark
+    public void burst() throws Exception {
+        final var writes = new ArrayList<Future<?>>(writers);
+        for (int writer = 0; writer < writers; writer++) {
+            final long addressBookId = addressBookIds.get(writer % addressBookIds.size());
+            writes.add(executor.submit(() -> {
+                for (int i = 0; i < BURST_SIZE / writers; i++) {
+                    final var contact = BenchmarkData.contact(contactNumber.incrementAndGet());
+                    contact.setId(null);
+                    contactService.addContactToAddressBook(addressBookId, contact);
+                    contactService.deleteContactFromAddressBook(addressBookId, contact.getId());
+                }
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.rodmccutcheon.addressbook.benchmarks;
+
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exercises {@link Contact#equals} and {@link Contact#hashCode} the way the unique contacts and address book
+ * membership sets do: building a large set, probing it with equal but distinct instances, and linking and unlinking
+ * every contact to an address book through both sides of the association.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ContactEqualityBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int contacts;
+
+    private List<Contact> contactList;
+    private List<Contact> probes;
+    private Set<Contact> contactSet;
+
+    @Setup
+    public void generateContacts() {
+        contactList = new ArrayList<>(contacts);
+        probes = new ArrayList<>(contacts);
+        for (long id = 1; id <= contacts; id++) {
+            contactList.add(BenchmarkData.contact(id));
+            probes.add(BenchmarkData.contact(id));
+        }
+        contactSet = new HashSet<>(contactList);
+    }
+
+    @Benchmark
+    public Set<Contact> buildSet() {
+        return new HashSet<>(contactList);
+    }
+
+    @Benchmark
+    public int probeSet() {
+        int found = 0;
+        for (Contact probe : probes) {
+            if (contactSet.contains(probe)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int linkMemberships() {
+        final var addressBook = new AddressBook(1L, "Address book 1");
+        for (Contact contact : contactList) {
+            addressBook.addContact(contact);
+        }
+        final int linked = addressBook.getContacts().size();
+        for (Contact contact : contactList) {
+            addressBook.removeContact(contact);
+            contact.getAddressBooks().remove(addressBook);
+        }
+        return linked;
+    }
+}
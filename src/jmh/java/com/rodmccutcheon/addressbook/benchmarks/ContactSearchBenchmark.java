@@ -0,0 +1,50 @@
+package com.rodmccutcheon.addressbook.benchmarks;
+
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.repositories.ContactSearchIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the latency of prefix, misspelt-name and phone-suffix searches against a populated search index, so the
+ * reported percentiles can be compared with the search latency target. The index is held on the heap, so the largest
+ * case needs the larger fork heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ContactSearchBenchmark {
+
+    @Param({"100000", "1000000", "5000000"})
+    private int contacts;
+
+    @Param({"stri", "freamon", "stringre bel", "4747789"})
+    private String query;
+
+    private ContactSearchIndex contactSearchIndex;
+
+    @Setup
+    public void buildIndex() throws IOException {
+        contactSearchIndex = new ContactSearchIndex();
+        for (long id = 1; id <= contacts; id++) {
+            contactSearchIndex.add(BenchmarkData.contactView(id));
+        }
+        contactSearchIndex.refresh();
+    }
+
+    @TearDown
+    public void closeIndex() throws IOException {
+        contactSearchIndex.close();
+    }
+
+    @Benchmark
+    public List<ContactView> search() {
+        return contactSearchIndex.search(query, 20);
+    }
+}
@@ -0,0 +1,51 @@
+package com.rodmccutcheon.addressbook.benchmarks;
+
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.services.ContactService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the unique contacts of ten address books, a tenth of whose contacts are shared, as entities and as
+ * streamed rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ContactServiceBenchmark {
+
+    @Param({"1000", "10000"})
+    private int contactsPerAddressBook;
+
+    private ConfigurableApplicationContext context;
+    private ContactService contactService;
+
+    @Setup
+    public void startApplication() {
+        context = BenchmarkData.startApplication("contact-service-benchmark");
+        BenchmarkData.seed(context, 10, contactsPerAddressBook, 0.1);
+        contactService = context.getBean(ContactService.class);
+    }
+
+    @TearDown
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public Set<Contact> getUniqueContacts() {
+        return contactService.getUniqueContacts();
+    }
+
+    @Benchmark
+    public void forEachUniqueContact(Blackhole blackhole) {
+        contactService.forEachUniqueContact(blackhole::consume);
+    }
+}
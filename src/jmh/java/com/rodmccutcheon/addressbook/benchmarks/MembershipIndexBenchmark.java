@@ -0,0 +1,77 @@
+package com.rodmccutcheon.addressbook.benchmarks;
+
+import com.rodmccutcheon.addressbook.repositories.MembershipIndex;
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exercises the {@link MembershipIndex} over address books shaped like {@link BenchmarkData}'s: loading it, answering
+ * which address books hold a contact, and combining two address books. {@link ContactEqualityBenchmark} measures
+ * the same questions asked of the entities' hash sets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MembershipIndexBenchmark {
+
+    private static final int ADDRESS_BOOKS = 1000;
+    private static final int SHARED_INTERVAL = 10;
+
+    @Param({"100000", "1000000"})
+    private int contacts;
+
+    private Map<Long, Roaring64Bitmap> contactIdsByAddressBook;
+    private MembershipIndex membershipIndex;
+    private long contactId;
+
+    @Setup
+    public void buildIndex() {
+        contactIdsByAddressBook = new HashMap<>();
+        final int contactsPerAddressBook = contacts / ADDRESS_BOOKS;
+        long id = 1;
+        for (long addressBookId = 1; addressBookId <= ADDRESS_BOOKS; addressBookId++) {
+            final var addressBookContacts = contactIdsByAddressBook.computeIfAbsent(addressBookId,
+                    key -> new Roaring64Bitmap());
+            for (int i = 0; i < contactsPerAddressBook; i++, id++) {
+                addressBookContacts.addLong(id);
+                if (id % SHARED_INTERVAL == 0) {
+                    contactIdsByAddressBook.computeIfAbsent(addressBookId % ADDRESS_BOOKS + 1,
+                            key -> new Roaring64Bitmap()).addLong(id);
+                }
+            }
+        }
+        membershipIndex = new MembershipIndex();
+        membershipIndex.replaceAll(() -> contactIdsByAddressBook);
+        contactId = contacts / 2;
+    }
+
+    @Benchmark
+    public MembershipIndex load() {
+        final var index = new MembershipIndex();
+        index.replaceAll(() -> contactIdsByAddressBook);
+        return index;
+    }
+
+    @Benchmark
+    public long[] addressBooksOfContact() {
+        return membershipIndex.getAddressBookIds(contactId);
+    }
+
+    @Benchmark
+    public Roaring64Bitmap intersectAddressBooks() {
+        return membershipIndex.intersection(List.of(1L, 2L));
+    }
+
+    @Benchmark
+    public long countUniqueContacts() {
+        return membershipIndex.countUniqueContacts();
+    }
+}
@@ -0,0 +1,75 @@
+package com.rodmccutcheon.addressbook.benchmarks;
+
+import com.google.i18n.phonenumbers.NumberParseException;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.rodmccutcheon.addressbook.services.ContactNormalizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalizes 10 million phone numbers to E.164, as entered in Australia: mobiles and landlines with and without the
+ * country code, and, with {@code overseas}, one number in four from overseas. {@link #libphonenumber()} parses every
+ * number with libphonenumber, as {@link ContactNormalizer} did before it formatted local numbers directly. Run with
+ * {@code -prof gc} to compare the garbage each makes per number.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(PhoneNumberNormalizationBenchmark.PHONE_NUMBERS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PhoneNumberNormalizationBenchmark {
+
+    static final int PHONE_NUMBERS = 10_000_000;
+
+    @Param({"false", "true"})
+    private boolean overseas;
+
+    private final ContactNormalizer contactNormalizer = new ContactNormalizer("AU");
+    private final PhoneNumberUtil phoneNumberUtil = PhoneNumberUtil.getInstance();
+    private String[] phoneNumbers;
+
+    @Setup
+    public void generatePhoneNumbers() {
+        phoneNumbers = new String[PHONE_NUMBERS];
+        for (int i = 0; i < PHONE_NUMBERS; i++) {
+            final int digits = i % 10_000;
+            phoneNumbers[i] = switch (i % 4) {
+                case 0 -> "+61 4" + (i % 100) / 10 + i % 10 + " " + (i / 100) % 1000 + " " + (100 + i % 900);
+                case 1 -> "04" + (10 + i % 90) + "-" + (100 + i % 900) + "-" + (100 + (i / 1000) % 900);
+                case 2 -> "(03) " + (1000 + (i / 10) % 9000) + " " + (1000 + digits % 9000);
+                default -> overseas ? "+1 (410) 555-" + (1000 + digits % 9000) : "+613" + (10_000_000 + i);
+            };
+        }
+    }
+
+    @Benchmark
+    public int toE164() {
+        int formatted = 0;
+        for (String phoneNumber : phoneNumbers) {
+            if (contactNormalizer.toE164(phoneNumber).isPresent()) {
+                formatted++;
+            }
+        }
+        return formatted;
+    }
+
+    @Benchmark
+    public int libphonenumber() {
+        int formatted = 0;
+        for (String phoneNumber : phoneNumbers) {
+            try {
+                final var parsed = phoneNumberUtil.parse(phoneNumber, "AU");
+                if (phoneNumberUtil.isPossibleNumber(parsed)
+                        && phoneNumberUtil.format(parsed, PhoneNumberUtil.PhoneNumberFormat.E164) != null) {
+                    formatted++;
+                }
+            } catch (NumberParseException e) {
+                // Not counted
+            }
+        }
+        return formatted;
+    }
+}
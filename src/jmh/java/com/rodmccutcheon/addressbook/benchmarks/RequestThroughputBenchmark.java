@@ -0,0 +1,68 @@
+package com.rodmccutcheon.addressbook.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.rodmccutcheon.addressbook.controllers.AddressBookController.BASE_URL;
+
+/**
+ * Load test of request throughput on Tomcat's thread pool. Each operation is a burst of concurrent requests for
+ * address books with their contacts, several times larger than the thread pool, so requests queue for a thread.
+ * Caching is turned off, so that every request reads its address book from the database rather than the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@OperationsPerInvocation(RequestThroughputBenchmark.BURST_SIZE)
+public class RequestThroughputBenchmark {
+
+    static final int BURST_SIZE = 1000;
+    private static final int THREADS = 50;
+    private static final int ADDRESS_BOOKS = 10;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private List<HttpRequest> requests;
+
+    @Setup
+    public void startApplication() {
+        context = BenchmarkData.startWebApplication("request-throughput-benchmark",
+                "--server.tomcat.threads.max=" + THREADS,
+                "--server.tomcat.accept-count=" + BURST_SIZE,
+                "--spring.cache.type=none");
+        final var addressBookIds = BenchmarkData.seed(context, ADDRESS_BOOKS, 100, 0.1);
+        final var port = context.getEnvironment().getProperty("local.server.port");
+        httpClient = HttpClient.newHttpClient();
+        requests = IntStream.range(0, BURST_SIZE)
+                .mapToObj(i -> HttpRequest.newBuilder(URI.create("http://localhost:" + port + BASE_URL + "/"
+                        + addressBookIds.get(i % ADDRESS_BOOKS))).build())
+                .collect(Collectors.toList());
+    }
+
+    @TearDown
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public long burst() {
+        final var responses = requests.stream()
+                .map(request -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()))
+                .collect(Collectors.toList());
+        CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).join();
+        return responses.stream().filter(response -> response.join().statusCode() == 200).count();
+    }
+}
@@ -0,0 +1,71 @@
+package com.rodmccutcheon.addressbook.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Serializes a single address book, and a page of address books, with every contact and phone number embedded,
+ * in each of the wire formats the application offers, and reads the single address book back. The encoded sizes
+ * are printed once per trial, as they do not vary between invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SerializationBenchmark {
+
+    public enum Format {
+        JSON(Jackson2ObjectMapperBuilder::json),
+        CBOR(Jackson2ObjectMapperBuilder::cbor),
+        SMILE(Jackson2ObjectMapperBuilder::smile);
+
+        private final Supplier<Jackson2ObjectMapperBuilder> builder;
+
+        Format(Supplier<Jackson2ObjectMapperBuilder> builder) {
+            this.builder = builder;
+        }
+    }
+
+    @Param({"100", "10000"})
+    private int contactsPerAddressBook;
+
+    @Param
+    private Format format;
+
+    private ObjectMapper objectMapper;
+    private List<AddressBook> addressBooks;
+    private byte[] encodedAddressBook;
+
+    @Setup
+    public void generateAddressBooks() throws IOException {
+        objectMapper = format.builder.get().build();
+        addressBooks = BenchmarkData.addressBooks(10, contactsPerAddressBook, 0.1);
+        encodedAddressBook = objectMapper.writeValueAsBytes(addressBooks.get(0));
+        System.out.printf("%n%s: %,d bytes per address book of %,d contacts, %,d bytes per page of %d%n", format,
+                encodedAddressBook.length, contactsPerAddressBook, writeAddressBooks().length, addressBooks.size());
+    }
+
+    @Benchmark
+    public byte[] writeAddressBook() throws IOException {
+        return objectMapper.writeValueAsBytes(addressBooks.get(0));
+    }
+
+    @Benchmark
+    public byte[] writeAddressBooks() throws IOException {
+        return objectMapper.writeValueAsBytes(addressBooks);
+    }
+
+    @Benchmark
+    public AddressBook readAddressBook() throws IOException {
+        return objectMapper.readValue(encodedAddressBook, AddressBook.class);
+    }
+}
@@ -0,0 +1,78 @@
+package com.rodmccutcheon.addressbook.benchmarks;
+
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import com.rodmccutcheon.addressbook.repositories.AddressBookSnapshot;
+import com.rodmccutcheon.addressbook.repositories.AddressBookSnapshotWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what a read-only start from a snapshot costs before the first request is answered: mapping the file and
+ * reading one address book, or the first page of address books, out of it. The snapshot holds
+ * {@value #CONTACTS_PER_ADDRESS_BOOK} contacts per address book, each with a mobile and a work number.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    private static final int CONTACTS_PER_ADDRESS_BOOK = 100;
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"100000", "1000000"})
+    private int contacts;
+
+    private Path directory;
+    private Path file;
+    private long middleAddressBookId;
+
+    @Setup
+    public void writeSnapshot() throws IOException {
+        directory = Files.createTempDirectory("snapshot-benchmark");
+        file = directory.resolve("address-books.snapshot");
+        final int addressBooks = contacts / CONTACTS_PER_ADDRESS_BOOK;
+        final var writer = new AddressBookSnapshotWriter();
+        for (long addressBookId = 1; addressBookId <= addressBooks; addressBookId++) {
+            writer.addAddressBook(addressBookId, "Address book " + addressBookId, CONTACTS_PER_ADDRESS_BOOK, 0);
+        }
+        for (long contactId = 1; contactId <= contacts; contactId++) {
+            final var contact = BenchmarkData.contact(contactId);
+            writer.addContact(contactId, contact.getName(), 0, null);
+            final var phoneNumbers = contact.getPhoneNumbers();
+            writer.addPhoneNumber(contactId, PhoneNumberType.MOBILE, phoneNumbers.get(PhoneNumberType.MOBILE));
+            writer.addPhoneNumber(contactId, PhoneNumberType.WORK, phoneNumbers.get(PhoneNumberType.WORK));
+            writer.addMembership((contactId - 1) / CONTACTS_PER_ADDRESS_BOOK + 1, contactId);
+        }
+        writer.write(file);
+        middleAddressBookId = addressBooks / 2;
+    }
+
+    @TearDown
+    public void deleteSnapshot() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public AddressBook openAndGetAddressBook() throws IOException {
+        try (var snapshot = AddressBookSnapshot.open(file)) {
+            return snapshot.findAddressBook(middleAddressBookId).orElseThrow();
+        }
+    }
+
+    @Benchmark
+    public List<AddressBook> openAndGetFirstPage() throws IOException {
+        try (var snapshot = AddressBookSnapshot.open(file)) {
+            return snapshot.getAddressBooks(0, PAGE_SIZE);
+        }
+    }
+}
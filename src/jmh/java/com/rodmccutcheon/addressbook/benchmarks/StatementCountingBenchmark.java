@@ -0,0 +1,74 @@
+package com.rodmccutcheon.addressbook.benchmarks;
+
+import com.rodmccutcheon.addressbook.config.JdbcUsage;
+import com.rodmccutcheon.addressbook.config.StatementCountingDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what {@link StatementCountingDataSource} adds to a query against an in-memory H2 database: the query run
+ * straight through the driver, through the counting proxies on a thread that is not counting, and on one that is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StatementCountingBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int rows;
+
+    private SingleConnectionDataSource targetDataSource;
+    private DataSource countingDataSource;
+
+    @Setup
+    public void openDatabase() {
+        targetDataSource = new SingleConnectionDataSource("jdbc:h2:mem:statement-counting-benchmark", true);
+        countingDataSource = new StatementCountingDataSource(targetDataSource);
+    }
+
+    @TearDown
+    public void closeDatabase() {
+        targetDataSource.destroy();
+    }
+
+    @Benchmark
+    public long uncounted() throws SQLException {
+        return query(targetDataSource);
+    }
+
+    @Benchmark
+    public long countingNotStarted() throws SQLException {
+        return query(countingDataSource);
+    }
+
+    @Benchmark
+    public long counting() throws SQLException {
+        JdbcUsage.start();
+        try {
+            return query(countingDataSource);
+        } finally {
+            JdbcUsage.stop();
+        }
+    }
+
+    private long query(DataSource dataSource) throws SQLException {
+        long sum = 0;
+        try (var connection = dataSource.getConnection();
+             var statement = connection.prepareStatement("select x from system_range(1, ?)")) {
+            statement.setInt(1, rows);
+            try (var resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    sum += resultSet.getLong(1);
+                }
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,32 @@
+package com.rodmccutcheon.addressbook.config;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+
+/**
+ * Retries {@link RetryOnConflict} methods. The advice is ordered before the transaction advice, so that every attempt
+ * runs in a transaction of its own, and after the timing advice of {@link MetricsConfiguration}.
+ */
+@Configuration
+public class ConflictRetryConfiguration {
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor conflictRetryAdvisor(@Value("${address-book.retry.max-attempts}") int maxAttempts,
+                                               @Value("${address-book.retry.backoff}") Duration backoff) {
+        final var advisor = new DefaultPointcutAdvisor(
+                AnnotationMatchingPointcut.forMethodAnnotation(RetryOnConflict.class),
+                new ConflictRetryInterceptor(maxAttempts, backoff));
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return advisor;
+    }
+}
@@ -0,0 +1,51 @@
+package com.rodmccutcheon.addressbook.config;
+
+import lombok.extern.log4j.Log4j2;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs a method again when it fails with a {@link ConcurrencyFailureException}: an optimistic lock conflict, a lock
+ * wait timeout or a deadlock. Each retry waits a random time of up to {@code backoff}, doubled after every attempt,
+ * so that the callers that collided do not collide again. It gives up after {@code maxAttempts} attempts.
+ * <p>
+ * Only the outermost transactional call is retried, as an inner call cannot start its transaction again.
+ */
+@Log4j2
+public class ConflictRetryInterceptor implements MethodInterceptor {
+
+    private final int maxAttempts;
+    private final Duration backoff;
+
+    public ConflictRetryInterceptor(int maxAttempts, Duration backoff) {
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                || !(invocation instanceof ProxyMethodInvocation)) {
+            return invocation.proceed();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return ((ProxyMethodInvocation) invocation).invocableClone().proceed();
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.debug("Retrying {} after attempt {} conflicted: {}", invocation.getMethod(), attempt,
+                        e.getMessage());
+                final long maxWait = backoff.toMillis() << (attempt - 1);
+                Thread.sleep(ThreadLocalRandom.current().nextLong(maxWait + 1));
+            }
+        }
+    }
+}
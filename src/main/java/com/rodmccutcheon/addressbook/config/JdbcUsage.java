@@ -0,0 +1,72 @@
+package com.rodmccutcheon.addressbook.config;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The SQL statements executed and rows read by one thread, from {@link #start()} to {@link #stop()}, as counted by
+ * {@link StatementCountingDataSource}. Nothing is counted on threads that have not started counting. Work handed to
+ * other threads is counted too if they {@link #set} the usage of the thread that handed it over, so the counts are
+ * safe to update from several threads at once.
+ */
+public final class JdbcUsage {
+
+    private static final ThreadLocal<JdbcUsage> CURRENT = new ThreadLocal<>();
+
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+
+    public static void start() {
+        CURRENT.set(new JdbcUsage());
+    }
+
+    /**
+     * Stops counting on this thread, and returns what was counted, or null if counting was not started.
+     */
+    public static JdbcUsage stop() {
+        final var usage = CURRENT.get();
+        CURRENT.remove();
+        return usage;
+    }
+
+    /**
+     * What this thread is counting into, or null if it is not counting.
+     */
+    public static JdbcUsage current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Counts this thread's work into {@code usage}, or stops counting if it is null, and returns what it replaced.
+     */
+    public static JdbcUsage set(JdbcUsage usage) {
+        final var previous = CURRENT.get();
+        if (usage != null) {
+            CURRENT.set(usage);
+        } else {
+            CURRENT.remove();
+        }
+        return previous;
+    }
+
+    static void statementExecuted() {
+        final var usage = CURRENT.get();
+        if (usage != null) {
+            usage.statements.increment();
+        }
+    }
+
+    static void rowRead() {
+        final var usage = CURRENT.get();
+        if (usage != null) {
+            usage.rows.increment();
+        }
+    }
+
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+}
@@ -0,0 +1,50 @@
+package com.rodmccutcheon.addressbook.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Records the SQL statements executed and rows read while handling each request, tagged like
+ * {@code http.server.requests} with the request method and URI pattern. Only work done on the request thread is
+ * counted, not the part of a streamed response written after the request thread returns.
+ */
+public class JdbcUsageFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry meterRegistry;
+
+    public JdbcUsageFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        JdbcUsage.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            final var usage = JdbcUsage.stop();
+            final var uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if (usage != null && uri != null) {
+                summary("address-book.request.statements", "statements", request, uri).record(usage.getStatements());
+                summary("address-book.request.rows", "rows", request, uri).record(usage.getRows());
+            }
+        }
+    }
+
+    private DistributionSummary summary(String name, String baseUnit, HttpServletRequest request, Object uri) {
+        return DistributionSummary.builder(name)
+                .baseUnit(baseUnit)
+                .tag("method", request.getMethod())
+                .tag("uri", uri.toString())
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,89 @@
+package com.rodmccutcheon.addressbook.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.MethodClassKey;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Times every call as a {@link Timer} named {@code name}, tagged with the class and method called and the simple name
+ * of the exception thrown, or "none". The timer of each successful method is looked up once and kept, so a call costs
+ * two clock reads and a map lookup.
+ * <p>
+ * The registry is looked up on the first call, as advice is created before the registry is configured.
+ */
+public class MethodTimingInterceptor implements MethodInterceptor {
+
+    private final Supplier<MeterRegistry> meterRegistrySupplier;
+    private final String name;
+    private final Map<MethodClassKey, Timer> timers = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+
+    public MethodTimingInterceptor(Supplier<MeterRegistry> meterRegistrySupplier, String name) {
+        this.meterRegistrySupplier = meterRegistrySupplier;
+        this.name = name;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (meterRegistry == null) {
+            meterRegistry = meterRegistrySupplier.get();
+        }
+        final var clock = meterRegistry.config().clock();
+        final long start = clock.monotonicTime();
+        final var targetClass = calledClass(invocation);
+        try {
+            final Object result = invocation.proceed();
+            timers.computeIfAbsent(new MethodClassKey(invocation.getMethod(), targetClass),
+                    key -> timer(invocation, targetClass, "none"))
+                    .record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            timer(invocation, targetClass, e.getClass().getSimpleName())
+                    .record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Timer timer(MethodInvocation invocation, Class<?> targetClass, String exception) {
+        return Timer.builder(name)
+                .tag("class", className(targetClass))
+                .tag("method", invocation.getMethod().getName())
+                .tag("exception", exception)
+                .register(meterRegistry);
+    }
+
+    /**
+     * The class called, or for the interface-based proxy of a Spring Data repository, the proxy class, as the target
+     * is the same implementation class for every repository.
+     */
+    private static Class<?> calledClass(MethodInvocation invocation) {
+        if (invocation instanceof ProxyMethodInvocation
+                && Proxy.isProxyClass(((ProxyMethodInvocation) invocation).getProxy().getClass())) {
+            return ((ProxyMethodInvocation) invocation).getProxy().getClass();
+        }
+        return invocation.getThis() == null
+                ? invocation.getMethod().getDeclaringClass()
+                : AopUtils.getTargetClass(invocation.getThis());
+    }
+
+    /**
+     * The name of the class called, or of the interface a repository proxy implements.
+     */
+    private static String className(Class<?> targetClass) {
+        if (Proxy.isProxyClass(targetClass) && targetClass.getInterfaces().length > 0) {
+            return targetClass.getInterfaces()[0].getSimpleName();
+        }
+        return ClassUtils.getUserClass(targetClass).getSimpleName();
+    }
+}
@@ -0,0 +1,80 @@
+package com.rodmccutcheon.addressbook.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.MergedAnnotations;
+import org.springframework.stereotype.Repository;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+/**
+ * Instruments the hot paths with Micrometer: every public service and repository method is timed, as
+ * {@code address-book.service} and {@code address-book.repository}, and the SQL statements and rows each request
+ * costs are recorded, as {@code address-book.request.statements} and {@code address-book.request.rows}. Histograms
+ * and their bounds are configured through {@code management.metrics.distribution}.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    /**
+     * Ordered outside {@link RetryOnConflict} advice, so that a call is timed including its retries.
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor serviceTimingAdvisor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return timingAdvisor(Service.class, new MethodTimingInterceptor(meterRegistry::getObject,
+                "address-book.service"));
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor repositoryTimingAdvisor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return timingAdvisor(Repository.class, new MethodTimingInterceptor(meterRegistry::getObject,
+                "address-book.repository"));
+    }
+
+    @Bean
+    public static BeanPostProcessor statementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof StatementCountingDataSource)) {
+                    return new StatementCountingDataSource((DataSource) bean);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<JdbcUsageFilter> jdbcUsageFilter(MeterRegistry meterRegistry) {
+        return new FilterRegistrationBean<>(new JdbcUsageFilter(meterRegistry));
+    }
+
+    private static Advisor timingAdvisor(Class<? extends Annotation> stereotype, MethodTimingInterceptor interceptor) {
+        final var pointcut = new StaticMethodMatcherPointcut() {
+            @Override
+            public boolean matches(Method method, Class<?> targetClass) {
+                return method.getDeclaringClass() != Object.class;
+            }
+        };
+        pointcut.setClassFilter(clazz ->
+                MergedAnnotations.from(clazz, MergedAnnotations.SearchStrategy.TYPE_HIERARCHY).isPresent(stereotype));
+        final var advisor = new DefaultPointcutAdvisor(pointcut, interceptor);
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+}
@@ -0,0 +1,83 @@
+package com.rodmccutcheon.addressbook.config;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The replicas of the primary database that reads may be served from, and how far each lags behind it. A replica is
+ * only read from while its last measured lag is within {@code maxLag}, and not before its lag has first been
+ * measured, nor while it is suspended.
+ */
+public class ReadReplicas implements DisposableBean {
+
+    private final List<DataSource> replicas;
+    private final Duration maxLag;
+    private final AtomicReferenceArray<Duration> lags;
+    private final AtomicIntegerArray suspended;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReadReplicas(List<DataSource> replicas, Duration maxLag) {
+        this.replicas = List.copyOf(replicas);
+        this.maxLag = maxLag;
+        this.lags = new AtomicReferenceArray<>(replicas.size());
+        this.suspended = new AtomicIntegerArray(replicas.size());
+    }
+
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Records how far the replica lags behind the primary, or null if it could not be reached.
+     */
+    public void recordLag(int replica, Duration lag) {
+        lags.set(replica, lag);
+    }
+
+    public Optional<Duration> getLag(int replica) {
+        return Optional.ofNullable(lags.get(replica));
+    }
+
+    /**
+     * Stops reads from going to the replica, however little it lags, until it is resumed. For replicas whose data is
+     * being replaced, and which cannot be read meanwhile.
+     */
+    public void suspend(int replica) {
+        suspended.set(replica, 1);
+    }
+
+    public void resume(int replica) {
+        suspended.set(replica, 0);
+    }
+
+    /**
+     * The next replica in turn that is close enough behind the primary to read from, if any.
+     */
+    public Optional<DataSource> choose() {
+        final int first = nextReplica.getAndIncrement();
+        for (int i = 0; i < replicas.size(); i++) {
+            final int replica = Math.floorMod(first + i, replicas.size());
+            final var lag = lags.get(replica);
+            if (lag != null && lag.compareTo(maxLag) <= 0 && suspended.get(replica) == 0) {
+                return Optional.of(replicas.get(replica));
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (DataSource replica : replicas) {
+            if (replica instanceof AutoCloseable) {
+                ((AutoCloseable) replica).close();
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.rodmccutcheon.addressbook.config;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Sends the reads of a client that has changed something within the last {@code window} to the primary, so that it
+ * sees its own changes however far the replicas lag, see {@link ReplicaContext}. Each change is remembered in a
+ * cookie holding its time, so that the client's next requests are recognised by any instance.
+ * <p>
+ * Only reads on the request thread are covered, not those of a streamed response written after it returns.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String LAST_WRITE_COOKIE = "address-book-last-write";
+
+    private static final Set<String> READ_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final Duration window;
+
+    public ReadYourWritesFilter(Duration window) {
+        this.window = window;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        final var now = Instant.now();
+        final boolean write = !READ_METHODS.contains(request.getMethod());
+        if (write) {
+            // Set before the response is committed, so before the change is made
+            final var cookie = new Cookie(LAST_WRITE_COOKIE, Long.toString(now.toEpochMilli()));
+            cookie.setPath("/");
+            cookie.setMaxAge((int) window.toSeconds() + 1);
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+        }
+        final boolean previous = ReplicaContext.setPrimaryOnly(write || wroteRecently(request, now));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaContext.setPrimaryOnly(previous);
+        }
+    }
+
+    private boolean wroteRecently(HttpServletRequest request, Instant now) {
+        final var cookie = WebUtils.getCookie(request, LAST_WRITE_COOKIE);
+        if (cookie == null) {
+            return false;
+        }
+        try {
+            return now.isBefore(Instant.ofEpochMilli(Long.parseLong(cookie.getValue())).plus(window));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.rodmccutcheon.addressbook.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Serves read-only transactions from the replicas listed in {@code address-book.replicas.urls} when any are, see
+ * {@link ReplicaRoutingDataSource}. Replicas use the credentials of {@code spring.datasource}, and are read from while
+ * they lag at most {@code address-book.replicas.max-lag} behind it, as measured by {@code ReplicaLagMonitor}.
+ */
+@Configuration
+@ConditionalOnExpression("!'${address-book.replicas.urls:}'.isBlank()")
+public class ReplicaConfiguration {
+
+    @Bean
+    public ReadReplicas readReplicas(DataSourceProperties properties,
+                                     @Value("${address-book.replicas.urls}") List<String> replicaUrls,
+                                     @Value("${address-book.replicas.max-lag}") Duration maxLag) {
+        return new ReadReplicas(replicaUrls.stream()
+                .map(url -> (DataSource) properties.initializeDataSourceBuilder().url(url.trim()).build())
+                .collect(Collectors.toList()), maxLag);
+    }
+
+    /**
+     * Ordered first, so that the other data source wrappers see every connection, whichever database it is on.
+     */
+    @Bean
+    public static BeanPostProcessor replicaRoutingDataSourcePostProcessor(ObjectProvider<ReadReplicas> readReplicas) {
+        return new OrderedBeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof LazyConnectionDataSourceProxy)) {
+                    return new LazyConnectionDataSourceProxy(
+                            new ReplicaRoutingDataSource((DataSource) bean, readReplicas::getObject));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(
+            @Value("${address-book.replicas.read-your-writes-window}") Duration window) {
+        return new FilterRegistrationBean<>(new ReadYourWritesFilter(window));
+    }
+
+    private interface OrderedBeanPostProcessor extends BeanPostProcessor, Ordered {
+
+        @Override
+        default int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.rodmccutcheon.addressbook.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Whether read-only transactions started on the current thread must read from the primary rather than a replica,
+ * see {@link ReplicaRoutingDataSource}. Set for requests from clients that have recently changed something, so that
+ * they read their own writes, see {@link ReadYourWritesFilter}.
+ */
+public final class ReplicaContext {
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+    private ReplicaContext() {
+    }
+
+    public static boolean isPrimaryOnly() {
+        return Boolean.TRUE.equals(PRIMARY_ONLY.get());
+    }
+
+    /**
+     * Sets whether reads must go to the primary, and returns the setting it replaced.
+     */
+    public static boolean setPrimaryOnly(boolean primaryOnly) {
+        final boolean previous = isPrimaryOnly();
+        if (primaryOnly) {
+            PRIMARY_ONLY.set(true);
+        } else {
+            PRIMARY_ONLY.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * Runs {@code read} with its reads going to the primary. Used for reads that fill a cache, which would otherwise
+     * keep serving what a lagging replica returned after the change that evicted the entry.
+     */
+    public static <T> T onPrimary(Supplier<T> read) {
+        final boolean previous = setPrimaryOnly(true);
+        try {
+            return read.get();
+        } finally {
+            setPrimaryOnly(previous);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.rodmccutcheon.addressbook.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ * Opens the connections of read-only transactions on a replica, and all others on the primary. Reads go to the
+ * primary too when no replica is close enough behind it, when they must see the caller's own writes, see
+ * {@link ReplicaContext}, or when they are on a shard other than shard 0, whose replicas these are.
+ * <p>
+ * Whether a transaction is read-only is only known once it has begun, so this must be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, which waits for the first statement
+ * before opening the connection.
+ */
+public class ReplicaRoutingDataSource extends DelegatingDataSource {
+
+    private final Supplier<ReadReplicas> readReplicasSupplier;
+    private volatile ReadReplicas readReplicas;
+
+    public ReplicaRoutingDataSource(DataSource primary, Supplier<ReadReplicas> readReplicasSupplier) {
+        super(primary);
+        this.readReplicasSupplier = readReplicasSupplier;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return determineDataSource().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return determineDataSource().getConnection(username, password);
+    }
+
+    private DataSource determineDataSource() {
+        final var shard = ShardContext.current();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || ReplicaContext.isPrimaryOnly()
+                || (shard != null && shard != 0)) {
+            return obtainTargetDataSource();
+        }
+        if (readReplicas == null) {
+            readReplicas = readReplicasSupplier.get();
+        }
+        return readReplicas.choose().orElseGet(this::obtainTargetDataSource);
+    }
+}
@@ -0,0 +1,18 @@
+package com.rodmccutcheon.addressbook.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a request handler that only handles requests preferring an asynchronous response, that is whose
+ * {@code Prefer} headers hold the {@code respond-async} preference among any others, see
+ * {@link RespondAsyncCondition}. Other requests fall through to the handler mapped without it.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RespondAsync {
+}
@@ -0,0 +1,50 @@
+package com.rodmccutcheon.addressbook.config;
+
+import org.springframework.web.servlet.mvc.condition.RequestCondition;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Matches requests with the {@code respond-async} preference in any of their {@code Prefer} headers, each a comma
+ * separated list of preferences that may carry a value and parameters, such as
+ * {@code Prefer: respond-async, wait=5}. A handler mapping's {@code headers} attribute can only match a header's
+ * whole value, so would miss the preference once it is combined with others.
+ */
+public final class RespondAsyncCondition implements RequestCondition<RespondAsyncCondition> {
+
+    static final String PREFER = "Prefer";
+    static final String RESPOND_ASYNC = "respond-async";
+
+    @Override
+    public RespondAsyncCondition combine(RespondAsyncCondition other) {
+        return this;
+    }
+
+    @Override
+    public RespondAsyncCondition getMatchingCondition(HttpServletRequest request) {
+        return prefersRespondAsync(Collections.list(request.getHeaders(PREFER))) ? this : null;
+    }
+
+    @Override
+    public int compareTo(RespondAsyncCondition other, HttpServletRequest request) {
+        return 0;
+    }
+
+    static boolean prefersRespondAsync(Iterable<String> preferHeaders) {
+        for (String header : preferHeaders) {
+            for (String preference : header.split(",")) {
+                if (RESPOND_ASYNC.equalsIgnoreCase(preference.split("[;=]", 2)[0].trim())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return PREFER + " contains " + RESPOND_ASYNC;
+    }
+}
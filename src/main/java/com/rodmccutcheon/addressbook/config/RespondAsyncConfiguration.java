@@ -0,0 +1,33 @@
+package com.rodmccutcheon.addressbook.config;
+
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.servlet.mvc.condition.RequestCondition;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.lang.reflect.Method;
+
+/**
+ * Maps {@link RespondAsync} handlers only for requests that prefer an asynchronous response.
+ */
+@Configuration
+public class RespondAsyncConfiguration {
+
+    @Bean
+    public WebMvcRegistrations respondAsyncWebMvcRegistrations() {
+        return new WebMvcRegistrations() {
+            @Override
+            public RequestMappingHandlerMapping getRequestMappingHandlerMapping() {
+                return new RequestMappingHandlerMapping() {
+                    @Override
+                    protected RequestCondition<?> getCustomMethodCondition(Method method) {
+                        return AnnotatedElementUtils.hasAnnotation(method, RespondAsync.class)
+                                ? new RespondAsyncCondition() : null;
+                    }
+                };
+            }
+        };
+    }
+}
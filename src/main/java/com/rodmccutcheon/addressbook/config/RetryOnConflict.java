@@ -0,0 +1,18 @@
+package com.rodmccutcheon.addressbook.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a transactional service method that is run again, in a new transaction, when it fails because of a
+ * concurrent change to the same rows, see {@link ConflictRetryInterceptor}. The method must leave its arguments as
+ * it found them when its transaction rolls back.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RetryOnConflict {
+}
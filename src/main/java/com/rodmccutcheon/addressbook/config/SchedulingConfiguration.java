@@ -0,0 +1,12 @@
+package com.rodmccutcheon.addressbook.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Runs the services' background tasks, such as the unique contacts view consistency check.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfiguration {
+}
@@ -0,0 +1,30 @@
+package com.rodmccutcheon.addressbook.config;
+
+/**
+ * The shard that connections opened on the current thread go to, see {@link ShardRoutingDataSource}. Connections
+ * go to shard 0 when none is set.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets the current shard, or clears it if {@code shard} is null, and returns the shard it replaced.
+     */
+    public static Integer set(Integer shard) {
+        final var previous = CURRENT.get();
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+        return previous;
+    }
+}
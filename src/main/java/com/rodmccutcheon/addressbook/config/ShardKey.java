@@ -0,0 +1,17 @@
+package com.rodmccutcheon.addressbook.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the address book id parameter of a service method that must run on the shard holding that address book,
+ * see {@link ShardRoutingInterceptor}. The method's transaction, if it starts one, then runs on that shard.
+ */
+@Documented
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ShardKey {
+}
@@ -0,0 +1,68 @@
+package com.rodmccutcheon.addressbook.config;
+
+import com.rodmccutcheon.addressbook.services.ShardRouter;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Runs methods with a {@link ShardKey} parameter on the shard of the address book it names. A method called within
+ * a transaction on another shard fails with an {@link IllegalStateException}, as the transaction cannot span shards.
+ * <p>
+ * The router is looked up on the first call, as advice is created before the services it depends on.
+ */
+public class ShardRoutingInterceptor implements MethodInterceptor {
+
+    private final Supplier<ShardRouter> shardRouterSupplier;
+    private final Map<Method, Integer> shardKeyIndexes = new ConcurrentHashMap<>();
+    private volatile ShardRouter shardRouter;
+
+    public ShardRoutingInterceptor(Supplier<ShardRouter> shardRouterSupplier) {
+        this.shardRouterSupplier = shardRouterSupplier;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (shardRouter == null) {
+            shardRouter = shardRouterSupplier.get();
+        }
+        final int index = shardKeyIndexes.computeIfAbsent(invocation.getMethod(), method -> shardKeyIndex(
+                invocation.getThis() == null ? method : AopUtils.getMostSpecificMethod(method,
+                        AopUtils.getTargetClass(invocation.getThis()))));
+        if (index < 0) {
+            return invocation.proceed();
+        }
+        final long addressBookId = ((Number) invocation.getArguments()[index]).longValue();
+        final int shard = shardRouter.shardOf(addressBookId);
+        final var previous = ShardContext.current();
+        final int currentShard = previous == null ? 0 : previous;
+        if (currentShard != shard && TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Address book " + addressBookId + " is on shard " + shard
+                    + ", but the current transaction is on shard " + currentShard);
+        }
+        ShardContext.set(shard);
+        try {
+            return invocation.proceed();
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    static int shardKeyIndex(Method method) {
+        final var parameterAnnotations = method.getParameterAnnotations();
+        for (int index = 0; index < parameterAnnotations.length; index++) {
+            for (var annotation : parameterAnnotations[index]) {
+                if (annotation instanceof ShardKey) {
+                    return index;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,73 @@
+package com.rodmccutcheon.addressbook.config;
+
+import com.rodmccutcheon.addressbook.services.ShardRouter;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.model.relational.Namespace;
+import org.hibernate.boot.model.relational.Sequence;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.hbm2ddl.SchemaExport;
+import org.hibernate.tool.schema.TargetType;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.EnumSet;
+
+/**
+ * Creates the schema on shards 1 onwards, as Hibernate only creates it on shard 0, and restarts each shard's
+ * sequences at the start of its range of ids, see {@link ShardRouter#ID_RANGE}. Only used when Hibernate creates the
+ * schema, {@code spring.jpa.hibernate.ddl-auto} being {@code create} or {@code create-drop}.
+ */
+public class ShardSchemaExporter implements Integrator {
+
+    // Leaves room below the first id for the pooled optimizer, which hands out the ids before each sequence value
+    private static final long FIRST_SEQUENCE_VALUE = 1000;
+
+    private final int shards;
+
+    public ShardSchemaExporter(int shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                          SessionFactoryServiceRegistry serviceRegistry) {
+        final var connectionProvider = serviceRegistry.getService(ConnectionProvider.class);
+        for (int shard = 1; shard < shards; shard++) {
+            final var previous = ShardContext.set(shard);
+            try {
+                new SchemaExport().create(EnumSet.of(TargetType.DATABASE), metadata);
+                restartSequences(metadata, connectionProvider, shard * ShardRouter.ID_RANGE + FIRST_SEQUENCE_VALUE);
+            } finally {
+                ShardContext.set(previous);
+            }
+        }
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    private static void restartSequences(Metadata metadata, ConnectionProvider connectionProvider, long start) {
+        try {
+            final Connection connection = connectionProvider.getConnection();
+            try (var statement = connection.createStatement()) {
+                for (Namespace namespace : metadata.getDatabase().getNamespaces()) {
+                    for (Sequence sequence : namespace.getSequences()) {
+                        statement.execute("alter sequence " + sequence.getName().getSequenceName().getText()
+                                + " restart with " + start);
+                    }
+                }
+                if (!connection.getAutoCommit()) {
+                    connection.commit();
+                }
+            } finally {
+                connectionProvider.closeConnection(connection);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not restart the sequences of shard " + ShardContext.current(), e);
+        }
+    }
+}
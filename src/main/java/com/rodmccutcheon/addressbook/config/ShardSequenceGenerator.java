@@ -0,0 +1,31 @@
+package com.rodmccutcheon.addressbook.config;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.OptimizerFactory;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A sequence generator that keeps a separate pool of allocated ids for each shard, so that an entity is always given
+ * an id from the sequence of the shard it is saved on, see {@link ShardContext}. With a single shard it behaves
+ * exactly like the standard sequence generator.
+ */
+public class ShardSequenceGenerator extends SequenceStyleGenerator {
+
+    private final Map<Integer, Optimizer> optimizers = new ConcurrentHashMap<>();
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+        final var shard = ShardContext.current();
+        final var optimizer = shard == null || shard == 0 ? getOptimizer() : optimizers.computeIfAbsent(shard,
+                key -> OptimizerFactory.buildOptimizer(getOptimizer().getClass().getName(),
+                        getIdentifierType().getReturnedClass(), getDatabaseStructure().getIncrementSize(),
+                        getDatabaseStructure().getInitialValue()));
+        return optimizer.generate(getDatabaseStructure().buildCallback(session));
+    }
+}
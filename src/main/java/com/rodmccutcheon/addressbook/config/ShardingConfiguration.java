@@ -0,0 +1,80 @@
+package com.rodmccutcheon.addressbook.config;
+
+import com.rodmccutcheon.addressbook.services.ShardRouter;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spreads address books over several databases when {@code address-book.sharding.urls} lists any besides
+ * {@code spring.datasource}, see {@link ShardRouter}. Every shard is reached through one {@link ShardRoutingDataSource}
+ * and one persistence unit, and uses the credentials of {@code spring.datasource}.
+ */
+@Configuration
+public class ShardingConfiguration {
+
+    /**
+     * Ordered after {@link RetryOnConflict} advice and before the transaction advice, so that every attempt opens its
+     * transaction on the address book's shard.
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor shardRoutingAdvisor(ObjectProvider<ShardRouter> shardRouter) {
+        final var pointcut = new StaticMethodMatcherPointcut() {
+            @Override
+            public boolean matches(Method method, Class<?> targetClass) {
+                return ShardRoutingInterceptor.shardKeyIndex(AopUtils.getMostSpecificMethod(method, targetClass)) >= 0;
+            }
+        };
+        final var advisor = new DefaultPointcutAdvisor(pointcut, new ShardRoutingInterceptor(shardRouter::getObject));
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+        return advisor;
+    }
+
+    @Configuration
+    @ConditionalOnExpression("!'${address-book.sharding.urls:}'.isBlank()")
+    static class ShardedDataSourceConfiguration {
+
+        @Bean
+        public ShardRoutingDataSource shardRoutingDataSource(
+                DataSourceProperties properties, @Value("${address-book.sharding.urls}") List<String> shardUrls) {
+            final var shards = new ArrayList<DataSource>();
+            shards.add(properties.initializeDataSourceBuilder().build());
+            for (String url : shardUrls) {
+                shards.add(properties.initializeDataSourceBuilder().url(url.trim()).build());
+            }
+            return new ShardRoutingDataSource(shards);
+        }
+
+        @Bean
+        public HibernatePropertiesCustomizer shardSchemaCustomizer(
+                @Value("${address-book.sharding.urls}") List<String> shardUrls) {
+            return properties -> {
+                final var ddlAuto = properties.get(AvailableSettings.HBM2DDL_AUTO);
+                if ("create".equals(ddlAuto) || "create-drop".equals(ddlAuto)) {
+                    properties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER, (IntegratorProvider) () ->
+                            List.of(new ShardSchemaExporter(1 + shardUrls.size())));
+                }
+            };
+        }
+    }
+}
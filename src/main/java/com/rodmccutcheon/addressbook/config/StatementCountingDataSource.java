@@ -0,0 +1,74 @@
+package com.rodmccutcheon.addressbook.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Counts the statements executed, a JDBC batch counting as one, and the result set rows read through its
+ * connections into the calling thread's {@link JdbcUsage}.
+ */
+public class StatementCountingDataSource extends DelegatingDataSource {
+
+    public StatementCountingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return counting(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return counting(super.getConnection(username, password));
+    }
+
+    private static Connection counting(Connection connection) {
+        return proxy(Connection.class, connection, (method, result) ->
+                result instanceof Statement ? counting(method.getReturnType(), (Statement) result) : result);
+    }
+
+    private static Object counting(Class<?> statementType, Statement statement) {
+        return proxy(statementType, statement, (method, result) -> {
+            if (method.getName().startsWith("execute")) {
+                JdbcUsage.statementExecuted();
+            }
+            return result instanceof ResultSet ? counting((ResultSet) result) : result;
+        });
+    }
+
+    private static ResultSet counting(ResultSet resultSet) {
+        return proxy(ResultSet.class, resultSet, (method, result) -> {
+            if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+                JdbcUsage.rowRead();
+            }
+            return result;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, ResultHandler resultHandler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            final Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+            return resultHandler.handle(method, result);
+        });
+    }
+
+    @FunctionalInterface
+    private interface ResultHandler {
+        Object handle(Method method, Object result);
+    }
+}
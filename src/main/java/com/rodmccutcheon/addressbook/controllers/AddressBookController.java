@@ -1,27 +1,48 @@
 package com.rodmccutcheon.addressbook.controllers;
 
+import com.rodmccutcheon.addressbook.dto.AddressBookChanges;
+import com.rodmccutcheon.addressbook.dto.AddressBookSummary;
+import com.rodmccutcheon.addressbook.dto.BatchEntry;
+import com.rodmccutcheon.addressbook.dto.ContactPage;
 import com.rodmccutcheon.addressbook.entities.AddressBook;
 import com.rodmccutcheon.addressbook.services.AddressBookService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.servlet.http.HttpServletResponse;
 
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Function;
 
 import static com.rodmccutcheon.addressbook.controllers.AddressBookController.BASE_URL;
 
 @RestController
 @RequestMapping(BASE_URL)
+@ConditionalOnProperty(name = "address-book.snapshot.read-only", havingValue = "false", matchIfMissing = true)
 public class AddressBookController {
 
     public static final String BASE_URL = "/api/v1/address-book";
 
     private final AddressBookService addressBookService;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final int maxBatchSize;
 
-    public AddressBookController(AddressBookService addressBookService) {
+    public AddressBookController(AddressBookService addressBookService,
+                                 @Value("${address-book.pagination.default-page-size}") int defaultPageSize,
+                                 @Value("${address-book.pagination.max-page-size}") int maxPageSize,
+                                 @Value("${address-book.multi-get.max-ids}") int maxBatchSize) {
         this.addressBookService = addressBookService;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @PostMapping
@@ -29,14 +50,88 @@ public class AddressBookController {
         return ResponseEntity.ok(addressBookService.createAddressBook(addressBook));
     }
 
+    /**
+     * Lists address books one page at a time, keyed on the last id seen. When more results may follow,
+     * the URL of the next page is returned in a {@code Link: <...>; rel="next"} header.
+     */
     @GetMapping
-    public ResponseEntity<Iterable<AddressBook>> getAllAddressBooks() {
-        return ResponseEntity.ok(addressBookService.getAllAddressBooks());
+    public ResponseEntity<List<?>> getAllAddressBooks(@RequestParam(defaultValue = "0") long after,
+                                                      @RequestParam(required = false) Integer size,
+                                                      @RequestParam(defaultValue = "true") boolean includeContacts) {
+        final int pageSize = pageSize(size);
+        if (includeContacts) {
+            return page(addressBookService.getAddressBooks(after, pageSize), pageSize, AddressBook::getId);
+        }
+        return page(addressBookService.getAddressBookSummaries(after, pageSize), pageSize, AddressBookSummary::getId);
     }
 
+    /**
+     * Returns the address book with its version as a weak {@code ETag}, weak because the JSON, CBOR and Smile
+     * encodings of the same version share it. A request whose {@code If-None-Match} header already holds that
+     * version gets a 304 Not Modified with no body, so nothing is serialized.
+     */
     @GetMapping("/{addressBookId}")
     public ResponseEntity<AddressBook> getAddressBook(@PathVariable long addressBookId) {
-        return ResponseEntity.ok(addressBookService.getAddressBook(addressBookId));
+        final var addressBook = addressBookService.getAddressBook(addressBookId);
+        return ResponseEntity.ok()
+                .eTag(eTag(addressBook))
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(addressBook);
+    }
+
+    /**
+     * Returns several address books at once, one entry for each id in {@code ids} in the order asked for. An id
+     * with no address book gets an entry marked as not found, rather than failing the whole request.
+     */
+    @GetMapping("/batch")
+    public ResponseEntity<List<BatchEntry<AddressBook>>> getAddressBooksById(@RequestParam List<Long> ids) {
+        checkBatchSize(ids, maxBatchSize);
+        return ResponseEntity.ok(addressBookService.getAddressBooksById(ids));
+    }
+
+    /**
+     * Returns the contacts added to and removed from the address book since {@code version}, along with its
+     * current version to sync from next time. Version 0 returns every contact in the address book.
+     */
+    @GetMapping("/{addressBookId}/changes-since")
+    public ResponseEntity<AddressBookChanges> getChangesSince(@PathVariable long addressBookId,
+                                                              @RequestParam long version) {
+        return ResponseEntity.ok(addressBookService.getChangesSince(addressBookId, version));
+    }
+
+    /**
+     * Lists the contacts that are in every one of the address books {@code ids}, one page at a time, keyed on the
+     * last contact id seen like {@link #getAllAddressBooks}.
+     */
+    @GetMapping("/intersection")
+    public ResponseEntity<List<?>> getContactsInAll(@RequestParam List<Long> ids,
+                                                    @RequestParam(defaultValue = "0") long after,
+                                                    @RequestParam(required = false) Integer size) {
+        final int pageSize = pageSize(size);
+        return page(addressBookService.getContactsInAll(ids, after, pageSize), pageSize);
+    }
+
+    /**
+     * Lists the contacts that are in any of the address books {@code ids}, a page at a time.
+     */
+    @GetMapping("/union")
+    public ResponseEntity<List<?>> getContactsInAny(@RequestParam List<Long> ids,
+                                                    @RequestParam(defaultValue = "0") long after,
+                                                    @RequestParam(required = false) Integer size) {
+        final int pageSize = pageSize(size);
+        return page(addressBookService.getContactsInAny(ids, after, pageSize), pageSize);
+    }
+
+    /**
+     * Lists the contacts that are in the first of the address books {@code ids} and in none of the others, a page
+     * at a time.
+     */
+    @GetMapping("/difference")
+    public ResponseEntity<List<?>> getContactsInFirstOnly(@RequestParam List<Long> ids,
+                                                          @RequestParam(defaultValue = "0") long after,
+                                                          @RequestParam(required = false) Integer size) {
+        final int pageSize = pageSize(size);
+        return page(addressBookService.getContactsInFirstOnly(ids, after, pageSize), pageSize);
     }
 
     @PutMapping("/{addressBookId}")
@@ -52,9 +147,52 @@ public class AddressBookController {
         addressBookService.deleteAddressBook(addressBookId);
     }
 
-    @ExceptionHandler(NoSuchElementException.class)
+    private int pageSize(Integer size) {
+        return size == null ? defaultPageSize : Math.max(1, Math.min(size, maxPageSize));
+    }
+
+    static void checkBatchSize(List<Long> ids, int maxBatchSize) {
+        if (ids.size() > maxBatchSize) {
+            throw new IllegalArgumentException("At most " + maxBatchSize + " ids can be asked for at once");
+        }
+    }
+
+    static String eTag(AddressBook addressBook) {
+        return "W/\"" + addressBook.getVersion() + "\"";
+    }
+
+    static <T> ResponseEntity<List<?>> page(List<T> content, int pageSize, Function<T, Long> idExtractor) {
+        return page(content, content.size() == pageSize ? idExtractor.apply(content.get(content.size() - 1)) : null,
+                pageSize);
+    }
+
+    private static ResponseEntity<List<?>> page(ContactPage contactPage, int pageSize) {
+        return page(contactPage.getContacts(), contactPage.getNextAfter(), pageSize);
+    }
+
+    private static ResponseEntity<List<?>> page(List<?> content, Long nextAfter, int pageSize) {
+        final var response = ResponseEntity.ok();
+        if (nextAfter != null) {
+            final var nextPage = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", nextAfter)
+                    .replaceQueryParam("size", pageSize)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + nextPage + ">; rel=\"next\"");
+        }
+        return response.<List<?>>body(content);
+    }
+
+    @ExceptionHandler({NoSuchElementException.class, IllegalArgumentException.class})
     private ResponseEntity<String> handleException(Exception exception, HttpServletResponse resp) {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
     }
 
+    /**
+     * A change that still conflicted with concurrent changes after being retried, see {@code @RetryOnConflict}.
+     */
+    @ExceptionHandler(ConcurrencyFailureException.class)
+    private ResponseEntity<String> handleConflict(Exception exception) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(exception.getMessage());
+    }
+
 }
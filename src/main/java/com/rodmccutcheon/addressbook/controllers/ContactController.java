@@ -1,24 +1,61 @@
 package com.rodmccutcheon.addressbook.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rodmccutcheon.addressbook.dto.BatchEntry;
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.dto.ImportResult;
 import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.services.ContactImportService;
 import com.rodmccutcheon.addressbook.services.ContactService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import static com.rodmccutcheon.addressbook.controllers.AddressBookController.BASE_URL;
 
 @RestController
+@ConditionalOnProperty(name = "address-book.snapshot.read-only", havingValue = "false", matchIfMissing = true)
 public class ContactController {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+
+    private static final int FLUSH_INTERVAL = 256;
+
     private final ContactService contactService;
+    private final ContactImportService contactImportService;
+    private final ObjectMapper objectMapper;
+    private final int defaultSearchLimit;
+    private final int maxSearchLimit;
+    private final int maxBatchSize;
 
-    public ContactController(ContactService contactService) {
+    public ContactController(ContactService contactService, ContactImportService contactImportService,
+                             ObjectMapper objectMapper,
+                             @Value("${address-book.search.default-limit}") int defaultSearchLimit,
+                             @Value("${address-book.search.max-limit}") int maxSearchLimit,
+                             @Value("${address-book.multi-get.max-ids}") int maxBatchSize) {
         this.contactService = contactService;
+        this.contactImportService = contactImportService;
+        this.objectMapper = objectMapper;
+        this.defaultSearchLimit = defaultSearchLimit;
+        this.maxSearchLimit = maxSearchLimit;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @GetMapping(BASE_URL + "/unique-contacts")
@@ -26,20 +63,135 @@ public class ContactController {
         return ResponseEntity.ok(contactService.getUniqueContacts());
     }
 
+    @GetMapping(BASE_URL + "/unique-contacts/count")
+    public ResponseEntity<Long> countUniqueContactsAcrossAllAddressBooks() {
+        return ResponseEntity.ok(contactService.countUniqueContacts());
+    }
+
+    /**
+     * Lists one contact for each cluster of contacts that are the same person, rather than one per contact row.
+     */
+    @GetMapping(value = BASE_URL + "/unique-contacts", params = {"dedupe=true", "stream!=true"})
+    public ResponseEntity<List<ContactView>> getDeduplicatedContactsAcrossAllAddressBooks() {
+        return ResponseEntity.ok(contactService.getUniqueContactClusters());
+    }
+
+    /**
+     * Streams unique contacts straight from the database cursor to the response, either as a JSON array or,
+     * when the client accepts {@code application/x-ndjson}, as one JSON document per line. With {@code dedupe=true}
+     * one contact is streamed for each cluster of contacts that are the same person.
+     */
+    @GetMapping(value = BASE_URL + "/unique-contacts", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamUniqueContactsAcrossAllAddressBooks(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestParam(defaultValue = "false") boolean dedupe) {
+        final boolean ndjson = accept != null && MediaType.parseMediaTypes(accept).stream()
+                .anyMatch(mediaType -> mediaType.equalsTypeAndSubtype(APPLICATION_NDJSON));
+        final StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                if (!ndjson) {
+                    generator.writeStartArray();
+                }
+                final int[] written = {0};
+                final Consumer<ContactView> writer = contact -> {
+                    try {
+                        generator.writeObject(contact);
+                        if (ndjson) {
+                            generator.writeRaw('\n');
+                        }
+                        if (++written[0] % FLUSH_INTERVAL == 1) {
+                            generator.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                };
+                if (dedupe) {
+                    contactService.forEachUniqueContactCluster(writer);
+                } else {
+                    contactService.forEachUniqueContact(writer);
+                }
+                if (!ndjson) {
+                    generator.writeEndArray();
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(ndjson ? APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * Finds contacts in any address book whose name matches the words in {@code q}, allowing for prefixes and
+     * misspellings, or one of whose phone numbers ends with the digits in {@code q}.
+     */
+    @GetMapping(BASE_URL + "/contacts/search")
+    public ResponseEntity<List<ContactView>> searchContacts(@RequestParam String q,
+                                                            @RequestParam(required = false) Integer limit) {
+        final int maxResults = limit == null ? defaultSearchLimit : Math.max(1, Math.min(limit, maxSearchLimit));
+        return ResponseEntity.ok(contactService.searchContacts(q, maxResults));
+    }
+
+    /**
+     * Finds the contacts in any address book with the phone number, in any format, e.g. "0406 747 789" finds a
+     * contact added with "+61406747789".
+     */
+    @GetMapping(value = BASE_URL + "/contacts", params = "phoneNumber")
+    public ResponseEntity<List<ContactView>> findContactsByPhoneNumber(@RequestParam String phoneNumber) {
+        return ResponseEntity.ok(contactService.findContactsByPhoneNumber(phoneNumber));
+    }
+
+    /**
+     * Returns several contacts at once, one entry for each id in {@code ids} in the order asked for, marking ids with
+     * no contact as not found.
+     */
+    @GetMapping(BASE_URL + "/contacts/batch")
+    public ResponseEntity<List<BatchEntry<ContactView>>> getContactsById(@RequestParam List<Long> ids) {
+        AddressBookController.checkBatchSize(ids, maxBatchSize);
+        return ResponseEntity.ok(contactService.getContactsById(ids));
+    }
+
+    /**
+     * Lists the ids of the address books the contact is in.
+     */
+    @GetMapping(BASE_URL + "/contacts/{contactId}/address-books")
+    public ResponseEntity<long[]> getAddressBookIdsOfContact(@PathVariable long contactId) {
+        return ResponseEntity.ok(contactService.getAddressBookIds(contactId));
+    }
+
     @PostMapping(BASE_URL + "/{addressBookId}/contact")
     public ResponseEntity<Contact> addContactToAddressBook(@PathVariable long addressBookId,
                                                            @RequestBody Contact contact) {
         return ResponseEntity.ok(contactService.addContactToAddressBook(addressBookId, contact));
     }
 
+    /**
+     * Bulk-adds new contacts to an address book from a JSON array or newline delimited JSON request body.
+     */
+    @PostMapping(value = BASE_URL + "/{addressBookId}/contact/import",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<ImportResult> importContactsIntoAddressBook(@PathVariable long addressBookId,
+                                                                      InputStream contacts) throws IOException {
+        return ResponseEntity.ok(contactImportService.importContacts(addressBookId, contacts));
+    }
+
     @DeleteMapping(BASE_URL + "/{addressBookId}/contact/{contactId}")
     @ResponseStatus(HttpStatus.OK)
     public void deleteContactFromAddressBook(@PathVariable long addressBookId, @PathVariable long contactId) {
         contactService.deleteContactFromAddressBook(addressBookId, contactId);
     }
 
-    @ExceptionHandler(NoSuchElementException.class)
+    @ExceptionHandler({NoSuchElementException.class, IllegalArgumentException.class})
     private ResponseEntity<String> handleException(Exception exception, HttpServletResponse resp) {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
     }
+
+    /**
+     * A change that still conflicted with concurrent changes after being retried, see {@code @RetryOnConflict}.
+     */
+    @ExceptionHandler(ConcurrencyFailureException.class)
+    private ResponseEntity<String> handleConflict(Exception exception) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(exception.getMessage());
+    }
 }
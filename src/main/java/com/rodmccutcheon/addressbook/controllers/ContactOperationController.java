@@ -0,0 +1,77 @@
+package com.rodmccutcheon.addressbook.controllers;
+
+import com.rodmccutcheon.addressbook.config.RespondAsync;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.ContactOperation;
+import com.rodmccutcheon.addressbook.services.ContactWriteBehindQueue;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.rodmccutcheon.addressbook.controllers.AddressBookController.BASE_URL;
+
+/**
+ * Write-behind variants of the contact changes of {@link ContactController}, chosen by sending
+ * {@code Prefer: respond-async}, on its own or among other preferences. The change is accepted with
+ * {@code 202 Accepted} and a {@code Location} to poll for its outcome. Without write-behind enabled, the header is
+ * ignored and changes are applied before responding.
+ */
+@RestController
+@ConditionalOnExpression(ContactWriteBehindQueue.ENABLED)
+public class ContactOperationController {
+
+    private final ContactWriteBehindQueue contactWriteBehindQueue;
+
+    public ContactOperationController(ContactWriteBehindQueue contactWriteBehindQueue) {
+        this.contactWriteBehindQueue = contactWriteBehindQueue;
+    }
+
+    @PostMapping(BASE_URL + "/{addressBookId}/contact")
+    @RespondAsync
+    public ResponseEntity<ContactOperation> addContactToAddressBook(@PathVariable long addressBookId,
+                                                                    @RequestBody Contact contact) {
+        return accepted(contactWriteBehindQueue.add(addressBookId, contact));
+    }
+
+    @DeleteMapping(BASE_URL + "/{addressBookId}/contact/{contactId}")
+    @RespondAsync
+    public ResponseEntity<ContactOperation> deleteContactFromAddressBook(@PathVariable long addressBookId,
+                                                                         @PathVariable long contactId) {
+        return accepted(contactWriteBehindQueue.remove(addressBookId, contactId));
+    }
+
+    @GetMapping(BASE_URL + "/operations/{operationId}")
+    public ResponseEntity<ContactOperation> getOperation(@PathVariable String operationId) {
+        return ResponseEntity.ok(contactWriteBehindQueue.getOperation(operationId));
+    }
+
+    private static ResponseEntity<ContactOperation> accepted(ContactOperation operation) {
+        return ResponseEntity.accepted()
+                .location(UriComponentsBuilder.fromPath(BASE_URL + "/operations/{operationId}")
+                        .buildAndExpand(operation.getId())
+                        .toUri())
+                .header("Preference-Applied", "respond-async")
+                .body(operation);
+    }
+
+    @ExceptionHandler(NoSuchElementException.class)
+    private ResponseEntity<String> handleException(Exception exception) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
+    }
+
+    /**
+     * The queue is full, so the client should back off, or send the change without {@code Prefer: respond-async}.
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    private ResponseEntity<String> handleQueueFull(Exception exception) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(exception.getMessage());
+    }
+}
@@ -0,0 +1,39 @@
+package com.rodmccutcheon.addressbook.controllers;
+
+import com.rodmccutcheon.addressbook.dto.ShardSize;
+import com.rodmccutcheon.addressbook.services.ShardRebalancingService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management operations on the shards: {@code GET /actuator/shards} reports how much each shard holds, and
+ * {@code POST /actuator/shards} with an {@code addressBookId} and a {@code shard} moves that address book there.
+ */
+@Component
+@Endpoint(id = "shards")
+public class ShardsEndpoint {
+
+    private final ShardRebalancingService shardRebalancingService;
+
+    public ShardsEndpoint(ShardRebalancingService shardRebalancingService) {
+        this.shardRebalancingService = shardRebalancingService;
+    }
+
+    @ReadOperation
+    public List<ShardSize> sizes() {
+        return shardRebalancingService.getShardSizes();
+    }
+
+    @WriteOperation
+    public Map<String, Object> move(long addressBookId, int shard) throws SQLException {
+        return Map.of("addressBookId", addressBookId,
+                "from", shardRebalancingService.moveAddressBook(addressBookId, shard),
+                "to", shard);
+    }
+}
@@ -0,0 +1,76 @@
+package com.rodmccutcheon.addressbook.controllers;
+
+import com.rodmccutcheon.addressbook.dto.AddressBookSummary;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.services.SnapshotService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static com.rodmccutcheon.addressbook.controllers.AddressBookController.BASE_URL;
+
+/**
+ * Serves a few reads from the memory-mapped snapshot when {@code address-book.snapshot.read-only} is set, in place of
+ * {@link AddressBookController} and {@link ContactController}: the pages of address books, a single address book and
+ * the unique contacts, with the same shape as theirs. No request reads the database. Every other endpoint of those
+ * controllers, including batch reads, changes since a version, set operations, search, phone number lookup, counts
+ * and streaming, is not served in this mode, and nothing can be changed, not even through write-behind.
+ */
+@RestController
+@RequestMapping(BASE_URL)
+@ConditionalOnProperty(name = "address-book.snapshot.read-only", havingValue = "true")
+public class SnapshotController {
+
+    private final SnapshotService snapshotService;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+
+    public SnapshotController(SnapshotService snapshotService,
+                              @Value("${address-book.pagination.default-page-size}") int defaultPageSize,
+                              @Value("${address-book.pagination.max-page-size}") int maxPageSize) {
+        this.snapshotService = snapshotService;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<?>> getAllAddressBooks(@RequestParam(defaultValue = "0") long after,
+                                                      @RequestParam(required = false) Integer size,
+                                                      @RequestParam(defaultValue = "true") boolean includeContacts) {
+        final int pageSize = size == null ? defaultPageSize : Math.max(1, Math.min(size, maxPageSize));
+        final var snapshot = snapshotService.getSnapshot();
+        if (includeContacts) {
+            return AddressBookController.page(snapshot.getAddressBooks(after, pageSize), pageSize,
+                    AddressBook::getId);
+        }
+        return AddressBookController.page(snapshot.getAddressBookSummaries(after, pageSize), pageSize,
+                AddressBookSummary::getId);
+    }
+
+    @GetMapping("/{addressBookId}")
+    public ResponseEntity<AddressBook> getAddressBook(@PathVariable long addressBookId) {
+        final var addressBook = snapshotService.getSnapshot().findAddressBook(addressBookId).orElseThrow();
+        return ResponseEntity.ok()
+                .eTag(AddressBookController.eTag(addressBook))
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(addressBook);
+    }
+
+    @GetMapping("/unique-contacts")
+    public ResponseEntity<Set<Contact>> getUniqueContactsAcrossAllAddressBooks() {
+        return ResponseEntity.ok(snapshotService.getSnapshot().getUniqueContacts());
+    }
+
+    @ExceptionHandler(NoSuchElementException.class)
+    private ResponseEntity<String> handleException(Exception exception) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
+    }
+}
@@ -0,0 +1,35 @@
+package com.rodmccutcheon.addressbook.controllers;
+
+import com.rodmccutcheon.addressbook.dto.SnapshotSummary;
+import com.rodmccutcheon.addressbook.services.SnapshotService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Management operations on the address book snapshot: {@code GET /actuator/snapshot} reports what the snapshot holds,
+ * and {@code POST /actuator/snapshot} takes a new one.
+ */
+@Component
+@Endpoint(id = "snapshot")
+public class SnapshotEndpoint {
+
+    private final SnapshotService snapshotService;
+
+    public SnapshotEndpoint(SnapshotService snapshotService) {
+        this.snapshotService = snapshotService;
+    }
+
+    @ReadOperation
+    public SnapshotSummary summary() throws IOException {
+        return snapshotService.getSummary().orElse(null);
+    }
+
+    @WriteOperation
+    public SnapshotSummary save() throws IOException {
+        return snapshotService.save();
+    }
+}
@@ -0,0 +1,35 @@
+package com.rodmccutcheon.addressbook.controllers;
+
+import com.rodmccutcheon.addressbook.dto.UniqueContactsCheck;
+import com.rodmccutcheon.addressbook.services.UniqueContactsViewService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Management operations on the unique contacts view: {@code GET /actuator/uniquecontacts} checks it against the
+ * address book memberships, and {@code POST /actuator/uniquecontacts} rebuilds it from them.
+ */
+@Component
+@Endpoint(id = "uniquecontacts")
+public class UniqueContactsEndpoint {
+
+    private final UniqueContactsViewService uniqueContactsViewService;
+
+    public UniqueContactsEndpoint(UniqueContactsViewService uniqueContactsViewService) {
+        this.uniqueContactsViewService = uniqueContactsViewService;
+    }
+
+    @ReadOperation
+    public UniqueContactsCheck check() {
+        return uniqueContactsViewService.check();
+    }
+
+    @WriteOperation
+    public Map<String, Integer> rebuild() {
+        return Map.of("contacts", uniqueContactsViewService.rebuild());
+    }
+}
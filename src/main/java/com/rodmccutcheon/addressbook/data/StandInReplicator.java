@@ -0,0 +1,58 @@
+package com.rodmccutcheon.addressbook.data;
+
+import com.rodmccutcheon.addressbook.config.ReadReplicas;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stands in for database replication when running locally against H2, which has none: every
+ * {@code address-book.replicas.stand-in-replication-interval} each replica is replaced with a snapshot of the primary.
+ * The replicas therefore lag by up to one interval. Each replica is suspended while it is being replaced, so that
+ * reads go elsewhere rather than finding it empty.
+ */
+@Component
+@ConditionalOnProperty(name = "address-book.replicas.stand-in-replicator", havingValue = "true")
+@Log4j2
+public class StandInReplicator {
+
+    private final DataSource dataSource;
+    private final ReadReplicas readReplicas;
+
+    public StandInReplicator(DataSource dataSource, ReadReplicas readReplicas) {
+        this.dataSource = dataSource;
+        this.readReplicas = readReplicas;
+    }
+
+    @Scheduled(fixedDelayString = "${address-book.replicas.stand-in-replication-interval}")
+    public synchronized void replicate() throws SQLException {
+        final List<String> script = new ArrayList<>();
+        try (var connection = dataSource.getConnection();
+             var statement = connection.createStatement();
+             var rows = statement.executeQuery("script")) {
+            while (rows.next()) {
+                script.add(rows.getString(1));
+            }
+        }
+        final var replicas = readReplicas.getReplicas();
+        for (int replica = 0; replica < replicas.size(); replica++) {
+            readReplicas.suspend(replica);
+            try (var connection = replicas.get(replica).getConnection();
+                 var statement = connection.createStatement()) {
+                statement.execute("drop all objects");
+                for (String sql : script) {
+                    statement.execute(sql);
+                }
+            } finally {
+                readReplicas.resume(replica);
+            }
+        }
+        log.debug("Replicated {} statements to {} replicas", script.size(), readReplicas.getReplicas().size());
+    }
+}
@@ -0,0 +1,18 @@
+package com.rodmccutcheon.addressbook.dto;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * What changed in an address book between the version a client last saw and {@code version}: the contacts added
+ * since, and the ids of the contacts removed since.
+ */
+@Value
+public class AddressBookChanges {
+    Long id;
+    String name;
+    long version;
+    List<ContactView> added;
+    List<Long> removed;
+}
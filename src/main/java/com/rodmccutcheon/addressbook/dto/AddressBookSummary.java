@@ -0,0 +1,13 @@
+package com.rodmccutcheon.addressbook.dto;
+
+import lombok.Value;
+
+/**
+ * Contact-free view of an address book, used when listing address books so the cost of a page
+ * does not grow with the number of contacts in each book.
+ */
+@Value
+public class AddressBookSummary {
+    Long id;
+    String name;
+}
@@ -0,0 +1,32 @@
+package com.rodmccutcheon.addressbook.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Value;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * One entry of a multi-get, in the position its id was asked for in: the item with that id, or no item and
+ * {@code found: false} when there is none.
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchEntry<T> {
+    long id;
+    boolean found;
+    T item;
+
+    /**
+     * One entry for each of {@code ids}, in the same order, taking the item for each id from {@code items}.
+     */
+    public static <T> List<BatchEntry<T>> inOrder(List<Long> ids, Map<Long, T> items) {
+        return ids.stream()
+                .map(id -> {
+                    final var item = items.get(id);
+                    return new BatchEntry<>(id, item != null, item);
+                })
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,18 @@
+package com.rodmccutcheon.addressbook.dto;
+
+import lombok.Value;
+
+/**
+ * An existing contact that shares the match key {@code matchKey} with a contact being saved.
+ */
+@Value
+public class ContactMatchCandidate {
+    Long id;
+    String name;
+    Long clusterId;
+    String matchKey;
+
+    public long getEffectiveClusterId() {
+        return clusterId == null ? id : clusterId;
+    }
+}
@@ -0,0 +1,16 @@
+package com.rodmccutcheon.addressbook.dto;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * A page of contacts, and the id the next page starts after, or null if this is the last page. The page is cut from
+ * the ids in the membership index, so when some of them have since been deleted it holds fewer contacts than asked
+ * for, and the next page starts after the last id cut rather than the last contact returned.
+ */
+@Value
+public class ContactPage {
+    List<ContactView> contacts;
+    Long nextAfter;
+}
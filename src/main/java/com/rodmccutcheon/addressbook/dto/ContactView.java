@@ -0,0 +1,24 @@
+package com.rodmccutcheon.addressbook.dto;
+
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import lombok.Value;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Flat, read-only view of a contact and its phone numbers, without the address books it belongs to.
+ */
+@Value
+public class ContactView {
+    Long id;
+    String name;
+    Map<PhoneNumberType, String> phoneNumbers;
+
+    public static ContactView of(Contact contact) {
+        final var phoneNumbers = new EnumMap<PhoneNumberType, String>(PhoneNumberType.class);
+        phoneNumbers.putAll(contact.getPhoneNumbers());
+        return new ContactView(contact.getId(), contact.getName(), phoneNumbers);
+    }
+}
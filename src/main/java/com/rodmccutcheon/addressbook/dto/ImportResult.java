@@ -0,0 +1,16 @@
+package com.rodmccutcheon.addressbook.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Value;
+
+/**
+ * Outcome of a bulk import: how many records were stored, how many were skipped as invalid, and why the
+ * import stopped early if the payload could not be read to the end.
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportResult {
+    long accepted;
+    long rejected;
+    String error;
+}
@@ -0,0 +1,37 @@
+package com.rodmccutcheon.addressbook.dto;
+
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.ContactOperation;
+import com.rodmccutcheon.addressbook.entities.ContactOperationStatus;
+import com.rodmccutcheon.addressbook.entities.ContactOperationType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A contact change accepted for write-behind, as written to the {@code ContactOperationLog}. An addition carries
+ * the contact to add, and a removal the id of the contact to remove.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueuedContactOperation {
+
+    private String id;
+    private ContactOperationType type;
+    private long addressBookId;
+    private Contact contact;
+    private Long contactId;
+    private Instant acceptedAt;
+
+    public ContactOperation queued() {
+        return new ContactOperation(id, addressBookId, type, ContactOperationStatus.QUEUED, contactId, null,
+                acceptedAt, null);
+    }
+
+    public ContactOperation completed(ContactOperationStatus status, Long contactId, String error) {
+        return new ContactOperation(id, addressBookId, type, status, contactId, error, acceptedAt, Instant.now());
+    }
+}
@@ -0,0 +1,13 @@
+package com.rodmccutcheon.addressbook.dto;
+
+import lombok.Value;
+
+/**
+ * How much one shard holds, used to decide which address books to move between shards.
+ */
+@Value
+public class ShardSize {
+    int shard;
+    long addressBooks;
+    long memberships;
+}
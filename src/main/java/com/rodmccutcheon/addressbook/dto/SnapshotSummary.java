@@ -0,0 +1,18 @@
+package com.rodmccutcheon.addressbook.dto;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * What an address book snapshot holds, and when it was taken.
+ */
+@Value
+public class SnapshotSummary {
+    Instant takenAt;
+    int addressBooks;
+    int contacts;
+    int phoneNumbers;
+    int memberships;
+    long bytes;
+}
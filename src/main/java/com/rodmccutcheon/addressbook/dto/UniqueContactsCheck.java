@@ -0,0 +1,17 @@
+package com.rodmccutcheon.addressbook.dto;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Outcome of comparing the unique contacts view with the address book memberships it summarizes.
+ */
+@Value
+public class UniqueContactsCheck {
+    List<Long> inconsistentContactIds;
+
+    public boolean isConsistent() {
+        return inconsistentContactIds.isEmpty();
+    }
+}
@@ -1,33 +1,63 @@
 package com.rodmccutcheon.addressbook.entities;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
 import lombok.Data;
-import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import java.util.HashSet;
 import java.util.Set;
 
+/**
+ * Address books are equal when they have the same id, and keep the hash code they first returned, like
+ * {@link Contact}.
+ */
 @Entity
 @Data
 @NoArgsConstructor
-@EqualsAndHashCode(exclude = "contacts")
 public class AddressBook {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "address_book_seq")
+    // Allocates ids from the sequence of the shard the address book is saved on
+    @GenericGenerator(name = "address_book_seq",
+            strategy = "com.rodmccutcheon.addressbook.config.ShardSequenceGenerator",
+            parameters = {
+                    @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "address_book_seq"),
+                    @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")
+            })
     private Long id;
 
     @NotNull
     private String name;
 
-    @ManyToMany(fetch = FetchType.EAGER, cascade = CascadeType.ALL, mappedBy = "addressBooks")
+    /**
+     * Incremented on every change to the address book or its contacts, see {@link AddressBookChange}. Only ever
+     * written by {@code AddressBookRepository.incrementVersion}, so that concurrent changes cannot overwrite it.
+     */
+    @Column(nullable = false, updatable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long version;
+
+    @ManyToMany(fetch = FetchType.LAZY, cascade = CascadeType.ALL, mappedBy = "addressBooks")
     @JsonIgnoreProperties("addressBooks")
+    @ToString.Exclude
     private Set<Contact> contacts = new HashSet<>();
 
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient int hashCode;
+
     public AddressBook(String name) {
         this.name = name;
     }
@@ -45,4 +75,20 @@ public class AddressBook {
     public void removeContact(Contact contact) {
         contacts.remove(contact);
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof AddressBook && id != null && id.equals(((AddressBook) o).getId());
+    }
+
+    @Override
+    public int hashCode() {
+        if (hashCode == 0) {
+            hashCode = id != null ? Long.hashCode(id) : System.identityHashCode(this);
+        }
+        return hashCode;
+    }
 }
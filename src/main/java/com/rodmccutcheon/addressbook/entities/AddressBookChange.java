@@ -0,0 +1,45 @@
+package com.rodmccutcheon.addressbook.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * A contact added to or removed from an address book, recorded under the version the change took the address
+ * book to, so that clients can fetch only what changed since the version they last saw.
+ */
+@Entity
+@Table(name = "address_book_change")
+@IdClass(AddressBookChange.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AddressBookChange {
+
+    @Id
+    @Column(name = "address_book_id")
+    private Long addressBookId;
+
+    @Id
+    private Long version;
+
+    @Id
+    @Column(name = "contact_id")
+    private Long contactId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false)
+    private AddressBookChangeType type;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long addressBookId;
+        private Long version;
+        private Long contactId;
+    }
+}
@@ -0,0 +1,5 @@
+package com.rodmccutcheon.addressbook.entities;
+
+public enum AddressBookChangeType {
+    ADDED, REMOVED
+}
@@ -0,0 +1,29 @@
+package com.rodmccutcheon.addressbook.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * The shard an address book was moved to, away from the shard its id was allocated on. Only kept on shard 0, see
+ * {@code ShardRouter}.
+ */
+@Entity
+@Table(name = "address_book_shard")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AddressBookShard {
+
+    @Id
+    @Column(name = "address_book_id")
+    private Long addressBookId;
+
+    @Column(nullable = false)
+    private int shard;
+}
@@ -1,8 +1,16 @@
 package com.rodmccutcheon.addressbook.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
@@ -11,26 +19,82 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Contacts are equal when they have the same id. A contact that has not been saved yet is only equal to itself.
+ * <p>
+ * A contact keeps the hash code it first returned, so one added to a hash set before it was saved can still be found
+ * there once it has its id. Its hash code is then based on its identity rather than its id, so it should not share a
+ * hash set with another instance loaded for the same id.
+ */
 @Entity
+@Table(indexes = @Index(name = "contact_cluster_id_idx", columnList = "cluster_id"))
 @Data
 @NoArgsConstructor
 public class Contact {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "contact_seq")
+    // Allocates ids from the sequence of the shard the contact is saved on
+    @GenericGenerator(name = "contact_seq",
+            strategy = "com.rodmccutcheon.addressbook.config.ShardSequenceGenerator",
+            parameters = {
+                    @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "contact_seq"),
+                    @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")
+            })
     private Long id;
 
     @NotNull
     private String name;
 
-    @ElementCollection(fetch = FetchType.EAGER)
+    /**
+     * Optimistic lock, incremented whenever the contact is added to or removed from an address book, so that of two
+     * concurrent changes to its memberships the second to commit fails and is retried rather than overwriting the
+     * first. Not serialized, as it changes with the contact's other address books, which an address book's ETag does
+     * not cover.
+     */
+    @Version
+    @JsonIgnore
+    private long version;
+
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name = "contact_phone_numbers", joinColumns = @JoinColumn(name = "contact_id"))
     @MapKeyEnumerated(EnumType.STRING)
+    @MapKeyColumn(name = "phone_number_type")
+    @Column(name = "phone_number")
     private Map<PhoneNumberType, String> phoneNumbers = new EnumMap<>(PhoneNumberType.class);
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    /**
+     * Phone numbers normalized to E.164, used to look up contacts by phone number and contacts that may be the same
+     * person.
+     */
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name = "contact_match_keys", joinColumns = @JoinColumn(name = "contact_id"),
+            indexes = @Index(name = "contact_match_keys_match_key_idx", columnList = "match_key"))
+    @Column(name = "match_key")
+    @JsonIgnore
+    private Set<String> matchKeys = new HashSet<>();
+
+    /**
+     * Id of the first contact in this contact's cluster, the contacts judged to be the same person. Null when
+     * this contact is itself the first of its cluster.
+     */
+    @Column(name = "cluster_id")
+    @JsonIgnore
+    private Long clusterId;
+
+    @ManyToMany(fetch = FetchType.LAZY)
+    @JoinTable(name = "contact_address_books",
+            joinColumns = @JoinColumn(name = "contact_id"),
+            inverseJoinColumns = @JoinColumn(name = "address_book_id"))
     @JsonIgnoreProperties("contacts")
+    @ToString.Exclude
     private Set<AddressBook> addressBooks = new HashSet<>();
 
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient int hashCode;
+
     public Contact(String name) {
         this.name = name;
     }
@@ -43,4 +107,21 @@ public class Contact {
     public void addPhoneNumber(PhoneNumberType phoneNumberType, String phoneNumber) {
         phoneNumbers.put(phoneNumberType, phoneNumber);
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        // Compares through getId(), which does not initialize a lazy proxy
+        return o instanceof Contact && id != null && id.equals(((Contact) o).getId());
+    }
+
+    @Override
+    public int hashCode() {
+        if (hashCode == 0) {
+            hashCode = id != null ? Long.hashCode(id) : System.identityHashCode(this);
+        }
+        return hashCode;
+    }
 }
@@ -0,0 +1,63 @@
+package com.rodmccutcheon.addressbook.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * The outcome of a contact added to or removed from an address book in the background, see
+ * {@code ContactWriteBehindQueue}. Operations are only stored once they have been applied or have failed, and are
+ * never updated, so saving one always inserts it.
+ */
+@Entity
+@Table(name = "contact_operation")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ContactOperation implements Persistable<String> {
+
+    public static final int MAX_ERROR_LENGTH = 1000;
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(name = "address_book_id", nullable = false)
+    private Long addressBookId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "operation_type", nullable = false)
+    private ContactOperationType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ContactOperationStatus status;
+
+    /**
+     * The contact removed, or the contact added once it has been saved.
+     */
+    @Column(name = "contact_id")
+    private Long contactId;
+
+    @Column(length = MAX_ERROR_LENGTH)
+    private String error;
+
+    @Column(name = "accepted_at", nullable = false)
+    private Instant acceptedAt;
+
+    @Column(name = "completed_at")
+    private Instant completedAt;
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -0,0 +1,7 @@
+package com.rodmccutcheon.addressbook.entities;
+
+public enum ContactOperationStatus {
+    QUEUED,
+    APPLIED,
+    FAILED
+}
@@ -0,0 +1,6 @@
+package com.rodmccutcheon.addressbook.entities;
+
+public enum ContactOperationType {
+    ADD,
+    REMOVE
+}
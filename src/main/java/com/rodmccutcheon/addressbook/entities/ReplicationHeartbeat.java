@@ -0,0 +1,30 @@
+package com.rodmccutcheon.addressbook.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.Instant;
+
+/**
+ * A single row, rewritten on the primary with the current time every {@code address-book.replicas.heartbeat-interval},
+ * so that how far behind a replica is can be read from the time of the copy it holds, see
+ * {@code ReplicaLagMonitor}.
+ */
+@Entity
+@Table(name = "replication_heartbeat")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicationHeartbeat {
+
+    public static final int ID = 1;
+
+    @Id
+    private Integer id;
+
+    private Instant beat;
+}
@@ -0,0 +1,30 @@
+package com.rodmccutcheon.addressbook.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A row of the unique contacts view: a contact that belongs to at least one address book, and how many address
+ * books it belongs to. Rows are kept up to date as contacts are added to and removed from address books, so the
+ * unique contacts can be listed without scanning the membership table.
+ */
+@Entity
+@Table(name = "unique_contact")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UniqueContact {
+
+    @Id
+    @Column(name = "contact_id")
+    private Long contactId;
+
+    @Column(name = "address_book_count", nullable = false)
+    private int addressBookCount;
+}
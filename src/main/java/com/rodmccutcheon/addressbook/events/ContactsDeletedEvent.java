@@ -0,0 +1,13 @@
+package com.rodmccutcheon.addressbook.events;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Published when contacts are deleted, either on their own or together with an address book.
+ */
+@Value
+public class ContactsDeletedEvent {
+    List<Long> contactIds;
+}
@@ -0,0 +1,14 @@
+package com.rodmccutcheon.addressbook.events;
+
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Published when contacts are created or changed, carrying their state as written in the current transaction.
+ */
+@Value
+public class ContactsSavedEvent {
+    List<ContactView> contacts;
+}
@@ -0,0 +1,15 @@
+package com.rodmccutcheon.addressbook.events;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Published when contacts are added to or removed from an address book.
+ */
+@Value
+public class MembershipsChangedEvent {
+    long addressBookId;
+    List<Long> addedContactIds;
+    List<Long> removedContactIds;
+}
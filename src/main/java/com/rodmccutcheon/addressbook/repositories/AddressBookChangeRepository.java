@@ -0,0 +1,44 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.entities.AddressBookChange;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface AddressBookChangeRepository extends CrudRepository<AddressBookChange, AddressBookChange.Key> {
+
+    /**
+     * Records a change under the address book's current version, which must already have been incremented for it.
+     */
+    @Modifying
+    @Query(value = "insert into address_book_change (address_book_id, version, contact_id, change_type) " +
+            "select id, version, :contactId, :changeType from address_book where id = :addressBookId",
+            nativeQuery = true)
+    void insert(@Param("addressBookId") long addressBookId, @Param("contactId") long contactId,
+                @Param("changeType") String changeType);
+
+    /**
+     * Records the removal of every contact of one address book from each other address book it belongs to, under
+     * those address books' current versions.
+     */
+    @Modifying
+    @Query(value = "insert into address_book_change (address_book_id, version, contact_id, change_type) " +
+            "select ab.id, ab.version, cab.contact_id, 'REMOVED' " +
+            "from contact_address_books cab join address_book ab on ab.id = cab.address_book_id " +
+            "where cab.address_book_id <> :addressBookId and cab.contact_id in " +
+            "(select contact_id from contact_address_books where address_book_id = :addressBookId)",
+            nativeQuery = true)
+    void insertRemovalsFromOtherAddressBooks(@Param("addressBookId") long addressBookId);
+
+    List<AddressBookChange> findByAddressBookIdAndVersionBetweenOrderByVersionAsc(long addressBookId,
+                                                                                 long fromVersion, long toVersion);
+
+    @Modifying
+    @Query("delete from AddressBookChange c where c.addressBookId = :addressBookId")
+    void deleteByAddressBookId(@Param("addressBookId") long addressBookId);
+}
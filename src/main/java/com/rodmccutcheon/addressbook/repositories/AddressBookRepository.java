@@ -1,9 +1,56 @@
 package com.rodmccutcheon.addressbook.repositories;
 
+import com.rodmccutcheon.addressbook.dto.AddressBookSummary;
 import com.rodmccutcheon.addressbook.entities.AddressBook;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface AddressBookRepository extends CrudRepository<AddressBook, Long> {
+
+    @EntityGraph(attributePaths = {"contacts", "contacts.phoneNumbers"})
+    Optional<AddressBook> findWithContactsById(long id);
+
+    @EntityGraph(attributePaths = {"contacts", "contacts.phoneNumbers"})
+    List<AddressBook> findWithContactsByIdInOrderByIdAsc(Collection<Long> ids);
+
+    @Query("select a.id from AddressBook a where a.id > :after order by a.id")
+    List<Long> findIdsAfter(@Param("after") long after, Pageable pageable);
+
+    List<AddressBookSummary> findSummariesByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+    /**
+     * Increments the address book's version, locking its row until the transaction ends so that versions are
+     * taken in the order their changes commit. Returns 0 if the address book does not exist.
+     */
+    @Modifying
+    @Query("update AddressBook a set a.version = a.version + 1 where a.id = :id")
+    int incrementVersion(@Param("id") long id);
+
+    /**
+     * @see #incrementVersion(long)
+     */
+    @Modifying
+    @Query(value = "update address_book set version = version + 1 where id <> :addressBookId and id in " +
+            "(select cab.address_book_id from contact_address_books cab where cab.contact_id in " +
+            "(select contact_id from contact_address_books where address_book_id = :addressBookId))",
+            nativeQuery = true)
+    void incrementVersionsOfAddressBooksSharingContactsWith(@Param("addressBookId") long addressBookId);
+
+    @Query("select a.version from AddressBook a where a.id = :id")
+    long findVersionById(@Param("id") long id);
+
+    long countByIdIn(Collection<Long> ids);
+
+    @Query(value = "select count(*) from contact_address_books", nativeQuery = true)
+    long countMemberships();
 }
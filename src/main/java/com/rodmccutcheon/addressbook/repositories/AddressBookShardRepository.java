@@ -0,0 +1,9 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.entities.AddressBookShard;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AddressBookShardRepository extends CrudRepository<AddressBookShard, Long> {
+}
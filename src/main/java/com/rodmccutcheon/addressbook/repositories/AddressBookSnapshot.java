@@ -0,0 +1,462 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.dto.AddressBookSummary;
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.dto.SnapshotSummary;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.AddressBookChangeType;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Read-only view of a snapshot file written by {@link AddressBookSnapshotWriter}, memory-mapped so that opening it
+ * costs the same however many contacts it holds. Nothing is read until it is asked for, and each read builds only
+ * the objects it returns.
+ * <p>
+ * The file is a header followed by one column per field, each a fixed-width array, so the {@code i}th address book's
+ * version is the {@code i}th long of the address book version column. Address books and contacts are sorted by id,
+ * so they are looked up by binary search. The contacts of each address book, and the phone numbers, match keys,
+ * address books and changes of each contact or address book, are stored together, and found through an offsets
+ * column with one entry more than there are owners. Strings are stored in UTF-8 behind their length, and referred to
+ * by their position. The whole file is limited to 2 GB, the most a single mapping can address.
+ */
+public class AddressBookSnapshot implements Closeable {
+
+    static final int MAGIC = 0x41425331;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 48;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final Layout layout;
+    private final Instant takenAt;
+
+    private AddressBookSnapshot(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (channel.size() < HEADER_BYTES || this.buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an address book snapshot");
+        }
+        if (this.buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported address book snapshot format " + this.buffer.getInt(4));
+        }
+        this.takenAt = Instant.ofEpochMilli(this.buffer.getLong(8));
+        this.layout = new Layout(this.buffer.getInt(16), this.buffer.getInt(20), this.buffer.getInt(24),
+                this.buffer.getInt(28), this.buffer.getInt(32), this.buffer.getInt(36), this.buffer.getInt(40));
+        if (layout.size != channel.size()) {
+            throw new IOException("Address book snapshot is " + channel.size() + " bytes, expected " + layout.size);
+        }
+    }
+
+    public static AddressBookSnapshot open(Path path) throws IOException {
+        final var channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Address book snapshot is larger than 2 GB");
+            }
+            return new AddressBookSnapshot(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Unmapping is left to the garbage collector, as Java cannot unmap a file while it may still be read.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public SnapshotSummary getSummary() {
+        return new SnapshotSummary(takenAt, layout.addressBooks, layout.contacts, layout.phoneNumbers,
+                layout.memberships, layout.size);
+    }
+
+    public Optional<AddressBook> findAddressBook(long addressBookId) {
+        final int index = search(layout.bookId, layout.addressBooks, addressBookId);
+        return index < 0 ? Optional.empty() : Optional.of(addressBook(index));
+    }
+
+    /**
+     * Like {@code AddressBookService.getAddressBooks}, up to {@code size} address books with an id greater than
+     * {@code after}, ordered by id.
+     */
+    public List<AddressBook> getAddressBooks(long after, int size) {
+        final var addressBooks = new ArrayList<AddressBook>();
+        for (int index = firstAfter(after); index < layout.addressBooks && addressBooks.size() < size; index++) {
+            addressBooks.add(addressBook(index));
+        }
+        return addressBooks;
+    }
+
+    public List<AddressBookSummary> getAddressBookSummaries(long after, int size) {
+        final var summaries = new ArrayList<AddressBookSummary>();
+        for (int index = firstAfter(after); index < layout.addressBooks && summaries.size() < size; index++) {
+            summaries.add(new AddressBookSummary(addressBookId(index), addressBookName(index)));
+        }
+        return summaries;
+    }
+
+    /**
+     * Every contact that belongs to at least one address book, with the address books it belongs to.
+     */
+    public Set<Contact> getUniqueContacts() {
+        final var addressBooks = new HashMap<Integer, AddressBook>();
+        final var contacts = new LinkedHashSet<Contact>();
+        for (int index = 0; index < layout.contacts; index++) {
+            if (contactAddressBooksEnd(index) > contactAddressBooksStart(index)) {
+                final var contact = contact(index);
+                for (int member = contactAddressBooksStart(index); member < contactAddressBooksEnd(index); member++) {
+                    contact.getAddressBooks().add(addressBooks.computeIfAbsent(memberAddressBook(member),
+                            this::addressBookWithoutContacts));
+                }
+                contacts.add(contact);
+            }
+        }
+        return contacts;
+    }
+
+    /**
+     * Hands {@code consumer} every contact that belongs to at least one address book, in id order, one at a time.
+     */
+    public void forEachUniqueContact(Consumer<ContactView> consumer) {
+        for (int index = 0; index < layout.contacts; index++) {
+            if (contactAddressBooksEnd(index) > contactAddressBooksStart(index)) {
+                consumer.accept(new ContactView(contactId(index), contactName(index), phoneNumbers(index)));
+            }
+        }
+    }
+
+    /**
+     * The shard that held each address book when the snapshot was taken, by address book id.
+     */
+    public Map<Long, Integer> getAddressBookShards() {
+        final var shards = new HashMap<Long, Integer>();
+        for (int index = 0; index < layout.addressBooks; index++) {
+            shards.put(addressBookId(index), addressBookShard(index));
+        }
+        return shards;
+    }
+
+    /**
+     * The highest address book id below {@code bound}, if any.
+     */
+    public OptionalLong lastAddressBookIdBelow(long bound) {
+        final int index = firstAtOrAfter(layout.bookId, layout.addressBooks, bound) - 1;
+        return index < 0 ? OptionalLong.empty() : OptionalLong.of(addressBookId(index));
+    }
+
+    /**
+     * The highest contact id below {@code bound}, if any.
+     */
+    public OptionalLong lastContactIdBelow(long bound) {
+        final int index = firstAtOrAfter(layout.contactId, layout.contacts, bound) - 1;
+        return index < 0 ? OptionalLong.empty() : OptionalLong.of(contactId(index));
+    }
+
+    int addressBookCount() {
+        return layout.addressBooks;
+    }
+
+    long addressBookId(int index) {
+        return buffer.getLong(layout.bookId + 8 * index);
+    }
+
+    long addressBookVersion(int index) {
+        return buffer.getLong(layout.bookVersion + 8 * index);
+    }
+
+    String addressBookName(int index) {
+        return string(buffer.getInt(layout.bookName + 4 * index));
+    }
+
+    int addressBookShard(int index) {
+        return buffer.getInt(layout.bookShard + 4 * index);
+    }
+
+    int addressBookContactsStart(int index) {
+        return buffer.getInt(layout.bookContacts + 4 * index);
+    }
+
+    int addressBookContactsEnd(int index) {
+        return buffer.getInt(layout.bookContacts + 4 * (index + 1));
+    }
+
+    int memberContact(int member) {
+        return buffer.getInt(layout.memberContact + 4 * member);
+    }
+
+    int addressBookChangesStart(int index) {
+        return buffer.getInt(layout.bookChanges + 4 * index);
+    }
+
+    int addressBookChangesEnd(int index) {
+        return buffer.getInt(layout.bookChanges + 4 * (index + 1));
+    }
+
+    long changeVersion(int change) {
+        return buffer.getLong(layout.changeVersion + 8 * change);
+    }
+
+    long changeContactId(int change) {
+        return buffer.getLong(layout.changeContact + 8 * change);
+    }
+
+    AddressBookChangeType changeType(int change) {
+        return AddressBookChangeType.values()[buffer.get(layout.changeType + change)];
+    }
+
+    int contactCount() {
+        return layout.contacts;
+    }
+
+    long contactId(int index) {
+        return buffer.getLong(layout.contactId + 8 * index);
+    }
+
+    long contactVersion(int index) {
+        return buffer.getLong(layout.contactVersion + 8 * index);
+    }
+
+    /**
+     * The id of the first contact in the contact's cluster, or 0 when it is the first itself.
+     */
+    long contactClusterId(int index) {
+        return buffer.getLong(layout.contactCluster + 8 * index);
+    }
+
+    String contactName(int index) {
+        return string(buffer.getInt(layout.contactName + 4 * index));
+    }
+
+    int contactPhoneNumbersStart(int index) {
+        return buffer.getInt(layout.contactPhones + 4 * index);
+    }
+
+    int contactPhoneNumbersEnd(int index) {
+        return buffer.getInt(layout.contactPhones + 4 * (index + 1));
+    }
+
+    PhoneNumberType phoneNumberType(int phoneNumber) {
+        return PhoneNumberType.values()[buffer.get(layout.phoneType + phoneNumber)];
+    }
+
+    String phoneNumber(int phoneNumber) {
+        return string(buffer.getInt(layout.phoneNumber + 4 * phoneNumber));
+    }
+
+    int contactMatchKeysStart(int index) {
+        return buffer.getInt(layout.contactMatchKeys + 4 * index);
+    }
+
+    int contactMatchKeysEnd(int index) {
+        return buffer.getInt(layout.contactMatchKeys + 4 * (index + 1));
+    }
+
+    String matchKey(int matchKey) {
+        return string(buffer.getInt(layout.matchKey + 4 * matchKey));
+    }
+
+    int contactAddressBooksStart(int index) {
+        return buffer.getInt(layout.contactBooks + 4 * index);
+    }
+
+    int contactAddressBooksEnd(int index) {
+        return buffer.getInt(layout.contactBooks + 4 * (index + 1));
+    }
+
+    int memberAddressBook(int member) {
+        return buffer.getInt(layout.memberBook + 4 * member);
+    }
+
+    /**
+     * The address book with its contacts, each with its phone numbers and the address books it belongs to, as
+     * {@code AddressBookRepository.findWithContactsById} would load it.
+     */
+    private AddressBook addressBook(int index) {
+        final var addressBooks = new HashMap<Integer, AddressBook>();
+        final var addressBook = addressBookWithoutContacts(index);
+        addressBooks.put(index, addressBook);
+        for (int member = addressBookContactsStart(index); member < addressBookContactsEnd(index); member++) {
+            final int contactIndex = memberContact(member);
+            final var contact = contact(contactIndex);
+            for (int other = contactAddressBooksStart(contactIndex); other < contactAddressBooksEnd(contactIndex);
+                 other++) {
+                contact.getAddressBooks().add(addressBooks.computeIfAbsent(memberAddressBook(other),
+                        this::addressBookWithoutContacts));
+            }
+            addressBook.getContacts().add(contact);
+        }
+        return addressBook;
+    }
+
+    private AddressBook addressBookWithoutContacts(int index) {
+        final var addressBook = new AddressBook(addressBookId(index), addressBookName(index));
+        addressBook.setVersion(addressBookVersion(index));
+        return addressBook;
+    }
+
+    private Contact contact(int index) {
+        final var contact = new Contact(contactId(index), contactName(index));
+        contact.setVersion(contactVersion(index));
+        contact.setPhoneNumbers(phoneNumbers(index));
+        return contact;
+    }
+
+    private EnumMap<PhoneNumberType, String> phoneNumbers(int index) {
+        final var phoneNumbers = new EnumMap<PhoneNumberType, String>(PhoneNumberType.class);
+        for (int phoneNumber = contactPhoneNumbersStart(index); phoneNumber < contactPhoneNumbersEnd(index);
+             phoneNumber++) {
+            phoneNumbers.put(phoneNumberType(phoneNumber), phoneNumber(phoneNumber));
+        }
+        return phoneNumbers;
+    }
+
+    private int firstAfter(long after) {
+        final int index = search(layout.bookId, layout.addressBooks, after);
+        return index < 0 ? -(index + 1) : index + 1;
+    }
+
+    private int firstAtOrAfter(int column, int length, long key) {
+        final int index = search(column, length, key);
+        return index < 0 ? -(index + 1) : index;
+    }
+
+    /**
+     * Binary search of a sorted long column, returning like {@link java.util.Arrays#binarySearch(long[], long)}.
+     */
+    private int search(int column, int length, long key) {
+        int low = 0;
+        int high = length - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final long value = buffer.getLong(column + 8 * middle);
+            if (value < key) {
+                low = middle + 1;
+            } else if (value > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private String string(int position) {
+        final int at = layout.strings + position;
+        final int length = buffer.getInt(at);
+        if (length < 0) {
+            return null;
+        }
+        final var bytes = new byte[length];
+        buffer.get(at + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Where each column starts, worked out from the number of rows in the snapshot. Every column starts on a
+     * multiple of 8 bytes.
+     */
+    static final class Layout {
+
+        final int addressBooks;
+        final int contacts;
+        final int phoneNumbers;
+        final int matchKeys;
+        final int memberships;
+        final int changes;
+        final int stringBytes;
+
+        final int bookId;
+        final int bookVersion;
+        final int bookName;
+        final int bookShard;
+        final int bookContacts;
+        final int bookChanges;
+        final int memberContact;
+        final int contactId;
+        final int contactVersion;
+        final int contactCluster;
+        final int contactName;
+        final int contactPhones;
+        final int contactMatchKeys;
+        final int contactBooks;
+        final int memberBook;
+        final int phoneType;
+        final int phoneNumber;
+        final int matchKey;
+        final int changeVersion;
+        final int changeContact;
+        final int changeType;
+        final int strings;
+        final long size;
+
+        private long end = HEADER_BYTES;
+
+        Layout(int addressBooks, int contacts, int phoneNumbers, int matchKeys, int memberships, int changes,
+               int stringBytes) {
+            this.addressBooks = addressBooks;
+            this.contacts = contacts;
+            this.phoneNumbers = phoneNumbers;
+            this.matchKeys = matchKeys;
+            this.memberships = memberships;
+            this.changes = changes;
+            this.stringBytes = stringBytes;
+            this.bookId = column(8, addressBooks);
+            this.bookVersion = column(8, addressBooks);
+            this.bookName = column(4, addressBooks);
+            this.bookShard = column(4, addressBooks);
+            this.bookContacts = column(4, addressBooks + 1L);
+            this.bookChanges = column(4, addressBooks + 1L);
+            this.memberContact = column(4, memberships);
+            this.contactId = column(8, contacts);
+            this.contactVersion = column(8, contacts);
+            this.contactCluster = column(8, contacts);
+            this.contactName = column(4, contacts);
+            this.contactPhones = column(4, contacts + 1L);
+            this.contactMatchKeys = column(4, contacts + 1L);
+            this.contactBooks = column(4, contacts + 1L);
+            this.memberBook = column(4, memberships);
+            this.phoneType = column(1, phoneNumbers);
+            this.phoneNumber = column(4, phoneNumbers);
+            this.matchKey = column(4, matchKeys);
+            this.changeVersion = column(8, changes);
+            this.changeContact = column(8, changes);
+            this.changeType = column(1, changes);
+            this.strings = column(1, stringBytes);
+            this.size = end;
+        }
+
+        private int column(int width, long length) {
+            final long start = (end + 7) & ~7L;
+            end = start + width * length;
+            if (end > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Address book snapshot would be larger than 2 GB");
+            }
+            return (int) start;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.dto.SnapshotSummary;
+import com.rodmccutcheon.addressbook.entities.AddressBookChangeType;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Collects the rows of a snapshot, in any order and from any number of shards, and writes them out in the format
+ * read by {@link AddressBookSnapshot}. Rows referring to an address book or contact that was not added are left out.
+ * Not thread safe.
+ */
+public class AddressBookSnapshotWriter {
+
+    private final Instant takenAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+    private final Longs addressBookIds = new Longs();
+    private final Longs addressBookVersions = new Longs();
+    private final List<String> addressBookNames = new ArrayList<>();
+    private final Ints addressBookShards = new Ints();
+
+    private final Longs contactIds = new Longs();
+    private final Longs contactVersions = new Longs();
+    private final Longs contactClusterIds = new Longs();
+    private final List<String> contactNames = new ArrayList<>();
+
+    private final Longs phoneNumberContactIds = new Longs();
+    private final Ints phoneNumberTypes = new Ints();
+    private final List<String> phoneNumbers = new ArrayList<>();
+
+    private final Longs matchKeyContactIds = new Longs();
+    private final List<String> matchKeys = new ArrayList<>();
+
+    private final Longs membershipAddressBookIds = new Longs();
+    private final Longs membershipContactIds = new Longs();
+
+    private final Longs changeAddressBookIds = new Longs();
+    private final Longs changeVersions = new Longs();
+    private final Longs changeContactIds = new Longs();
+    private final Ints changeTypes = new Ints();
+
+    public void addAddressBook(long id, String name, long version, int shard) {
+        addressBookIds.add(id);
+        addressBookNames.add(name);
+        addressBookVersions.add(version);
+        addressBookShards.add(shard);
+    }
+
+    public void addContact(long id, String name, long version, Long clusterId) {
+        contactIds.add(id);
+        contactNames.add(name);
+        contactVersions.add(version);
+        contactClusterIds.add(clusterId == null ? 0 : clusterId);
+    }
+
+    public void addPhoneNumber(long contactId, PhoneNumberType type, String phoneNumber) {
+        phoneNumberContactIds.add(contactId);
+        phoneNumberTypes.add(type.ordinal());
+        phoneNumbers.add(phoneNumber);
+    }
+
+    public void addMatchKey(long contactId, String matchKey) {
+        matchKeyContactIds.add(contactId);
+        matchKeys.add(matchKey);
+    }
+
+    /**
+     * Memberships of each address book are kept in the order they are added, as are those of each contact.
+     */
+    public void addMembership(long addressBookId, long contactId) {
+        membershipAddressBookIds.add(addressBookId);
+        membershipContactIds.add(contactId);
+    }
+
+    /**
+     * Changes to each address book are kept in the order they are added, which should be version order.
+     */
+    public void addChange(long addressBookId, long version, long contactId, AddressBookChangeType type) {
+        changeAddressBookIds.add(addressBookId);
+        changeVersions.add(version);
+        changeContactIds.add(contactId);
+        changeTypes.add(type.ordinal());
+    }
+
+    /**
+     * Writes the snapshot to a temporary file beside {@code path}, then moves it over {@code path}, so that a
+     * reader never sees a partly written snapshot.
+     */
+    public SnapshotSummary write(Path path) throws IOException {
+        final int[] addressBookOrder = sortedOrder(addressBookIds);
+        final long[] sortedAddressBookIds = addressBookIds.inOrder(addressBookOrder);
+        final int[] contactOrder = sortedOrder(contactIds);
+        final long[] sortedContactIds = contactIds.inOrder(contactOrder);
+
+        final int[] membershipAddressBooks = indexes(membershipAddressBookIds, sortedAddressBookIds);
+        final int[] membershipContacts = indexes(membershipContactIds, sortedContactIds);
+        for (int membership = 0; membership < membershipContacts.length; membership++) {
+            if (membershipAddressBooks[membership] < 0 || membershipContacts[membership] < 0) {
+                membershipAddressBooks[membership] = -1;
+                membershipContacts[membership] = -1;
+            }
+        }
+        final int[] addressBookContacts = new int[sortedAddressBookIds.length + 1];
+        final int[] addressBookMemberships = group(membershipAddressBooks, addressBookContacts);
+        final int[] contactAddressBooks = new int[sortedContactIds.length + 1];
+        final int[] contactMemberships = group(membershipContacts, contactAddressBooks);
+        final int[] contactPhoneNumbers = new int[sortedContactIds.length + 1];
+        final int[] phoneNumberOrder = group(indexes(phoneNumberContactIds, sortedContactIds), contactPhoneNumbers);
+        final int[] contactMatchKeys = new int[sortedContactIds.length + 1];
+        final int[] matchKeyOrder = group(indexes(matchKeyContactIds, sortedContactIds), contactMatchKeys);
+        final int[] addressBookChanges = new int[sortedAddressBookIds.length + 1];
+        final int[] changeOrder = group(indexes(changeAddressBookIds, sortedAddressBookIds), addressBookChanges);
+
+        final var strings = new Strings();
+        final int[] addressBookNamePositions = strings.addAll(addressBookNames, addressBookOrder);
+        final int[] contactNamePositions = strings.addAll(contactNames, contactOrder);
+        final int[] phoneNumberPositions = strings.addAll(phoneNumbers, phoneNumberOrder);
+        final int[] matchKeyPositions = strings.addAll(matchKeys, matchKeyOrder);
+
+        final var layout = new AddressBookSnapshot.Layout(sortedAddressBookIds.length, sortedContactIds.length,
+                phoneNumberOrder.length, matchKeyOrder.length, addressBookMemberships.length, changeOrder.length,
+                strings.size);
+        final var parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final var temporary = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (var channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, layout.size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(0, AddressBookSnapshot.MAGIC)
+                        .putInt(4, AddressBookSnapshot.FORMAT_VERSION)
+                        .putLong(8, takenAt.toEpochMilli())
+                        .putInt(16, layout.addressBooks)
+                        .putInt(20, layout.contacts)
+                        .putInt(24, layout.phoneNumbers)
+                        .putInt(28, layout.matchKeys)
+                        .putInt(32, layout.memberships)
+                        .putInt(36, layout.changes)
+                        .putInt(40, layout.stringBytes);
+                for (int index = 0; index < layout.addressBooks; index++) {
+                    final int row = addressBookOrder[index];
+                    buffer.putLong(layout.bookId + 8 * index, sortedAddressBookIds[index])
+                            .putLong(layout.bookVersion + 8 * index, addressBookVersions.get(row))
+                            .putInt(layout.bookName + 4 * index, addressBookNamePositions[index])
+                            .putInt(layout.bookShard + 4 * index, addressBookShards.get(row));
+                }
+                putInts(buffer, layout.bookContacts, addressBookContacts);
+                putInts(buffer, layout.bookChanges, addressBookChanges);
+                for (int member = 0; member < layout.memberships; member++) {
+                    buffer.putInt(layout.memberContact + 4 * member,
+                            membershipContacts[addressBookMemberships[member]]);
+                    buffer.putInt(layout.memberBook + 4 * member,
+                            membershipAddressBooks[contactMemberships[member]]);
+                }
+                for (int index = 0; index < layout.contacts; index++) {
+                    final int row = contactOrder[index];
+                    buffer.putLong(layout.contactId + 8 * index, sortedContactIds[index])
+                            .putLong(layout.contactVersion + 8 * index, contactVersions.get(row))
+                            .putLong(layout.contactCluster + 8 * index, contactClusterIds.get(row))
+                            .putInt(layout.contactName + 4 * index, contactNamePositions[index]);
+                }
+                putInts(buffer, layout.contactPhones, contactPhoneNumbers);
+                putInts(buffer, layout.contactMatchKeys, contactMatchKeys);
+                putInts(buffer, layout.contactBooks, contactAddressBooks);
+                for (int index = 0; index < layout.phoneNumbers; index++) {
+                    buffer.put(layout.phoneType + index, (byte) phoneNumberTypes.get(phoneNumberOrder[index]))
+                            .putInt(layout.phoneNumber + 4 * index, phoneNumberPositions[index]);
+                }
+                putInts(buffer, layout.matchKey, matchKeyPositions);
+                for (int index = 0; index < layout.changes; index++) {
+                    final int row = changeOrder[index];
+                    buffer.putLong(layout.changeVersion + 8 * index, changeVersions.get(row))
+                            .putLong(layout.changeContact + 8 * index, changeContactIds.get(row))
+                            .put(layout.changeType + index, (byte) changeTypes.get(row));
+                }
+                buffer.put(layout.strings, strings.bytes, 0, strings.size);
+                buffer.force();
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        return new SnapshotSummary(takenAt, layout.addressBooks, layout.contacts, layout.phoneNumbers,
+                layout.memberships, layout.size);
+    }
+
+    private static void putInts(ByteBuffer buffer, int column, int[] values) {
+        for (int index = 0; index < values.length; index++) {
+            buffer.putInt(column + 4 * index, values[index]);
+        }
+    }
+
+    /**
+     * The rows of {@code ids} in id order.
+     */
+    private static int[] sortedOrder(Longs ids) {
+        return IntStream.range(0, ids.size).boxed()
+                .sorted(Comparator.comparingLong(ids::get))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * The position of each of {@code ids} in {@code sortedIds}, or -1 where it is missing.
+     */
+    private static int[] indexes(Longs ids, long[] sortedIds) {
+        final int[] indexes = new int[ids.size];
+        for (int row = 0; row < ids.size; row++) {
+            indexes[row] = Math.max(-1, Arrays.binarySearch(sortedIds, ids.get(row)));
+        }
+        return indexes;
+    }
+
+    /**
+     * Orders the rows by the owner each belongs to, keeping the order of each owner's rows, and fills in where each
+     * owner's rows start. Rows without an owner, marked -1, are left out.
+     */
+    private static int[] group(int[] owners, int[] offsets) {
+        for (int owner : owners) {
+            if (owner >= 0) {
+                offsets[owner + 1]++;
+            }
+        }
+        for (int owner = 1; owner < offsets.length; owner++) {
+            offsets[owner] += offsets[owner - 1];
+        }
+        final int[] next = Arrays.copyOf(offsets, offsets.length);
+        final int[] order = new int[offsets[offsets.length - 1]];
+        for (int row = 0; row < owners.length; row++) {
+            if (owners[row] >= 0) {
+                order[next[owners[row]]++] = row;
+            }
+        }
+        return order;
+    }
+
+    private static final class Longs {
+
+        private long[] values = new long[1024];
+        private int size;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private long get(int index) {
+            return values[index];
+        }
+
+        private long[] inOrder(int[] order) {
+            final long[] ordered = new long[order.length];
+            for (int index = 0; index < order.length; index++) {
+                ordered[index] = values[order[index]];
+            }
+            return ordered;
+        }
+    }
+
+    private static final class Ints {
+
+        private int[] values = new int[1024];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private int get(int index) {
+            return values[index];
+        }
+    }
+
+    /**
+     * Each string in UTF-8 behind its length in bytes, or -1 for null, one after another.
+     */
+    private static final class Strings {
+
+        private byte[] bytes = new byte[1 << 16];
+        private int size;
+
+        private int[] addAll(List<String> strings, int[] order) {
+            final int[] positions = new int[order.length];
+            for (int index = 0; index < order.length; index++) {
+                positions[index] = add(strings.get(order[index]));
+            }
+            return positions;
+        }
+
+        private int add(String string) {
+            final var encoded = string == null ? new byte[0] : string.getBytes(StandardCharsets.UTF_8);
+            final int length = string == null ? -1 : encoded.length;
+            final long end = (long) size + 4 + encoded.length;
+            if (end > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Address book snapshot would be larger than 2 GB");
+            }
+            if (end > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE, Math.max(end, 2L * bytes.length)));
+            }
+            final int position = size;
+            bytes[size] = (byte) length;
+            bytes[size + 1] = (byte) (length >>> 8);
+            bytes[size + 2] = (byte) (length >>> 16);
+            bytes[size + 3] = (byte) (length >>> 24);
+            System.arraycopy(encoded, 0, bytes, size + 4, encoded.length);
+            size = (int) end;
+            return position;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import java.util.Arrays;
+
+/**
+ * Ids of the address books holding each contact, for {@link MembershipIndex}. Held in an open-addressing hash table
+ * keyed on the primitive contact id, so no object is allocated for a contact in a single address book: it costs its
+ * id, its address book's id and an empty reference. Only contacts in several address books get an array of their
+ * address book ids, kept in ascending order.
+ * <p>
+ * Not thread-safe, and no check is made that a membership added is new or one removed exists; the index guards both.
+ */
+final class ContactAddressBooks {
+
+    // Contact ids are never negative, so this marks a slot as free
+    private static final long FREE = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] contactIds;
+    private long[] addressBookIds;
+    private long[][] sharedAddressBookIds;
+    private int size;
+    private int maxSize;
+
+    ContactAddressBooks() {
+        this(0);
+    }
+
+    /**
+     * Sized to hold {@code expectedContacts} contacts without growing.
+     */
+    ContactAddressBooks(long expectedContacts) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 1 << 30 && capacity * 2L / 3 < expectedContacts) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Contacts in any address book.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Ids of the address books holding the contact, in ascending order, as an array the caller is free to change.
+     */
+    long[] get(long contactId) {
+        final int slot = indexOf(contactId);
+        if (contactIds[slot] == FREE) {
+            return new long[0];
+        }
+        final var shared = sharedAddressBookIds[slot];
+        return shared == null ? new long[]{addressBookIds[slot]} : shared.clone();
+    }
+
+    int count(long contactId) {
+        final int slot = indexOf(contactId);
+        if (contactIds[slot] == FREE) {
+            return 0;
+        }
+        final var shared = sharedAddressBookIds[slot];
+        return shared == null ? 1 : shared.length;
+    }
+
+    void add(long contactId, long addressBookId) {
+        final int slot = indexOf(contactId);
+        if (contactIds[slot] == FREE) {
+            contactIds[slot] = contactId;
+            addressBookIds[slot] = addressBookId;
+            if (++size > maxSize) {
+                allocate(contactIds.length << 1);
+            }
+            return;
+        }
+        final var shared = sharedAddressBookIds[slot];
+        final var current = shared == null ? new long[]{addressBookIds[slot]} : shared;
+        final int at = -(Arrays.binarySearch(current, addressBookId) + 1);
+        final var grown = new long[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, at);
+        grown[at] = addressBookId;
+        System.arraycopy(current, at, grown, at + 1, current.length - at);
+        sharedAddressBookIds[slot] = grown;
+    }
+
+    void remove(long contactId, long addressBookId) {
+        final int slot = indexOf(contactId);
+        if (contactIds[slot] == FREE) {
+            return;
+        }
+        final var shared = sharedAddressBookIds[slot];
+        if (shared == null) {
+            delete(slot);
+            return;
+        }
+        final int at = Arrays.binarySearch(shared, addressBookId);
+        if (at < 0) {
+            return;
+        }
+        if (shared.length == 2) {
+            addressBookIds[slot] = shared[1 - at];
+            sharedAddressBookIds[slot] = null;
+            return;
+        }
+        final var shrunk = new long[shared.length - 1];
+        System.arraycopy(shared, 0, shrunk, 0, at);
+        System.arraycopy(shared, at + 1, shrunk, at, shrunk.length - at);
+        sharedAddressBookIds[slot] = shrunk;
+    }
+
+    /**
+     * The slot holding the contact, or the free slot where it would be added.
+     */
+    private int indexOf(long contactId) {
+        final int mask = contactIds.length - 1;
+        int slot = home(contactId, mask);
+        while (contactIds[slot] != FREE && contactIds[slot] != contactId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Frees the slot, moving back any later contacts in the same run that would otherwise no longer be found from
+     * their home slot.
+     */
+    private void delete(int slot) {
+        final int mask = contactIds.length - 1;
+        int free = slot;
+        for (int next = (slot + 1) & mask; contactIds[next] != FREE; next = (next + 1) & mask) {
+            final int home = home(contactIds[next], mask);
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                contactIds[free] = contactIds[next];
+                addressBookIds[free] = addressBookIds[next];
+                sharedAddressBookIds[free] = sharedAddressBookIds[next];
+                free = next;
+            }
+        }
+        contactIds[free] = FREE;
+        sharedAddressBookIds[free] = null;
+        size--;
+    }
+
+    private void allocate(int capacity) {
+        final var oldContactIds = contactIds;
+        final var oldAddressBookIds = addressBookIds;
+        final var oldSharedAddressBookIds = sharedAddressBookIds;
+        contactIds = new long[capacity];
+        Arrays.fill(contactIds, FREE);
+        addressBookIds = new long[capacity];
+        sharedAddressBookIds = new long[capacity][];
+        maxSize = (int) (capacity * 2L / 3);
+        if (oldContactIds == null) {
+            return;
+        }
+        for (int oldSlot = 0; oldSlot < oldContactIds.length; oldSlot++) {
+            if (oldContactIds[oldSlot] != FREE) {
+                final int slot = indexOf(oldContactIds[oldSlot]);
+                contactIds[slot] = oldContactIds[oldSlot];
+                addressBookIds[slot] = oldAddressBookIds[oldSlot];
+                sharedAddressBookIds[slot] = oldSharedAddressBookIds[oldSlot];
+            }
+        }
+    }
+
+    private static int home(long contactId, int mask) {
+        final long hash = contactId * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
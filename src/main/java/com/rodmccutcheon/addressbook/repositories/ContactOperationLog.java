@@ -0,0 +1,192 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rodmccutcheon.addressbook.dto.QueuedContactOperation;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Append-only log of the contact operations accepted for write-behind, one JSON document per line. Every append
+ * is forced to disk before it returns, so an accepted operation survives a crash. A line left incomplete by a crash
+ * is cut off when the log is opened.
+ * <p>
+ * The log is split into segment files of about {@code segmentBytes} each. Operations stay pending from when they are
+ * appended, or read back at startup, until they are completed, and a segment is deleted once every operation in it
+ * has been completed and a newer segment is being appended to. The segment being appended to is emptied once no
+ * operation at all is pending. The log therefore holds little more than the operations still pending, however long
+ * operations keep arriving.
+ */
+@Log4j2
+public class ContactOperationLog implements Closeable {
+
+    private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("contact-operations-(\\d+)\\.log");
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final long segmentBytes;
+    private final Map<String, Long> pendingSegments = new HashMap<>();
+    private final Map<Long, Integer> pendingCounts = new HashMap<>();
+    private final TreeSet<Long> segments;
+    private long segment;
+    private FileChannel channel;
+
+    public ContactOperationLog(Path directory, ObjectMapper objectMapper, long segmentBytes) throws IOException {
+        Files.createDirectories(directory);
+        this.objectMapper = objectMapper;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segments = listSegments();
+        this.segment = segments.isEmpty() ? 0 : segments.last();
+        this.channel = open(segment);
+        final long end = endOfLastLine();
+        if (end < channel.size()) {
+            log.warn("Cutting off an incomplete operation at the end of {}", segmentPath(segment));
+            channel.truncate(end);
+        }
+        channel.position(end);
+    }
+
+    static String segmentFileName(long segment) {
+        return String.format("contact-operations-%019d.log", segment);
+    }
+
+    /**
+     * Appends the operation, which is pending until it is completed, and starts a new segment if this one is full.
+     */
+    public synchronized void append(QueuedContactOperation operation) throws IOException {
+        final var line = objectMapper.writeValueAsBytes(operation);
+        final var buffer = ByteBuffer.allocate(line.length + 1).put(line).put((byte) '\n').flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        addPending(operation.getId(), segment);
+        if (channel.size() >= segmentBytes) {
+            roll();
+        }
+    }
+
+    /**
+     * Returns the operations in the order they were appended, and marks them all as pending. Meant to be called when
+     * the log is opened, before any operation is completed.
+     */
+    public synchronized List<QueuedContactOperation> readAll() throws IOException {
+        final var operations = new ArrayList<QueuedContactOperation>();
+        for (long readSegment : segments) {
+            try (var lines = Files.newBufferedReader(segmentPath(readSegment), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        final var operation = objectMapper.readValue(line, QueuedContactOperation.class);
+                        if (!pendingSegments.containsKey(operation.getId())) {
+                            addPending(operation.getId(), readSegment);
+                        }
+                        operations.add(operation);
+                    }
+                }
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * Marks the operations as completed, deleting every earlier segment left with no pending operation, and emptying
+     * the current one if no operation is pending.
+     */
+    public synchronized void complete(Collection<String> operationIds) throws IOException {
+        for (String operationId : operationIds) {
+            final var completedSegment = pendingSegments.remove(operationId);
+            if (completedSegment != null) {
+                pendingCounts.merge(completedSegment, -1, (count, one) -> count == 1 ? null : count - 1);
+            }
+        }
+        deleteCompletedSegments();
+        if (pendingSegments.isEmpty() && channel.size() > 0) {
+            channel.truncate(0);
+            channel.force(false);
+        }
+    }
+
+    /**
+     * The number of segment files, including the one being appended to.
+     */
+    public synchronized int countSegments() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void addPending(String operationId, long pendingSegment) {
+        pendingSegments.put(operationId, pendingSegment);
+        pendingCounts.merge(pendingSegment, 1, Integer::sum);
+    }
+
+    private void roll() throws IOException {
+        channel.close();
+        segment++;
+        channel = open(segment);
+        deleteCompletedSegments();
+    }
+
+    private void deleteCompletedSegments() throws IOException {
+        final var completedSegments = segments.headSet(segment).iterator();
+        while (completedSegments.hasNext()) {
+            final long completedSegment = completedSegments.next();
+            if (!pendingCounts.containsKey(completedSegment)) {
+                Files.delete(segmentPath(completedSegment));
+                completedSegments.remove();
+            }
+        }
+    }
+
+    private TreeSet<Long> listSegments() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.map(file -> SEGMENT_FILE_NAME.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+
+    private Path segmentPath(long pathSegment) {
+        return directory.resolve(segmentFileName(pathSegment));
+    }
+
+    private FileChannel open(long openSegment) throws IOException {
+        segments.add(openSegment);
+        return FileChannel.open(segmentPath(openSegment), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private long endOfLastLine() throws IOException {
+        final var buffer = ByteBuffer.allocate(1);
+        for (long position = channel.size() - 1; position >= 0; position--) {
+            buffer.clear();
+            channel.read(buffer, position);
+            if (buffer.get(0) == '\n') {
+                return position + 1;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,17 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.entities.ContactOperation;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Set;
+
+@Repository
+public interface ContactOperationRepository extends CrudRepository<ContactOperation, String> {
+
+    @Query("select o.id from ContactOperation o where o.id in :ids")
+    Set<String> findIdsByIdIn(@Param("ids") Collection<String> ids);
+}
@@ -1,13 +1,50 @@
 package com.rodmccutcheon.addressbook.repositories;
 
-import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.dto.ContactMatchCandidate;
 import com.rodmccutcheon.addressbook.entities.Contact;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 @Repository
 public interface ContactRepository extends CrudRepository<Contact, Long> {
-    Set<Contact> findDistinctByAddressBooksIn(Iterable<AddressBook> addressBooks);
+
+    @EntityGraph(attributePaths = {"phoneNumbers", "addressBooks"})
+    Optional<Contact> findWithAddressBooksById(long id);
+
+    @EntityGraph(attributePaths = "phoneNumbers")
+    List<Contact> findWithPhoneNumbersByIdIn(Collection<Long> ids);
+
+    @EntityGraph(attributePaths = {"phoneNumbers", "addressBooks"})
+    @Query("select c from Contact c join UniqueContact u on u.contactId = c.id")
+    Set<Contact> findAllInAnyAddressBook();
+
+    /**
+     * Contacts filed under the match key, found through the index on {@code contact_match_keys.match_key}.
+     */
+    @EntityGraph(attributePaths = "phoneNumbers")
+    @Query("select distinct c from Contact c join c.matchKeys k where k = :matchKey")
+    List<Contact> findWithPhoneNumbersByMatchKey(@Param("matchKey") String matchKey);
+
+    @Query("select new com.rodmccutcheon.addressbook.dto.ContactMatchCandidate(c.id, c.name, c.clusterId, k) " +
+            "from Contact c join c.matchKeys k where k in :matchKeys")
+    List<ContactMatchCandidate> findMatchCandidates(@Param("matchKeys") Collection<String> matchKeys);
+
+    /**
+     * Moves every contact in the merged clusters into {@code clusterId}, incrementing their versions so that a
+     * concurrent change to one of them cannot write back its old cluster id.
+     */
+    @Modifying
+    @Query("update Contact c set c.clusterId = :clusterId, c.version = c.version + 1 " +
+            "where c.clusterId in :mergedClusterIds or (c.clusterId is null and c.id in :mergedClusterIds)")
+    void mergeClusters(@Param("clusterId") long clusterId,
+                       @Param("mergedClusterIds") Collection<Long> mergedClusterIds);
 }
@@ -0,0 +1,129 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Plain JDBC reads over the contact tables, for result sets too large to hydrate as entities.
+ */
+@Repository
+public class ContactRowRepository {
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final String UNIQUE_CONTACTS_SQL =
+            "select c.id, c.name, p.phone_number_type, p.phone_number " +
+            "from contact c " +
+            "join unique_contact u on u.contact_id = c.id " +
+            "left join contact_phone_numbers p on p.contact_id = c.id " +
+            "order by u.contact_id";
+
+    private static final String UNIQUE_CONTACT_CLUSTERS_SQL =
+            "select coalesce(c.cluster_id, c.id), c.id, c.name, p.phone_number_type, p.phone_number " +
+            "from contact c " +
+            "join unique_contact u on u.contact_id = c.id " +
+            "left join contact_phone_numbers p on p.contact_id = c.id " +
+            "order by coalesce(c.cluster_id, c.id), c.id";
+
+    private static final String MEMBERSHIPS_SQL =
+            "select address_book_id, contact_id from contact_address_books order by address_book_id, contact_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ContactRowRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    /**
+     * Runs a single query for every contact in the unique contacts view and hands each
+     * contact to {@code consumer} as soon as its rows have been read, so memory use does not depend on
+     * the number of contacts.
+     */
+    public void forEachUniqueContact(Consumer<ContactView> consumer) {
+        final var assembler = new ContactAssembler(consumer);
+        jdbcTemplate.query(UNIQUE_CONTACTS_SQL, resultSet -> {
+            final var phoneNumberType = resultSet.getString(3);
+            assembler.accept(resultSet.getLong(1), resultSet.getLong(1), resultSet.getString(2),
+                    phoneNumberType == null ? null : PhoneNumberType.valueOf(phoneNumberType),
+                    resultSet.getString(4));
+        });
+        assembler.flush();
+    }
+
+    /**
+     * Like {@link #forEachUniqueContact(Consumer)}, but hands {@code consumer} one contact per cluster of contacts
+     * that are the same person: the cluster's first contact in any address book, with the phone numbers of the
+     * other contacts added for the types it has none of.
+     */
+    public void forEachUniqueContactCluster(Consumer<ContactView> consumer) {
+        final var assembler = new ContactAssembler(consumer);
+        jdbcTemplate.query(UNIQUE_CONTACT_CLUSTERS_SQL, resultSet -> {
+            final var phoneNumberType = resultSet.getString(4);
+            assembler.accept(resultSet.getLong(1), resultSet.getLong(2), resultSet.getString(3),
+                    phoneNumberType == null ? null : PhoneNumberType.valueOf(phoneNumberType),
+                    resultSet.getString(5));
+        });
+        assembler.flush();
+    }
+
+    /**
+     * Reads every membership in a single query into a bitmap of contact ids for each address book, without
+     * creating an object per membership.
+     */
+    public Map<Long, Roaring64Bitmap> findContactIdsByAddressBook() {
+        final var contactIdsByAddressBook = new HashMap<Long, Roaring64Bitmap>();
+        jdbcTemplate.query(MEMBERSHIPS_SQL, resultSet -> {
+            contactIdsByAddressBook.computeIfAbsent(resultSet.getLong(1), addressBookId -> new Roaring64Bitmap())
+                    .addLong(resultSet.getLong(2));
+        });
+        return contactIdsByAddressBook;
+    }
+
+    /**
+     * Folds consecutive rows of the same group (one per phone number of each contact in it) into a single
+     * {@link ContactView} of the group's first contact.
+     */
+    private static final class ContactAssembler {
+
+        private final Consumer<ContactView> consumer;
+        private Long groupId;
+        private Long id;
+        private String name;
+        private Map<PhoneNumberType, String> phoneNumbers;
+
+        private ContactAssembler(Consumer<ContactView> consumer) {
+            this.consumer = consumer;
+        }
+
+        private void accept(long rowGroupId, long contactId, String contactName, PhoneNumberType phoneNumberType,
+                            String phoneNumber) {
+            if (groupId == null || groupId != rowGroupId) {
+                flush();
+                groupId = rowGroupId;
+                id = contactId;
+                name = contactName;
+                phoneNumbers = new EnumMap<>(PhoneNumberType.class);
+            }
+            if (phoneNumberType != null) {
+                phoneNumbers.putIfAbsent(phoneNumberType, phoneNumber);
+            }
+        }
+
+        private void flush() {
+            if (groupId != null) {
+                consumer.accept(new ContactView(id, name, phoneNumbers));
+                groupId = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import com.rodmccutcheon.addressbook.events.ContactsDeletedEvent;
+import com.rodmccutcheon.addressbook.events.ContactsSavedEvent;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.ngram.EdgeNGramTokenFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * In-memory Lucene index over contact names and phone numbers, kept in step with the database by listening for
+ * contact changes once their transaction has committed. Names are matched on whole words, word prefixes and,
+ * for longer words, within a small edit distance. Phone numbers are matched on their trailing digits. Every
+ * field a {@link ContactView} needs is stored in the index, so searching never touches the database. Changes are
+ * made visible to searches every {@code address-book.search.refresh-interval} rather than on each save, so that a
+ * burst of small writes shares one reopen of the index.
+ */
+@Repository
+public class ContactSearchIndex {
+
+    private static final String ID = "id";
+    private static final String NAME = "name";
+    private static final String NAME_PREFIX = "name_prefix";
+    private static final String PHONE_SUFFIX = "phone_suffix";
+    private static final String PHONE_NUMBER = "phone_number.";
+
+    private static final int MAX_PREFIX_LENGTH = 20;
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private static final int MIN_PHONE_SUFFIX_LENGTH = 3;
+
+    private final Analyzer nameAnalyzer = nameAnalyzer(false);
+    private final IndexWriter indexWriter;
+    private final SearcherManager searcherManager;
+
+    public ContactSearchIndex() throws IOException {
+        final var analyzer = new PerFieldAnalyzerWrapper(nameAnalyzer, Map.of(NAME_PREFIX, nameAnalyzer(true)));
+        this.indexWriter = new IndexWriter(new ByteBuffersDirectory(), new IndexWriterConfig(analyzer));
+        this.searcherManager = new SearcherManager(indexWriter, null);
+    }
+
+    /**
+     * Returns up to {@code limit} contacts matching {@code text}, best match first.
+     */
+    public List<ContactView> search(String text, int limit) {
+        final var query = query(text);
+        if (query.clauses().isEmpty()) {
+            return List.of();
+        }
+        try {
+            final var searcher = searcherManager.acquire();
+            try {
+                final var contacts = new ArrayList<ContactView>();
+                for (ScoreDoc scoreDoc : searcher.search(query, limit).scoreDocs) {
+                    contacts.add(contactView(searcher.doc(scoreDoc.doc)));
+                }
+                return contacts;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds or replaces a contact. The change becomes visible to searches on the next refresh.
+     */
+    public void add(ContactView contact) {
+        try {
+            indexWriter.updateDocument(new Term(ID, contact.getId().toString()), document(contact));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Makes every change so far visible to searches, waiting for a refresh already in progress. For use after
+     * loading the index and after bulk imports; other changes are picked up by {@link #refreshChanges()}.
+     */
+    public void refresh() {
+        try {
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Makes changes since the last refresh visible to searches. Does nothing if there are none, or if another
+     * refresh is already in progress.
+     */
+    @Scheduled(fixedDelayString = "${address-book.search.refresh-interval}")
+    public void refreshChanges() {
+        try {
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @TransactionalEventListener
+    public void onContactsSaved(ContactsSavedEvent event) {
+        event.getContacts().forEach(this::add);
+    }
+
+    @TransactionalEventListener
+    public void onContactsDeleted(ContactsDeletedEvent event) {
+        try {
+            indexWriter.deleteDocuments(event.getContactIds().stream()
+                    .map(contactId -> new Term(ID, contactId.toString()))
+                    .toArray(Term[]::new));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        searcherManager.close();
+        indexWriter.close();
+    }
+
+    private BooleanQuery query(String text) {
+        final var query = new BooleanQuery.Builder();
+        final var words = words(text);
+        if (!words.isEmpty()) {
+            final var name = new BooleanQuery.Builder();
+            for (String word : words) {
+                final var wordQuery = new BooleanQuery.Builder()
+                        .add(new BoostQuery(new TermQuery(new Term(NAME, word)), 4), BooleanClause.Occur.SHOULD)
+                        .add(new BoostQuery(new TermQuery(new Term(NAME_PREFIX, word)), 2), BooleanClause.Occur.SHOULD);
+                if (word.length() >= MIN_FUZZY_LENGTH) {
+                    wordQuery.add(new FuzzyQuery(new Term(NAME, word), word.length() < 8 ? 1 : 2, 1),
+                            BooleanClause.Occur.SHOULD);
+                }
+                name.add(wordQuery.build(), BooleanClause.Occur.MUST);
+            }
+            query.add(name.build(), BooleanClause.Occur.SHOULD);
+        }
+        final var digits = digits(text);
+        if (digits.length() >= MIN_PHONE_SUFFIX_LENGTH) {
+            query.add(new TermQuery(new Term(PHONE_SUFFIX, digits)), BooleanClause.Occur.SHOULD);
+        }
+        return query.build();
+    }
+
+    private List<String> words(String text) {
+        final var words = new ArrayList<String>();
+        try (TokenStream tokenStream = nameAnalyzer.tokenStream(NAME, text)) {
+            final var term = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                words.add(term.toString());
+            }
+            tokenStream.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return words;
+    }
+
+    private static Document document(ContactView contact) {
+        final var document = new Document();
+        document.add(new StringField(ID, contact.getId().toString(), Field.Store.YES));
+        if (contact.getName() != null) {
+            document.add(new TextField(NAME, contact.getName(), Field.Store.YES));
+            document.add(new TextField(NAME_PREFIX, contact.getName(), Field.Store.NO));
+        }
+        contact.getPhoneNumbers().forEach((phoneNumberType, phoneNumber) -> {
+            document.add(new StoredField(PHONE_NUMBER + phoneNumberType.name(), phoneNumber));
+            final var digits = digits(phoneNumber);
+            for (int length = MIN_PHONE_SUFFIX_LENGTH; length <= digits.length(); length++) {
+                document.add(new StringField(PHONE_SUFFIX, digits.substring(digits.length() - length), Field.Store.NO));
+            }
+        });
+        return document;
+    }
+
+    private static ContactView contactView(Document document) {
+        final var phoneNumbers = new EnumMap<PhoneNumberType, String>(PhoneNumberType.class);
+        for (PhoneNumberType phoneNumberType : PhoneNumberType.values()) {
+            final var phoneNumber = document.get(PHONE_NUMBER + phoneNumberType.name());
+            if (phoneNumber != null) {
+                phoneNumbers.put(phoneNumberType, phoneNumber);
+            }
+        }
+        return new ContactView(Long.valueOf(document.get(ID)), document.get(NAME), phoneNumbers);
+    }
+
+    private static String digits(String text) {
+        return text.replaceAll("\\D", "");
+    }
+
+    private static Analyzer nameAnalyzer(boolean prefixes) {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                final var tokenizer = new StandardTokenizer();
+                TokenStream tokenStream = new ASCIIFoldingFilter(new LowerCaseFilter(tokenizer));
+                if (prefixes) {
+                    tokenStream = new EdgeNGramTokenFilter(tokenStream, 1, MAX_PREFIX_LENGTH, true);
+                }
+                return new TokenStreamComponents(tokenizer, tokenStream);
+            }
+        };
+    }
+}
@@ -0,0 +1,284 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.events.ContactsDeletedEvent;
+import com.rodmccutcheon.addressbook.events.MembershipsChangedEvent;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * In-memory index of which contacts belong to which address books, kept in step with the database by listening for
+ * membership changes once their transaction has committed. Each address book's contact ids are held in a compressed
+ * bitmap, which costs a few bits per membership rather than a pair of boxed entities, and lets sets of address books
+ * be combined without loading their contacts.
+ * <p>
+ * Contacts are indexed the other way round in a primitive hash table of the address books holding each, see
+ * {@link ContactAddressBooks}, so finding a contact's address books costs the same however many there are. Address
+ * books without contacts are not indexed.
+ */
+@Repository
+public class MembershipIndex {
+
+    private static final Roaring64Bitmap EMPTY = new Roaring64Bitmap();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock replaceLock = new ReentrantLock();
+    private Map<Long, Roaring64Bitmap> contactsByAddressBook = new HashMap<>();
+    private ContactAddressBooks addressBooksByContact = new ContactAddressBooks();
+    private long memberships;
+    // Changes received while the memberships are being loaded to replace the index, or null if none are
+    private List<Runnable> changesDuringReplace;
+
+    /**
+     * Records that the contact is in the address book. Returns false if it already was.
+     */
+    public boolean add(long addressBookId, long contactId) {
+        return write(() -> {
+            final var contacts = contactsByAddressBook.computeIfAbsent(addressBookId, id -> new Roaring64Bitmap());
+            if (contacts.contains(contactId)) {
+                return false;
+            }
+            contacts.addLong(contactId);
+            memberships++;
+            addressBooksByContact.add(contactId, addressBookId);
+            return true;
+        });
+    }
+
+    /**
+     * Records that the contact is no longer in the address book. Returns false if it was not.
+     */
+    public boolean remove(long addressBookId, long contactId) {
+        return write(() -> {
+            final var contacts = contactsByAddressBook.get(addressBookId);
+            if (contacts == null || !contacts.contains(contactId)) {
+                return false;
+            }
+            contacts.removeLong(contactId);
+            if (contacts.isEmpty()) {
+                contactsByAddressBook.remove(addressBookId);
+            }
+            memberships--;
+            addressBooksByContact.remove(contactId, addressBookId);
+            return true;
+        });
+    }
+
+    /**
+     * Removes the contacts from every address book they are in.
+     */
+    public void removeContacts(Collection<Long> contactIds) {
+        write(() -> {
+            for (long contactId : contactIds) {
+                for (long addressBookId : addressBooksByContact.get(contactId)) {
+                    remove(addressBookId, contactId);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Replaces everything indexed with the memberships {@code load} returns, as contact ids by address book id. The
+     * new index is built before the lock is taken, so reads carry on meanwhile. Changes that arrive while the
+     * memberships are loaded may or may not be in what is loaded, so they are applied again to the new index before
+     * it is swapped in. Replacing an index twice at once waits for the first to finish.
+     */
+    public void replaceAll(Supplier<? extends Map<Long, Roaring64Bitmap>> load) {
+        replaceLock.lock();
+        try {
+            write(() -> changesDuringReplace = new ArrayList<>());
+            replaceAllLoaded(load.get());
+        } finally {
+            write(() -> changesDuringReplace = null);
+            replaceLock.unlock();
+        }
+    }
+
+    private void replaceAllLoaded(Map<Long, Roaring64Bitmap> contactIdsByAddressBook) {
+        final var contacts = new HashMap<Long, Roaring64Bitmap>();
+        long count = 0;
+        for (var entry : contactIdsByAddressBook.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            final var addressBookContacts = entry.getValue().clone();
+            addressBookContacts.runOptimize();
+            contacts.put(entry.getKey(), addressBookContacts);
+            count += addressBookContacts.getLongCardinality();
+        }
+        final var addressBooks = new ContactAddressBooks(count);
+        contacts.forEach((addressBookId, addressBookContacts) -> {
+            final var iterator = addressBookContacts.getLongIterator();
+            while (iterator.hasNext()) {
+                addressBooks.add(iterator.next(), addressBookId);
+            }
+        });
+        final long total = count;
+        write(() -> {
+            contactsByAddressBook = contacts;
+            addressBooksByContact = addressBooks;
+            memberships = total;
+            // Adding and removing are idempotent, so a change already loaded is left as it was
+            changesDuringReplace.forEach(Runnable::run);
+            return null;
+        });
+    }
+
+    public boolean contains(long addressBookId, long contactId) {
+        return read(() -> {
+            final var contacts = contactsByAddressBook.get(addressBookId);
+            return contacts != null && contacts.contains(contactId);
+        });
+    }
+
+    /**
+     * Ids of the contacts in the address book, as a copy the caller is free to change.
+     */
+    public Roaring64Bitmap getContactIds(long addressBookId) {
+        return read(() -> {
+            final var contacts = contactsByAddressBook.get(addressBookId);
+            return contacts == null ? new Roaring64Bitmap() : contacts.clone();
+        });
+    }
+
+    /**
+     * Ids of the address books holding the contact, in ascending order.
+     */
+    public long[] getAddressBookIds(long contactId) {
+        return read(() -> addressBooksByContact.get(contactId));
+    }
+
+    public int countAddressBooks(long contactId) {
+        return read(() -> addressBooksByContact.count(contactId));
+    }
+
+    public long countContacts(long addressBookId) {
+        return read(() -> {
+            final var contacts = contactsByAddressBook.get(addressBookId);
+            return contacts == null ? 0 : contacts.getLongCardinality();
+        });
+    }
+
+    /**
+     * Contacts in any address book, each counted once.
+     */
+    public long countUniqueContacts() {
+        return read(() -> (long) addressBooksByContact.size());
+    }
+
+    /**
+     * Contacts in any address book, each counted once per address book it is in.
+     */
+    public long countMemberships() {
+        return read(() -> memberships);
+    }
+
+    public long findLargestAddressBookSize() {
+        return read(() -> contactsByAddressBook.values().stream()
+                .mapToLong(Roaring64Bitmap::getLongCardinality)
+                .max()
+                .orElse(0));
+    }
+
+    /**
+     * Ids of the contacts in every one of the address books.
+     */
+    public Roaring64Bitmap intersection(Collection<Long> addressBookIds) {
+        return combine(addressBookIds, Roaring64Bitmap::and);
+    }
+
+    /**
+     * Ids of the contacts in any of the address books.
+     */
+    public Roaring64Bitmap union(Collection<Long> addressBookIds) {
+        return combine(addressBookIds, Roaring64Bitmap::or);
+    }
+
+    /**
+     * Ids of the contacts in the first of the address books and none of the others.
+     */
+    public Roaring64Bitmap difference(Collection<Long> addressBookIds) {
+        return combine(addressBookIds, Roaring64Bitmap::andNot);
+    }
+
+    @TransactionalEventListener
+    public void onMembershipsChanged(MembershipsChangedEvent event) {
+        apply(() -> {
+            event.getAddedContactIds().forEach(contactId -> add(event.getAddressBookId(), contactId));
+            event.getRemovedContactIds().forEach(contactId -> remove(event.getAddressBookId(), contactId));
+        });
+    }
+
+    @TransactionalEventListener
+    public void onContactsDeleted(ContactsDeletedEvent event) {
+        apply(() -> removeContacts(event.getContactIds()));
+    }
+
+    /**
+     * Applies a committed change, and keeps it to apply again to an index being loaded to replace this one.
+     */
+    private void apply(Runnable change) {
+        write(() -> {
+            change.run();
+            if (changesDuringReplace != null) {
+                changesDuringReplace.add(change);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Folds the address books' contact ids together in the order given, starting from a copy of the first's.
+     */
+    private Roaring64Bitmap combine(Collection<Long> addressBookIds,
+                                    BiConsumer<Roaring64Bitmap, Roaring64Bitmap> combiner) {
+        return read(() -> {
+            final Iterator<Long> ids = addressBookIds.iterator();
+            if (!ids.hasNext()) {
+                throw new NoSuchElementException("No address books given");
+            }
+            final var result = contactIdsOf(ids.next()).clone();
+            while (ids.hasNext()) {
+                combiner.accept(result, contactIdsOf(ids.next()));
+            }
+            return result;
+        });
+    }
+
+    private Roaring64Bitmap contactIdsOf(long addressBookId) {
+        return contactsByAddressBook.getOrDefault(addressBookId, EMPTY);
+    }
+
+    private <T> T read(Supplier<T> read) {
+        lock.readLock().lock();
+        try {
+            return read.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> T write(Supplier<T> write) {
+        lock.writeLock().lock();
+        try {
+            return write.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
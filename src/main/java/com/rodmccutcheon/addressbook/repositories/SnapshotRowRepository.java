@@ -0,0 +1,176 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.entities.AddressBookChangeType;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plain JDBC copies of the address book tables into and out of an {@link AddressBookSnapshot}, one shard at a time,
+ * without hydrating any entities. Both run within the caller's transaction.
+ */
+@Repository
+public class SnapshotRowRepository {
+
+    private static final int FETCH_SIZE = 500;
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SnapshotRowRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    public boolean isEmpty() {
+        return jdbcTemplate.queryForList("select id from address_book limit 1", Long.class).isEmpty();
+    }
+
+    /**
+     * Adds every address book, contact, phone number, match key, membership and change on the current shard to
+     * {@code writer}, recording the address books as held by {@code shard}.
+     */
+    public void exportTo(AddressBookSnapshotWriter writer, int shard) {
+        jdbcTemplate.query("select id, name, version from address_book order by id", resultSet -> {
+            writer.addAddressBook(resultSet.getLong(1), resultSet.getString(2), resultSet.getLong(3), shard);
+        });
+        jdbcTemplate.query("select id, name, version, cluster_id from contact order by id", resultSet -> {
+            writer.addContact(resultSet.getLong(1), resultSet.getString(2), resultSet.getLong(3),
+                    resultSet.getObject(4, Long.class));
+        });
+        jdbcTemplate.query("select contact_id, phone_number_type, phone_number from contact_phone_numbers " +
+                "order by contact_id, phone_number_type", resultSet -> {
+            writer.addPhoneNumber(resultSet.getLong(1), PhoneNumberType.valueOf(resultSet.getString(2)),
+                    resultSet.getString(3));
+        });
+        jdbcTemplate.query("select contact_id, match_key from contact_match_keys order by contact_id", resultSet -> {
+            writer.addMatchKey(resultSet.getLong(1), resultSet.getString(2));
+        });
+        jdbcTemplate.query("select address_book_id, contact_id from contact_address_books " +
+                "order by address_book_id, contact_id", resultSet -> {
+            writer.addMembership(resultSet.getLong(1), resultSet.getLong(2));
+        });
+        jdbcTemplate.query("select address_book_id, version, contact_id, change_type from address_book_change " +
+                "order by address_book_id, version, contact_id", resultSet -> {
+            writer.addChange(resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3),
+                    AddressBookChangeType.valueOf(resultSet.getString(4)));
+        });
+    }
+
+    /**
+     * Inserts the address books the snapshot records as held by {@code shard} into the current shard, with their
+     * contacts, memberships and changes, and the unique contacts view rows of their contacts, in batches. Returns
+     * the number of contacts inserted.
+     */
+    public int importFrom(AddressBookSnapshot snapshot, int shard) {
+        final var addressBooks = new Batch("insert into address_book (id, name, version) values (?, ?, ?)", null);
+        final var changes = new Batch("insert into address_book_change " +
+                "(address_book_id, version, contact_id, change_type) values (?, ?, ?, ?)", addressBooks);
+        for (int index = 0; index < snapshot.addressBookCount(); index++) {
+            if (snapshot.addressBookShard(index) == shard) {
+                final long addressBookId = snapshot.addressBookId(index);
+                addressBooks.add(addressBookId, snapshot.addressBookName(index), snapshot.addressBookVersion(index));
+                for (int change = snapshot.addressBookChangesStart(index);
+                     change < snapshot.addressBookChangesEnd(index); change++) {
+                    changes.add(addressBookId, snapshot.changeVersion(change), snapshot.changeContactId(change),
+                            snapshot.changeType(change).name());
+                }
+            }
+        }
+        changes.flush();
+
+        final var contacts = new Batch("insert into contact (id, name, version, cluster_id) values (?, ?, ?, ?)",
+                null);
+        final var phoneNumbers = new Batch("insert into contact_phone_numbers " +
+                "(contact_id, phone_number_type, phone_number) values (?, ?, ?)", contacts);
+        final var matchKeys = new Batch("insert into contact_match_keys (contact_id, match_key) values (?, ?)",
+                contacts);
+        final var uniqueContacts = new Batch("insert into unique_contact (contact_id, address_book_count) " +
+                "values (?, ?)", contacts);
+        int imported = 0;
+        for (int index = 0; index < snapshot.contactCount(); index++) {
+            final int addressBookCount = snapshot.contactAddressBooksEnd(index)
+                    - snapshot.contactAddressBooksStart(index);
+            // A contact lives on the shard of its address books, and one in none is not restored
+            if (addressBookCount == 0 || snapshot.addressBookShard(
+                    snapshot.memberAddressBook(snapshot.contactAddressBooksStart(index))) != shard) {
+                continue;
+            }
+            final long contactId = snapshot.contactId(index);
+            final long clusterId = snapshot.contactClusterId(index);
+            contacts.add(contactId, snapshot.contactName(index), snapshot.contactVersion(index),
+                    clusterId == 0 ? null : clusterId);
+            for (int phoneNumber = snapshot.contactPhoneNumbersStart(index);
+                 phoneNumber < snapshot.contactPhoneNumbersEnd(index); phoneNumber++) {
+                phoneNumbers.add(contactId, snapshot.phoneNumberType(phoneNumber).name(),
+                        snapshot.phoneNumber(phoneNumber));
+            }
+            for (int matchKey = snapshot.contactMatchKeysStart(index); matchKey < snapshot.contactMatchKeysEnd(index);
+                 matchKey++) {
+                matchKeys.add(contactId, snapshot.matchKey(matchKey));
+            }
+            uniqueContacts.add(contactId, addressBookCount);
+            imported++;
+        }
+        phoneNumbers.flush();
+        matchKeys.flush();
+        uniqueContacts.flush();
+
+        final var memberships = new Batch("insert into contact_address_books (contact_id, address_book_id) " +
+                "values (?, ?)", null);
+        for (int index = 0; index < snapshot.addressBookCount(); index++) {
+            if (snapshot.addressBookShard(index) == shard) {
+                for (int member = snapshot.addressBookContactsStart(index);
+                     member < snapshot.addressBookContactsEnd(index); member++) {
+                    memberships.add(snapshot.contactId(snapshot.memberContact(member)), snapshot.addressBookId(index));
+                }
+            }
+        }
+        memberships.flush();
+        return imported;
+    }
+
+    /**
+     * Restarts a sequence at {@code value}, so the ids it hands out next follow those restored from a snapshot.
+     */
+    public void restartSequence(String sequence, long value) {
+        jdbcTemplate.execute("alter sequence " + sequence + " restart with " + value);
+    }
+
+    /**
+     * Rows for one insert statement, sent in batches of {@link #BATCH_SIZE}. The rows of the batch they refer to, if
+     * any, are sent first.
+     */
+    private final class Batch {
+
+        private final String sql;
+        private final Batch referenced;
+        private final List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+
+        private Batch(String sql, Batch referenced) {
+            this.sql = sql;
+            this.referenced = referenced;
+        }
+
+        private void add(Object... row) {
+            rows.add(row);
+            if (rows.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (referenced != null) {
+                referenced.flush();
+            }
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(sql, rows);
+                rows.clear();
+            }
+        }
+    }
+}
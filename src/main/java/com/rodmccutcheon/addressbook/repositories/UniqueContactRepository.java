@@ -0,0 +1,68 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.entities.UniqueContact;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Maintains the unique contacts view with single-row writes. Every method must run in the transaction that
+ * changes the memberships it accounts for.
+ */
+@Repository
+public interface UniqueContactRepository extends CrudRepository<UniqueContact, Long> {
+
+    @Modifying
+    @Query(value = "insert into unique_contact (contact_id, address_book_count) " +
+            "values (:contactId, :addressBookCount)",
+            nativeQuery = true)
+    void insert(@Param("contactId") long contactId, @Param("addressBookCount") int addressBookCount);
+
+    @Modifying
+    @Query("update UniqueContact u set u.addressBookCount = u.addressBookCount + :delta " +
+            "where u.contactId = :contactId")
+    int adjustAddressBookCount(@Param("contactId") long contactId, @Param("delta") int delta);
+
+    @Modifying
+    @Query("delete from UniqueContact u where u.contactId in :contactIds")
+    void deleteByContactIdIn(@Param("contactIds") Collection<Long> contactIds);
+
+    @Modifying
+    @Query("delete from UniqueContact u")
+    int deleteAllRows();
+
+    @Modifying
+    @Query(value = "insert into unique_contact (contact_id, address_book_count) " +
+            "select contact_id, count(*) from contact_address_books group by contact_id",
+            nativeQuery = true)
+    int insertFromMemberships();
+
+    /**
+     * Ids of up to {@code limit} contacts whose row is missing, has the wrong count, or should not exist,
+     * found in a single statement so that the comparison is made against one state of the memberships.
+     */
+    @Query(value = "select m.contact_id from " +
+            "(select contact_id, count(*) as address_book_count from contact_address_books group by contact_id) m " +
+            "left join unique_contact u on u.contact_id = m.contact_id " +
+            "where u.contact_id is null or u.address_book_count <> m.address_book_count " +
+            "union all " +
+            "select u.contact_id from unique_contact u " +
+            "where not exists (select 1 from contact_address_books cab where cab.contact_id = u.contact_id) " +
+            "limit :limit",
+            nativeQuery = true)
+    List<Long> findInconsistentContactIds(@Param("limit") int limit);
+
+    /**
+     * Counts one more address book for the contact, adding its row if it had none.
+     */
+    default void addMembership(long contactId) {
+        if (adjustAddressBookCount(contactId, 1) == 0) {
+            insert(contactId, 1);
+        }
+    }
+}
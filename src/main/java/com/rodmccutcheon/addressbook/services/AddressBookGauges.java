@@ -0,0 +1,56 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.repositories.AddressBookRepository;
+import com.rodmccutcheon.addressbook.repositories.MembershipIndex;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Gauges of how much the address books hold. Contacts and memberships are read from the {@link MembershipIndex} on
+ * every scrape. Counting address books takes a query on every shard, see {@link ShardRouter}, so that count is
+ * refreshed every {@code address-book.metrics.gauge-refresh-interval} in the background instead.
+ */
+@Component
+public class AddressBookGauges {
+
+    private final AddressBookRepository addressBookRepository;
+    private final ShardRouter shardRouter;
+    private final AtomicLong addressBooks = new AtomicLong();
+
+    public AddressBookGauges(AddressBookRepository addressBookRepository,
+                             MembershipIndex membershipIndex,
+                             ShardRouter shardRouter,
+                             MeterRegistry meterRegistry) {
+        this.addressBookRepository = addressBookRepository;
+        this.shardRouter = shardRouter;
+        gauge(meterRegistry, "address-book.address-books", "address books", addressBooks, AtomicLong::get,
+                "Address books");
+        gauge(meterRegistry, "address-book.unique-contacts", "contacts", membershipIndex,
+                MembershipIndex::countUniqueContacts, "Contacts across all address books, each counted once");
+        gauge(meterRegistry, "address-book.memberships", "contacts", membershipIndex,
+                MembershipIndex::countMemberships,
+                "Contacts across all address books, each counted once per address book it is in");
+        gauge(meterRegistry, "address-book.largest-size", "contacts", membershipIndex,
+                MembershipIndex::findLargestAddressBookSize, "Contacts in the largest address book");
+    }
+
+    @Scheduled(fixedDelayString = "${address-book.metrics.gauge-refresh-interval}")
+    public void refresh() {
+        addressBooks.set(shardRouter.readEachShard(addressBookRepository::count).stream()
+                .mapToLong(Long::longValue)
+                .sum());
+    }
+
+    private static <T> void gauge(MeterRegistry meterRegistry, String name, String baseUnit, T source,
+                                  ToDoubleFunction<T> value, String description) {
+        Gauge.builder(name, source, value)
+                .baseUnit(baseUnit)
+                .description(description)
+                .register(meterRegistry);
+    }
+}
@@ -1,49 +1,362 @@
 package com.rodmccutcheon.addressbook.services;
 
+import com.rodmccutcheon.addressbook.config.ReplicaContext;
+import com.rodmccutcheon.addressbook.config.RetryOnConflict;
+import com.rodmccutcheon.addressbook.config.ShardKey;
+import com.rodmccutcheon.addressbook.dto.AddressBookChanges;
+import com.rodmccutcheon.addressbook.dto.AddressBookSummary;
+import com.rodmccutcheon.addressbook.dto.BatchEntry;
+import com.rodmccutcheon.addressbook.dto.ContactPage;
+import com.rodmccutcheon.addressbook.dto.ContactView;
 import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.AddressBookChangeType;
 import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.events.ContactsDeletedEvent;
+import com.rodmccutcheon.addressbook.events.MembershipsChangedEvent;
+import com.rodmccutcheon.addressbook.repositories.AddressBookChangeRepository;
 import com.rodmccutcheon.addressbook.repositories.AddressBookRepository;
+import com.rodmccutcheon.addressbook.repositories.ContactRepository;
+import com.rodmccutcheon.addressbook.repositories.MembershipIndex;
+import com.rodmccutcheon.addressbook.repositories.UniqueContactRepository;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Every read returns entities whose serialized associations have already been fetched, because the
+ * persistence context is closed when the transaction ends and lazy collections can no longer be loaded.
+ * <p>
+ * Every change to an address book increments its version, and every contact added to or removed from it is
+ * recorded under the new version, so that clients can sync only what changed since the version they last saw. The
+ * contacts added and removed in one transaction share a version, taken just before it commits.
+ * <p>
+ * Methods on one address book run on its shard, see {@link ShardRouter}. Methods on every address book read each
+ * shard in a transaction of its own, and merge the results.
+ * <p>
+ * Which contacts are in several address books at once is worked out on the bitmaps of the {@link MembershipIndex},
+ * and only the contacts on the page asked for are read from the database.
+ */
 @Service
+@Transactional
 public class AddressBookService {
 
+    public static final String ADDRESS_BOOKS_CACHE = "address-books";
+
     private final AddressBookRepository addressBookRepository;
+    private final AddressBookChangeRepository addressBookChangeRepository;
+    private final ContactRepository contactRepository;
+    private final UniqueContactRepository uniqueContactRepository;
+    private final MembershipIndex membershipIndex;
+    private final ShardRouter shardRouter;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public AddressBookService(AddressBookRepository addressBookRepository) {
+    public AddressBookService(AddressBookRepository addressBookRepository,
+                              AddressBookChangeRepository addressBookChangeRepository,
+                              ContactRepository contactRepository,
+                              UniqueContactRepository uniqueContactRepository,
+                              MembershipIndex membershipIndex,
+                              ShardRouter shardRouter,
+                              ApplicationEventPublisher eventPublisher) {
         this.addressBookRepository = addressBookRepository;
+        this.addressBookChangeRepository = addressBookChangeRepository;
+        this.contactRepository = contactRepository;
+        this.uniqueContactRepository = uniqueContactRepository;
+        this.membershipIndex = membershipIndex;
+        this.shardRouter = shardRouter;
+        this.eventPublisher = eventPublisher;
     }
 
+    /**
+     * Saves the address book on the next shard in turn.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public AddressBook createAddressBook(AddressBook addressBook) {
-        return addressBookRepository.save(addressBook);
+        final int shard = shardRouter.shardForNewAddressBook();
+        return shardRouter.onShard(shard, () -> addressBookRepository.save(addressBook));
     }
 
-    public Iterable<AddressBook> getAllAddressBooks() {
-        return addressBookRepository.findAll();
+    /**
+     * Returns up to {@code size} address books with an id greater than {@code after}, ordered by id.
+     * Seeking on the primary key keeps every page an index range scan, however deep the client pages.
+     * The ids are paged first and the books fetched with their contacts second, as limiting a fetch join
+     * would otherwise be done in memory. Each shard returns its first page, and the first {@code size} of them
+     * all make up the page.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<AddressBook> getAddressBooks(long after, int size) {
+        return firstPage(shardRouter.readEachShard(() -> {
+            final var ids = addressBookRepository.findIdsAfter(after, PageRequest.of(0, size));
+            return ids.isEmpty()
+                    ? List.<AddressBook>of()
+                    : addressBookRepository.findWithContactsByIdInOrderByIdAsc(ids);
+        }), AddressBook::getId, size);
     }
 
-    public AddressBook getAddressBook(long addressBookId) {
-        return addressBookRepository.findById(addressBookId).orElseThrow();
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<AddressBookSummary> getAddressBookSummaries(long after, int size) {
+        return firstPage(shardRouter.readEachShard(() ->
+                addressBookRepository.findSummariesByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, size))),
+                AddressBookSummary::getId, size);
     }
 
-    public AddressBook updateAddressBook(long addressBookId, AddressBook changedAddressBook) {
-        final var addressBook = addressBookRepository.findById(addressBookId).orElseThrow();
+    /**
+     * Read from the primary rather than a replica, as the address book is cached until it next changes.
+     */
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = ADDRESS_BOOKS_CACHE, key = "#addressBookId")
+    public AddressBook getAddressBook(@ShardKey long addressBookId) {
+        return ReplicaContext.onPrimary(() -> addressBookRepository.findWithContactsById(addressBookId))
+                .orElseThrow();
+    }
+
+    /**
+     * Returns the address books with their contacts, one entry for each of {@code addressBookIds} in the order
+     * given, marking the ids of address books that do not exist as not found. Each shard is asked for all the ids
+     * in a single query, which fetches the contacts and their phone numbers along with the address books.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<BatchEntry<AddressBook>> getAddressBooksById(List<Long> addressBookIds) {
+        final var distinctIds = addressBookIds.stream().distinct().collect(Collectors.toList());
+        final var addressBooks = new HashMap<Long, AddressBook>();
+        if (!distinctIds.isEmpty()) {
+            shardRouter.readEachShard(() -> addressBookRepository.findWithContactsByIdInOrderByIdAsc(distinctIds))
+                    .forEach(shardAddressBooks -> shardAddressBooks.forEach(addressBook ->
+                            addressBooks.put(addressBook.getId(), addressBook)));
+        }
+        return BatchEntry.inOrder(addressBookIds, addressBooks);
+    }
+
+    @RetryOnConflict
+    @Caching(evict = {
+            @CacheEvict(cacheNames = ADDRESS_BOOKS_CACHE, key = "#addressBookId"),
+            @CacheEvict(cacheNames = ContactService.UNIQUE_CONTACTS_CACHE, allEntries = true)
+    })
+    public AddressBook updateAddressBook(@ShardKey long addressBookId, AddressBook changedAddressBook) {
+        if (addressBookRepository.incrementVersion(addressBookId) == 0) {
+            throw new NoSuchElementException("No value present");
+        }
+        final var addressBook = addressBookRepository.findWithContactsById(addressBookId).orElseThrow();
         addressBook.setName(changedAddressBook.getName());
         return addressBookRepository.save(addressBook);
     }
 
-    public void deleteAddressBook(long addressBookId) {
-        addressBookRepository.deleteById(addressBookId);
+    /**
+     * Deleting an address book also deletes its contacts, which may appear in other cached address books.
+     */
+    @RetryOnConflict
+    @Caching(evict = {
+            @CacheEvict(cacheNames = ADDRESS_BOOKS_CACHE, allEntries = true),
+            @CacheEvict(cacheNames = ContactService.UNIQUE_CONTACTS_CACHE, allEntries = true)
+    })
+    public void deleteAddressBook(@ShardKey long addressBookId) {
+        final var addressBook = addressBookRepository.findWithContactsById(addressBookId).orElseThrow();
+        final var contactIds = addressBook.getContacts().stream()
+                .map(Contact::getId)
+                .collect(Collectors.toList());
+        if (!contactIds.isEmpty()) {
+            addressBookRepository.incrementVersionsOfAddressBooksSharingContactsWith(addressBookId);
+            addressBookChangeRepository.insertRemovalsFromOtherAddressBooks(addressBookId);
+        }
+        addressBookChangeRepository.deleteByAddressBookId(addressBookId);
+        addressBookRepository.delete(addressBook);
+        if (!contactIds.isEmpty()) {
+            uniqueContactRepository.deleteByContactIdIn(contactIds);
+        }
+        eventPublisher.publishEvent(new ContactsDeletedEvent(contactIds));
+    }
+
+    /**
+     * Links the contact to the address book through the owning side of the association, so the only write is
+     * the new row in the join table and the contacts already in the address book are never loaded. Returns
+     * false if the contact was already in the address book.
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = ADDRESS_BOOKS_CACHE, key = "#addressBookId"),
+            @CacheEvict(cacheNames = ContactService.UNIQUE_CONTACTS_CACHE, allEntries = true)
+    })
+    public boolean addContact(@ShardKey long addressBookId, Contact contact) {
+        final var addressBook = addressBookRepository.findById(addressBookId).orElseThrow();
+        if (!contact.getAddressBooks().add(addressBook)) {
+            return false;
+        }
+        recordChange(addressBookId, contact.getId(), AddressBookChangeType.ADDED);
+        eventPublisher.publishEvent(new MembershipsChangedEvent(addressBookId, List.of(contact.getId()), List.of()));
+        return true;
+    }
+
+    /**
+     * Unlinks the contact from the address book through the owning side of the association, deleting only the
+     * membership row. Like {@link #addContact}, this never loads or saves the address book's other contacts.
+     * Returns false if the contact was not in the address book.
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = ADDRESS_BOOKS_CACHE, key = "#addressBookId"),
+            @CacheEvict(cacheNames = ContactService.UNIQUE_CONTACTS_CACHE, allEntries = true)
+    })
+    public boolean removeContact(@ShardKey long addressBookId, Contact contact) {
+        final var addressBook = addressBookRepository.findById(addressBookId).orElseThrow();
+        if (!contact.getAddressBooks().remove(addressBook)) {
+            return false;
+        }
+        recordChange(addressBookId, contact.getId(), AddressBookChangeType.REMOVED);
+        eventPublisher.publishEvent(new MembershipsChangedEvent(addressBookId, List.of(), List.of(contact.getId())));
+        return true;
+    }
+
+    /**
+     * Returns the contacts added to and removed from the address book after {@code version}, up to its current
+     * version. A contact that changed more than once is reported by its latest change only.
+     */
+    @Transactional(readOnly = true)
+    public AddressBookChanges getChangesSince(@ShardKey long addressBookId, long version) {
+        final var addressBook = addressBookRepository.findById(addressBookId).orElseThrow();
+        final var latestChanges = new LinkedHashMap<Long, AddressBookChangeType>();
+        if (version < addressBook.getVersion()) {
+            addressBookChangeRepository.findByAddressBookIdAndVersionBetweenOrderByVersionAsc(addressBookId,
+                            version + 1, addressBook.getVersion())
+                    .forEach(change -> latestChanges.put(change.getContactId(), change.getType()));
+        }
+        final var addedIds = new ArrayList<Long>();
+        final var removedIds = new ArrayList<Long>();
+        latestChanges.forEach((contactId, type) ->
+                (type == AddressBookChangeType.ADDED ? addedIds : removedIds).add(contactId));
+        final var added = addedIds.isEmpty() ? List.<ContactView>of() : contactRepository
+                .findWithPhoneNumbersByIdIn(addedIds).stream()
+                .map(ContactView::of)
+                .sorted(Comparator.comparing(ContactView::getId))
+                .collect(Collectors.toList());
+        return new AddressBookChanges(addressBook.getId(), addressBook.getName(), addressBook.getVersion(), added,
+                removedIds);
+    }
+
+    /**
+     * Returns up to {@code size} contacts with an id greater than {@code after} that are in every one of the address
+     * books, ordered by id, and where the next page starts.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ContactPage getContactsInAll(Collection<Long> addressBookIds, long after, int size) {
+        requireAddressBooks(addressBookIds);
+        return getContacts(membershipIndex.intersection(addressBookIds), after, size);
     }
 
-    public void addContact(long addressBookId, Contact contact) {
-        final var addressBook = getAddressBook(addressBookId);
-        addressBook.addContact(contact);
-        addressBookRepository.save(addressBook);
+    /**
+     * Like {@link #getContactsInAll}, but for the contacts in any of the address books.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ContactPage getContactsInAny(Collection<Long> addressBookIds, long after, int size) {
+        requireAddressBooks(addressBookIds);
+        return getContacts(membershipIndex.union(addressBookIds), after, size);
     }
 
-    public void removeContact(AddressBook addressBook, Contact contact) {
-        addressBook.removeContact(contact);
-        addressBookRepository.save(addressBook);
+    /**
+     * Like {@link #getContactsInAll}, but for the contacts in the first of the address books and none of the others.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ContactPage getContactsInFirstOnly(List<Long> addressBookIds, long after, int size) {
+        requireAddressBooks(addressBookIds);
+        return getContacts(membershipIndex.difference(addressBookIds), after, size);
+    }
+
+    /**
+     * Reads the contacts of the page from every shard at once, as each contact is on the shard of its address books.
+     * Whether another page follows is decided by the index, not by how many of the page's contacts were found.
+     */
+    private ContactPage getContacts(Roaring64Bitmap contactIds, long after, int size) {
+        final var pageIds = new ArrayList<Long>(size);
+        final var iterator = contactIds.getLongIteratorFrom(after + 1);
+        while (pageIds.size() < size && iterator.hasNext()) {
+            pageIds.add(iterator.next());
+        }
+        if (pageIds.isEmpty()) {
+            return new ContactPage(List.of(), null);
+        }
+        final var contacts = firstPage(shardRouter.readEachShard(() -> contactRepository
+                .findWithPhoneNumbersByIdIn(pageIds).stream()
+                .map(ContactView::of)
+                .collect(Collectors.toList())), ContactView::getId, size);
+        return new ContactPage(contacts, iterator.hasNext() ? pageIds.get(pageIds.size() - 1) : null);
+    }
+
+    private void requireAddressBooks(Collection<Long> addressBookIds) {
+        final var distinctIds = addressBookIds.stream().distinct().collect(Collectors.toList());
+        if (distinctIds.isEmpty() || shardRouter.readEachShard(() -> addressBookRepository.countByIdIn(distinctIds))
+                .stream().mapToLong(Long::longValue).sum() < distinctIds.size()) {
+            throw new NoSuchElementException("No value present");
+        }
+    }
+
+    private static <T> List<T> firstPage(List<List<T>> shardPages, Function<T, Long> id, int size) {
+        return shardPages.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(id))
+                .limit(size)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Records the change under the address book's next version. Incrementing the version locks the address book's
+     * row until the transaction ends, so it is put off until just before the transaction commits, and concurrent
+     * changes to the same address book only wait on each other while they commit. Outside a transaction the change
+     * is recorded straight away.
+     */
+    private void recordChange(long addressBookId, long contactId, AddressBookChangeType type) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            writeChanges(addressBookId, Map.of(contactId, type));
+            return;
+        }
+        final var pendingChanges = TransactionSynchronizationManager.getSynchronizations().stream()
+                .filter(PendingChanges.class::isInstance)
+                .map(PendingChanges.class::cast)
+                .findFirst()
+                .orElseGet(() -> {
+                    final var changes = new PendingChanges();
+                    TransactionSynchronizationManager.registerSynchronization(changes);
+                    return changes;
+                });
+        pendingChanges.add(addressBookId, contactId, type);
+    }
+
+    private void writeChanges(long addressBookId, Map<Long, AddressBookChangeType> changes) {
+        addressBookRepository.incrementVersion(addressBookId);
+        changes.forEach((contactId, type) -> addressBookChangeRepository.insert(addressBookId, contactId, type.name()));
+    }
+
+    /**
+     * The changes made to each address book in the current transaction, the latest for each contact, written when
+     * it is about to commit. Address books are versioned in id order, so that transactions changing the same ones
+     * take their row locks in the same order.
+     */
+    private class PendingChanges implements TransactionSynchronization {
+
+        private final Map<Long, Map<Long, AddressBookChangeType>> changesByAddressBook = new TreeMap<>();
+
+        void add(long addressBookId, long contactId, AddressBookChangeType type) {
+            changesByAddressBook.computeIfAbsent(addressBookId, id -> new LinkedHashMap<>()).put(contactId, type);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            changesByAddressBook.forEach(AddressBookService.this::writeChanges);
+        }
     }
 }
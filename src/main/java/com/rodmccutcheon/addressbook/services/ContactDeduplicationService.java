@@ -0,0 +1,132 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.dto.ContactMatchCandidate;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.repositories.ContactRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Saves new contacts into clusters of contacts that are the same person. Two contacts match when they share a
+ * phone number, once both are normalized to E.164, and every word of one's name appears in the other's. Only
+ * contacts filed under the same normalized number are ever compared, so saving a batch of contacts costs one
+ * indexed lookup rather than a comparison with every contact in the database.
+ * <p>
+ * Clusters only grow: a contact that joins two clusters merges them, and deleting a contact never splits one.
+ */
+@Service
+@Transactional
+public class ContactDeduplicationService {
+
+    private final ContactRepository contactRepository;
+    private final ContactNormalizer contactNormalizer;
+
+    public ContactDeduplicationService(ContactRepository contactRepository, ContactNormalizer contactNormalizer) {
+        this.contactRepository = contactRepository;
+        this.contactNormalizer = contactNormalizer;
+    }
+
+    /**
+     * Saves {@code contacts}, all of which must be new, each assigned to the cluster of the existing or newly
+     * saved contacts it matches.
+     */
+    public void saveNewContacts(List<Contact> contacts) {
+        final var matchKeys = new HashSet<String>();
+        for (Contact contact : contacts) {
+            contact.setMatchKeys(contactNormalizer.matchKeys(contact));
+            matchKeys.addAll(contact.getMatchKeys());
+        }
+        final var candidates = matchKeys.isEmpty()
+                ? List.<ContactMatchCandidate>of()
+                : contactRepository.findMatchCandidates(matchKeys);
+
+        // Nodes 0 to contacts.size() - 1 are the new contacts, the rest are the existing clusters
+        final var existingClusterNodes = new LinkedHashMap<Long, Integer>();
+        final var blocks = new HashMap<String, List<Member>>();
+        for (ContactMatchCandidate candidate : candidates) {
+            final int node = existingClusterNodes.computeIfAbsent(candidate.getEffectiveClusterId(),
+                    clusterId -> contacts.size() + existingClusterNodes.size());
+            blocks.computeIfAbsent(candidate.getMatchKey(), key -> new ArrayList<>())
+                    .add(new Member(node, contactNormalizer.nameTokens(candidate.getName())));
+        }
+        final var clusters = new DisjointSets(contacts.size() + existingClusterNodes.size());
+        for (int node = 0; node < contacts.size(); node++) {
+            final var member = new Member(node, contactNormalizer.nameTokens(contacts.get(node).getName()));
+            for (String matchKey : contacts.get(node).getMatchKeys()) {
+                final var block = blocks.computeIfAbsent(matchKey, key -> new ArrayList<>());
+                for (Member other : block) {
+                    if (member.isSamePersonAs(other)) {
+                        clusters.union(member.node, other.node);
+                    }
+                }
+                block.add(member);
+            }
+        }
+
+        // Each group of matching clusters takes the lowest existing cluster id, and the others are merged into it
+        final var clusterIds = new HashMap<Integer, Long>();
+        existingClusterNodes.forEach((clusterId, node) ->
+                clusterIds.merge(clusters.find(node), clusterId, Math::min));
+        final var mergedClusterIds = new HashMap<Long, List<Long>>();
+        existingClusterNodes.forEach((clusterId, node) -> {
+            final long target = clusterIds.get(clusters.find(node));
+            if (target != clusterId) {
+                mergedClusterIds.computeIfAbsent(target, id -> new ArrayList<>()).add(clusterId);
+            }
+        });
+
+        // A group with no existing cluster takes the id of its first contact, which is saved without a cluster id
+        for (int node = 0; node < contacts.size(); node++) {
+            final var contact = contacts.get(node);
+            final int root = clusters.find(node);
+            contact.setClusterId(clusterIds.get(root));
+            contactRepository.save(contact);
+            clusterIds.putIfAbsent(root, contact.getId());
+        }
+        mergedClusterIds.forEach(contactRepository::mergeClusters);
+    }
+
+    private static final class Member {
+
+        private final int node;
+        private final Set<String> nameTokens;
+
+        private Member(int node, Set<String> nameTokens) {
+            this.node = node;
+            this.nameTokens = nameTokens;
+        }
+
+        private boolean isSamePersonAs(Member other) {
+            if (nameTokens.isEmpty() || other.nameTokens.isEmpty()) {
+                return false;
+            }
+            return nameTokens.size() <= other.nameTokens.size()
+                    ? other.nameTokens.containsAll(nameTokens)
+                    : nameTokens.containsAll(other.nameTokens);
+        }
+    }
+
+    private static final class DisjointSets {
+
+        private final int[] parents;
+
+        private DisjointSets(int size) {
+            parents = new int[size];
+            Arrays.setAll(parents, i -> i);
+        }
+
+        private int find(int node) {
+            while (parents[node] != node) {
+                parents[node] = parents[parents[node]];
+                node = parents[node];
+            }
+            return node;
+        }
+
+        private void union(int node, int other) {
+            parents[find(node)] = find(other);
+        }
+    }
+}
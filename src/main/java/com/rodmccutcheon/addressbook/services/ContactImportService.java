@@ -0,0 +1,164 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.rodmccutcheon.addressbook.config.ShardKey;
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.dto.ImportResult;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.AddressBookChange;
+import com.rodmccutcheon.addressbook.entities.AddressBookChangeType;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.UniqueContact;
+import com.rodmccutcheon.addressbook.events.ContactsSavedEvent;
+import com.rodmccutcheon.addressbook.events.MembershipsChangedEvent;
+import com.rodmccutcheon.addressbook.repositories.AddressBookRepository;
+import com.rodmccutcheon.addressbook.repositories.ContactSearchIndex;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+/**
+ * Imports large numbers of new contacts into one address book. Contacts are read one at a time from a JSON
+ * array or newline delimited JSON, and written in chunks of {@code address-book.import.chunk-size}, each in
+ * its own transaction on the address book's shard. Within a chunk the persistence context is flushed every
+ * JDBC batch, so contact, phone number and membership rows go to the database as batched inserts and memory
+ * use stays flat.
+ */
+@Service
+@Log4j2
+public class ContactImportService {
+
+    private final AddressBookRepository addressBookRepository;
+    private final ContactDeduplicationService contactDeduplicationService;
+    private final ContactSearchIndex contactSearchIndex;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectReader contactReader;
+    private final int chunkSize;
+    private final int batchSize;
+
+    public ContactImportService(AddressBookRepository addressBookRepository,
+                                ContactDeduplicationService contactDeduplicationService,
+                                ContactSearchIndex contactSearchIndex, EntityManager entityManager,
+                                TransactionTemplate transactionTemplate, Validator validator,
+                                ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper,
+                                @Value("${address-book.import.chunk-size}") int chunkSize,
+                                @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}") int batchSize) {
+        this.addressBookRepository = addressBookRepository;
+        this.contactDeduplicationService = contactDeduplicationService;
+        this.contactSearchIndex = contactSearchIndex;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.validator = validator;
+        this.eventPublisher = eventPublisher;
+        this.contactReader = objectMapper.readerFor(Contact.class);
+        this.chunkSize = chunkSize;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Adds every valid contact in {@code contacts} to the address book as a new contact. Records that cannot be
+     * bound to a contact, or that fail validation, are counted as rejected and skipped. Chunks that have already
+     * been committed stay committed if the payload turns out to be malformed further on. The imported contacts can
+     * be searched for as soon as this returns.
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = AddressBookService.ADDRESS_BOOKS_CACHE, key = "#addressBookId"),
+            @CacheEvict(cacheNames = ContactService.UNIQUE_CONTACTS_CACHE, allEntries = true)
+    })
+    public ImportResult importContacts(@ShardKey long addressBookId, InputStream contacts) throws IOException {
+        if (!addressBookRepository.existsById(addressBookId)) {
+            throw new NoSuchElementException("No value present");
+        }
+        long accepted = 0;
+        long rejected = 0;
+        final List<Contact> chunk = new ArrayList<>(chunkSize);
+        try (MappingIterator<Contact> iterator = contactReader.readValues(contacts)) {
+            while (iterator.hasNextValue()) {
+                final Contact contact;
+                try {
+                    contact = iterator.nextValue();
+                } catch (JsonMappingException e) {
+                    rejected++;
+                    continue;
+                }
+                if (!validator.validate(contact).isEmpty()) {
+                    rejected++;
+                    continue;
+                }
+                chunk.add(contact);
+                if (chunk.size() == chunkSize) {
+                    accepted += persist(addressBookId, chunk);
+                    chunk.clear();
+                }
+            }
+        } catch (JsonParseException e) {
+            log.warn("Stopped importing contacts into address book {}: {}", addressBookId, e.getOriginalMessage());
+            final var result = new ImportResult(accepted + persist(addressBookId, chunk), rejected + 1,
+                    e.getOriginalMessage());
+            contactSearchIndex.refresh();
+            return result;
+        }
+        final var result = new ImportResult(accepted + persist(addressBookId, chunk), rejected, null);
+        contactSearchIndex.refresh();
+        return result;
+    }
+
+    private int persist(long addressBookId, List<Contact> contacts) {
+        if (contacts.isEmpty()) {
+            return 0;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            final List<ContactView> saved = new ArrayList<>(contacts.size());
+            for (int from = 0; from < contacts.size(); from += batchSize) {
+                final var batch = contacts.subList(from, Math.min(from + batchSize, contacts.size()));
+                for (Contact contact : batch) {
+                    contact.setId(null);
+                    contact.setAddressBooks(new HashSet<>());
+                }
+                contactDeduplicationService.saveNewContacts(batch);
+                // Hibernate writes each contact's collections together, so phone numbers and memberships are
+                // flushed separately to keep their inserts from interleaving and breaking up the JDBC batches
+                entityManager.flush();
+                final var addressBook = entityManager.getReference(AddressBook.class, addressBookId);
+                for (Contact contact : batch) {
+                    contact.getAddressBooks().add(addressBook);
+                    entityManager.persist(new UniqueContact(contact.getId(), 1));
+                }
+                entityManager.flush();
+                batch.forEach(contact -> saved.add(ContactView.of(contact)));
+                entityManager.clear();
+            }
+            // The whole chunk is one change to the address book, taken last to hold its row lock briefly
+            addressBookRepository.incrementVersion(addressBookId);
+            final long version = addressBookRepository.findVersionById(addressBookId);
+            saved.forEach(contact -> entityManager.persist(
+                    new AddressBookChange(addressBookId, version, contact.getId(), AddressBookChangeType.ADDED)));
+            eventPublisher.publishEvent(new ContactsSavedEvent(saved));
+            eventPublisher.publishEvent(new MembershipsChangedEvent(addressBookId, saved.stream()
+                    .map(ContactView::getId)
+                    .collect(Collectors.toList()), List.of()));
+        });
+        return contacts.size();
+    }
+}
@@ -0,0 +1,189 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.google.i18n.phonenumbers.NumberParseException;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.PhoneNumberUtil.ValidationResult;
+import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces contact details to canonical forms, so that the same person entered with different formatting can be
+ * recognised. Phone numbers without a country code are read as numbers in {@code address-book.dedup.default-region}.
+ * <p>
+ * Phone numbers of the default region, written with its country code or its trunk prefix, are formatted directly
+ * from their digits. Only other numbers are parsed by libphonenumber, which costs an order of magnitude more time
+ * and garbage per number.
+ */
+@Component
+public class ContactNormalizer {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern APOSTROPHES = Pattern.compile("['’`]");
+    private static final Pattern NON_ALPHANUMERICS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * The longest national number libphonenumber accepts.
+     */
+    private static final int MAX_NATIONAL_NUMBER_LENGTH = 17;
+    private static final long[] POWERS_OF_TEN = new long[MAX_NATIONAL_NUMBER_LENGTH + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final PhoneNumberUtil phoneNumberUtil = PhoneNumberUtil.getInstance();
+    private final String defaultRegion;
+    private final int countryCode;
+    private final int countryCodeLength;
+    private final boolean trunkPrefixIsZero;
+    private final ValidationResult[] lengthValidity = new ValidationResult[MAX_NATIONAL_NUMBER_LENGTH + 1];
+
+    public ContactNormalizer(@Value("${address-book.dedup.default-region}") String defaultRegion) {
+        this.defaultRegion = defaultRegion;
+        this.countryCode = phoneNumberUtil.getCountryCodeForRegion(defaultRegion);
+        this.countryCodeLength = Integer.toString(countryCode).length();
+        this.trunkPrefixIsZero = "0".equals(phoneNumberUtil.getNddPrefixForRegion(defaultRegion, true));
+        // Whether a number is possible only depends on its length, so each length is asked about once up front
+        for (int length = 1; length <= MAX_NATIONAL_NUMBER_LENGTH; length++) {
+            lengthValidity[length] = countryCode == 0
+                    ? ValidationResult.INVALID_COUNTRY_CODE
+                    : phoneNumberUtil.isPossibleNumberWithReason(new PhoneNumber()
+                    .setCountryCode(countryCode)
+                    .setNationalNumber(2 * POWERS_OF_TEN[length - 1]));
+        }
+    }
+
+    /**
+     * Formats a phone number as E.164, e.g. "(03) 9842 0944" as "+61398420944" in Australia, or returns empty
+     * if it cannot be read as a phone number.
+     */
+    public Optional<String> toE164(String phoneNumber) {
+        return Optional.ofNullable(formatE164(phoneNumber));
+    }
+
+    private String formatE164(String phoneNumber) {
+        if (phoneNumber == null || phoneNumber.isBlank()) {
+            return null;
+        }
+        final var formatted = formatE164Directly(phoneNumber);
+        if (formatted != null) {
+            return formatted;
+        }
+        try {
+            final var parsed = phoneNumberUtil.parse(phoneNumber, defaultRegion);
+            if (!phoneNumberUtil.isPossibleNumber(parsed)) {
+                return null;
+            }
+            return phoneNumberUtil.format(parsed, PhoneNumberUtil.PhoneNumberFormat.E164);
+        } catch (NumberParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Formats a number of the default region written as "+61 3 9842 0944" or "(03) 9842-0944", punctuated only with
+     * spaces, dashes, dots and brackets, in a single pass over its characters. Returns null for any other number,
+     * and for numbers of a length the region does not use, leaving them to libphonenumber.
+     */
+    private String formatE164Directly(String phoneNumber) {
+        final int length = phoneNumber.length();
+        int i = 0;
+        while (i < length && phoneNumber.charAt(i) == ' ') {
+            i++;
+        }
+        final boolean international = i < length && phoneNumber.charAt(i) == '+';
+        if (international) {
+            i++;
+        }
+        long digits = 0;
+        int digitCount = 0;
+        char firstDigit = 0;
+        char secondDigit = 0;
+        for (; i < length; i++) {
+            final char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digitCount > MAX_NATIONAL_NUMBER_LENGTH) {
+                    return null;
+                }
+                digits = digits * 10 + (c - '0');
+                if (digitCount == 1) {
+                    firstDigit = c;
+                } else if (digitCount == 2) {
+                    secondDigit = c;
+                }
+            } else if (c != ' ' && c != '-' && c != '.' && c != '(' && c != ')') {
+                return null;
+            }
+        }
+
+        // National numbers starting with 0 or 1 may carry prefixes only libphonenumber's metadata describes
+        final long nationalNumber;
+        final int nationalNumberLength;
+        if (international) {
+            nationalNumberLength = digitCount - countryCodeLength;
+            if (nationalNumberLength < 1 || digits / POWERS_OF_TEN[nationalNumberLength] != countryCode) {
+                return null;
+            }
+            nationalNumber = digits % POWERS_OF_TEN[nationalNumberLength];
+            if (nationalNumber < 2 * POWERS_OF_TEN[nationalNumberLength - 1]) {
+                return null;
+            }
+        } else if (trunkPrefixIsZero && firstDigit == '0' && secondDigit >= '2') {
+            // libphonenumber keeps the trunk prefix when the rest would only be possible dialled locally
+            nationalNumberLength = digitCount - 1;
+            nationalNumber = digits;
+            if (lengthValidity[nationalNumberLength] != ValidationResult.IS_POSSIBLE) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        final var validity = lengthValidity[nationalNumberLength];
+        return validity == ValidationResult.IS_POSSIBLE || validity == ValidationResult.IS_POSSIBLE_LOCAL_ONLY
+                ? "+" + countryCode + nationalNumber
+                : null;
+    }
+
+    /**
+     * The words of a name, lower-cased, without accents or punctuation, e.g. "Bell, Stringer" as
+     * [bell, stringer].
+     */
+    public Set<String> nameTokens(String name) {
+        if (name == null) {
+            return Set.of();
+        }
+        var canonical = Normalizer.normalize(name, Normalizer.Form.NFD);
+        canonical = COMBINING_MARKS.matcher(canonical).replaceAll("");
+        canonical = APOSTROPHES.matcher(canonical).replaceAll("");
+        canonical = NON_ALPHANUMERICS.matcher(canonical.toLowerCase(Locale.ROOT)).replaceAll(" ").strip();
+        return canonical.isEmpty() ? Set.of() : new TreeSet<>(Arrays.asList(canonical.split(" ")));
+    }
+
+    /**
+     * The keys under which a contact is filed for matching: each of its phone numbers in E.164.
+     */
+    public Set<String> matchKeys(Contact contact) {
+        final var matchKeys = new HashSet<String>();
+        for (String phoneNumber : contact.getPhoneNumbers().values()) {
+            final var matchKey = formatE164(phoneNumber);
+            if (matchKey != null) {
+                matchKeys.add(matchKey);
+            }
+        }
+        return matchKeys;
+    }
+}
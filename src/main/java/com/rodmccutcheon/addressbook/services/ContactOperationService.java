@@ -0,0 +1,95 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.config.RetryOnConflict;
+import com.rodmccutcheon.addressbook.config.ShardKey;
+import com.rodmccutcheon.addressbook.dto.QueuedContactOperation;
+import com.rodmccutcheon.addressbook.entities.ContactOperation;
+import com.rodmccutcheon.addressbook.entities.ContactOperationStatus;
+import com.rodmccutcheon.addressbook.repositories.ContactOperationRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Applies the contact operations queued by {@link ContactWriteBehindQueue}, and stores their outcomes on the shard
+ * of the address book they change.
+ */
+@Service
+@Transactional
+public class ContactOperationService {
+
+    private final ContactService contactService;
+    private final ContactOperationRepository contactOperationRepository;
+    private final ShardRouter shardRouter;
+
+    public ContactOperationService(ContactService contactService,
+                                   ContactOperationRepository contactOperationRepository, ShardRouter shardRouter) {
+        this.contactService = contactService;
+        this.contactOperationRepository = contactOperationRepository;
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Applies operations on one address book in a single transaction, in order. Each operation is recorded as
+     * applied in the same transaction, so one replayed after a restart is skipped rather than applied twice.
+     */
+    @RetryOnConflict
+    public void apply(@ShardKey long addressBookId, List<QueuedContactOperation> operations) {
+        final var applied = contactOperationRepository.findIdsByIdIn(operations.stream()
+                .map(QueuedContactOperation::getId)
+                .collect(Collectors.toList()));
+        for (QueuedContactOperation operation : operations) {
+            if (applied.contains(operation.getId())) {
+                continue;
+            }
+            final long contactId;
+            switch (operation.getType()) {
+                case ADD:
+                    contactId = contactService.addContactToAddressBook(addressBookId, operation.getContact()).getId();
+                    break;
+                case REMOVE:
+                    contactId = operation.getContactId();
+                    contactService.deleteContactFromAddressBook(addressBookId, contactId);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown operation type " + operation.getType());
+            }
+            contactOperationRepository.save(operation.completed(ContactOperationStatus.APPLIED, contactId, null));
+        }
+    }
+
+    public void recordFailure(@ShardKey long addressBookId, QueuedContactOperation operation, Exception exception) {
+        final var message = exception.getMessage() == null
+                ? exception.getClass().getSimpleName()
+                : exception.getMessage();
+        contactOperationRepository.save(operation.completed(ContactOperationStatus.FAILED, operation.getContactId(),
+                message.length() > ContactOperation.MAX_ERROR_LENGTH
+                        ? message.substring(0, ContactOperation.MAX_ERROR_LENGTH)
+                        : message));
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Optional<ContactOperation> getOperation(String operationId) {
+        return shardRouter.readEachShard(() -> contactOperationRepository.findById(operationId)).stream()
+                .flatMap(Optional::stream)
+                .findFirst();
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Set<String> findCompletedIds(Collection<String> operationIds) {
+        if (operationIds.isEmpty()) {
+            return Set.of();
+        }
+        final var completedIds = new HashSet<String>();
+        shardRouter.readEachShard(() -> contactOperationRepository.findIdsByIdIn(operationIds))
+                .forEach(completedIds::addAll);
+        return completedIds;
+    }
+}
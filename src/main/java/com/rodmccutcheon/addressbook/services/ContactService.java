@@ -1,44 +1,264 @@
 package com.rodmccutcheon.addressbook.services;
 
+import com.rodmccutcheon.addressbook.config.ReplicaContext;
+import com.rodmccutcheon.addressbook.config.RetryOnConflict;
+import com.rodmccutcheon.addressbook.config.ShardKey;
+import com.rodmccutcheon.addressbook.dto.BatchEntry;
+import com.rodmccutcheon.addressbook.dto.ContactView;
 import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.events.ContactsDeletedEvent;
+import com.rodmccutcheon.addressbook.events.ContactsSavedEvent;
 import com.rodmccutcheon.addressbook.repositories.ContactRepository;
+import com.rodmccutcheon.addressbook.repositories.ContactRowRepository;
+import com.rodmccutcheon.addressbook.repositories.ContactSearchIndex;
+import com.rodmccutcheon.addressbook.repositories.MembershipIndex;
+import com.rodmccutcheon.addressbook.repositories.UniqueContactRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+/**
+ * Contacts live on the shard of the address book they were added to, see {@link ShardRouter}, and can only be added
+ * to other address books on the same shard. Unique contacts are read from every shard.
+ */
 @Service
+@Transactional
 public class ContactService {
 
+    public static final String UNIQUE_CONTACTS_CACHE = "unique-contacts";
+
     private final ContactRepository contactRepository;
+    private final ContactRowRepository contactRowRepository;
+    private final ContactSearchIndex contactSearchIndex;
+    private final MembershipIndex membershipIndex;
+    private final UniqueContactRepository uniqueContactRepository;
     private final AddressBookService addressBookService;
+    private final ContactDeduplicationService contactDeduplicationService;
+    private final ContactNormalizer contactNormalizer;
+    private final ShardRouter shardRouter;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public ContactService(ContactRepository contactRepository, AddressBookService addressBookService) {
+    public ContactService(ContactRepository contactRepository, ContactRowRepository contactRowRepository,
+                          ContactSearchIndex contactSearchIndex, MembershipIndex membershipIndex,
+                          UniqueContactRepository uniqueContactRepository,
+                          AddressBookService addressBookService,
+                          ContactDeduplicationService contactDeduplicationService,
+                          ContactNormalizer contactNormalizer, ShardRouter shardRouter,
+                          ApplicationEventPublisher eventPublisher) {
         this.contactRepository = contactRepository;
+        this.contactRowRepository = contactRowRepository;
+        this.contactSearchIndex = contactSearchIndex;
+        this.membershipIndex = membershipIndex;
+        this.uniqueContactRepository = uniqueContactRepository;
         this.addressBookService = addressBookService;
+        this.contactDeduplicationService = contactDeduplicationService;
+        this.contactNormalizer = contactNormalizer;
+        this.shardRouter = shardRouter;
+        this.eventPublisher = eventPublisher;
     }
 
-    public Contact addContactToAddressBook(long addressBookId, Contact contact) {
-        Contact savedContact;
+    /**
+     * Adds the contact to the address book, saving it first if it is new, and counts the new membership in the
+     * unique contacts view.
+     */
+    @RetryOnConflict
+    @Caching(evict = {
+            @CacheEvict(cacheNames = AddressBookService.ADDRESS_BOOKS_CACHE, key = "#addressBookId"),
+            @CacheEvict(cacheNames = UNIQUE_CONTACTS_CACHE, allEntries = true)
+    })
+    public Contact addContactToAddressBook(@ShardKey long addressBookId, Contact contact) {
         if (contact.getId() != null) {
-            savedContact = contactRepository.findById(contact.getId()).orElseThrow();
-        } else {
-            savedContact = contactRepository.save(contact);
+            final var savedContact = contactRepository.findWithAddressBooksById(contact.getId()).orElseThrow();
+            if (addressBookService.addContact(addressBookId, savedContact)) {
+                uniqueContactRepository.addMembership(savedContact.getId());
+            }
+            return savedContact;
         }
-        addressBookService.addContact(addressBookId, savedContact);
-        return savedContact;
+        resetIfRolledBack(contact);
+        contactDeduplicationService.saveNewContacts(List.of(contact));
+        eventPublisher.publishEvent(new ContactsSavedEvent(List.of(ContactView.of(contact))));
+        addressBookService.addContact(addressBookId, contact);
+        uniqueContactRepository.insert(contact.getId(), contact.getAddressBooks().size());
+        return contact;
     }
 
-    public void deleteContactFromAddressBook(long addressBookId, long contactId) {
-        final var addressBook = addressBookService.getAddressBook(addressBookId);
-        final var contact = contactRepository.findById(contactId).orElseThrow();
-        contact.getAddressBooks().remove(addressBook);
-        addressBookService.removeContact(addressBook, contact);
+    /**
+     * Removes the contact from the address book, deleting it if it no longer belongs to any, and updates its row
+     * in the unique contacts view to match.
+     */
+    @RetryOnConflict
+    @Caching(evict = {
+            @CacheEvict(cacheNames = AddressBookService.ADDRESS_BOOKS_CACHE, key = "#addressBookId"),
+            @CacheEvict(cacheNames = UNIQUE_CONTACTS_CACHE, allEntries = true)
+    })
+    public void deleteContactFromAddressBook(@ShardKey long addressBookId, long contactId) {
+        final var contact = contactRepository.findWithAddressBooksById(contactId).orElseThrow();
+        final boolean removed = addressBookService.removeContact(addressBookId, contact);
         if (contact.getAddressBooks().isEmpty()) {
             contactRepository.delete(contact);
+            uniqueContactRepository.deleteByContactIdIn(List.of(contactId));
+            eventPublisher.publishEvent(new ContactsDeletedEvent(List.of(contactId)));
+        } else if (removed) {
+            uniqueContactRepository.adjustAddressBookCount(contactId, -1);
         }
     }
 
+    /**
+     * Reads the unique contacts of every shard at once, from the primary rather than a replica, as they are cached
+     * until a contact next changes.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Cacheable(UNIQUE_CONTACTS_CACHE)
     public Set<Contact> getUniqueContacts() {
-        return contactRepository.findDistinctByAddressBooksIn(addressBookService.getAllAddressBooks());
+        final var contacts = new HashSet<Contact>();
+        ReplicaContext.onPrimary(() -> shardRouter.readEachShard(contactRepository::findAllInAnyAddressBook))
+                .forEach(contacts::addAll);
+        return contacts;
+    }
+
+    /**
+     * Returns the contacts with their phone numbers, one entry for each of {@code contactIds} in the order given,
+     * marking the ids of contacts that do not exist as not found. Each shard is asked for all the ids in a single
+     * query.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<BatchEntry<ContactView>> getContactsById(List<Long> contactIds) {
+        final var distinctIds = contactIds.stream().distinct().collect(Collectors.toList());
+        final var contacts = new HashMap<Long, ContactView>();
+        if (!distinctIds.isEmpty()) {
+            shardRouter.readEachShard(() -> contactRepository.findWithPhoneNumbersByIdIn(distinctIds).stream()
+                            .map(ContactView::of)
+                            .collect(Collectors.toList()))
+                    .forEach(shardContacts -> shardContacts.forEach(contact -> contacts.put(contact.getId(), contact)));
+        }
+        return BatchEntry.inOrder(contactIds, contacts);
+    }
+
+    /**
+     * Contacts with the phone number, however it was formatted when they were added, ordered by id. The number is
+     * normalized to E.164 and looked up among the indexed match keys of every shard.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<ContactView> findContactsByPhoneNumber(String phoneNumber) {
+        final var matchKey = contactNormalizer.toE164(phoneNumber)
+                .orElseThrow(() -> new IllegalArgumentException("Not a phone number: " + phoneNumber));
+        final var contacts = new ArrayList<ContactView>();
+        shardRouter.readEachShard(() -> contactRepository.findWithPhoneNumbersByMatchKey(matchKey).stream()
+                        .map(ContactView::of)
+                        .collect(Collectors.toList()))
+                .forEach(contacts::addAll);
+        contacts.sort(Comparator.comparing(ContactView::getId));
+        return contacts;
+    }
+
+    /**
+     * Counts the contacts in any address book from the in-memory membership index, so no transaction is started.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long countUniqueContacts() {
+        return membershipIndex.countUniqueContacts();
+    }
+
+    /**
+     * Ids of the address books holding the contact, in ascending order, from the in-memory membership index.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long[] getAddressBookIds(long contactId) {
+        final var addressBookIds = membershipIndex.getAddressBookIds(contactId);
+        if (addressBookIds.length == 0) {
+            throw new NoSuchElementException("No value present");
+        }
+        return addressBookIds;
+    }
+
+    /**
+     * Streams every contact that belongs to at least one address book, one shard after another. The read-only
+     * transaction on each shard keeps the underlying cursor open while its rows are consumed.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void forEachUniqueContact(Consumer<ContactView> consumer) {
+        shardRouter.readEachShardInTurn(() -> contactRowRepository.forEachUniqueContact(consumer));
+    }
+
+    /**
+     * One contact for each cluster of contacts that are the same person, see
+     * {@link ContactRowRepository#forEachUniqueContactCluster(Consumer)}. Contacts are only clustered with others
+     * on the same shard. Read from the primary, like {@link #getUniqueContacts()}.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Cacheable(cacheNames = UNIQUE_CONTACTS_CACHE, key = "'clusters'")
+    public List<ContactView> getUniqueContactClusters() {
+        final var contacts = new ArrayList<ContactView>();
+        ReplicaContext.onPrimary(() -> shardRouter.readEachShard(() -> {
+            final var shardContacts = new ArrayList<ContactView>();
+            contactRowRepository.forEachUniqueContactCluster(shardContacts::add);
+            return shardContacts;
+        })).forEach(contacts::addAll);
+        return contacts;
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void forEachUniqueContactCluster(Consumer<ContactView> consumer) {
+        shardRouter.readEachShardInTurn(() -> contactRowRepository.forEachUniqueContactCluster(consumer));
+    }
+
+    /**
+     * Searches contact names by word, word prefix and near spelling, and phone numbers by their trailing digits.
+     * Results come from the in-memory search index, so no transaction is started.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<ContactView> searchContacts(String text, int limit) {
+        return contactSearchIndex.search(text, limit);
+    }
+
+    /**
+     * Loads the search index from the database once at startup. From then on it is kept up to date by the
+     * events published when contacts are saved or deleted.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void buildSearchIndex() {
+        shardRouter.readEachShardInTurn(() -> contactRowRepository.forEachUniqueContact(contactSearchIndex::add));
+        contactSearchIndex.refresh();
+    }
+
+    /**
+     * Returns a new contact to its unsaved state if the transaction saving it rolls back, so that a retry saves it
+     * afresh.
+     */
+    private static void resetIfRolledBack(Contact contact) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        final var addressBooks = new HashSet<>(contact.getAddressBooks());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    contact.setId(null);
+                    contact.setVersion(0);
+                    contact.setClusterId(null);
+                    contact.setAddressBooks(addressBooks);
+                }
+            }
+        });
     }
 }
@@ -0,0 +1,239 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rodmccutcheon.addressbook.dto.QueuedContactOperation;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.ContactOperation;
+import com.rodmccutcheon.addressbook.entities.ContactOperationType;
+import com.rodmccutcheon.addressbook.repositories.ContactOperationLog;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Opt-in write-behind for contact changes, enabled with {@code address-book.write-behind.enabled=true}. A change
+ * is accepted once it has been appended to the {@link ContactOperationLog}, and applied later by one of
+ * {@code address-book.write-behind.workers} workers, so bursts of changes queue on disk rather than for database
+ * connections.
+ * <p>
+ * Every address book is served by the same worker, which applies the operations on it in the order they were
+ * accepted. A worker takes up to {@code address-book.write-behind.max-batch-size} operations at a time and applies
+ * those on each address book in one transaction. If that transaction fails, the operations are applied one at a
+ * time, so that only the failing ones are recorded as failed. Operations still in the log at startup are replayed,
+ * skipping those already applied. Each operation is marked completed in the log once applied, so that the log's
+ * segments are deleted as soon as every operation in them has been applied, however busy the queue stays.
+ */
+@Service
+@ConditionalOnExpression(ContactWriteBehindQueue.ENABLED)
+@Log4j2
+public class ContactWriteBehindQueue {
+
+    /**
+     * Write-behind is enabled, and the application is not serving a read-only snapshot.
+     */
+    public static final String ENABLED =
+            "${address-book.write-behind.enabled:false} and !${address-book.snapshot.read-only:false}";
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    // Operation ids looked up at a time when checking which logged operations were already applied
+    private static final int REPLAY_LOOKUP_SIZE = 1000;
+
+    private final ContactOperationService contactOperationService;
+    private final ContactOperationLog operationLog;
+    private final List<BlockingQueue<QueuedContactOperation>> queues = new ArrayList<>();
+    private final Map<String, QueuedContactOperation> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ExecutorService workers;
+    private final int maxBatchSize;
+    private final int maxQueued;
+    private volatile boolean running = true;
+
+    public ContactWriteBehindQueue(ContactOperationService contactOperationService, ObjectMapper objectMapper,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${address-book.write-behind.directory}") Path directory,
+                                   @Value("${address-book.write-behind.workers}") int workers,
+                                   @Value("${address-book.write-behind.max-batch-size}") int maxBatchSize,
+                                   @Value("${address-book.write-behind.max-queued}") int maxQueued,
+                                   @Value("${address-book.write-behind.segment-size}") DataSize segmentSize)
+            throws IOException {
+        this.contactOperationService = contactOperationService;
+        this.operationLog = new ContactOperationLog(directory, objectMapper, segmentSize.toBytes());
+        final var threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workers, runnable -> {
+            final var thread = new Thread(runnable, "contact-write-behind-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int worker = 0; worker < workers; worker++) {
+            queues.add(new LinkedBlockingQueue<>());
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxQueued = maxQueued;
+        Gauge.builder("address-book.write-behind.queued", pending, Map::size)
+                .baseUnit("operations")
+                .description("Contact operations accepted but not yet applied")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Accepts the addition of a contact to an address book.
+     *
+     * @throws RejectedExecutionException if {@code address-book.write-behind.max-queued} operations are waiting
+     */
+    public ContactOperation add(long addressBookId, Contact contact) {
+        return accept(new QueuedContactOperation(UUID.randomUUID().toString(), ContactOperationType.ADD,
+                addressBookId, contact, contact.getId(), Instant.now()));
+    }
+
+    /**
+     * Accepts the removal of a contact from an address book.
+     *
+     * @throws RejectedExecutionException if {@code address-book.write-behind.max-queued} operations are waiting
+     */
+    public ContactOperation remove(long addressBookId, long contactId) {
+        return accept(new QueuedContactOperation(UUID.randomUUID().toString(), ContactOperationType.REMOVE,
+                addressBookId, null, contactId, Instant.now()));
+    }
+
+    public ContactOperation getOperation(String operationId) {
+        final var queued = pending.get(operationId);
+        if (queued != null) {
+            return queued.queued();
+        }
+        return contactOperationService.getOperation(operationId).orElseThrow();
+    }
+
+    /**
+     * Replays the operations left in the log by the last run, then starts the workers.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        final var logged = operationLog.readAll();
+        final var applied = new HashSet<String>();
+        for (int from = 0; from < logged.size(); from += REPLAY_LOOKUP_SIZE) {
+            applied.addAll(contactOperationService.findCompletedIds(logged
+                    .subList(from, Math.min(from + REPLAY_LOOKUP_SIZE, logged.size())).stream()
+                    .map(QueuedContactOperation::getId)
+                    .collect(Collectors.toList())));
+        }
+        operationLog.complete(applied);
+        final var replayed = logged.stream()
+                .filter(operation -> !applied.contains(operation.getId()))
+                .collect(Collectors.toList());
+        if (!replayed.isEmpty()) {
+            log.info("Replaying {} contact operations accepted before the last shutdown", replayed.size());
+        }
+        replayed.forEach(this::enqueue);
+        queues.forEach(queue -> workers.execute(() -> work(queue)));
+    }
+
+    /**
+     * Stops the workers once they have applied their current batch. Operations not yet applied stay in the log, to
+     * be replayed on the next start.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        workers.shutdown();
+        workers.awaitTermination(30, TimeUnit.SECONDS);
+        operationLog.close();
+    }
+
+    private ContactOperation accept(QueuedContactOperation operation) {
+        // Reserved before checking, so that concurrent callers cannot all pass the check at once
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            throw new RejectedExecutionException("Too many contact operations are waiting to be applied");
+        }
+        pending.put(operation.getId(), operation);
+        try {
+            operationLog.append(operation);
+        } catch (IOException e) {
+            pending.remove(operation.getId());
+            queued.decrementAndGet();
+            throw new UncheckedIOException(e);
+        }
+        queueOf(operation.getAddressBookId()).add(operation);
+        return operation.queued();
+    }
+
+    private void enqueue(QueuedContactOperation operation) {
+        queued.incrementAndGet();
+        pending.put(operation.getId(), operation);
+        queueOf(operation.getAddressBookId()).add(operation);
+    }
+
+    private BlockingQueue<QueuedContactOperation> queueOf(long addressBookId) {
+        return queues.get(Math.floorMod(Long.hashCode(addressBookId), queues.size()));
+    }
+
+    private void work(BlockingQueue<QueuedContactOperation> queue) {
+        final var batch = new ArrayList<QueuedContactOperation>(maxBatchSize);
+        while (running) {
+            try {
+                final var first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                apply(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException | IOException e) {
+                log.error("Could not apply {} contact operations", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void apply(List<QueuedContactOperation> batch) throws IOException {
+        final var byAddressBook = batch.stream().collect(Collectors.groupingBy(
+                QueuedContactOperation::getAddressBookId, LinkedHashMap::new, Collectors.toList()));
+        byAddressBook.forEach((addressBookId, operations) -> {
+            try {
+                contactOperationService.apply(addressBookId, operations);
+            } catch (RuntimeException e) {
+                operations.forEach(this::applyAlone);
+            } finally {
+                operations.forEach(operation -> {
+                    pending.remove(operation.getId());
+                    queued.decrementAndGet();
+                });
+            }
+        });
+        operationLog.complete(batch.stream().map(QueuedContactOperation::getId).collect(Collectors.toList()));
+    }
+
+    private void applyAlone(QueuedContactOperation operation) {
+        try {
+            contactOperationService.apply(operation.getAddressBookId(), List.of(operation));
+        } catch (RuntimeException e) {
+            log.debug("Contact operation {} failed", operation.getId(), e);
+            contactOperationService.recordFailure(operation.getAddressBookId(), operation, e);
+        }
+    }
+}
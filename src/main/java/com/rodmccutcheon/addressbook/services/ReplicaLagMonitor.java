@@ -0,0 +1,76 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.config.ReadReplicas;
+import com.rodmccutcheon.addressbook.entities.ReplicationHeartbeat;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Measures how far each replica lags behind the primary, every {@code address-book.replicas.heartbeat-interval}. The
+ * primary's heartbeat row is rewritten with the current time each time, and a replica lags by the age of the copy it
+ * holds, to within one interval. A replica that cannot be read is not read from until it can be again.
+ */
+@Component
+@ConditionalOnExpression("!'${address-book.replicas.urls:}'.isBlank()")
+@Log4j2
+public class ReplicaLagMonitor {
+
+    private static final String SELECT_BEAT = "select beat from replication_heartbeat where id = " +
+            ReplicationHeartbeat.ID;
+
+    private final ReadReplicas readReplicas;
+    private final JdbcTemplate primary;
+    private final List<JdbcTemplate> replicas;
+
+    public ReplicaLagMonitor(ReadReplicas readReplicas, DataSource dataSource, MeterRegistry meterRegistry) {
+        this.readReplicas = readReplicas;
+        this.primary = new JdbcTemplate(dataSource);
+        this.replicas = readReplicas.getReplicas().stream()
+                .map(JdbcTemplate::new)
+                .collect(Collectors.toList());
+        for (int replica = 0; replica < replicas.size(); replica++) {
+            final int index = replica;
+            Gauge.builder("address-book.replica.lag", readReplicas,
+                            replicasLag -> replicasLag.getLag(index).map(Duration::toMillis).orElse(-1L))
+                    .tag("replica", Integer.toString(replica))
+                    .baseUnit("milliseconds")
+                    .description("How far the replica lags behind the primary, or -1 if it cannot be read")
+                    .register(meterRegistry);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${address-book.replicas.heartbeat-interval}")
+    public void refresh() {
+        final var now = Instant.now();
+        for (int replica = 0; replica < replicas.size(); replica++) {
+            try {
+                final var beats = replicas.get(replica).queryForList(SELECT_BEAT, Timestamp.class);
+                readReplicas.recordLag(replica, beats.isEmpty()
+                        ? null
+                        : Duration.between(beats.get(0).toInstant(), now));
+            } catch (DataAccessException e) {
+                log.warn("Could not read the heartbeat of replica {}: {}", replica, e.getMessage());
+                readReplicas.recordLag(replica, null);
+            }
+        }
+        final var beat = Timestamp.from(now);
+        if (primary.update("update replication_heartbeat set beat = ? where id = ?", beat,
+                ReplicationHeartbeat.ID) == 0) {
+            primary.update("insert into replication_heartbeat (id, beat) values (?, ?)", ReplicationHeartbeat.ID,
+                    beat);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.config.ShardContext;
+import com.rodmccutcheon.addressbook.dto.ShardSize;
+import com.rodmccutcheon.addressbook.repositories.AddressBookRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Moves address books between shards, to even out how much each shard holds. An address book is copied with its
+ * contacts, memberships, changes and write-behind outcomes, then recorded in the directory of {@link ShardRouter},
+ * and only then deleted from the shard it came from. Its row stays locked on that shard throughout, so changes to it
+ * wait for the move to finish, and then fail, rather than being lost. If the move fails once the copy has been
+ * committed, the directory is pointed back at the shard it came from and the copy is deleted, so that the move can
+ * be tried again.
+ * <p>
+ * Contacts belong to a single shard, so an address book sharing contacts with other address books cannot be moved.
+ */
+@Service
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Log4j2
+public class ShardRebalancingService {
+
+    private static final String MEMBERS = "(select contact_id from contact_address_books where address_book_id = ?)";
+
+    /**
+     * Tables holding an address book's rows, each with the condition selecting them, in the order they are copied.
+     */
+    private static final Map<String, String> TABLES = new LinkedHashMap<>();
+
+    static {
+        TABLES.put("address_book", "id = ?");
+        TABLES.put("contact", "id in " + MEMBERS);
+        TABLES.put("contact_phone_numbers", "contact_id in " + MEMBERS);
+        TABLES.put("contact_match_keys", "contact_id in " + MEMBERS);
+        TABLES.put("contact_address_books", "address_book_id = ?");
+        TABLES.put("unique_contact", "contact_id in " + MEMBERS);
+        TABLES.put("address_book_change", "address_book_id = ?");
+        TABLES.put("contact_operation", "address_book_id = ?");
+    }
+
+    private static final int BATCH_SIZE = 500;
+
+    private final ShardRouter shardRouter;
+    private final AddressBookRepository addressBookRepository;
+    private final DataSource dataSource;
+
+    public ShardRebalancingService(ShardRouter shardRouter, AddressBookRepository addressBookRepository,
+                                   DataSource dataSource) {
+        this.shardRouter = shardRouter;
+        this.addressBookRepository = addressBookRepository;
+        this.dataSource = dataSource;
+    }
+
+    public List<ShardSize> getShardSizes() {
+        final var counts = shardRouter.readEachShard(() -> new long[]{
+                addressBookRepository.count(),
+                addressBookRepository.countMemberships()
+        });
+        return IntStream.range(0, counts.size())
+                .mapToObj(shard -> new ShardSize(shard, counts.get(shard)[0], counts.get(shard)[1]))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Moves the address book to {@code shard}, and returns the shard it was moved from.
+     */
+    @CacheEvict(cacheNames = AddressBookService.ADDRESS_BOOKS_CACHE, key = "#addressBookId")
+    public int moveAddressBook(long addressBookId, int shard) throws SQLException {
+        if (shard < 0 || shard >= shardRouter.getShards()) {
+            throw new IllegalArgumentException("There is no shard " + shard);
+        }
+        final int sourceShard = shardRouter.shardOf(addressBookId);
+        if (sourceShard == shard) {
+            return sourceShard;
+        }
+        try (Connection source = connect(sourceShard); Connection target = connect(shard)) {
+            List<Long> contactIds = List.of();
+            boolean copied = false;
+            boolean moved = false;
+            try {
+                lock(source, addressBookId);
+                contactIds = findContactIds(source, addressBookId);
+                for (Map.Entry<String, String> table : TABLES.entrySet()) {
+                    copy(source, target, table.getKey(), table.getValue(), addressBookId);
+                }
+                target.commit();
+                copied = true;
+                shardRouter.recordMove(addressBookId, shard);
+                moved = true;
+                deleteAddressBook(source, addressBookId, contactIds);
+                source.commit();
+            } catch (SQLException | RuntimeException e) {
+                target.rollback();
+                source.rollback();
+                if (copied) {
+                    undoCopy(target, addressBookId, contactIds, moved ? sourceShard : null, e);
+                }
+                throw e;
+            }
+        }
+        log.info("Moved address book {} from shard {} to shard {}", addressBookId, sourceShard, shard);
+        return sourceShard;
+    }
+
+    /**
+     * Points the directory back at {@code sourceShard}, unless it is null as the move was never recorded, and
+     * deletes the committed copy from the target. Failures are added to {@code failure}, as the copy may then be left
+     * behind.
+     */
+    private void undoCopy(Connection target, long addressBookId, List<Long> contactIds, Integer sourceShard,
+                          Exception failure) {
+        try {
+            if (sourceShard != null) {
+                shardRouter.recordMove(addressBookId, sourceShard);
+            }
+            deleteAddressBook(target, addressBookId, contactIds);
+            target.commit();
+        } catch (SQLException | RuntimeException e) {
+            log.error("Could not delete the copy of address book {} left by a failed move", addressBookId, e);
+            failure.addSuppressed(e);
+        }
+    }
+
+    private Connection connect(int shard) throws SQLException {
+        final var connection = shardRouter.onShard(shard, () -> {
+            try {
+                return dataSource.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not connect to shard " + shard, e);
+            }
+        });
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    private static void lock(Connection source, long addressBookId) throws SQLException {
+        try (var select = source.prepareStatement("select id from address_book where id = ? for update")) {
+            select.setLong(1, addressBookId);
+            try (var rows = select.executeQuery()) {
+                if (!rows.next()) {
+                    throw new NoSuchElementException("No value present");
+                }
+            }
+        }
+    }
+
+    private static List<Long> findContactIds(Connection source, long addressBookId) throws SQLException {
+        try (var select = source.prepareStatement("select m.contact_id, " +
+                "(select count(*) from contact_address_books o where o.contact_id = m.contact_id) " +
+                "from contact_address_books m where m.address_book_id = ?")) {
+            select.setLong(1, addressBookId);
+            final var contactIds = new ArrayList<Long>();
+            try (var rows = select.executeQuery()) {
+                while (rows.next()) {
+                    if (rows.getLong(2) > 1) {
+                        throw new IllegalStateException("Address book " + addressBookId
+                                + " shares contacts with other address books, so cannot be moved");
+                    }
+                    contactIds.add(rows.getLong(1));
+                }
+            }
+            return contactIds;
+        }
+    }
+
+    private static void copy(Connection source, Connection target, String table, String condition,
+                             long addressBookId) throws SQLException {
+        try (var select = source.prepareStatement("select * from " + table + " where " + condition)) {
+            select.setLong(1, addressBookId);
+            try (var rows = select.executeQuery()) {
+                final var metaData = rows.getMetaData();
+                final var columns = new ArrayList<String>();
+                for (int column = 1; column <= metaData.getColumnCount(); column++) {
+                    columns.add(metaData.getColumnName(column));
+                }
+                try (PreparedStatement insert = target.prepareStatement("insert into " + table + " ("
+                        + String.join(", ", columns) + ") values ("
+                        + String.join(", ", columns.stream().map(column -> "?").collect(Collectors.toList()))
+                        + ")")) {
+                    int batched = 0;
+                    while (rows.next()) {
+                        for (int column = 1; column <= columns.size(); column++) {
+                            insert.setObject(column, rows.getObject(column));
+                        }
+                        insert.addBatch();
+                        if (++batched % BATCH_SIZE == 0) {
+                            insert.executeBatch();
+                        }
+                    }
+                    insert.executeBatch();
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the address book's rows from {@code TABLES}, in the reverse of the order they are copied.
+     */
+    private static void deleteAddressBook(Connection connection, long addressBookId, List<Long> contactIds)
+            throws SQLException {
+        delete(connection, "contact_operation", "address_book_id = ?", addressBookId);
+        delete(connection, "address_book_change", "address_book_id = ?", addressBookId);
+        delete(connection, "unique_contact", "contact_id in " + MEMBERS, addressBookId);
+        delete(connection, "contact_match_keys", "contact_id in " + MEMBERS, addressBookId);
+        delete(connection, "contact_phone_numbers", "contact_id in " + MEMBERS, addressBookId);
+        delete(connection, "contact_address_books", "address_book_id = ?", addressBookId);
+        deleteContacts(connection, contactIds);
+        delete(connection, "address_book", "id = ?", addressBookId);
+    }
+
+    private static void delete(Connection connection, String table, String condition, long addressBookId)
+            throws SQLException {
+        try (var delete = connection.prepareStatement("delete from " + table + " where " + condition)) {
+            delete.setLong(1, addressBookId);
+            delete.executeUpdate();
+        }
+    }
+
+    private static void deleteContacts(Connection connection, List<Long> contactIds) throws SQLException {
+        try (var delete = connection.prepareStatement("delete from contact where id = ?")) {
+            for (int index = 0; index < contactIds.size(); index++) {
+                delete.setLong(1, contactIds.get(index));
+                delete.addBatch();
+                if ((index + 1) % BATCH_SIZE == 0) {
+                    delete.executeBatch();
+                }
+            }
+            delete.executeBatch();
+        }
+    }
+}
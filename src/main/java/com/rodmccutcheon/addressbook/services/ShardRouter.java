@@ -0,0 +1,182 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.config.JdbcUsage;
+import com.rodmccutcheon.addressbook.config.ReplicaContext;
+import com.rodmccutcheon.addressbook.config.ShardContext;
+import com.rodmccutcheon.addressbook.entities.AddressBookShard;
+import com.rodmccutcheon.addressbook.repositories.AddressBookShardRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Decides which shard each address book lives on. Shard 0 is {@code spring.datasource}, and shards 1 onwards are the
+ * databases listed in {@code address-book.sharding.urls}. An address book lives on the shard its id was allocated
+ * on, as each shard allocates ids from its own range of {@link #ID_RANGE} ids, unless it has since been moved by
+ * {@link ShardRebalancingService}. Its contacts, memberships and changes live on the same shard.
+ * <p>
+ * Moves are recorded in a directory on shard 0, which is loaded at startup and kept up to date by the moves made
+ * through this instance.
+ */
+@Component
+public class ShardRouter {
+
+    public static final long ID_RANGE = 1L << 40;
+
+    private final int shards;
+    private final AddressBookShardRepository addressBookShardRepository;
+    private final TransactionTemplate readTransactionTemplate;
+    private final TransactionTemplate writeTransactionTemplate;
+    private final ExecutorService executor;
+    private final Map<Long, Integer> movedAddressBooks = new ConcurrentHashMap<>();
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    public ShardRouter(@Value("${address-book.sharding.urls}") List<String> shardUrls,
+                       AddressBookShardRepository addressBookShardRepository,
+                       PlatformTransactionManager transactionManager) {
+        this.shards = 1 + shardUrls.size();
+        this.addressBookShardRepository = addressBookShardRepository;
+        this.readTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTransactionTemplate.setReadOnly(true);
+        this.writeTransactionTemplate = new TransactionTemplate(transactionManager);
+        final var readers = new AtomicInteger();
+        this.executor = shards == 1 ? null : Executors.newFixedThreadPool(shards, runnable -> {
+            final var thread = new Thread(runnable, "shard-reader-" + readers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void loadDirectory() {
+        if (shards > 1) {
+            addressBookShardRepository.findAll().forEach(addressBookShard ->
+                    movedAddressBooks.put(addressBookShard.getAddressBookId(), addressBookShard.getShard()));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * The shard holding the address book. Ids outside every shard's range cannot belong to any address book.
+     */
+    public int shardOf(long addressBookId) {
+        final var moved = movedAddressBooks.get(addressBookId);
+        final long shard = moved != null ? moved : addressBookId / ID_RANGE;
+        if (shard < 0 || shard >= shards) {
+            throw new NoSuchElementException("No value present");
+        }
+        return (int) shard;
+    }
+
+    /**
+     * Spreads new address books over the shards in turn.
+     */
+    public int shardForNewAddressBook() {
+        return Math.floorMod(nextShard.getAndIncrement(), shards);
+    }
+
+    /**
+     * Runs {@code action} with its connections going to {@code shard}. A transaction it starts runs on that shard.
+     */
+    public <T> T onShard(int shard, Supplier<T> action) {
+        final var previous = ShardContext.set(shard);
+        try {
+            return action.get();
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    /**
+     * Runs {@code read} on every shard at once, each in a read-only transaction, and returns the results in shard
+     * order. Whether the calling thread reads from the primary only, see {@link ReplicaContext}, carries over to the
+     * threads reading the shards, and their statements and rows are counted in the calling thread's
+     * {@link JdbcUsage}.
+     */
+    public <T> List<T> readEachShard(Supplier<T> read) {
+        if (executor == null) {
+            return Collections.singletonList(onShard(0, () -> readTransactionTemplate.execute(status -> read.get())));
+        }
+        final boolean primaryOnly = ReplicaContext.isPrimaryOnly();
+        final var usage = JdbcUsage.current();
+        final var reads = new ArrayList<CompletableFuture<T>>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            final int readShard = shard;
+            reads.add(CompletableFuture.supplyAsync(() -> {
+                final boolean previousPrimaryOnly = ReplicaContext.setPrimaryOnly(primaryOnly);
+                final var previousUsage = JdbcUsage.set(usage);
+                try {
+                    return onShard(readShard, () -> readTransactionTemplate.execute(status -> read.get()));
+                } finally {
+                    JdbcUsage.set(previousUsage);
+                    ReplicaContext.setPrimaryOnly(previousPrimaryOnly);
+                }
+            }, executor));
+        }
+        try {
+            return reads.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Runs {@code read} on one shard after another on the calling thread, each in a read-only transaction, for reads
+     * that stream their results to the caller.
+     */
+    public void readEachShardInTurn(Runnable read) {
+        for (int shard = 0; shard < shards; shard++) {
+            onShard(shard, () -> readTransactionTemplate.execute(status -> {
+                read.run();
+                return null;
+            }));
+        }
+    }
+
+    /**
+     * Runs {@code write} on one shard after another, each in a transaction of its own, and returns the results in
+     * shard order.
+     */
+    public <T> List<T> writeEachShard(Supplier<T> write) {
+        final var results = new ArrayList<T>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            results.add(onShard(shard, () -> writeTransactionTemplate.execute(status -> write.get())));
+        }
+        return results;
+    }
+
+    /**
+     * Records in the directory that the address book now lives on {@code shard}.
+     */
+    void recordMove(long addressBookId, int shard) {
+        onShard(0, () -> addressBookShardRepository.save(new AddressBookShard(addressBookId, shard)));
+        movedAddressBooks.put(addressBookId, shard);
+    }
+}
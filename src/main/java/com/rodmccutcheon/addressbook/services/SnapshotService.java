@@ -0,0 +1,207 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.config.ReplicaContext;
+import com.rodmccutcheon.addressbook.config.ShardContext;
+import com.rodmccutcheon.addressbook.dto.SnapshotSummary;
+import com.rodmccutcheon.addressbook.repositories.AddressBookSnapshot;
+import com.rodmccutcheon.addressbook.repositories.AddressBookSnapshotWriter;
+import com.rodmccutcheon.addressbook.repositories.SnapshotRowRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * Takes snapshots of every address book, contact and phone number into {@code address-book.snapshot.file}, see
+ * {@link AddressBookSnapshot}, and uses them at startup. With {@code address-book.snapshot.restore-on-startup}, an
+ * empty database is loaded from the snapshot in batches of plain inserts, rather than seeded one entity at a time.
+ * With {@code address-book.snapshot.read-only}, the snapshot is only mapped, and reads are served from it by
+ * {@code SnapshotController} without touching the database.
+ * <p>
+ * Each shard is read in a transaction of its own, so a snapshot taken while address books change is consistent
+ * within each shard, but not across them.
+ */
+@Service
+@Log4j2
+public class SnapshotService {
+
+    // Like the first sequence value of each shard, leaves room for the ids the pooled optimizer hands out first
+    private static final long SEQUENCE_HEADROOM = 1000;
+
+    private final Path file;
+    private final boolean restoreOnStartup;
+    private final boolean saveOnShutdown;
+    private final boolean readOnly;
+    private final SnapshotRowRepository snapshotRowRepository;
+    private final ShardRouter shardRouter;
+    private final MeterRegistry meterRegistry;
+    private volatile AddressBookSnapshot snapshot;
+    private volatile String loadedBy;
+
+    public SnapshotService(@Value("${address-book.snapshot.file}") Path file,
+                           @Value("${address-book.snapshot.restore-on-startup}") boolean restoreOnStartup,
+                           @Value("${address-book.snapshot.save-on-shutdown}") boolean saveOnShutdown,
+                           @Value("${address-book.snapshot.read-only}") boolean readOnly,
+                           SnapshotRowRepository snapshotRowRepository,
+                           ShardRouter shardRouter,
+                           MeterRegistry meterRegistry) {
+        this.file = file;
+        this.restoreOnStartup = restoreOnStartup;
+        this.saveOnShutdown = saveOnShutdown;
+        this.readOnly = readOnly;
+        this.snapshotRowRepository = snapshotRowRepository;
+        this.shardRouter = shardRouter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        final long start = System.nanoTime();
+        if (readOnly) {
+            snapshot = AddressBookSnapshot.open(file);
+            recordLoad("read-only", start);
+        } else if (restoreOnStartup && Files.exists(file)) {
+            final int contacts = restore();
+            if (contacts >= 0) {
+                log.info("Restored {} contacts from {}", contacts, file);
+                recordLoad("restore", start);
+            }
+        }
+    }
+
+    /**
+     * Reports how long after the JVM started the application was ready, when it started from a snapshot.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ready() {
+        if (loadedBy != null) {
+            log.info("Ready {} ms after the JVM started, with the snapshot loaded by {}",
+                    ManagementFactory.getRuntimeMXBean().getUptime(), loadedBy);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (saveOnShutdown && !readOnly) {
+            try {
+                save();
+            } catch (IOException | RuntimeException e) {
+                log.error("Could not save a snapshot on shutdown", e);
+            }
+        }
+        if (snapshot != null) {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Writes every shard to a new snapshot, read from the primary database rather than a replica, and replaces the
+     * previous snapshot with it once it is complete.
+     */
+    public synchronized SnapshotSummary save() throws IOException {
+        if (readOnly) {
+            throw new IllegalStateException("Snapshots are not taken while serving one read-only");
+        }
+        final var writer = new AddressBookSnapshotWriter();
+        final boolean primaryOnly = ReplicaContext.setPrimaryOnly(true);
+        try {
+            shardRouter.readEachShardInTurn(() -> snapshotRowRepository.exportTo(writer, ShardContext.current()));
+        } finally {
+            ReplicaContext.setPrimaryOnly(primaryOnly);
+        }
+        final var summary = writer.write(file);
+        log.info("Saved {} address books and {} contacts to {}", summary.getAddressBooks(), summary.getContacts(),
+                file);
+        return summary;
+    }
+
+    /**
+     * What the snapshot file holds, if there is one.
+     */
+    public Optional<SnapshotSummary> getSummary() throws IOException {
+        if (snapshot != null) {
+            return Optional.of(snapshot.getSummary());
+        }
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (var saved = AddressBookSnapshot.open(file)) {
+            return Optional.of(saved.getSummary());
+        }
+    }
+
+    /**
+     * The snapshot being served read-only.
+     */
+    public AddressBookSnapshot getSnapshot() {
+        if (snapshot == null) {
+            throw new IllegalStateException("No snapshot is being served");
+        }
+        return snapshot;
+    }
+
+    /**
+     * Loads the snapshot into the database if no shard holds any address books yet, putting each address book back
+     * on the shard it was taken from. Returns the number of contacts restored, or -1 if the database was not empty.
+     */
+    private int restore() throws IOException {
+        try (var saved = AddressBookSnapshot.open(file)) {
+            if (!shardRouter.readEachShard(snapshotRowRepository::isEmpty).stream().allMatch(Boolean::booleanValue)) {
+                log.info("Not restoring {}, as the database already holds address books", file);
+                return -1;
+            }
+            final var addressBookShards = saved.getAddressBookShards();
+            if (addressBookShards.values().stream().anyMatch(shard -> shard >= shardRouter.getShards())) {
+                throw new IllegalStateException(file + " was taken from more shards than there are");
+            }
+            final int contacts = shardRouter.writeEachShard(() -> {
+                final int shard = ShardContext.current();
+                final int restored = snapshotRowRepository.importFrom(saved, shard);
+                final long rangeStart = shard * ShardRouter.ID_RANGE;
+                final long rangeEnd = rangeStart + ShardRouter.ID_RANGE;
+                restartSequence("address_book_seq", saved.lastAddressBookIdBelow(rangeEnd), rangeStart);
+                restartSequence("contact_seq", saved.lastContactIdBelow(rangeEnd), rangeStart);
+                return restored;
+            }).stream().mapToInt(Integer::intValue).sum();
+            addressBookShards.forEach((addressBookId, shard) -> {
+                if (shard != addressBookId / ShardRouter.ID_RANGE) {
+                    shardRouter.recordMove(addressBookId, shard);
+                }
+            });
+            return contacts;
+        }
+    }
+
+    /**
+     * Restarts the current shard's sequence after the last id it handed out, if any of its ids were restored.
+     */
+    private void restartSequence(String sequence, OptionalLong lastId, long rangeStart) {
+        if (lastId.isPresent() && lastId.getAsLong() >= rangeStart) {
+            snapshotRowRepository.restartSequence(sequence, lastId.getAsLong() + SEQUENCE_HEADROOM);
+        }
+    }
+
+    private void recordLoad(String mode, long start) {
+        final var elapsed = Duration.ofNanos(System.nanoTime() - start);
+        Timer.builder("address-book.snapshot.load")
+                .tag("mode", mode)
+                .description("Time taken to load the snapshot at startup")
+                .register(meterRegistry)
+                .record(elapsed);
+        log.info("Loaded {} by {} in {} ms", file, mode, elapsed.toMillis());
+        loadedBy = mode;
+    }
+}
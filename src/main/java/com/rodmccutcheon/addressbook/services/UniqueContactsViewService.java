@@ -0,0 +1,99 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.dto.UniqueContactsCheck;
+import com.rodmccutcheon.addressbook.repositories.ContactRowRepository;
+import com.rodmccutcheon.addressbook.repositories.MembershipIndex;
+import com.rodmccutcheon.addressbook.repositories.UniqueContactRepository;
+import lombok.extern.log4j.Log4j2;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Recovery for the unique contacts view, which {@link ContactService}, {@link ContactImportService} and
+ * {@link AddressBookService} keep up to date as memberships change. The view can be checked against the
+ * memberships, every {@code address-book.unique-contacts.check-interval} in the background, and rebuilt from them.
+ * Each shard's view is checked and rebuilt in a transaction of its own, see {@link ShardRouter}.
+ * <p>
+ * The in-memory {@link MembershipIndex} is loaded from the memberships at startup, and again whenever the view is
+ * rebuilt.
+ */
+@Service
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Log4j2
+public class UniqueContactsViewService {
+
+    static final int MAX_REPORTED_CONTACTS = 100;
+
+    private final UniqueContactRepository uniqueContactRepository;
+    private final ContactRowRepository contactRowRepository;
+    private final MembershipIndex membershipIndex;
+    private final ShardRouter shardRouter;
+
+    public UniqueContactsViewService(UniqueContactRepository uniqueContactRepository,
+                                     ContactRowRepository contactRowRepository, MembershipIndex membershipIndex,
+                                     ShardRouter shardRouter) {
+        this.uniqueContactRepository = uniqueContactRepository;
+        this.contactRowRepository = contactRowRepository;
+        this.membershipIndex = membershipIndex;
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Replaces every row of the view with one computed from the memberships, and returns the number of rows.
+     */
+    @CacheEvict(cacheNames = ContactService.UNIQUE_CONTACTS_CACHE, allEntries = true)
+    public int rebuild() {
+        final int rows = shardRouter.writeEachShard(() -> {
+            uniqueContactRepository.deleteAllRows();
+            return uniqueContactRepository.insertFromMemberships();
+        }).stream().mapToInt(Integer::intValue).sum();
+        log.info("Rebuilt the unique contacts view with {} contacts", rows);
+        buildMembershipIndex();
+        return rows;
+    }
+
+    /**
+     * Loads the membership index from every shard. From then on it is kept up to date by the events published when
+     * memberships change, including those committed while it is being loaded.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildMembershipIndex() {
+        membershipIndex.replaceAll(() -> {
+            final var contactIdsByAddressBook = new HashMap<Long, Roaring64Bitmap>();
+            shardRouter.readEachShard(contactRowRepository::findContactIdsByAddressBook)
+                    .forEach(contactIdsByAddressBook::putAll);
+            return contactIdsByAddressBook;
+        });
+    }
+
+    /**
+     * Lists up to {@value #MAX_REPORTED_CONTACTS} contacts whose row in the view does not match their memberships.
+     */
+    public UniqueContactsCheck check() {
+        return new UniqueContactsCheck(shardRouter.readEachShard(() ->
+                        uniqueContactRepository.findInconsistentContactIds(MAX_REPORTED_CONTACTS)).stream()
+                .flatMap(List::stream)
+                .limit(MAX_REPORTED_CONTACTS)
+                .collect(Collectors.toList()));
+    }
+
+    @Scheduled(initialDelayString = "${address-book.unique-contacts.check-interval}",
+            fixedDelayString = "${address-book.unique-contacts.check-interval}")
+    public void checkInBackground() {
+        final var check = check();
+        if (!check.isConsistent()) {
+            log.warn("The unique contacts view does not match the memberships of contacts {}, rebuild it to recover",
+                    check.getInconsistentContactIds());
+        }
+    }
+}
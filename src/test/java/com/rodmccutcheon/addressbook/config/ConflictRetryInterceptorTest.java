@@ -0,0 +1,85 @@
+package com.rodmccutcheon.addressbook.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConflictRetryInterceptorTest {
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @AfterEach
+    void endTransaction() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    @DisplayName("Should run the method again until it no longer conflicts")
+    void testRetriesConflicts() {
+        final var method = retrying(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException("Contact", 1L);
+            }
+            return "saved";
+        });
+
+        assertEquals("saved", method.get());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    @DisplayName("Should give up after the maximum number of attempts")
+    void testGivesUp() {
+        final var method = retrying(() -> {
+            attempts.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException("Contact", 1L);
+        });
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, method::get);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    @DisplayName("Should not retry failures other than conflicts")
+    void testDoesNotRetryOtherFailures() {
+        final var method = retrying(() -> {
+            attempts.incrementAndGet();
+            throw new DataIntegrityViolationException("Name is null");
+        });
+
+        assertThrows(DataIntegrityViolationException.class, method::get);
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    @DisplayName("Should not retry a method called within a transaction that it cannot start again")
+    void testDoesNotRetryInsideTransaction() {
+        final var method = retrying(() -> {
+            attempts.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException("Contact", 1L);
+        });
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, method::get);
+        assertEquals(1, attempts.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<String> retrying(Supplier<String> target) {
+        final var proxyFactory = new ProxyFactory(target);
+        proxyFactory.addInterface(Supplier.class);
+        proxyFactory.addAdvice(new ConflictRetryInterceptor(3, Duration.ofMillis(1)));
+        return (Supplier<String>) proxyFactory.getProxy();
+    }
+}
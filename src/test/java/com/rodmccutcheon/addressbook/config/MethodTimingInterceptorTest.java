@@ -0,0 +1,56 @@
+package com.rodmccutcheon.addressbook.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MethodTimingInterceptorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @DisplayName("Should time every call of a method with one timer tagged with the class and method")
+    void testTimesCalls() {
+        final var method = timed(() -> "saved");
+
+        method.get();
+        method.get();
+
+        final var timer = meterRegistry.get("address-book.service")
+                .tag("method", "get")
+                .tag("exception", "none")
+                .timer();
+        assertEquals(2, timer.count());
+        assertEquals(1, meterRegistry.getMeters().size());
+    }
+
+    @Test
+    @DisplayName("Should tag the calls that throw with the exception thrown")
+    void testTimesFailures() {
+        final var method = timed(() -> {
+            throw new NoSuchElementException("No value present");
+        });
+
+        assertThrows(NoSuchElementException.class, method::get);
+
+        assertEquals(1, meterRegistry.get("address-book.service")
+                .tag("exception", "NoSuchElementException")
+                .timer()
+                .count());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Supplier<String> timed(Supplier<String> target) {
+        final var proxyFactory = new ProxyFactory(target);
+        proxyFactory.addInterface(Supplier.class);
+        proxyFactory.addAdvice(new MethodTimingInterceptor(() -> meterRegistry, "address-book.service"));
+        return (Supplier<String>) proxyFactory.getProxy();
+    }
+}
@@ -0,0 +1,116 @@
+package com.rodmccutcheon.addressbook.config;
+
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.services.AddressBookGauges;
+import com.rodmccutcheon.addressbook.services.AddressBookService;
+import com.rodmccutcheon.addressbook.services.ContactService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static com.rodmccutcheon.addressbook.controllers.AddressBookController.BASE_URL;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:metrics;MODE=PostgreSQL")
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+class MetricsTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private ContactService contactService;
+
+    @Autowired
+    private AddressBookGauges addressBookGauges;
+
+    private AddressBook addressBook;
+
+    @BeforeEach
+    void createAddressBook() {
+        addressBook = addressBookService.createAddressBook(new AddressBook("McNulty's address book"));
+        contactService.addContactToAddressBook(addressBook.getId(), new Contact("Bubbles"));
+        contactService.addContactToAddressBook(addressBook.getId(), new Contact("Omar Little"));
+    }
+
+    @AfterEach
+    void deleteAddressBook() {
+        addressBookService.deleteAddressBook(addressBook.getId());
+    }
+
+    @Test
+    @DisplayName("Should record the statements executed and rows read by each request")
+    void testRecordsJdbcUsagePerRequest() throws Exception {
+        mockMvc.perform(get(BASE_URL + "/" + addressBook.getId())).andExpect(status().isOk());
+
+        final var uri = BASE_URL + "/{addressBookId}";
+        final var statements = meterRegistry.get("address-book.request.statements")
+                .tag("method", "GET")
+                .tag("uri", uri)
+                .summary();
+        final var rows = meterRegistry.get("address-book.request.rows").tag("uri", uri).summary();
+        assertEquals(1, statements.count());
+        assertEquals(1, statements.totalAmount());
+        assertEquals(2, rows.totalAmount());
+    }
+
+    @Test
+    @DisplayName("Should time service and repository methods, tagged with the class and method called")
+    void testTimesServiceAndRepositoryMethods() {
+        addressBookService.getChangesSince(addressBook.getId(), 0);
+
+        assertTrue(meterRegistry.get("address-book.service")
+                .tag("class", "AddressBookService")
+                .tag("method", "getChangesSince")
+                .tag("exception", "none")
+                .timer()
+                .count() > 0);
+        assertTrue(meterRegistry.get("address-book.repository")
+                .tag("class", "AddressBookRepository")
+                .tag("method", "findById")
+                .timer()
+                .count() > 0);
+    }
+
+    @Test
+    @DisplayName("Should gauge the number of address books and contacts")
+    void testGauges() {
+        addressBookGauges.refresh();
+
+        assertTrue(meterRegistry.get("address-book.address-books").gauge().value() >= 1);
+        assertTrue(meterRegistry.get("address-book.memberships").gauge().value() >= 2);
+        assertTrue(meterRegistry.get("address-book.largest-size").gauge().value() >= 2);
+    }
+
+    @Test
+    @DisplayName("Should expose the metrics, with latency histograms, for Prometheus to scrape")
+    void testPrometheusEndpoint() throws Exception {
+        mockMvc.perform(get(BASE_URL + "/" + addressBook.getId())).andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("address_book_service_seconds_bucket{")))
+                .andExpect(content().string(containsString("address_book_request_statements_bucket{")))
+                .andExpect(content().string(containsString("address_book_unique_contacts_contacts ")));
+    }
+}
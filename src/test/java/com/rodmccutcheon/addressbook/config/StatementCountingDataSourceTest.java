@@ -0,0 +1,73 @@
+package com.rodmccutcheon.addressbook.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class StatementCountingDataSourceTest {
+
+    @Mock
+    private DataSource targetDataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @AfterEach
+    void stopCounting() {
+        JdbcUsage.stop();
+    }
+
+    @Test
+    @DisplayName("Should count the statements executed and rows read on a thread that started counting")
+    void testCountsStatementsAndRows() throws SQLException {
+        given(targetDataSource.getConnection()).willReturn(connection);
+        given(connection.prepareStatement("select * from contact")).willReturn(statement);
+        given(statement.executeQuery()).willReturn(resultSet);
+        given(resultSet.next()).willReturn(true, true, false);
+        final var dataSource = new StatementCountingDataSource(targetDataSource);
+
+        JdbcUsage.start();
+        try (var rows = dataSource.getConnection().prepareStatement("select * from contact").executeQuery()) {
+            while (rows.next()) {
+                rows.getLong(1);
+            }
+        }
+        dataSource.getConnection().prepareStatement("select * from contact").executeUpdate();
+        final var usage = JdbcUsage.stop();
+
+        assertEquals(2, usage.getStatements());
+        assertEquals(2, usage.getRows());
+    }
+
+    @Test
+    @DisplayName("Should not count on a thread that did not start counting")
+    void testDoesNotCountWhenNotStarted() throws SQLException {
+        given(targetDataSource.getConnection()).willReturn(connection);
+        given(connection.prepareStatement("select * from contact")).willReturn(statement);
+        final var dataSource = new StatementCountingDataSource(targetDataSource);
+
+        dataSource.getConnection().prepareStatement("select * from contact").executeUpdate();
+
+        assertNull(JdbcUsage.stop());
+    }
+}
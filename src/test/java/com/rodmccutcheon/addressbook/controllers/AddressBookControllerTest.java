@@ -1,7 +1,17 @@
 package com.rodmccutcheon.addressbook.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.rodmccutcheon.addressbook.config.BinaryFormatConfiguration;
+import com.rodmccutcheon.addressbook.dto.AddressBookChanges;
+import com.rodmccutcheon.addressbook.dto.AddressBookSummary;
+import com.rodmccutcheon.addressbook.dto.BatchEntry;
+import com.rodmccutcheon.addressbook.dto.ContactPage;
+import com.rodmccutcheon.addressbook.dto.ContactView;
 import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
 import com.rodmccutcheon.addressbook.services.AddressBookService;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -9,23 +19,33 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
 @WebMvcTest(controllers = AddressBookController.class)
+@Import(BinaryFormatConfiguration.class)
 class AddressBookControllerTest {
 
     @Autowired
@@ -64,6 +84,80 @@ class AddressBookControllerTest {
                 .andExpect(jsonPath("$.name", is(addressBook.getName())));
     }
 
+    @Test
+    @DisplayName("Should tag an address book with its version and return 304 Not Modified while it is unchanged")
+    void testGetAddressBookConditionally() throws Exception {
+        final var addressBook = new AddressBook(1L, "McNulty's address book");
+        addressBook.setVersion(7);
+        given(addressBookService.getAddressBook(addressBook.getId())).willReturn(addressBook);
+
+        mockMvc.perform(get(AddressBookController.BASE_URL + "/" + addressBook.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"7\""))
+                .andExpect(jsonPath("$.version", is(7)));
+        mockMvc.perform(get(AddressBookController.BASE_URL + "/" + addressBook.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, "W/\"7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        mockMvc.perform(get(AddressBookController.BASE_URL + "/" + addressBook.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, "\"6\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"7\""));
+    }
+
+    @Test
+    @DisplayName("Should return the changes to an address book since the given version")
+    void testGetChangesSince() throws Exception {
+        final var changes = new AddressBookChanges(1L, "McNulty's address book", 7L,
+                List.of(new ContactView(2L, "Bubbles", Map.of(PhoneNumberType.MOBILE, "0402985777"))), List.of(3L));
+        given(addressBookService.getChangesSince(1L, 5L)).willReturn(changes);
+
+        mockMvc.perform(get(AddressBookController.BASE_URL + "/1/changes-since").param("version", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version", is(7)))
+                .andExpect(jsonPath("$.added[0].name", is("Bubbles")))
+                .andExpect(jsonPath("$.removed", is(List.of(3))));
+    }
+
+    @Test
+    @DisplayName("Should return an address book as CBOR when the client asks for it")
+    void testGetAddressBookAsCbor() throws Exception {
+        final var addressBook = new AddressBook(1L, "McNulty's address book");
+        final var contact = new Contact(2L, "Bubbles");
+        contact.addPhoneNumber(PhoneNumberType.MOBILE, "+61402985777");
+        addressBook.addContact(contact);
+        given(addressBookService.getAddressBook(addressBook.getId())).willReturn(addressBook);
+
+        final var response = mockMvc.perform(get(AddressBookController.BASE_URL + "/" + addressBook.getId())
+                .accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        final var decoded = new ObjectMapper(new CBORFactory()).readTree(response);
+        assertEquals(addressBook.getName(), decoded.get("name").asText());
+        assertEquals("+61402985777", decoded.at("/contacts/0/phoneNumbers/MOBILE").asText());
+    }
+
+    @Test
+    @DisplayName("Should create an address book from a Smile request and respond in Smile")
+    void testCreateAddressBookWithSmile() throws Exception {
+        final var smileMapper = new ObjectMapper(new SmileFactory());
+        final var smile = MediaType.parseMediaType("application/x-jackson-smile");
+        final var addressBook = new AddressBook(1L, "McNulty's address book");
+        given(addressBookService.createAddressBook(addressBook)).willReturn(addressBook);
+
+        final var response = mockMvc.perform(post(AddressBookController.BASE_URL)
+                .contentType(smile)
+                .accept(smile)
+                .content(smileMapper.writeValueAsBytes(addressBook)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(smile))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertEquals(addressBook, smileMapper.readValue(response, AddressBook.class));
+    }
+
     @Test
     @DisplayName("Should return a 400 bad request status code and an error message when an address book does not exist")
     void testAttemptToGetAddressBookThatDoesNotExist() throws Exception {
@@ -81,17 +175,48 @@ class AddressBookControllerTest {
     void testGetAllAddressBooks() throws Exception {
         final var addressBook = new AddressBook(1L, "McNulty's address book");
         final var addressBook2 = new AddressBook(2L, "Bunk's address book");
-        given(addressBookService.getAllAddressBooks()).willReturn(List.of(addressBook, addressBook2));
+        given(addressBookService.getAddressBooks(0L, 50)).willReturn(List.of(addressBook, addressBook2));
 
         mockMvc.perform(get(AddressBookController.BASE_URL)
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.LINK))
                 .andExpect(jsonPath("$[0].id", is(addressBook.getId().intValue())))
                 .andExpect(jsonPath("$[0].name", is(addressBook.getName())))
                 .andExpect(jsonPath("$[1].id", is(addressBook2.getId().intValue())))
                 .andExpect(jsonPath("$[1].name", is(addressBook2.getName())));
     }
 
+    @Test
+    @DisplayName("Should return a link to the next page when the page is full")
+    void testGetAddressBooksPage() throws Exception {
+        final var addressBook = new AddressBook(3L, "McNulty's address book");
+        final var addressBook2 = new AddressBook(4L, "Bunk's address book");
+        given(addressBookService.getAddressBooks(2L, 2)).willReturn(List.of(addressBook, addressBook2));
+
+        mockMvc.perform(get(AddressBookController.BASE_URL + "?after=2&size=2")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.LINK, containsString("after=4&size=2>; rel=\"next\"")))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(addressBook.getId().intValue())))
+                .andExpect(jsonPath("$[1].id", is(addressBook2.getId().intValue())));
+    }
+
+    @Test
+    @DisplayName("Should return address book summaries without contacts when requested")
+    void testGetAddressBookSummaries() throws Exception {
+        final var summary = new AddressBookSummary(1L, "McNulty's address book");
+        given(addressBookService.getAddressBookSummaries(0L, 50)).willReturn(List.of(summary));
+
+        mockMvc.perform(get(AddressBookController.BASE_URL + "?includeContacts=false")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id", is(summary.getId().intValue())))
+                .andExpect(jsonPath("$[0].name", is(summary.getName())))
+                .andExpect(jsonPath("$[0].contacts").doesNotExist());
+    }
+
     @Test
     @DisplayName("Should successfully update the given address book")
     void testUpdateAddressBookThatExists() throws Exception {
@@ -142,4 +267,73 @@ class AddressBookControllerTest {
                 .andExpect(result -> assertEquals("No value present", result.getResponse().getContentAsString()));
     }
 
+
+    @Test
+    @DisplayName("Should page through the contacts shared by address books, linking to the next page")
+    void testGetContactsInAll() throws Exception {
+        given(addressBookService.getContactsInAll(List.of(1L, 2L), 0, 2)).willReturn(new ContactPage(List.of(
+                new ContactView(5L, "Omar", Map.of()),
+                new ContactView(8L, "Bubbles", Map.of(PhoneNumberType.MOBILE, "+61402985777"))), 8L));
+
+        mockMvc.perform(get(AddressBookController.BASE_URL + "/intersection?ids=1,2&size=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].phoneNumbers.MOBILE", is("+61402985777")))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("after=8")));
+    }
+
+    @Test
+    @DisplayName("Should link to the next page of a short page of shared contacts when more follow")
+    void testGetContactsInAllShortPage() throws Exception {
+        given(addressBookService.getContactsInAny(List.of(1L, 2L), 0, 2)).willReturn(new ContactPage(List.of(
+                new ContactView(5L, "Omar", Map.of())), 9L));
+        given(addressBookService.getContactsInAny(List.of(1L, 2L), 9, 2)).willReturn(new ContactPage(List.of(
+                new ContactView(12L, "Bubbles", Map.of()), new ContactView(13L, "Wallace", Map.of())), null));
+
+        mockMvc.perform(get(AddressBookController.BASE_URL + "/union?ids=1,2&size=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("after=9")));
+        mockMvc.perform(get(AddressBookController.BASE_URL + "/union?ids=1,2&size=2&after=9"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @Test
+    @DisplayName("Should return a 400 bad request status code when one of the address books does not exist")
+    void testGetContactsInFirstOnlyOfAddressBookThatDoesNotExist() throws Exception {
+        given(addressBookService.getContactsInFirstOnly(List.of(1L, 7L), 0, 50))
+                .willThrow(new NoSuchElementException("No value present"));
+
+        mockMvc.perform(get(AddressBookController.BASE_URL + "/difference?ids=1&ids=7"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Should return several address books in the order asked for, marking those that do not exist")
+    void testGetAddressBooksById() throws Exception {
+        final var addressBook = new AddressBook(2L, "Bunk's address book");
+        given(addressBookService.getAddressBooksById(List.of(2L, 7L))).willReturn(List.of(
+                new BatchEntry<>(2L, true, addressBook), new BatchEntry<>(7L, false, null)));
+
+        mockMvc.perform(get(AddressBookController.BASE_URL + "/batch?ids=2,7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].found", is(true)))
+                .andExpect(jsonPath("$[0].item.name", is(addressBook.getName())))
+                .andExpect(jsonPath("$[1].id", is(7)))
+                .andExpect(jsonPath("$[1].found", is(false)))
+                .andExpect(jsonPath("$[1].item").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("Should return a 400 bad request status code when asked for too many address books at once")
+    void testGetTooManyAddressBooksById() throws Exception {
+        final var ids = LongStream.rangeClosed(1, 101).mapToObj(String::valueOf).collect(Collectors.joining(","));
+
+        mockMvc.perform(get(AddressBookController.BASE_URL + "/batch?ids=" + ids))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(addressBookService);
+    }
 }
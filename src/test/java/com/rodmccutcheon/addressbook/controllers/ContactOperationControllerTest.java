@@ -0,0 +1,107 @@
+package com.rodmccutcheon.addressbook.controllers;
+
+import com.rodmccutcheon.addressbook.config.RespondAsyncConfiguration;
+import com.rodmccutcheon.addressbook.entities.ContactOperation;
+import com.rodmccutcheon.addressbook.entities.ContactOperationStatus;
+import com.rodmccutcheon.addressbook.entities.ContactOperationType;
+import com.rodmccutcheon.addressbook.services.ContactImportService;
+import com.rodmccutcheon.addressbook.services.ContactService;
+import com.rodmccutcheon.addressbook.services.ContactWriteBehindQueue;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Instant;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.rodmccutcheon.addressbook.controllers.AddressBookController.BASE_URL;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(controllers = {ContactController.class, ContactOperationController.class},
+        properties = "address-book.write-behind.enabled=true")
+@Import(RespondAsyncConfiguration.class)
+class ContactOperationControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ContactWriteBehindQueue contactWriteBehindQueue;
+
+    @MockBean
+    private ContactService contactService;
+
+    @MockBean
+    private ContactImportService contactImportService;
+
+    @Test
+    @DisplayName("Should accept a removal sent with Prefer: respond-async without applying it")
+    void testDeleteContactAsync() throws Exception {
+        given(contactWriteBehindQueue.remove(1L, 2L)).willReturn(new ContactOperation("abc", 1L,
+                ContactOperationType.REMOVE, ContactOperationStatus.QUEUED, 2L, null, Instant.now(), null));
+
+        mockMvc.perform(delete(BASE_URL + "/1/contact/2").header("Prefer", "respond-async"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", BASE_URL + "/operations/abc"))
+                .andExpect(header().string("Preference-Applied", "respond-async"))
+                .andExpect(jsonPath("$.status", is("QUEUED")));
+
+        verify(contactService, never()).deleteContactFromAddressBook(1L, 2L);
+    }
+
+    @Test
+    @DisplayName("Should accept a change asynchronously when respond-async is one of several preferences")
+    void testDeleteContactAsyncAmongOtherPreferences() throws Exception {
+        given(contactWriteBehindQueue.remove(1L, 2L)).willReturn(new ContactOperation("abc", 1L,
+                ContactOperationType.REMOVE, ContactOperationStatus.QUEUED, 2L, null, Instant.now(), null));
+
+        mockMvc.perform(delete(BASE_URL + "/1/contact/2").header("Prefer", "return=minimal, Respond-Async; x=1"))
+                .andExpect(status().isAccepted());
+        mockMvc.perform(delete(BASE_URL + "/1/contact/2").header("Prefer", "wait=5", "respond-async"))
+                .andExpect(status().isAccepted());
+
+        verify(contactService, never()).deleteContactFromAddressBook(1L, 2L);
+    }
+
+    @Test
+    @DisplayName("Should apply a change before responding when respond-async is not preferred")
+    void testDeleteContactWithOtherPreferences() throws Exception {
+        mockMvc.perform(delete(BASE_URL + "/1/contact/2").header("Prefer", "return=minimal, wait=5"))
+                .andExpect(status().isOk());
+
+        verify(contactService).deleteContactFromAddressBook(1L, 2L);
+        verify(contactWriteBehindQueue, never()).remove(1L, 2L);
+    }
+
+    @Test
+    @DisplayName("Should return a 503 service unavailable status code when the queue is full")
+    void testQueueFull() throws Exception {
+        given(contactWriteBehindQueue.remove(1L, 2L))
+                .willThrow(new RejectedExecutionException("Too many contact operations are waiting to be applied"));
+
+        mockMvc.perform(delete(BASE_URL + "/1/contact/2").header("Prefer", "respond-async"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
+    @Test
+    @DisplayName("Should return a 400 bad request status code for an unknown operation")
+    void testUnknownOperation() throws Exception {
+        given(contactWriteBehindQueue.getOperation("abc")).willThrow(new NoSuchElementException("No value present"));
+
+        mockMvc.perform(get(BASE_URL + "/operations/abc"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("No value present"));
+    }
+}
@@ -1,8 +1,13 @@
 package com.rodmccutcheon.addressbook.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rodmccutcheon.addressbook.dto.BatchEntry;
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.dto.ImportResult;
 import com.rodmccutcheon.addressbook.entities.AddressBook;
 import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import com.rodmccutcheon.addressbook.services.ContactImportService;
 import com.rodmccutcheon.addressbook.services.ContactService;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -11,15 +16,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import static com.rodmccutcheon.addressbook.controllers.AddressBookController.BASE_URL;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -39,6 +51,9 @@ class ContractControllerTest {
     @MockBean
     private ContactService contactService;
 
+    @MockBean
+    private ContactImportService contactImportService;
+
     @Test
     @DisplayName("Should successfully add a contact to an address book that exists")
     void testAddContactToAddressBookThatExists() throws Exception {
@@ -50,7 +65,8 @@ class ContractControllerTest {
                 .content(objectMapper.writeValueAsString(contact)))
                 .andExpect(status().isOk());
 
-        verify(contactService, times(1)).addContactToAddressBook(addressBook.getId(), contact);
+        // A contact that has not been saved is only equal to itself, so the deserialized copy is matched by name
+        verify(contactService, times(1)).addContactToAddressBook(eq(addressBook.getId()), named(contact.getName()));
     }
 
     @Test
@@ -58,7 +74,7 @@ class ContractControllerTest {
     void testAttemptToAddContactToAddressBookThatDoesntExist() throws Exception {
         final var addressBookId = 7L;
         final var contact = new Contact("Bubbles");
-        given(contactService.addContactToAddressBook(addressBookId, contact)).willThrow(new NoSuchElementException("No value present"));
+        given(contactService.addContactToAddressBook(eq(addressBookId), named(contact.getName()))).willThrow(new NoSuchElementException("No value present"));
 
         mockMvc.perform(post(AddressBookController.BASE_URL + "/" + addressBookId + "/contact")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -94,6 +110,18 @@ class ContractControllerTest {
                 .andExpect(result -> assertEquals("No value present", result.getResponse().getContentAsString()));
     }
 
+    @Test
+    @DisplayName("Should return a 409 conflict status code when the change keeps conflicting with concurrent changes")
+    void testAttemptToDeleteContactFromAddressBookUnderContention() throws Exception {
+        final var addressBookId = 7L;
+        final var contactId = 3L;
+        doThrow(new ObjectOptimisticLockingFailureException(Contact.class, contactId))
+                .when(contactService).deleteContactFromAddressBook(addressBookId, contactId);
+
+        mockMvc.perform(delete(AddressBookController.BASE_URL + "/" + addressBookId + "/contact/" + contactId))
+                .andExpect(status().isConflict());
+    }
+
     @Test
     @DisplayName("Should return a set of unique contacts across all address books")
     void testGetUniqueContactsAcrossAllAddressBooks() throws Exception {
@@ -106,4 +134,166 @@ class ContractControllerTest {
                 .andExpect(jsonPath("$[0].id", is(contact.getId().intValue())))
                 .andExpect(jsonPath("$[0].name", is(contact.getName())));
     }
+
+    @Test
+    @DisplayName("Should return one contact for each cluster of contacts that are the same person")
+    void testGetDeduplicatedContactsAcrossAllAddressBooks() throws Exception {
+        final var contact = new ContactView(1L, "Stringer Bell",
+                Map.of(PhoneNumberType.MOBILE, "+61406747789", PhoneNumberType.WORK, "(03) 9842 0944"));
+        given(contactService.getUniqueContactClusters()).willReturn(List.of(contact));
+
+        mockMvc.perform(get(BASE_URL + "/unique-contacts?dedupe=true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[0].phoneNumbers.WORK", is("(03) 9842 0944")));
+        verify(contactService, never()).getUniqueContacts();
+    }
+
+    @Test
+    @DisplayName("Should return the contacts matching a search, capping the number of results")
+    void testSearchContacts() throws Exception {
+        final var contact = new ContactView(1L, "Bubbles", Map.of(PhoneNumberType.MOBILE, "+61402985777"));
+        given(contactService.searchContacts("bub", 100)).willReturn(List.of(contact));
+
+        mockMvc.perform(get(BASE_URL + "/contacts/search?q=bub&limit=1000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id", is(contact.getId().intValue())))
+                .andExpect(jsonPath("$[0].name", is(contact.getName())))
+                .andExpect(jsonPath("$[0].phoneNumbers.MOBILE", is("+61402985777")));
+    }
+
+    @Test
+    @DisplayName("Should report how many contacts were imported into an address book")
+    void testImportContactsIntoAddressBook() throws Exception {
+        final var addressBookId = 1L;
+        given(contactImportService.importContacts(eq(addressBookId), any(InputStream.class)))
+                .willReturn(new ImportResult(2, 1, null));
+
+        mockMvc.perform(post(BASE_URL + "/" + addressBookId + "/contact/import")
+                .contentType(ContactController.APPLICATION_NDJSON)
+                .content("{\"name\":\"Bubbles\"}\n{\"name\":\"Omar\"}\n{}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted", is(2)))
+                .andExpect(jsonPath("$.rejected", is(1)))
+                .andExpect(jsonPath("$.error").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("Should return a 400 bad request status code when importing into an address book that does not exist")
+    void testAttemptToImportContactsIntoAddressBookThatDoesntExist() throws Exception {
+        final var addressBookId = 7L;
+        given(contactImportService.importContacts(eq(addressBookId), any(InputStream.class)))
+                .willThrow(new NoSuchElementException("No value present"));
+
+        mockMvc.perform(post(BASE_URL + "/" + addressBookId + "/contact/import")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"name\":\"Bubbles\"}]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertEquals("No value present", result.getResponse().getContentAsString()));
+    }
+
+    @Test
+    @DisplayName("Should stream the unique contacts across all address books as a JSON array")
+    void testStreamUniqueContactsAsJson() throws Exception {
+        givenUniqueContacts(new ContactView(1L, "Bubbles", Map.of(PhoneNumberType.MOBILE, "+61402985777")),
+                new ContactView(2L, "Omar", Map.of()));
+
+        final var result = mockMvc.perform(get(BASE_URL + "/unique-contacts?stream=true")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[0].name", is("Bubbles")))
+                .andExpect(jsonPath("$[0].phoneNumbers.MOBILE", is("+61402985777")))
+                .andExpect(jsonPath("$[1].id", is(2)))
+                .andExpect(jsonPath("$[1].name", is("Omar")));
+    }
+
+    @Test
+    @DisplayName("Should stream the unique contacts across all address books as newline delimited JSON")
+    void testStreamUniqueContactsAsNdjson() throws Exception {
+        givenUniqueContacts(new ContactView(1L, "Bubbles", Map.of()), new ContactView(2L, "Omar", Map.of()));
+
+        final var result = mockMvc.perform(get(BASE_URL + "/unique-contacts?stream=true")
+                .accept(ContactController.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ContactController.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"id\":1,\"name\":\"Bubbles\",\"phoneNumbers\":{}}\n" +
+                        "{\"id\":2,\"name\":\"Omar\",\"phoneNumbers\":{}}\n"));
+    }
+
+    @Test
+    @DisplayName("Should count the unique contacts across all address books")
+    void testCountUniqueContacts() throws Exception {
+        given(contactService.countUniqueContacts()).willReturn(3L);
+
+        mockMvc.perform(get(BASE_URL + "/unique-contacts/count"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("3"));
+    }
+
+    @Test
+    @DisplayName("Should list the ids of the address books a contact is in")
+    void testGetAddressBookIdsOfContact() throws Exception {
+        given(contactService.getAddressBookIds(11L)).willReturn(new long[]{1L, 2L});
+        given(contactService.getAddressBookIds(7L)).willThrow(new NoSuchElementException("No value present"));
+
+        mockMvc.perform(get(BASE_URL + "/contacts/11/address-books"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("[1,2]"));
+        mockMvc.perform(get(BASE_URL + "/contacts/7/address-books"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Should return several contacts in the order asked for, marking those that do not exist")
+    void testGetContactsById() throws Exception {
+        given(contactService.getContactsById(List.of(7L, 2L))).willReturn(List.of(new BatchEntry<>(7L, false, null),
+                new BatchEntry<>(2L, true, new ContactView(2L, "Omar", Map.of(PhoneNumberType.OTHER, "+61406747700")))));
+
+        mockMvc.perform(get(BASE_URL + "/contacts/batch?ids=7,2"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\":7,\"found\":false}," +
+                        "{\"id\":2,\"found\":true,\"item\":{\"id\":2,\"name\":\"Omar\",\"phoneNumbers\":{\"OTHER\":\"+61406747700\"}}}]", true));
+    }
+
+    @Test
+    @DisplayName("Should find contacts by phone number, returning a 400 bad request status code for anything else")
+    void testFindContactsByPhoneNumber() throws Exception {
+        given(contactService.findContactsByPhoneNumber("0406 747 700"))
+                .willReturn(List.of(new ContactView(2L, "Omar", Map.of(PhoneNumberType.OTHER, "+61406747700"))));
+        given(contactService.findContactsByPhoneNumber("omar"))
+                .willThrow(new IllegalArgumentException("Not a phone number: omar"));
+
+        mockMvc.perform(get(BASE_URL + "/contacts").param("phoneNumber", "0406 747 700"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$[0].name", is("Omar")));
+        mockMvc.perform(get(BASE_URL + "/contacts").param("phoneNumber", "omar"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenUniqueContacts(ContactView... contacts) {
+        doAnswer(invocation -> {
+            final Consumer<ContactView> consumer = invocation.getArgument(0);
+            for (ContactView contact : contacts) {
+                consumer.accept(contact);
+            }
+            return null;
+        }).when(contactService).forEachUniqueContact(any(Consumer.class));
+    }
+
+    private static Contact named(String name) {
+        return argThat(contact -> name.equals(contact.getName()));
+    }
 }
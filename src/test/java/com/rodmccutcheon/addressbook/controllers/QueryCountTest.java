@@ -0,0 +1,271 @@
+package com.rodmccutcheon.addressbook.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rodmccutcheon.addressbook.config.JdbcUsage;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import com.rodmccutcheon.addressbook.services.AddressBookService;
+import com.rodmccutcheon.addressbook.services.ContactService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+import static com.rodmccutcheon.addressbook.controllers.AddressBookController.BASE_URL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Guards the fetch plan of every endpoint: each one must issue the same, small number of SQL statements
+ * however many contacts the address books involved hold. Every count is taken twice, once with a small pair of
+ * address books seeded and again after seeding a pair of {@value #LARGE_ADDRESS_BOOK} contacts each.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:query-count;MODE=PostgreSQL",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureMockMvc
+class QueryCountTest {
+
+    private static final int SMALL_ADDRESS_BOOK = 5;
+    private static final int LARGE_ADDRESS_BOOK = 50;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private ContactService contactService;
+
+    @Autowired
+    private ContactController contactController;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void getStatistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    @DisplayName("Creating an address book should insert a single row")
+    void testCreateAddressBook() throws Exception {
+        assertQueryCount(1, seeded -> post(BASE_URL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"Marlo's address book\"}"));
+    }
+
+    @Test
+    @DisplayName("Listing address books with contacts should page the ids and fetch the books in one query")
+    void testGetAllAddressBooks() throws Exception {
+        assertQueryCount(2, seeded -> get(BASE_URL));
+    }
+
+    @Test
+    @DisplayName("Listing address book summaries should issue a single query")
+    void testGetAddressBookSummaries() throws Exception {
+        assertQueryCount(1, seeded -> get(BASE_URL + "?includeContacts=false"));
+    }
+
+    @Test
+    @DisplayName("Getting an address book should fetch it with its contacts in one query")
+    void testGetAddressBook() throws Exception {
+        assertQueryCount(1, seeded -> get(BASE_URL + "/" + seeded.addressBook.getId()));
+    }
+
+    @Test
+    @DisplayName("Getting several address books should fetch them with their contacts in one query")
+    void testGetAddressBooksById() throws Exception {
+        assertQueryCount(1, seeded -> get(BASE_URL + "/batch?ids=" + seeded.addressBook.getId() + ",7,"
+                + seeded.addressBook.getId()));
+    }
+
+    @Test
+    @DisplayName("Getting several contacts should fetch them with their phone numbers in one query")
+    void testGetContactsById() throws Exception {
+        assertQueryCount(1, seeded -> get(BASE_URL + "/contacts/batch?ids=" + seeded.sharedContact.getId() + ",7"));
+    }
+
+    @Test
+    @DisplayName("Finding contacts by phone number should fetch them with their phone numbers in one query")
+    void testFindContactsByPhoneNumber() throws Exception {
+        assertQueryCount(1, seeded -> get(BASE_URL + "/contacts?phoneNumber=0406 747 789"));
+    }
+
+    @Test
+    @DisplayName("Updating an address book should increment its version, fetch it once and update its name")
+    void testUpdateAddressBook() throws Exception {
+        assertQueryCount(3, seeded -> put(BASE_URL + "/" + seeded.addressBook.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"Kima's address book\"}"));
+    }
+
+    @Test
+    @DisplayName("Deleting an address book should issue as many statements however many contacts it holds")
+    void testDeleteAddressBook() throws Exception {
+        // Its contacts are deleted with it, each of their collections by a batched statement, so only the
+        // count's independence of the address book's size is pinned here
+        final var counts = countForEachSize(seeded ->
+                countStatements(delete(BASE_URL + "/" + seeded.addressBook.getId())));
+        assertEquals(counts.get(0), counts.get(1));
+    }
+
+    @Test
+    @DisplayName("Getting the unique contacts should issue a single query")
+    void testGetUniqueContacts() throws Exception {
+        assertQueryCount(1, seeded -> get(BASE_URL + "/unique-contacts"));
+    }
+
+    @Test
+    @DisplayName("Streaming the unique contacts should issue a single query, reading every row from its cursor")
+    void testStreamUniqueContacts() throws Exception {
+        // Written on the test thread, as MockMvc writes streamed bodies on another thread that JdbcUsage cannot see
+        final var usages = countForEachSize(seeded -> {
+            final var body = Objects.requireNonNull(
+                    contactController.streamUniqueContactsAcrossAllAddressBooks(null, false).getBody());
+            final JdbcUsage usage;
+            JdbcUsage.start();
+            try {
+                body.writeTo(OutputStream.nullOutputStream());
+            } finally {
+                usage = JdbcUsage.stop();
+            }
+            assertEquals(1, usage.getStatements(), seeded.contacts + " contacts per address book");
+            return usage.getRows();
+        });
+        assertTrue(usages.get(1) > usages.get(0));
+    }
+
+    @Test
+    @DisplayName("Adding a new contact should issue a fixed number of statements")
+    void testAddNewContactToAddressBook() throws Exception {
+        // Every seeded contact shares the new contact's phone numbers, so its duplicate lookup has candidates.
+        // Incrementing the address book's version and recording the change take one statement each, and joining
+        // the address book after the contact was inserted increments the contact's version.
+        assertQueryCount(10, seeded -> post(BASE_URL + "/" + seeded.addressBook.getId() + "/contact")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(contact("Lester Freamon"))));
+    }
+
+    @Test
+    @DisplayName("Adding a contact should load only the address book row, not the contacts already in it")
+    void testAddContactDoesNotLoadAddressBookContacts() throws Exception {
+        countForEachSize(seeded -> {
+            statistics.clear();
+
+            mockMvc.perform(post(BASE_URL + "/" + seeded.addressBook.getId() + "/contact")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(contact("Lester Freamon"))))
+                    .andExpect(status().isOk());
+
+            assertEquals(1, statistics.getEntityLoadCount(), seeded.contacts + " contacts per address book");
+            assertEquals(0, statistics.getCollectionLoadCount(), seeded.contacts + " contacts per address book");
+            return null;
+        });
+    }
+
+    @Test
+    @DisplayName("Removing a shared contact should issue a fixed number of statements")
+    void testDeleteContactFromAddressBook() throws Exception {
+        // Includes incrementing the versions of the address book and the contact, and recording the change
+        assertQueryCount(6, seeded -> delete(BASE_URL + "/" + seeded.addressBook.getId() + "/contact/"
+                + seeded.sharedContact.getId()));
+    }
+
+    private void assertQueryCount(long expected, Function<SeededAddressBooks, RequestBuilder> request)
+            throws Exception {
+        final var counts = countForEachSize(seeded -> countStatements(request.apply(seeded)));
+        assertEquals(List.of(expected, expected), counts);
+    }
+
+    private long countStatements(RequestBuilder request) throws Exception {
+        statistics.clear();
+
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        return statistics.getPrepareStatementCount();
+    }
+
+    /**
+     * Seeds a small pair of address books and measures, then seeds a large pair and measures again, with nothing
+     * cached either time.
+     */
+    private <T> List<T> countForEachSize(Measurement<T> measurement) throws Exception {
+        final var results = new ArrayList<T>();
+        for (int contacts : List.of(SMALL_ADDRESS_BOOK, LARGE_ADDRESS_BOOK)) {
+            final var seeded = seed(contacts);
+            cacheManager.getCacheNames().forEach(name -> Objects.requireNonNull(cacheManager.getCache(name)).clear());
+            results.add(measurement.measure(seeded));
+        }
+        return results;
+    }
+
+    /**
+     * Two address books of {@code contacts} contacts each, plus a contact shared by both.
+     */
+    private SeededAddressBooks seed(int contacts) {
+        final var addressBook = addressBookService.createAddressBook(new AddressBook("McNulty's address book"));
+        final var addressBook2 = addressBookService.createAddressBook(new AddressBook("Bunk's address book"));
+        for (int i = 0; i < contacts; i++) {
+            contactService.addContactToAddressBook(addressBook.getId(), contact("Stringer Bell " + i));
+            contactService.addContactToAddressBook(addressBook2.getId(), contact("Omar " + i));
+        }
+        final var sharedContact = contactService.addContactToAddressBook(addressBook.getId(), contact("Bubbles"));
+        contactService.addContactToAddressBook(addressBook2.getId(), sharedContact);
+        return new SeededAddressBooks(contacts, addressBook, sharedContact);
+    }
+
+    private static Contact contact(String name) {
+        final var contact = new Contact(name);
+        contact.addPhoneNumber(PhoneNumberType.MOBILE, "+61406747789");
+        contact.addPhoneNumber(PhoneNumberType.WORK, "+61398420944");
+        return contact;
+    }
+
+    @FunctionalInterface
+    private interface Measurement<T> {
+        T measure(SeededAddressBooks seeded) throws Exception;
+    }
+
+    private static final class SeededAddressBooks {
+
+        private final int contacts;
+        private final AddressBook addressBook;
+        private final Contact sharedContact;
+
+        private SeededAddressBooks(int contacts, AddressBook addressBook, Contact sharedContact) {
+            this.contacts = contacts;
+            this.addressBook = addressBook;
+            this.sharedContact = sharedContact;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.rodmccutcheon.addressbook.controllers;
+
+import com.rodmccutcheon.addressbook.config.BinaryFormatConfiguration;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import com.rodmccutcheon.addressbook.repositories.AddressBookSnapshot;
+import com.rodmccutcheon.addressbook.repositories.AddressBookSnapshotWriter;
+import com.rodmccutcheon.addressbook.services.SnapshotService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(controllers = SnapshotController.class, properties = "address-book.snapshot.read-only=true")
+@Import(BinaryFormatConfiguration.class)
+class SnapshotControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private SnapshotService snapshotService;
+
+    @TempDir
+    Path directory;
+
+    private AddressBookSnapshot snapshot;
+
+    @BeforeEach
+    void openSnapshot() throws IOException {
+        final var writer = new AddressBookSnapshotWriter();
+        writer.addAddressBook(1, "McNulty's address book", 2, 0);
+        writer.addAddressBook(2, "Bunk's address book", 1, 0);
+        writer.addContact(10, "Stringer Bell", 1, null);
+        writer.addContact(11, "Bubbles", 0, null);
+        writer.addPhoneNumber(10, PhoneNumberType.MOBILE, "+61406747789");
+        writer.addMembership(1, 10);
+        writer.addMembership(1, 11);
+        writer.addMembership(2, 11);
+        final var file = directory.resolve("address-books.snapshot");
+        writer.write(file);
+        snapshot = AddressBookSnapshot.open(file);
+        given(snapshotService.getSnapshot()).willReturn(snapshot);
+    }
+
+    @AfterEach
+    void closeSnapshot() throws IOException {
+        snapshot.close();
+    }
+
+    @Test
+    @DisplayName("Should serve an address book from the snapshot, tagged with its version")
+    void testGetAddressBook() throws Exception {
+        mockMvc.perform(get(AddressBookController.BASE_URL + "/1")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"2\""))
+                .andExpect(jsonPath("$.name", is("McNulty's address book")))
+                .andExpect(jsonPath("$.contacts", hasSize(2)));
+    }
+
+    @Test
+    @DisplayName("Should page through the address books in the snapshot")
+    void testGetAllAddressBooks() throws Exception {
+        mockMvc.perform(get(AddressBookController.BASE_URL + "?size=1&includeContacts=false")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.LINK))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("McNulty's address book")));
+    }
+
+    @Test
+    @DisplayName("Should return bad request for an address book the snapshot does not hold")
+    void testGetAddressBookThatDoesNotExist() throws Exception {
+        mockMvc.perform(get(AddressBookController.BASE_URL + "/3")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+}
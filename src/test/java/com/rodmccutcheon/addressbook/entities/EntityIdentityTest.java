@@ -0,0 +1,88 @@
+package com.rodmccutcheon.addressbook.entities;
+
+import com.rodmccutcheon.addressbook.repositories.AddressBookRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:entity-identity;MODE=PostgreSQL")
+class EntityIdentityTest {
+
+    @Autowired
+    private AddressBookRepository addressBookRepository;
+
+    @Test
+    @DisplayName("Should treat contacts with the same id as equal, whatever their other fields")
+    void testContactsEqualById() {
+        final var bubbles = new Contact(1L, "Bubbles");
+        final var renamed = new Contact(1L, "Reginald Cousins");
+        renamed.addPhoneNumber(PhoneNumberType.MOBILE, "+61402985777");
+
+        assertEquals(bubbles, renamed);
+        assertEquals(bubbles.hashCode(), renamed.hashCode());
+        assertNotEquals(bubbles, new Contact(2L, "Bubbles"));
+        assertEquals(new AddressBook(1L, "McNulty's address book"), new AddressBook(1L, "Jimmy's address book"));
+    }
+
+    @Test
+    @DisplayName("Should treat a contact that has not been saved as equal only to itself")
+    void testUnsavedContactsEqualOnlyToThemselves() {
+        final var bubbles = new Contact("Bubbles");
+
+        assertEquals(bubbles, bubbles);
+        assertNotEquals(bubbles, new Contact("Bubbles"));
+        assertNotEquals(new Contact(1L, "Bubbles"), bubbles);
+        assertNotEquals(new AddressBook("McNulty's address book"), new AddressBook("McNulty's address book"));
+    }
+
+    @Test
+    @DisplayName("Should keep the hash code of a contact while its fields and memberships change")
+    void testHashCodeIsStable() {
+        final var bubbles = new Contact(1L, "Bubbles");
+        final var addressBook = new AddressBook(1L, "McNulty's address book");
+        final var contacts = new HashSet<>(Set.of(bubbles));
+
+        bubbles.setName("Reginald Cousins");
+        bubbles.addPhoneNumber(PhoneNumberType.MOBILE, "+61402985777");
+        addressBook.addContact(bubbles);
+
+        assertTrue(contacts.contains(bubbles));
+        assertTrue(addressBook.getContacts().contains(new Contact(1L, "Bubbles")));
+        assertTrue(bubbles.getAddressBooks().contains(addressBook));
+    }
+
+    @Test
+    @DisplayName("Should find entities added to sets before they were saved once they have been saved")
+    void testSetsBeforeAndAfterPersistence() {
+        final var addressBook = new AddressBook("McNulty's address book");
+        final var bubbles = new Contact("Bubbles");
+        final var omar = new Contact("Omar Little");
+        addressBook.addContact(bubbles);
+        addressBook.addContact(omar);
+        final var addressBooks = new HashSet<>(Set.of(addressBook));
+
+        addressBookRepository.save(addressBook);
+
+        assertNotNull(bubbles.getId());
+        assertTrue(addressBooks.contains(addressBook));
+        assertTrue(bubbles.getAddressBooks().contains(addressBook));
+        assertTrue(addressBook.getContacts().remove(bubbles));
+        assertFalse(addressBook.getContacts().contains(bubbles));
+        assertTrue(addressBook.getContacts().contains(omar));
+
+        final var saved = addressBookRepository.findWithContactsById(addressBook.getId()).orElseThrow();
+        assertEquals(addressBook, saved);
+        assertEquals(Set.of(bubbles, omar), saved.getContacts());
+        assertTrue(saved.getContacts().contains(new Contact(omar.getId(), "Omar Little")));
+    }
+}
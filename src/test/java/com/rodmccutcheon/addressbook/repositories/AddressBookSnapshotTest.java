@@ -0,0 +1,136 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.dto.AddressBookSummary;
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.AddressBookChangeType;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AddressBookSnapshotTest {
+
+    private static final long SHARD_1_ID = 1L << 40;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Should read back an address book with its contacts, their phone numbers and their other address books")
+    void testReadsAddressBook() throws IOException {
+        try (var snapshot = AddressBookSnapshot.open(writeSample())) {
+            final var addressBook = snapshot.findAddressBook(1).orElseThrow();
+
+            assertEquals("McNulty's address book", addressBook.getName());
+            assertEquals(3, addressBook.getVersion());
+            final var contacts = byName(addressBook);
+            assertEquals(List.of("Bubbles", "Stringer Bell"), new ArrayList<>(contacts.keySet()));
+            final var stringer = contacts.get("Stringer Bell");
+            assertEquals(1, stringer.getVersion());
+            assertEquals(Map.of(PhoneNumberType.MOBILE, "+61406747789", PhoneNumberType.WORK, "+61398420944"),
+                    stringer.getPhoneNumbers());
+            assertEquals(List.of(1L, 2L), contacts.get("Bubbles").getAddressBooks().stream()
+                    .map(AddressBook::getId).sorted().collect(Collectors.toList()));
+            assertFalse(snapshot.findAddressBook(7).isPresent());
+        }
+    }
+
+    @Test
+    @DisplayName("Should page through the address books in id order, whatever order they were added in")
+    void testPagesAddressBooks() throws IOException {
+        try (var snapshot = AddressBookSnapshot.open(writeSample())) {
+            assertEquals(List.of(new AddressBookSummary(1L, "McNulty's address book"),
+                    new AddressBookSummary(2L, "Bunk's address book")), snapshot.getAddressBookSummaries(0, 2));
+            assertEquals(List.of(new AddressBookSummary(2L, "Bunk's address book"),
+                    new AddressBookSummary(SHARD_1_ID, "Kima's address book")),
+                    snapshot.getAddressBookSummaries(1, 5));
+            assertEquals(List.of(), snapshot.getAddressBooks(SHARD_1_ID, 5));
+        }
+    }
+
+    @Test
+    @DisplayName("Should hand over each contact in an address book once, in id order, with its phone numbers")
+    void testUniqueContacts() throws IOException {
+        try (var snapshot = AddressBookSnapshot.open(writeSample())) {
+            final var contacts = new ArrayList<ContactView>();
+            snapshot.forEachUniqueContact(contacts::add);
+
+            assertEquals(List.of(10L, 11L, 12L), contacts.stream().map(ContactView::getId).collect(Collectors.toList()));
+            assertNull(contacts.get(2).getPhoneNumbers().get(PhoneNumberType.OTHER));
+            assertEquals(3, snapshot.getUniqueContacts().size());
+            assertEquals(4, snapshot.getSummary().getMemberships());
+        }
+    }
+
+    @Test
+    @DisplayName("Should find the last id handed out below a bound, to restart sequences after")
+    void testLastIdBelow() throws IOException {
+        try (var snapshot = AddressBookSnapshot.open(writeSample())) {
+            assertEquals(OptionalLong.of(2), snapshot.lastAddressBookIdBelow(SHARD_1_ID));
+            assertEquals(OptionalLong.of(SHARD_1_ID), snapshot.lastAddressBookIdBelow(Long.MAX_VALUE));
+            assertEquals(OptionalLong.empty(), snapshot.lastContactIdBelow(10));
+            assertEquals(Map.of(1L, 0, 2L, 0, SHARD_1_ID, 1), snapshot.getAddressBookShards());
+        }
+    }
+
+    @Test
+    @DisplayName("Should refuse to open a file that is not a snapshot")
+    void testRejectsOtherFiles() throws IOException {
+        final var file = Files.writeString(directory.resolve("not-a-snapshot"), "{\"name\":\"Bubbles\"}");
+
+        assertThrows(IOException.class, () -> AddressBookSnapshot.open(file));
+    }
+
+    /**
+     * Two address books on shard 0 sharing a contact, and an empty one on shard 1, added out of order.
+     */
+    private Path writeSample() throws IOException {
+        final var writer = new AddressBookSnapshotWriter();
+        writer.addAddressBook(SHARD_1_ID, "Kima's address book", 0, 1);
+        writer.addAddressBook(2, "Bunk's address book", 2, 0);
+        writer.addAddressBook(1, "McNulty's address book", 3, 0);
+        writer.addContact(12, "Omar", 1, null);
+        writer.addContact(10, "Stringer Bell", 1, null);
+        writer.addContact(11, "Bubbles", 2, null);
+        writer.addPhoneNumber(10, PhoneNumberType.MOBILE, "+61406747789");
+        writer.addPhoneNumber(10, PhoneNumberType.WORK, "+61398420944");
+        writer.addPhoneNumber(11, PhoneNumberType.MOBILE, "+61402985777");
+        writer.addPhoneNumber(12, PhoneNumberType.OTHER, null);
+        writer.addMatchKey(10, "+61406747789");
+        writer.addMembership(1, 10);
+        writer.addMembership(1, 11);
+        writer.addMembership(2, 11);
+        writer.addMembership(2, 12);
+        writer.addMembership(2, 99);
+        writer.addChange(1, 1, 10, AddressBookChangeType.ADDED);
+        writer.addChange(1, 2, 11, AddressBookChangeType.ADDED);
+        final var file = directory.resolve("address-books.snapshot");
+        writer.write(file);
+        return file;
+    }
+
+    private static Map<String, Contact> byName(AddressBook addressBook) {
+        return addressBook.getContacts().stream()
+                .sorted(Comparator.comparing(Contact::getName))
+                .collect(Collectors.toMap(Contact::getName, contact -> contact, (a, b) -> a,
+                        LinkedHashMap::new));
+    }
+}
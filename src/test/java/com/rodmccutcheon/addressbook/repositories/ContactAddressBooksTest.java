@@ -0,0 +1,51 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ContactAddressBooksTest {
+
+    @Test
+    @DisplayName("Should keep each contact's address book ids in ascending order as they are added and removed")
+    void testAddAndRemove() {
+        final var addressBooks = new ContactAddressBooks();
+        addressBooks.add(7, 3);
+        addressBooks.add(7, 1);
+        addressBooks.add(7, 2);
+        addressBooks.add(8, 2);
+
+        assertArrayEquals(new long[]{1, 2, 3}, addressBooks.get(7));
+        assertArrayEquals(new long[]{2}, addressBooks.get(8));
+        assertEquals(3, addressBooks.count(7));
+        assertEquals(2, addressBooks.size());
+
+        addressBooks.remove(7, 2);
+        addressBooks.remove(7, 3);
+        assertArrayEquals(new long[]{1}, addressBooks.get(7));
+        addressBooks.remove(7, 1);
+        assertArrayEquals(new long[0], addressBooks.get(7));
+        assertEquals(0, addressBooks.count(7));
+        assertEquals(1, addressBooks.size());
+    }
+
+    @Test
+    @DisplayName("Should find every remaining contact after growing and after removing contacts between them")
+    void testGrowAndRemove() {
+        final var addressBooks = new ContactAddressBooks();
+        for (long contactId = 0; contactId < 10_000; contactId++) {
+            addressBooks.add(contactId, contactId % 7);
+        }
+        for (long contactId = 0; contactId < 10_000; contactId += 3) {
+            addressBooks.remove(contactId, contactId % 7);
+        }
+
+        assertEquals(6_666, addressBooks.size());
+        for (long contactId = 0; contactId < 10_000; contactId++) {
+            assertArrayEquals(contactId % 3 == 0 ? new long[0] : new long[]{contactId % 7},
+                    addressBooks.get(contactId));
+        }
+    }
+}
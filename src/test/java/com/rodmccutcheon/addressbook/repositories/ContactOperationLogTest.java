@@ -0,0 +1,111 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.rodmccutcheon.addressbook.dto.QueuedContactOperation;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.ContactOperationType;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ContactOperationLogTest {
+
+    private static final long SEGMENT_BYTES = 1024 * 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Should read back the operations appended, in order, after the log is reopened")
+    void testReadsAppendedOperations() throws IOException {
+        final var bubbles = new Contact("Bubbles");
+        bubbles.addPhoneNumber(PhoneNumberType.MOBILE, "+61402985777");
+        try (var log = new ContactOperationLog(directory, objectMapper, SEGMENT_BYTES)) {
+            log.append(operation("1", ContactOperationType.ADD, bubbles, null));
+            log.append(operation("2", ContactOperationType.REMOVE, null, 7L));
+        }
+
+        try (var log = new ContactOperationLog(directory, objectMapper, SEGMENT_BYTES)) {
+            final var operations = log.readAll();
+
+            assertEquals(List.of("1", "2"), ids(operations));
+            assertEquals("+61402985777", operations.get(0).getContact().getPhoneNumbers().get(PhoneNumberType.MOBILE));
+            assertEquals(7L, operations.get(1).getContactId());
+        }
+    }
+
+    @Test
+    @DisplayName("Should cut off an operation left incomplete by a crash, and append after the last complete one")
+    void testCutsOffIncompleteOperation() throws IOException {
+        try (var log = new ContactOperationLog(directory, objectMapper, SEGMENT_BYTES)) {
+            log.append(operation("1", ContactOperationType.REMOVE, null, 7L));
+        }
+        Files.writeString(directory.resolve(ContactOperationLog.segmentFileName(0)), "{\"id\":\"2\",\"ty",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (var log = new ContactOperationLog(directory, objectMapper, SEGMENT_BYTES)) {
+            log.append(operation("3", ContactOperationType.REMOVE, null, 8L));
+
+            assertEquals(List.of("1", "3"), ids(log.readAll()));
+        }
+    }
+
+    @Test
+    @DisplayName("Should delete each full segment once its operations are completed, while others stay pending")
+    void testDeletesCompletedSegments() throws IOException {
+        try (var log = new ContactOperationLog(directory, objectMapper, 1)) {
+            log.append(operation("1", ContactOperationType.REMOVE, null, 7L));
+            log.append(operation("2", ContactOperationType.REMOVE, null, 8L));
+            log.append(operation("3", ContactOperationType.REMOVE, null, 9L));
+            assertEquals(4, log.countSegments());
+
+            log.complete(List.of("2", "3"));
+            assertEquals(List.of("1"), ids(log.readAll()));
+            assertEquals(2, log.countSegments());
+
+            log.complete(List.of("1"));
+            assertEquals(List.of(), ids(log.readAll()));
+            assertEquals(1, log.countSegments());
+        }
+    }
+
+    @Test
+    @DisplayName("Should empty the segment being appended to once no operation is pending")
+    void testEmptiesCurrentSegment() throws IOException {
+        try (var log = new ContactOperationLog(directory, objectMapper, SEGMENT_BYTES)) {
+            log.append(operation("1", ContactOperationType.REMOVE, null, 7L));
+            log.append(operation("2", ContactOperationType.REMOVE, null, 8L));
+
+            log.complete(List.of("1"));
+            log.complete(List.of("2"));
+            assertEquals(List.of(), ids(log.readAll()));
+
+            log.append(operation("3", ContactOperationType.REMOVE, null, 9L));
+            assertEquals(List.of("3"), ids(log.readAll()));
+        }
+    }
+
+    private static QueuedContactOperation operation(String id, ContactOperationType type, Contact contact,
+                                                    Long contactId) {
+        return new QueuedContactOperation(id, type, 1L, contact, contactId, Instant.now());
+    }
+
+    private static List<String> ids(List<QueuedContactOperation> operations) {
+        return operations.stream().map(QueuedContactOperation::getId).collect(Collectors.toList());
+    }
+}
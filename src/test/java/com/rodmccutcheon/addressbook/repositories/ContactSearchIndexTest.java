@@ -0,0 +1,103 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import com.rodmccutcheon.addressbook.events.ContactsDeletedEvent;
+import com.rodmccutcheon.addressbook.events.ContactsSavedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ContactSearchIndexTest {
+
+    private static final ContactView STRINGER = new ContactView(1L, "Stringer Bell",
+            Map.of(PhoneNumberType.MOBILE, "+61406747789", PhoneNumberType.WORK, "+61398420944"));
+    private static final ContactView BUBBLES = new ContactView(2L, "Bubbles",
+            Map.of(PhoneNumberType.MOBILE, "+61402985777"));
+    private static final ContactView OMAR = new ContactView(3L, "Omar Little",
+            Map.of(PhoneNumberType.OTHER, "+61406747700"));
+
+    private ContactSearchIndex contactSearchIndex;
+
+    @BeforeEach
+    void indexContacts() throws IOException {
+        contactSearchIndex = new ContactSearchIndex();
+        contactSearchIndex.onContactsSaved(new ContactsSavedEvent(List.of(STRINGER, BUBBLES, OMAR)));
+        contactSearchIndex.refresh();
+    }
+
+    @AfterEach
+    void closeIndex() throws IOException {
+        contactSearchIndex.close();
+    }
+
+    @Test
+    @DisplayName("Should find contacts by a prefix of any word in their name, ignoring case")
+    void testSearchByNamePrefix() {
+        assertEquals(List.of(STRINGER), contactSearchIndex.search("BEL", 10));
+        assertEquals(List.of(OMAR), contactSearchIndex.search("om lit", 10));
+    }
+
+    @Test
+    @DisplayName("Should find contacts whose name is misspelt")
+    void testSearchByMisspeltName() {
+        assertEquals(List.of(BUBBLES), contactSearchIndex.search("Bubbels", 10));
+    }
+
+    @Test
+    @DisplayName("Should find contacts by the trailing digits of a phone number, ignoring punctuation")
+    void testSearchByPhoneNumberSuffix() {
+        assertEquals(List.of(BUBBLES), contactSearchIndex.search("985 777", 10));
+        assertEquals(List.of(STRINGER), contactSearchIndex.search("9842 0944", 10));
+    }
+
+    @Test
+    @DisplayName("Should rank exact name matches above prefix matches and cap the number of results")
+    void testSearchRanksAndLimits() {
+        contactSearchIndex.onContactsSaved(new ContactsSavedEvent(List.of(
+                new ContactView(4L, "Omari", Map.of()), new ContactView(5L, "Omar", Map.of()))));
+        contactSearchIndex.refreshChanges();
+
+        final var results = contactSearchIndex.search("omar", 2);
+
+        assertEquals(Set.of(OMAR.getId(), 5L), Set.copyOf(ids(results)));
+    }
+
+    @Test
+    @DisplayName("Should reflect saved and deleted contacts in searches once the index is refreshed")
+    void testSearchReflectsChanges() {
+        contactSearchIndex.onContactsSaved(new ContactsSavedEvent(List.of(new ContactView(2L, "Reginald Cousins",
+                Map.of(PhoneNumberType.MOBILE, "+61402985777")))));
+        contactSearchIndex.onContactsDeleted(new ContactsDeletedEvent(List.of(OMAR.getId())));
+
+        assertEquals(List.of(BUBBLES), contactSearchIndex.search("bubbles", 10));
+        assertEquals(List.of(), contactSearchIndex.search("reginald", 10));
+        assertEquals(List.of(OMAR), contactSearchIndex.search("omar", 10));
+
+        contactSearchIndex.refreshChanges();
+
+        assertEquals(List.of(), contactSearchIndex.search("bubbles", 10));
+        assertEquals(List.of(2L), ids(contactSearchIndex.search("reginald", 10)));
+        assertEquals(List.of(), contactSearchIndex.search("omar", 10));
+    }
+
+    @Test
+    @DisplayName("Should return nothing for a query with no words and too few digits")
+    void testSearchWithBlankQuery() {
+        assertEquals(List.of(), contactSearchIndex.search(" ", 10));
+        assertEquals(List.of(), contactSearchIndex.search("+6", 10));
+    }
+
+    private static List<Long> ids(List<ContactView> contacts) {
+        return contacts.stream().map(ContactView::getId).collect(Collectors.toList());
+    }
+}
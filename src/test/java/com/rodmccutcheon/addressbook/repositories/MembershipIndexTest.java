@@ -0,0 +1,121 @@
+package com.rodmccutcheon.addressbook.repositories;
+
+import com.rodmccutcheon.addressbook.events.ContactsDeletedEvent;
+import com.rodmccutcheon.addressbook.events.MembershipsChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MembershipIndexTest {
+
+    private static final long SHARD_1_ID = 1L << 40;
+
+    private MembershipIndex membershipIndex;
+
+    /**
+     * Contact 11 is shared by address books 1 and 2, and contact 12 by all three.
+     */
+    @BeforeEach
+    void indexMemberships() {
+        membershipIndex = new MembershipIndex();
+        membershipIndex.onMembershipsChanged(new MembershipsChangedEvent(1, List.of(10L, 11L, 12L), List.of()));
+        membershipIndex.onMembershipsChanged(new MembershipsChangedEvent(2, List.of(11L, 12L, 13L), List.of()));
+        membershipIndex.onMembershipsChanged(new MembershipsChangedEvent(SHARD_1_ID, List.of(12L, SHARD_1_ID + 5),
+                List.of()));
+    }
+
+    @Test
+    @DisplayName("Should count each contact once, and once per address book it is in")
+    void testCounts() {
+        assertEquals(5, membershipIndex.countUniqueContacts());
+        assertEquals(8, membershipIndex.countMemberships());
+        assertEquals(3, membershipIndex.findLargestAddressBookSize());
+        assertEquals(3, membershipIndex.countAddressBooks(12));
+        assertArrayEquals(new long[]{1, 2, SHARD_1_ID}, membershipIndex.getAddressBookIds(12));
+        assertArrayEquals(new long[0], membershipIndex.getAddressBookIds(99));
+    }
+
+    @Test
+    @DisplayName("Should only count a contact as gone once it has left its last address book")
+    void testRemove() {
+        assertFalse(membershipIndex.add(1, 11));
+
+        membershipIndex.onMembershipsChanged(new MembershipsChangedEvent(1, List.of(), List.of(11L, 12L, 99L)));
+        assertEquals(5, membershipIndex.countUniqueContacts());
+        assertArrayEquals(new long[]{2}, membershipIndex.getAddressBookIds(11));
+
+        membershipIndex.onMembershipsChanged(new MembershipsChangedEvent(2, List.of(), List.of(11L)));
+        assertEquals(4, membershipIndex.countUniqueContacts());
+        assertEquals(0, membershipIndex.countAddressBooks(11));
+        assertEquals(5, membershipIndex.countMemberships());
+    }
+
+    @Test
+    @DisplayName("Should remove deleted contacts from every address book, and forget address books left empty")
+    void testDeleteContacts() {
+        membershipIndex.onContactsDeleted(new ContactsDeletedEvent(List.of(12L, SHARD_1_ID + 5)));
+
+        assertEquals(3, membershipIndex.countUniqueContacts());
+        assertEquals(4, membershipIndex.countMemberships());
+        assertEquals(0, membershipIndex.countContacts(SHARD_1_ID));
+        assertEquals(Roaring64Bitmap.bitmapOf(10, 11), membershipIndex.getContactIds(1));
+    }
+
+    @Test
+    @DisplayName("Should combine the contacts of address books, in the order the address books are given")
+    void testSetOperations() {
+        assertEquals(Roaring64Bitmap.bitmapOf(11, 12), membershipIndex.intersection(List.of(1L, 2L)));
+        assertEquals(Roaring64Bitmap.bitmapOf(12), membershipIndex.intersection(List.of(1L, 2L, SHARD_1_ID)));
+        assertEquals(Roaring64Bitmap.bitmapOf(10, 11, 12, 13, SHARD_1_ID + 5),
+                membershipIndex.union(List.of(1L, 2L, SHARD_1_ID)));
+        assertEquals(Roaring64Bitmap.bitmapOf(10), membershipIndex.difference(List.of(1L, 2L)));
+        assertEquals(Roaring64Bitmap.bitmapOf(13), membershipIndex.difference(List.of(2L, 1L)));
+        assertEquals(new Roaring64Bitmap(), membershipIndex.intersection(List.of(1L, 7L)));
+        assertEquals(Roaring64Bitmap.bitmapOf(10, 11, 12), membershipIndex.getContactIds(1));
+        assertThrows(NoSuchElementException.class, () -> membershipIndex.union(List.of()));
+    }
+
+    @Test
+    @DisplayName("Should replace everything indexed when reloaded")
+    void testReplaceAll() {
+        membershipIndex.replaceAll(() -> Map.of(3L, Roaring64Bitmap.bitmapOf(20, 21), 4L,
+                Roaring64Bitmap.bitmapOf(21), 5L, new Roaring64Bitmap()));
+
+        assertEquals(2, membershipIndex.countUniqueContacts());
+        assertEquals(3, membershipIndex.countMemberships());
+        assertArrayEquals(new long[]{3, 4}, membershipIndex.getAddressBookIds(21));
+        assertEquals(0, membershipIndex.countContacts(1));
+    }
+
+    @Test
+    @DisplayName("Should keep the changes made while reloading, whether or not they were loaded")
+    void testReplaceAllKeepsChangesMadeWhileLoading() {
+        membershipIndex.replaceAll(() -> {
+            // Read part way through the changes below: contact 23 was added in time, the rest were not
+            final var loaded = Map.of(3L, Roaring64Bitmap.bitmapOf(20, 21, 23), 4L, Roaring64Bitmap.bitmapOf(22));
+            membershipIndex.onMembershipsChanged(new MembershipsChangedEvent(3, List.of(23L), List.of(20L)));
+            membershipIndex.onMembershipsChanged(new MembershipsChangedEvent(4, List.of(), List.of(22L)));
+            membershipIndex.onContactsDeleted(new ContactsDeletedEvent(List.of(21L)));
+            return loaded;
+        });
+
+        assertEquals(Roaring64Bitmap.bitmapOf(23), membershipIndex.getContactIds(3));
+        assertEquals(new Roaring64Bitmap(), membershipIndex.getContactIds(4));
+        assertEquals(1, membershipIndex.countUniqueContacts());
+        assertEquals(1, membershipIndex.countMemberships());
+
+        membershipIndex.onMembershipsChanged(new MembershipsChangedEvent(4, List.of(24L), List.of()));
+        membershipIndex.replaceAll(() -> Map.of(3L, Roaring64Bitmap.bitmapOf(23)));
+        assertEquals(new Roaring64Bitmap(), membershipIndex.getContactIds(4));
+    }
+}
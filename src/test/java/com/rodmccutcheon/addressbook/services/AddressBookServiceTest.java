@@ -1,19 +1,46 @@
 package com.rodmccutcheon.addressbook.services;
 
+import com.rodmccutcheon.addressbook.dto.AddressBookChanges;
+import com.rodmccutcheon.addressbook.dto.AddressBookSummary;
+import com.rodmccutcheon.addressbook.dto.BatchEntry;
+import com.rodmccutcheon.addressbook.dto.ContactPage;
+import com.rodmccutcheon.addressbook.dto.ContactView;
 import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.AddressBookChange;
+import com.rodmccutcheon.addressbook.entities.AddressBookChangeType;
 import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.events.ContactsDeletedEvent;
+import com.rodmccutcheon.addressbook.repositories.AddressBookChangeRepository;
 import com.rodmccutcheon.addressbook.repositories.AddressBookRepository;
+import com.rodmccutcheon.addressbook.repositories.AddressBookShardRepository;
+import com.rodmccutcheon.addressbook.repositories.ContactRepository;
+import com.rodmccutcheon.addressbook.repositories.MembershipIndex;
+import com.rodmccutcheon.addressbook.repositories.UniqueContactRepository;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.data.domain.PageRequest;
 
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 
@@ -23,6 +50,26 @@ class AddressBookServiceTest {
     @Mock
     private AddressBookRepository addressBookRepository;
 
+    @Mock
+    private AddressBookChangeRepository addressBookChangeRepository;
+
+    @Mock
+    private ContactRepository contactRepository;
+
+    @Mock
+    private UniqueContactRepository uniqueContactRepository;
+
+    @Mock
+    private MembershipIndex membershipIndex;
+
+    // A single shard, whose reads run inline
+    @Spy
+    private ShardRouter shardRouter = new ShardRouter(List.of(), mock(AddressBookShardRepository.class),
+            mock(PlatformTransactionManager.class));
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private AddressBookService addressBookService;
 
@@ -40,19 +87,37 @@ class AddressBookServiceTest {
     @DisplayName("Should successfully return the specified address book")
     void testGetAddressBook() {
         final var addressBook = new AddressBook(1L, "McNulty's address book");
-        given(addressBookRepository.findById(addressBook.getId())).willReturn(Optional.of(addressBook));
+        given(addressBookRepository.findWithContactsById(addressBook.getId())).willReturn(Optional.of(addressBook));
 
         assertEquals(addressBook, addressBookService.getAddressBook(addressBook.getId()));
     }
 
     @Test
-    @DisplayName("Should successfully return all address books")
-    void testGetAllAddressBooks() {
-        final var addressBook = new AddressBook(1L, "McNulty's address book");
-        final var addressBook2 = new AddressBook(2L, "Bunk's address book");
-        given(addressBookRepository.findAll()).willReturn(List.of(addressBook, addressBook2));
+    @DisplayName("Should return the page of address books following the given id")
+    void testGetAddressBooks() {
+        final var addressBook = new AddressBook(3L, "McNulty's address book");
+        given(addressBookRepository.findIdsAfter(2L, PageRequest.of(0, 1))).willReturn(List.of(addressBook.getId()));
+        given(addressBookRepository.findWithContactsByIdInOrderByIdAsc(List.of(addressBook.getId()))).willReturn(List.of(addressBook));
+
+        assertEquals(List.of(addressBook), addressBookService.getAddressBooks(2L, 1));
+    }
+
+    @Test
+    @DisplayName("Should not fetch any address books when there are none after the given id")
+    void testGetAddressBooksPastTheEnd() {
+        given(addressBookRepository.findIdsAfter(2L, PageRequest.of(0, 1))).willReturn(List.of());
+
+        assertEquals(List.of(), addressBookService.getAddressBooks(2L, 1));
+        verify(addressBookRepository, never()).findWithContactsByIdInOrderByIdAsc(anyCollection());
+    }
+
+    @Test
+    @DisplayName("Should return the page of address book summaries following the given id")
+    void testGetAddressBookSummaries() {
+        final var summary = new AddressBookSummary(3L, "McNulty's address book");
+        given(addressBookRepository.findSummariesByIdGreaterThanOrderByIdAsc(2L, PageRequest.of(0, 1))).willReturn(List.of(summary));
 
-        assertEquals(List.of(addressBook, addressBook2), addressBookService.getAllAddressBooks());
+        assertEquals(List.of(summary), addressBookService.getAddressBookSummaries(2L, 1));
     }
 
     @Test
@@ -60,7 +125,8 @@ class AddressBookServiceTest {
     void testUpdateAddressBook() {
         final var addressBookName = "McNulty's address book";
         final var addressBook = spy(new AddressBook(1L, addressBookName));
-        given(addressBookRepository.findById(addressBook.getId())).willReturn(Optional.of(addressBook));
+        given(addressBookRepository.incrementVersion(addressBook.getId())).willReturn(1);
+        given(addressBookRepository.findWithContactsById(addressBook.getId())).willReturn(Optional.of(addressBook));
 
         addressBookService.updateAddressBook(addressBook.getId(), addressBook);
 
@@ -69,39 +135,151 @@ class AddressBookServiceTest {
     }
 
     @Test
-    @DisplayName("Should successfully delete an address book")
+    @DisplayName("Should fail to update an address book that does not exist without loading it")
+    void testUpdateMissingAddressBook() {
+        final var addressBook = new AddressBook(1L, "McNulty's address book");
+
+        assertThrows(NoSuchElementException.class,
+                () -> addressBookService.updateAddressBook(addressBook.getId(), addressBook));
+        verify(addressBookRepository, never()).findWithContactsById(anyLong());
+    }
+
+    @Test
+    @DisplayName("Should successfully delete an address book and announce that its contacts were deleted")
     void testDeleteAddressBook() {
         final var addressBook = new AddressBook(1L, "McNulty's address book");
+        addressBook.getContacts().add(new Contact(2L, "Bubbles"));
+        given(addressBookRepository.findWithContactsById(addressBook.getId())).willReturn(Optional.of(addressBook));
 
         addressBookService.deleteAddressBook(addressBook.getId());
 
-        verify(addressBookRepository, times(1)).deleteById(addressBook.getId());
+        verify(addressBookRepository, times(1)).incrementVersionsOfAddressBooksSharingContactsWith(addressBook.getId());
+        verify(addressBookChangeRepository, times(1)).insertRemovalsFromOtherAddressBooks(addressBook.getId());
+        verify(addressBookChangeRepository, times(1)).deleteByAddressBookId(addressBook.getId());
+        verify(addressBookRepository, times(1)).delete(addressBook);
+        verify(uniqueContactRepository, times(1)).deleteByContactIdIn(List.of(2L));
+        verify(eventPublisher, times(1)).publishEvent(new ContactsDeletedEvent(List.of(2L)));
     }
 
     @Test
-    @DisplayName("Should successfully add a contact to the specified address book")
+    @DisplayName("Should add the address book to the contact without loading or saving the address book's contacts")
     void testAddContact() {
         final var addressBook = spy(new AddressBook(1L, "McNulty's address book"));
         final var contact = new Contact(1L, "Bubbles");
         given(addressBookRepository.findById(addressBook.getId())).willReturn(Optional.of(addressBook));
 
-        addressBookService.addContact(addressBook.getId(), contact);
+        assertTrue(addressBookService.addContact(addressBook.getId(), contact));
 
-        verify(addressBook).addContact(contact);
-        verify(addressBookRepository, times(1)).save(addressBook);
+        assertTrue(contact.getAddressBooks().contains(addressBook));
+        assertFalse(addressBookService.addContact(addressBook.getId(), contact));
+        verify(addressBook, never()).getContacts();
+        verify(addressBookRepository, never()).findWithContactsById(anyLong());
+        verify(addressBookRepository, never()).save(any());
+        verify(addressBookRepository, times(1)).incrementVersion(addressBook.getId());
+        verify(addressBookChangeRepository, times(1)).insert(addressBook.getId(), contact.getId(), "ADDED");
     }
 
     @Test
-    @DisplayName("Should successfully remove a contact from the specified address book")
+    @DisplayName("Should remove the address book from the contact without loading or saving the address book's contacts")
     void testRemoveContact() {
         final var addressBook = spy(new AddressBook(1L, "McNulty's address book"));
+        final var addressBook2 = new AddressBook(2L, "Bunk's address book");
         final var contact = new Contact(1L, "Bubbles");
-        addressBook.addContact(contact);
+        contact.getAddressBooks().add(addressBook);
+        contact.getAddressBooks().add(addressBook2);
+        given(addressBookRepository.findById(addressBook.getId())).willReturn(Optional.of(addressBook));
 
-        addressBookService.removeContact(addressBook, contact);
+        assertTrue(addressBookService.removeContact(addressBook.getId(), contact));
 
-        verify(addressBook).removeContact(contact);
-        verify(addressBookRepository, times(1)).save(addressBook);
+        assertEquals(Set.of(addressBook2), contact.getAddressBooks());
+        assertFalse(addressBookService.removeContact(addressBook.getId(), contact));
+        verify(addressBook, never()).getContacts();
+        verify(addressBookRepository, never()).save(any());
+        verify(addressBookRepository, times(1)).incrementVersion(addressBook.getId());
+        verify(addressBookChangeRepository, times(1)).insert(addressBook.getId(), contact.getId(), "REMOVED");
+    }
+
+    @Test
+    @DisplayName("Should return the latest change of each contact since the given version")
+    void testGetChangesSince() {
+        final var addressBook = new AddressBook(1L, "McNulty's address book");
+        addressBook.setVersion(5);
+        final var bubbles = new Contact(2L, "Bubbles");
+        given(addressBookRepository.findById(addressBook.getId())).willReturn(Optional.of(addressBook));
+        given(addressBookChangeRepository.findByAddressBookIdAndVersionBetweenOrderByVersionAsc(1L, 3L, 5L))
+                .willReturn(List.of(
+                        new AddressBookChange(1L, 3L, 2L, AddressBookChangeType.ADDED),
+                        new AddressBookChange(1L, 3L, 3L, AddressBookChangeType.ADDED),
+                        new AddressBookChange(1L, 4L, 3L, AddressBookChangeType.REMOVED),
+                        new AddressBookChange(1L, 5L, 4L, AddressBookChangeType.REMOVED)));
+        given(contactRepository.findWithPhoneNumbersByIdIn(List.of(2L))).willReturn(List.of(bubbles));
+
+        assertEquals(new AddressBookChanges(1L, "McNulty's address book", 5L,
+                        List.of(new ContactView(2L, "Bubbles", Map.of())), List.of(3L, 4L)),
+                addressBookService.getChangesSince(addressBook.getId(), 2L));
     }
 
+    @Test
+    @DisplayName("Should not look up any changes when the client already has the current version")
+    void testGetChangesSinceCurrentVersion() {
+        final var addressBook = new AddressBook(1L, "McNulty's address book");
+        addressBook.setVersion(5);
+        given(addressBookRepository.findById(addressBook.getId())).willReturn(Optional.of(addressBook));
+
+        assertEquals(new AddressBookChanges(1L, "McNulty's address book", 5L, List.of(), List.of()),
+                addressBookService.getChangesSince(addressBook.getId(), 5L));
+        verifyNoInteractions(addressBookChangeRepository, contactRepository);
+    }
+
+    @Test
+    @DisplayName("Should read only the page of shared contacts after the last one seen")
+    void testGetContactsInAll() {
+        final var omar = new Contact(5L, "Omar");
+        final var bubbles = new Contact(8L, "Bubbles");
+        given(addressBookRepository.countByIdIn(List.of(1L, 2L))).willReturn(2L);
+        given(membershipIndex.intersection(List.of(1L, 2L))).willReturn(Roaring64Bitmap.bitmapOf(3, 5, 8, 9));
+        given(contactRepository.findWithPhoneNumbersByIdIn(List.of(5L, 8L))).willReturn(List.of(bubbles, omar));
+
+        assertEquals(new ContactPage(List.of(new ContactView(5L, "Omar", Map.of()),
+                        new ContactView(8L, "Bubbles", Map.of())), 8L),
+                addressBookService.getContactsInAll(List.of(1L, 2L), 3, 2));
+    }
+
+    @Test
+    @DisplayName("Should link to the next page after the last id in the index, even if its contact was deleted")
+    void testGetContactsInAllWithDeletedContacts() {
+        final var bubbles = new Contact(8L, "Bubbles");
+        given(addressBookRepository.countByIdIn(List.of(1L, 2L))).willReturn(2L);
+        given(membershipIndex.intersection(List.of(1L, 2L))).willReturn(Roaring64Bitmap.bitmapOf(3, 5, 8, 9, 12));
+        given(contactRepository.findWithPhoneNumbersByIdIn(List.of(5L, 8L, 9L))).willReturn(List.of(bubbles));
+
+        assertEquals(new ContactPage(List.of(new ContactView(8L, "Bubbles", Map.of())), 9L),
+                addressBookService.getContactsInAll(List.of(1L, 2L), 3, 3));
+        given(contactRepository.findWithPhoneNumbersByIdIn(List.of(12L))).willReturn(List.of());
+        assertEquals(new ContactPage(List.of(), null), addressBookService.getContactsInAll(List.of(1L, 2L), 9, 3));
+    }
+
+    @Test
+    @DisplayName("Should not combine address books unless every one of them exists")
+    void testGetContactsInAllOfAddressBookThatDoesNotExist() {
+        given(addressBookRepository.countByIdIn(List.of(1L, 7L))).willReturn(1L);
+
+        assertThrows(NoSuchElementException.class,
+                () -> addressBookService.getContactsInAll(List.of(1L, 7L, 1L), 0, 10));
+        verifyNoInteractions(membershipIndex);
+    }
+
+    @Test
+    @DisplayName("Should fetch several address books in one query and return them in the order asked for")
+    void testGetAddressBooksById() {
+        final var mcNulty = new AddressBook(1L, "McNulty's address book");
+        final var bunk = new AddressBook(2L, "Bunk's address book");
+        given(addressBookRepository.findWithContactsByIdInOrderByIdAsc(List.of(2L, 7L, 1L)))
+                .willReturn(List.of(mcNulty, bunk));
+
+        assertEquals(List.of(new BatchEntry<>(2L, true, bunk), new BatchEntry<>(7L, false, null),
+                        new BatchEntry<>(1L, true, mcNulty), new BatchEntry<>(2L, true, bunk)),
+                addressBookService.getAddressBooksById(List.of(2L, 7L, 1L, 2L)));
+        verify(addressBookRepository, times(1)).findWithContactsByIdInOrderByIdAsc(anyCollection());
+    }
 }
@@ -0,0 +1,92 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.dto.ContactPage;
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:address-book-set-operations;MODE=PostgreSQL")
+class AddressBookSetOperationsTest {
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private ContactService contactService;
+
+    private AddressBook mcNulty;
+    private AddressBook bunk;
+    private AddressBook kima;
+    private Contact bubbles;
+    private Contact omar;
+    private Contact stringer;
+    private Contact wallace;
+
+    /**
+     * Bubbles is in every address book, Omar in McNulty's and Bunk's, Stringer only in McNulty's and Wallace only in
+     * Kima's.
+     */
+    @BeforeEach
+    void createAddressBooks() {
+        mcNulty = addressBookService.createAddressBook(new AddressBook("McNulty's address book"));
+        bunk = addressBookService.createAddressBook(new AddressBook("Bunk's address book"));
+        kima = addressBookService.createAddressBook(new AddressBook("Kima's address book"));
+        bubbles = contactService.addContactToAddressBook(mcNulty.getId(), new Contact("Bubbles"));
+        contactService.addContactToAddressBook(bunk.getId(), bubbles);
+        contactService.addContactToAddressBook(kima.getId(), bubbles);
+        omar = contactService.addContactToAddressBook(mcNulty.getId(), new Contact("Omar"));
+        contactService.addContactToAddressBook(bunk.getId(), omar);
+        stringer = contactService.addContactToAddressBook(mcNulty.getId(), new Contact("Stringer Bell"));
+        wallace = contactService.addContactToAddressBook(kima.getId(), new Contact("Wallace"));
+    }
+
+    @AfterEach
+    void deleteAddressBooks() {
+        addressBookService.deleteAddressBook(mcNulty.getId());
+        addressBookService.deleteAddressBook(bunk.getId());
+        addressBookService.deleteAddressBook(kima.getId());
+    }
+
+    @Test
+    @DisplayName("Should find the contacts in all, any, or only the first of several address books")
+    void testSetOperations() {
+        final var ids = List.of(mcNulty.getId(), bunk.getId(), kima.getId());
+
+        assertEquals(List.of("Bubbles"), names(addressBookService.getContactsInAll(ids, 0, 10)));
+        assertEquals(List.of("Bubbles", "Omar"),
+                names(addressBookService.getContactsInAll(List.of(mcNulty.getId(), bunk.getId()), 0, 10)));
+        assertEquals(List.of("Bubbles", "Omar", "Stringer Bell", "Wallace"),
+                names(addressBookService.getContactsInAny(ids, 0, 10)));
+        assertEquals(List.of("Stringer Bell"), names(addressBookService.getContactsInFirstOnly(ids, 0, 10)));
+    }
+
+    @Test
+    @DisplayName("Should page through the combined contacts, following removals as they are committed")
+    void testPagesFollowChanges() {
+        final var ids = List.of(mcNulty.getId(), kima.getId());
+        final var firstPage = addressBookService.getContactsInAny(ids, 0, 2);
+        assertEquals(List.of("Bubbles", "Omar"), names(firstPage));
+        assertEquals(omar.getId(), firstPage.getNextAfter());
+
+        contactService.deleteContactFromAddressBook(mcNulty.getId(), stringer.getId());
+
+        assertEquals(List.of("Wallace"),
+                names(addressBookService.getContactsInAny(ids, firstPage.getNextAfter(), 2)));
+        assertEquals(new ContactPage(List.of(), null), addressBookService.getContactsInAny(ids, wallace.getId(), 2));
+    }
+
+    private static List<String> names(ContactPage page) {
+        return page.getContacts().stream().map(ContactView::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,136 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:address-book-sync;MODE=PostgreSQL")
+class AddressBookSyncTest {
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private ContactService contactService;
+
+    @Autowired
+    private ContactImportService contactImportService;
+
+    private final List<Long> addressBookIds = new ArrayList<>();
+    private AddressBook addressBook;
+
+    @BeforeEach
+    void createAddressBook() {
+        addressBook = createAddressBook("McNulty's address book");
+    }
+
+    @AfterEach
+    void deleteAddressBooks() {
+        for (Long addressBookId : addressBookIds) {
+            try {
+                addressBookService.deleteAddressBook(addressBookId);
+            } catch (NoSuchElementException e) {
+                // Already deleted by the test
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should increment the version of an address book on every change to it")
+    void testVersionIncrements() {
+        assertEquals(0, version());
+
+        final var bubbles = contactService.addContactToAddressBook(addressBook.getId(), contact("Bubbles"));
+        assertEquals(1, version());
+        contactService.addContactToAddressBook(addressBook.getId(), bubbles);
+        assertEquals(1, version());
+        addressBookService.updateAddressBook(addressBook.getId(), new AddressBook("Jimmy's address book"));
+        assertEquals(2, version());
+        contactService.deleteContactFromAddressBook(addressBook.getId(), bubbles.getId());
+        assertEquals(3, version());
+    }
+
+    @Test
+    @DisplayName("Should return only the contacts added and removed since the given version")
+    void testChangesSince() {
+        final var bubbles = contactService.addContactToAddressBook(addressBook.getId(), contact("Bubbles"));
+        final var omar = contactService.addContactToAddressBook(addressBook.getId(), contact("Omar Little"));
+        final long version = version();
+        final var stringer = contactService.addContactToAddressBook(addressBook.getId(), contact("Stringer Bell"));
+        contactService.deleteContactFromAddressBook(addressBook.getId(), omar.getId());
+
+        final var changes = addressBookService.getChangesSince(addressBook.getId(), version);
+
+        assertEquals(version + 2, changes.getVersion());
+        assertEquals(List.of(stringer.getId()), ids(changes.getAdded()));
+        assertEquals(List.of(omar.getId()), changes.getRemoved());
+        assertEquals(List.of(bubbles.getId(), stringer.getId()),
+                ids(addressBookService.getChangesSince(addressBook.getId(), 0).getAdded()));
+        assertEquals(0, addressBookService.getChangesSince(addressBook.getId(), changes.getVersion())
+                .getAdded().size());
+    }
+
+    @Test
+    @DisplayName("Should record an import as one change adding every imported contact")
+    void testChangesSinceImport() throws Exception {
+        final var contacts = "{\"name\":\"Bubbles\"}\n{\"name\":\"Omar Little\"}\n";
+
+        contactImportService.importContacts(addressBook.getId(),
+                new ByteArrayInputStream(contacts.getBytes(StandardCharsets.UTF_8)));
+
+        final var changes = addressBookService.getChangesSince(addressBook.getId(), 0);
+        assertEquals(1, changes.getVersion());
+        assertEquals(2, changes.getAdded().size());
+    }
+
+    @Test
+    @DisplayName("Should record the removal of a deleted address book's contacts from the other address books")
+    void testChangesSinceAddressBookDeleted() {
+        final var addressBook2 = createAddressBook("Bunk's address book");
+        final var bubbles = contactService.addContactToAddressBook(addressBook.getId(), contact("Bubbles"));
+        contactService.addContactToAddressBook(addressBook2.getId(), bubbles);
+        final long version = addressBookService.getAddressBook(addressBook2.getId()).getVersion();
+
+        addressBookService.deleteAddressBook(addressBook.getId());
+
+        final var changes = addressBookService.getChangesSince(addressBook2.getId(), version);
+        assertEquals(version + 1, changes.getVersion());
+        assertEquals(List.of(bubbles.getId()), changes.getRemoved());
+    }
+
+    private AddressBook createAddressBook(String name) {
+        final var created = addressBookService.createAddressBook(new AddressBook(name));
+        addressBookIds.add(created.getId());
+        return created;
+    }
+
+    private long version() {
+        return addressBookService.getAddressBook(addressBook.getId()).getVersion();
+    }
+
+    private static List<Long> ids(List<ContactView> contacts) {
+        return contacts.stream().map(ContactView::getId).collect(Collectors.toList());
+    }
+
+    private static Contact contact(String name) {
+        final var contact = new Contact(name);
+        contact.addPhoneNumber(PhoneNumberType.MOBILE, "0402 985 777");
+        return contact;
+    }
+}
@@ -0,0 +1,90 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:caching;MODE=PostgreSQL",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class CachingTest {
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private ContactService contactService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private AddressBook addressBook;
+
+    @BeforeEach
+    void createAddressBook() {
+        addressBook = addressBookService.createAddressBook(new AddressBook("McNulty's address book"));
+        contactService.addContactToAddressBook(addressBook.getId(), new Contact("Bubbles"));
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    @DisplayName("Should read an address book from the database once and from the cache afterwards")
+    void testGetAddressBookIsCached() {
+        final var hits = cacheGets(AddressBookService.ADDRESS_BOOKS_CACHE, "hit");
+        statistics.clear();
+
+        addressBookService.getAddressBook(addressBook.getId());
+        addressBookService.getAddressBook(addressBook.getId());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(hits + 1, cacheGets(AddressBookService.ADDRESS_BOOKS_CACHE, "hit"));
+    }
+
+    @Test
+    @DisplayName("Should evict the cached address book when it is renamed")
+    void testUpdateAddressBookEvictsCache() {
+        addressBookService.getAddressBook(addressBook.getId());
+
+        addressBookService.updateAddressBook(addressBook.getId(), new AddressBook("Bunk's address book"));
+
+        assertEquals("Bunk's address book", addressBookService.getAddressBook(addressBook.getId()).getName());
+    }
+
+    @Test
+    @DisplayName("Should evict the cached address book and unique contacts when a contact is added or removed")
+    void testContactMutationsEvictCaches() {
+        addressBookService.getAddressBook(addressBook.getId());
+        contactService.getUniqueContacts();
+
+        final var contact = contactService.addContactToAddressBook(addressBook.getId(), new Contact("Omar"));
+
+        assertEquals(2, addressBookService.getAddressBook(addressBook.getId()).getContacts().size());
+        assertTrue(contactService.getUniqueContacts().stream().anyMatch(c -> c.getId().equals(contact.getId())));
+
+        contactService.deleteContactFromAddressBook(addressBook.getId(), contact.getId());
+
+        assertEquals(1, addressBookService.getAddressBook(addressBook.getId()).getContacts().size());
+        assertTrue(contactService.getUniqueContacts().stream().noneMatch(c -> c.getId().equals(contact.getId())));
+    }
+
+    private double cacheGets(String cache, String result) {
+        return meterRegistry.get("cache.gets").tag("cache", cache).tag("result", result).functionCounter().count();
+    }
+}
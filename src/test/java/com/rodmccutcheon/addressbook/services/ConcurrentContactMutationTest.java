@@ -0,0 +1,144 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import com.rodmccutcheon.addressbook.repositories.ContactRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hammers one address book from many threads at once, and checks that no change is lost.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:concurrent-contact-mutation;MODE=PostgreSQL")
+class ConcurrentContactMutationTest {
+
+    private static final int THREADS = 8;
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private ContactService contactService;
+
+    @Autowired
+    private UniqueContactsViewService uniqueContactsViewService;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    private final List<Long> addressBookIds = new ArrayList<>();
+    private ExecutorService executor;
+
+    @BeforeEach
+    void startThreads() {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void deleteAddressBooks() {
+        executor.shutdownNow();
+        for (Long addressBookId : addressBookIds) {
+            try {
+                addressBookService.deleteAddressBook(addressBookId);
+            } catch (NoSuchElementException e) {
+                // Already deleted by the test
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep every new contact added to one address book by concurrent threads")
+    void testConcurrentAdds() throws Exception {
+        final var addressBook = createAddressBook("McNulty's address book");
+        final int contactsPerThread = 25;
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < contactsPerThread; i++) {
+                final var contact = new Contact("Contact " + thread + "-" + i);
+                contact.addPhoneNumber(PhoneNumberType.MOBILE, String.format("04%02d%06d", thread, i));
+                contactService.addContactToAddressBook(addressBook.getId(), contact);
+            }
+        });
+
+        final var saved = addressBookService.getAddressBook(addressBook.getId());
+        assertEquals(THREADS * contactsPerThread, saved.getContacts().size());
+        assertEquals(THREADS * contactsPerThread, saved.getVersion());
+        assertTrue(uniqueContactsViewService.check().isConsistent());
+    }
+
+    @Test
+    @DisplayName("Should add a contact to an address book once however many threads add it at the same time")
+    void testConcurrentAddsOfTheSameContact() throws Exception {
+        final var addressBook = createAddressBook("McNulty's address book");
+        final var addressBook2 = createAddressBook("Bunk's address book");
+        final var bubbles = contactService.addContactToAddressBook(addressBook.getId(), new Contact("Bubbles"));
+
+        runConcurrently(thread -> contactService.addContactToAddressBook(addressBook2.getId(), bubbles));
+
+        final var saved = addressBookService.getAddressBook(addressBook2.getId());
+        assertEquals(1, saved.getContacts().size());
+        assertEquals(1, saved.getVersion());
+        assertTrue(uniqueContactsViewService.check().isConsistent());
+    }
+
+    @Test
+    @DisplayName("Should delete a contact removed from each of its address books by concurrent threads")
+    void testConcurrentRemovals() throws Exception {
+        final var addressBooks = new ArrayList<AddressBook>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            addressBooks.add(createAddressBook("Address book " + thread));
+        }
+        final var bubbles = contactService.addContactToAddressBook(addressBooks.get(0).getId(), new Contact("Bubbles"));
+        for (AddressBook addressBook : addressBooks) {
+            contactService.addContactToAddressBook(addressBook.getId(), bubbles);
+        }
+
+        runConcurrently(thread ->
+                contactService.deleteContactFromAddressBook(addressBooks.get(thread).getId(), bubbles.getId()));
+
+        assertFalse(contactRepository.existsById(bubbles.getId()));
+        assertTrue(uniqueContactsViewService.check().isConsistent());
+    }
+
+    private void runConcurrently(IntConsumer task) throws Exception {
+        final var start = new CountDownLatch(1);
+        final var results = new ArrayList<Future<Void>>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            final int current = thread;
+            results.add(executor.submit((Callable<Void>) () -> {
+                start.await();
+                task.accept(current);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<Void> result : results) {
+            result.get();
+        }
+    }
+
+    private AddressBook createAddressBook(String name) {
+        final var created = addressBookService.createAddressBook(new AddressBook(name));
+        addressBookIds.add(created.getId());
+        return created;
+    }
+}
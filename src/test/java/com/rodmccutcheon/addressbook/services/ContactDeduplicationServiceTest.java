@@ -0,0 +1,141 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.dto.ContactView;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:contact-deduplication;MODE=PostgreSQL")
+class ContactDeduplicationServiceTest {
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private ContactService contactService;
+
+    @Autowired
+    private ContactImportService contactImportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private AddressBook addressBook;
+    private AddressBook addressBook2;
+
+    @BeforeEach
+    void createAddressBooks() {
+        addressBook = addressBookService.createAddressBook(new AddressBook("McNulty's address book"));
+        addressBook2 = addressBookService.createAddressBook(new AddressBook("Bunk's address book"));
+    }
+
+    @AfterEach
+    void deleteAddressBooks() {
+        addressBookService.deleteAddressBook(addressBook.getId());
+        addressBookService.deleteAddressBook(addressBook2.getId());
+    }
+
+    @Test
+    @DisplayName("Should cluster a new contact with an existing one whose phone number and name only differ in format")
+    void testAddDuplicateContact() {
+        final var stringer = contactService.addContactToAddressBook(addressBook.getId(),
+                contact("Stringer Bell", PhoneNumberType.MOBILE, "+61 406 747 789"));
+        final var duplicate = contact("bell, stringer", PhoneNumberType.MOBILE, "0406747789");
+        duplicate.addPhoneNumber(PhoneNumberType.WORK, "(03) 9842 0944");
+        contactService.addContactToAddressBook(addressBook2.getId(), duplicate);
+
+        assertEquals(List.of(new ContactView(stringer.getId(), "Stringer Bell",
+                        Map.of(PhoneNumberType.MOBILE, "+61 406 747 789", PhoneNumberType.WORK, "(03) 9842 0944"))),
+                uniqueContactClusters());
+    }
+
+    @Test
+    @DisplayName("Should keep contacts that share a phone number but not a name in separate clusters")
+    void testAddContactSharingPhoneNumber() {
+        contactService.addContactToAddressBook(addressBook.getId(),
+                contact("Stringer Bell", PhoneNumberType.WORK, "(03) 9842 0944"));
+        contactService.addContactToAddressBook(addressBook2.getId(),
+                contact("Avon Barksdale", PhoneNumberType.WORK, "+61 3 9842 0944"));
+
+        assertEquals(2, uniqueContactClusters().size());
+    }
+
+    @Test
+    @DisplayName("Should merge the clusters of every existing contact a new contact matches")
+    void testAddContactMergingClusters() {
+        contactService.addContactToAddressBook(addressBook.getId(),
+                contact("Stringer Bell", PhoneNumberType.MOBILE, "0406 747 789"));
+        contactService.addContactToAddressBook(addressBook2.getId(),
+                contact("Stringer Bell", PhoneNumberType.WORK, "03 9842 0944"));
+        assertEquals(2, uniqueContactClusters().size());
+
+        final var bridge = contact("Stringer", PhoneNumberType.MOBILE, "+61406747789");
+        bridge.addPhoneNumber(PhoneNumberType.WORK, "+61398420944");
+        contactService.addContactToAddressBook(addressBook2.getId(), bridge);
+
+        assertEquals(1, uniqueContactClusters().size());
+    }
+
+    @Test
+    @DisplayName("Should cluster duplicates that arrive in the same import")
+    void testImportDuplicateContacts() throws Exception {
+        final var contacts = "{\"name\":\"Bubbles\",\"phoneNumbers\":{\"MOBILE\":\"0402 985 777\"}}\n" +
+                "{\"name\":\"Omar Little\",\"phoneNumbers\":{\"MOBILE\":\"+61402985777\"}}\n" +
+                "{\"name\":\"Reginald 'Bubbles' Cousins\",\"phoneNumbers\":{\"MOBILE\":\"+61402985777\"}}\n";
+
+        contactImportService.importContacts(addressBook.getId(),
+                new ByteArrayInputStream(contacts.getBytes(StandardCharsets.UTF_8)));
+
+        final var clusters = uniqueContactClusters();
+        assertEquals(2, clusters.size());
+        assertEquals("Bubbles", clusters.get(0).getName());
+        assertEquals("Omar Little", clusters.get(1).getName());
+    }
+
+    @Test
+    @DisplayName("Should find contacts by phone number in any format, through the index on their normalized numbers")
+    void testFindContactsByPhoneNumber() throws Exception {
+        final var stringer = contactService.addContactToAddressBook(addressBook.getId(),
+                contact("Stringer Bell", PhoneNumberType.MOBILE, "+61 406 747 789"));
+        contactImportService.importContacts(addressBook2.getId(), new ByteArrayInputStream(
+                "{\"name\":\"Avon Barksdale\",\"phoneNumbers\":{\"WORK\":\"(04) 0674-7789\"}}\n"
+                        .getBytes(StandardCharsets.UTF_8)));
+
+        final var contacts = contactService.findContactsByPhoneNumber("0406747789");
+        assertEquals(stringer.getId(), contacts.get(0).getId());
+        assertEquals(List.of("Stringer Bell", "Avon Barksdale"),
+                contacts.stream().map(ContactView::getName).collect(Collectors.toList()));
+        assertEquals(List.of(), contactService.findContactsByPhoneNumber("+61 3 9842 0944"));
+        assertTrue(jdbcTemplate.queryForObject("explain select contact_id from contact_match_keys where match_key = ?",
+                String.class, "+61406747789").contains("CONTACT_MATCH_KEYS_MATCH_KEY_IDX"));
+    }
+
+    private List<ContactView> uniqueContactClusters() {
+        final var contacts = new ArrayList<ContactView>();
+        contactService.forEachUniqueContactCluster(contacts::add);
+        return contacts;
+    }
+
+    private static Contact contact(String name, PhoneNumberType phoneNumberType, String phoneNumber) {
+        final var contact = new Contact(name);
+        contact.addPhoneNumber(phoneNumberType, phoneNumber);
+        return contact;
+    }
+}
@@ -0,0 +1,103 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:contact-import;MODE=PostgreSQL",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "address-book.import.chunk-size=40"
+})
+class ContactImportServiceTest {
+
+    @Autowired
+    private ContactImportService contactImportService;
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private AddressBook addressBook;
+
+    @BeforeEach
+    void createAddressBook() {
+        addressBook = addressBookService.createAddressBook(new AddressBook("McNulty's address book"));
+    }
+
+    @Test
+    @DisplayName("Should import every contact in a JSON array into the address book using batched inserts")
+    void testImportJsonArray() throws Exception {
+        final var contacts = IntStream.range(0, 120)
+                .mapToObj(i -> "{\"name\":\"Stringer Bell " + i + "\",\"phoneNumbers\":{\"MOBILE\":\"+614067477" + i + "\"}}")
+                .collect(Collectors.joining(",", "[", "]"));
+        final var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        final var result = contactImportService.importContacts(addressBook.getId(), json(contacts));
+
+        assertEquals(120, result.getAccepted());
+        assertEquals(0, result.getRejected());
+        assertNull(result.getError());
+        assertTrue(statistics.getPrepareStatementCount() < 120,
+                "Expected batched inserts but " + statistics.getPrepareStatementCount() + " statements were prepared");
+        final var imported = addressBookService.getAddressBook(addressBook.getId()).getContacts();
+        assertEquals(120, imported.size());
+        assertTrue(imported.stream().anyMatch(contact -> "Stringer Bell 7".equals(contact.getName())
+                && "+6140674777".equals(contact.getPhoneNumbers().get(PhoneNumberType.MOBILE))));
+    }
+
+    @Test
+    @DisplayName("Should skip and count records that are invalid or cannot be bound to a contact")
+    void testImportNdjsonWithInvalidRecords() throws Exception {
+        final var contacts = "{\"name\":\"Bubbles\"}\n" +
+                "{\"phoneNumbers\":{\"MOBILE\":\"+61402985777\"}}\n" +
+                "{\"name\":\"Omar\",\"phoneNumbers\":{\"PAGER\":\"+61406747700\"}}\n" +
+                "{\"name\":\"Omar\",\"phoneNumbers\":{\"OTHER\":\"+61406747700\"}}\n";
+
+        final var result = contactImportService.importContacts(addressBook.getId(), json(contacts));
+
+        assertEquals(2, result.getAccepted());
+        assertEquals(2, result.getRejected());
+        assertEquals(2, addressBookService.getAddressBook(addressBook.getId()).getContacts().size());
+    }
+
+    @Test
+    @DisplayName("Should keep the contacts read before a malformed record and report why the import stopped")
+    void testImportMalformedPayload() throws Exception {
+        final var result = contactImportService.importContacts(addressBook.getId(),
+                json("{\"name\":\"Bubbles\"}\n{\"name\": oops}\n{\"name\":\"Omar\"}\n"));
+
+        assertEquals(1, result.getAccepted());
+        assertEquals(1, result.getRejected());
+        assertNotNull(result.getError());
+        assertEquals(1, addressBookService.getAddressBook(addressBook.getId()).getContacts().size());
+    }
+
+    @Test
+    @DisplayName("Should fail when the address book does not exist")
+    void testImportIntoAddressBookThatDoesNotExist() {
+        assertThrows(NoSuchElementException.class,
+                () -> contactImportService.importContacts(-1L, json("[{\"name\":\"Bubbles\"}]")));
+    }
+
+    private static ByteArrayInputStream json(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
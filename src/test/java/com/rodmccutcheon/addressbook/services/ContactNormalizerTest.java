@@ -0,0 +1,82 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.google.i18n.phonenumbers.NumberParseException;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ContactNormalizerTest {
+
+    private final ContactNormalizer contactNormalizer = new ContactNormalizer("AU");
+
+    @Test
+    @DisplayName("Should format phone numbers as E.164 whatever their punctuation or trunk prefix")
+    void testToE164() {
+        assertEquals(Optional.of("+61406747789"), contactNormalizer.toE164("+61 406 747 789"));
+        assertEquals(Optional.of("+61406747789"), contactNormalizer.toE164("0406-747-789"));
+        assertEquals(Optional.of("+61398420944"), contactNormalizer.toE164("(03) 9842 0944"));
+        assertEquals(Optional.of("+14105550123"), contactNormalizer.toE164("+1 (410) 555-0123"));
+        assertEquals(Optional.empty(), contactNormalizer.toE164("call me"));
+        assertEquals(Optional.empty(), contactNormalizer.toE164("12"));
+    }
+
+    @Test
+    @DisplayName("Should format phone numbers exactly as libphonenumber does, whichever way they are read")
+    void testToE164MatchesLibphonenumber() {
+        final var prefixes = new String[]{"", "0", "00", "01", "+61", "+61 0", "+1", "+44", "+6", "(+61)"};
+        final var separators = new String[]{"", "", "", " ", "-", ".", "(", ")", "  ", "/", "x"};
+        final var random = new Random(42);
+        for (String region : new String[]{"AU", "GB", "US", "DE"}) {
+            final var normalizer = new ContactNormalizer(region);
+            for (int n = 0; n < 20_000; n++) {
+                final var phoneNumber = new StringBuilder(prefixes[random.nextInt(prefixes.length)]);
+                final int digits = 1 + random.nextInt(16);
+                for (int i = 0; i < digits; i++) {
+                    phoneNumber.append(separators[random.nextInt(separators.length)]).append(random.nextInt(10));
+                }
+                assertEquals(parse(phoneNumber.toString(), region), normalizer.toE164(phoneNumber.toString()),
+                        phoneNumber + " in " + region);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should reduce names to their lower-case words without accents or punctuation")
+    void testNameTokens() {
+        assertEquals(Set.of("stringer", "bell"), contactNormalizer.nameTokens("  Bell,  STRINGER "));
+        assertEquals(Set.of("omar", "little"), contactNormalizer.nameTokens("Ómar Little"));
+        assertEquals(Set.of("dangelo", "barksdale"), contactNormalizer.nameTokens("D'Angelo Barksdale"));
+        assertEquals(Set.of(), contactNormalizer.nameTokens("--"));
+    }
+
+    @Test
+    @DisplayName("Should file a contact under each of its phone numbers in E.164")
+    void testMatchKeys() {
+        final var contact = new Contact("Bubbles");
+        contact.addPhoneNumber(PhoneNumberType.MOBILE, "0402 985 777");
+        contact.addPhoneNumber(PhoneNumberType.HOME, "+61402985777");
+        contact.addPhoneNumber(PhoneNumberType.WORK, "unknown");
+
+        assertEquals(Set.of("+61402985777"), contactNormalizer.matchKeys(contact));
+    }
+
+    private static Optional<String> parse(String phoneNumber, String region) {
+        final var phoneNumberUtil = PhoneNumberUtil.getInstance();
+        try {
+            final var parsed = phoneNumberUtil.parse(phoneNumber, region);
+            return phoneNumberUtil.isPossibleNumber(parsed)
+                    ? Optional.of(phoneNumberUtil.format(parsed, PhoneNumberUtil.PhoneNumberFormat.E164))
+                    : Optional.empty();
+        } catch (NumberParseException e) {
+            return Optional.empty();
+        }
+    }
+}
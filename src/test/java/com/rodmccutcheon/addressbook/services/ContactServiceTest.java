@@ -1,19 +1,37 @@
 package com.rodmccutcheon.addressbook.services;
 
+import com.rodmccutcheon.addressbook.dto.ContactView;
 import com.rodmccutcheon.addressbook.entities.AddressBook;
 import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import com.rodmccutcheon.addressbook.events.ContactsDeletedEvent;
+import com.rodmccutcheon.addressbook.events.ContactsSavedEvent;
+import com.rodmccutcheon.addressbook.repositories.AddressBookShardRepository;
 import com.rodmccutcheon.addressbook.repositories.ContactRepository;
+import com.rodmccutcheon.addressbook.repositories.ContactRowRepository;
+import com.rodmccutcheon.addressbook.repositories.ContactSearchIndex;
+import com.rodmccutcheon.addressbook.repositories.MembershipIndex;
+import com.rodmccutcheon.addressbook.repositories.UniqueContactRepository;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.*;
+import java.util.function.Consumer;
 
-import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -23,9 +41,35 @@ class ContactServiceTest {
     @Mock
     private ContactRepository contactRepository;
 
+    @Mock
+    private ContactRowRepository contactRowRepository;
+
+    @Mock
+    private ContactSearchIndex contactSearchIndex;
+
+    @Mock
+    private MembershipIndex membershipIndex;
+
+    @Mock
+    private UniqueContactRepository uniqueContactRepository;
+
     @Mock
     private AddressBookService addressBookService;
 
+    @Mock
+    private ContactDeduplicationService contactDeduplicationService;
+
+    @Spy
+    private ContactNormalizer contactNormalizer = new ContactNormalizer("AU");
+
+    // A single shard, whose reads run inline
+    @Spy
+    private ShardRouter shardRouter = new ShardRouter(List.of(), mock(AddressBookShardRepository.class),
+            mock(PlatformTransactionManager.class));
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private ContactService contactService;
 
@@ -35,13 +79,20 @@ class ContactServiceTest {
         final var addressBook = new AddressBook(1L, "McNulty's address book");
         final var addressBook2 = new AddressBook(2L, "Bunk's address book");
         final var contact = new Contact("Bubbles");
+        contact.addPhoneNumber(PhoneNumberType.MOBILE, "+61402985777");
         contact.setAddressBooks(new HashSet<>(Arrays.asList(addressBook, addressBook2)));
-        given(contactRepository.save(contact)).willReturn(contact);
+        willAnswer(invocation -> {
+            contact.setId(1L);
+            return null;
+        }).given(contactDeduplicationService).saveNewContacts(List.of(contact));
 
         contactService.addContactToAddressBook(addressBook.getId(), contact);
 
-        verify(contactRepository, times(1)).save(contact);
+        verify(contactDeduplicationService, times(1)).saveNewContacts(List.of(contact));
         verify(addressBookService, times(1)).addContact(addressBook.getId(), contact);
+        verify(uniqueContactRepository, times(1)).insert(1L, 2);
+        verify(eventPublisher, times(1)).publishEvent(new ContactsSavedEvent(List.of(
+                new ContactView(1L, "Bubbles", Map.of(PhoneNumberType.MOBILE, "+61402985777")))));
     }
 
     @Test
@@ -51,12 +102,16 @@ class ContactServiceTest {
         final var addressBook2 = new AddressBook(2L, "Bunk's address book");
         final var contact = new Contact(1L, "Bubbles");
         contact.setAddressBooks(new HashSet<>(Arrays.asList(addressBook, addressBook2)));
-        given(contactRepository.findById(contact.getId())).willReturn(Optional.of(contact));
+        given(contactRepository.findWithAddressBooksById(contact.getId())).willReturn(Optional.of(contact));
+        given(addressBookService.addContact(addressBook.getId(), contact)).willReturn(true);
 
         contactService.addContactToAddressBook(addressBook.getId(), contact);
 
         verify(contactRepository, times(0)).save(contact);
+        verify(contactDeduplicationService, never()).saveNewContacts(any());
         verify(addressBookService, times(1)).addContact(addressBook.getId(), contact);
+        verify(uniqueContactRepository, times(1)).addMembership(contact.getId());
+        verify(eventPublisher, never()).publishEvent(any());
     }
 
     @Test
@@ -66,13 +121,16 @@ class ContactServiceTest {
         final var addressBook2 = new AddressBook(2L, "Bunk's address book");
         final var contact = new Contact(1L, "Bubbles");
         contact.setAddressBooks(new HashSet<>(Arrays.asList(addressBook, addressBook2)));
-        given(addressBookService.getAddressBook(addressBook.getId())).willReturn(addressBook);
-        given(contactRepository.findById(contact.getId())).willReturn(Optional.of(contact));
+        given(contactRepository.findWithAddressBooksById(contact.getId())).willReturn(Optional.of(contact));
+        willAnswer(invocation -> contact.getAddressBooks().remove(addressBook))
+                .given(addressBookService).removeContact(addressBook.getId(), contact);
 
         contactService.deleteContactFromAddressBook(addressBook.getId(), contact.getId());
 
-        verify(addressBookService, times(1)).removeContact(addressBook, contact);
+        verify(addressBookService, times(1)).removeContact(addressBook.getId(), contact);
         verify(contactRepository, times(0)).delete(contact);
+        verify(uniqueContactRepository, times(1)).adjustAddressBookCount(contact.getId(), -1);
+        verify(eventPublisher, never()).publishEvent(any());
     }
 
     @Test
@@ -81,20 +139,68 @@ class ContactServiceTest {
         final var addressBook = new AddressBook(1L, "McNulty's address book");
         final var contact = new Contact(1L, "Bubbles");
         contact.setAddressBooks(new HashSet<>(Collections.singletonList(addressBook)));
-        given(addressBookService.getAddressBook(addressBook.getId())).willReturn(addressBook);
-        given(contactRepository.findById(contact.getId())).willReturn(Optional.of(contact));
+        given(contactRepository.findWithAddressBooksById(contact.getId())).willReturn(Optional.of(contact));
+        willAnswer(invocation -> contact.getAddressBooks().remove(addressBook))
+                .given(addressBookService).removeContact(addressBook.getId(), contact);
 
         contactService.deleteContactFromAddressBook(addressBook.getId(), contact.getId());
 
-        verify(addressBookService, times(1)).removeContact(addressBook, contact);
+        verify(addressBookService, times(1)).removeContact(addressBook.getId(), contact);
         verify(contactRepository, times(1)).delete(contact);
+        verify(uniqueContactRepository, times(1)).deleteByContactIdIn(List.of(contact.getId()));
+        verify(eventPublisher, times(1)).publishEvent(new ContactsDeletedEvent(List.of(contact.getId())));
     }
 
     @Test
-    @DisplayName("Should retrieve the set of unique contacts for the given address books")
+    @DisplayName("Should retrieve the set of unique contacts across all address books with a single query")
     void testGetUniqueContacts() {
         contactService.getUniqueContacts();
 
-        verify(contactRepository, times(1)).findDistinctByAddressBooksIn(anyIterable());
+        verify(contactRepository, times(1)).findAllInAnyAddressBook();
+    }
+
+    @Test
+    @DisplayName("Should stream the unique contacts across all address books to the given consumer")
+    void testForEachUniqueContact() {
+        final Consumer<ContactView> consumer = contact -> { };
+
+        contactService.forEachUniqueContact(consumer);
+
+        verify(contactRowRepository, times(1)).forEachUniqueContact(consumer);
+    }
+
+    @Test
+    @DisplayName("Should list one contact for each cluster of contacts that are the same person")
+    void testGetUniqueContactClusters() {
+        final var contact = new ContactView(1L, "Bubbles", Map.of());
+        willAnswer(invocation -> {
+            invocation.<Consumer<ContactView>>getArgument(0).accept(contact);
+            return null;
+        }).given(contactRowRepository).forEachUniqueContactCluster(any());
+
+        assertEquals(List.of(contact), contactService.getUniqueContactClusters());
+        verify(contactRepository, never()).findAllInAnyAddressBook();
+    }
+
+    @Test
+    @DisplayName("Should search contacts through the search index")
+    void testSearchContacts() {
+        final var contacts = List.of(new ContactView(1L, "Bubbles", Map.of()));
+        given(contactSearchIndex.search("bub", 20)).willReturn(contacts);
+
+        assertEquals(contacts, contactService.searchContacts("bub", 20));
+        verify(contactRepository, never()).findAllInAnyAddressBook();
+    }
+
+    @Test
+    @DisplayName("Should look contacts up by their phone number in E.164, rejecting text that is not a phone number")
+    void testFindContactsByPhoneNumber() {
+        final var omar = new Contact(2L, "Omar");
+        omar.addPhoneNumber(PhoneNumberType.OTHER, "0406 747 700");
+        given(contactRepository.findWithPhoneNumbersByMatchKey("+61406747700")).willReturn(List.of(omar));
+
+        assertEquals(List.of(new ContactView(2L, "Omar", Map.of(PhoneNumberType.OTHER, "0406 747 700"))),
+                contactService.findContactsByPhoneNumber("+61 406-747-700"));
+        assertThrows(IllegalArgumentException.class, () -> contactService.findContactsByPhoneNumber("omar"));
     }
 }
@@ -0,0 +1,198 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rodmccutcheon.addressbook.dto.QueuedContactOperation;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.ContactOperation;
+import com.rodmccutcheon.addressbook.entities.ContactOperationStatus;
+import com.rodmccutcheon.addressbook.entities.ContactOperationType;
+import com.rodmccutcheon.addressbook.repositories.ContactOperationLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static com.rodmccutcheon.addressbook.controllers.AddressBookController.BASE_URL;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:contact-write-behind;MODE=PostgreSQL",
+        "address-book.write-behind.enabled=true",
+        "address-book.write-behind.directory=${java.io.tmpdir}/address-book-write-behind-test-${random.uuid}",
+        "address-book.write-behind.max-batch-size=20"
+})
+@AutoConfigureMockMvc
+class ContactWriteBehindTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    // Small enough that every operation in the replay test is logged to a segment of its own
+    private static final long SEGMENT_BYTES = 1;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private ContactService contactService;
+
+    @Autowired
+    private ContactOperationService contactOperationService;
+
+    @Autowired
+    private ContactWriteBehindQueue contactWriteBehindQueue;
+
+    @TempDir
+    Path replayDirectory;
+
+    private AddressBook addressBook;
+
+    @BeforeEach
+    void createAddressBook() {
+        addressBook = addressBookService.createAddressBook(new AddressBook("McNulty's address book"));
+    }
+
+    @AfterEach
+    void deleteAddressBook() {
+        try {
+            addressBookService.deleteAddressBook(addressBook.getId());
+        } catch (NoSuchElementException e) {
+            // Already deleted by the test
+        }
+    }
+
+    @Test
+    @DisplayName("Should accept a contact sent with Prefer: respond-async, and report once it has been added")
+    void testAddContactAsync() throws Exception {
+        final var response = mockMvc.perform(post(BASE_URL + "/" + addressBook.getId() + "/contact")
+                .header("Prefer", "respond-async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"Bubbles\"}"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", startsWith(BASE_URL + "/operations/")))
+                .andExpect(jsonPath("$.status", is("QUEUED")))
+                .andReturn().getResponse();
+        final var operation = objectMapper.readValue(response.getContentAsString(), ContactOperation.class);
+
+        final var applied = awaitCompletion(operation.getId());
+
+        assertEquals(ContactOperationStatus.APPLIED, applied.getStatus());
+        mockMvc.perform(get(response.getHeader("Location")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status", is("APPLIED")))
+                .andExpect(jsonPath("$.contactId", is(applied.getContactId().intValue())));
+        final var contacts = addressBookService.getAddressBook(addressBook.getId()).getContacts();
+        assertEquals(1, contacts.size());
+        assertEquals(applied.getContactId(), contacts.iterator().next().getId());
+    }
+
+    @Test
+    @DisplayName("Should still apply a contact sent without Prefer: respond-async before responding")
+    void testAddContactSync() throws Exception {
+        mockMvc.perform(post(BASE_URL + "/" + addressBook.getId() + "/contact")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"Bubbles\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("Bubbles")));
+    }
+
+    @Test
+    @DisplayName("Should apply every operation of a burst, and fail only the operations that cannot be applied")
+    void testBurst() {
+        final var bubbles = contactService.addContactToAddressBook(addressBook.getId(), new Contact("Bubbles"));
+        final var operations = new ArrayList<ContactOperation>();
+        for (int i = 0; i < 100; i++) {
+            operations.add(contactWriteBehindQueue.add(addressBook.getId(), new Contact("Contact " + i)));
+        }
+        final var missing = contactWriteBehindQueue.remove(addressBook.getId(), Long.MAX_VALUE);
+        final var removal = contactWriteBehindQueue.remove(addressBook.getId(), bubbles.getId());
+
+        for (ContactOperation operation : operations) {
+            assertEquals(ContactOperationStatus.APPLIED, awaitCompletion(operation.getId()).getStatus());
+        }
+        final var failed = awaitCompletion(missing.getId());
+        assertEquals(ContactOperationStatus.FAILED, failed.getStatus());
+        assertEquals("No value present", failed.getError());
+        assertEquals(ContactOperationStatus.APPLIED, awaitCompletion(removal.getId()).getStatus());
+        assertEquals(100, addressBookService.getAddressBook(addressBook.getId()).getContacts().size());
+    }
+
+    @Test
+    @DisplayName("Should replay the operations left in the log at startup, skipping those already applied")
+    void testReplay() throws Exception {
+        final var applied = contactWriteBehindQueue.add(addressBook.getId(), new Contact("Bubbles"));
+        awaitCompletion(applied.getId());
+        final var notApplied = new QueuedContactOperation(UUID.randomUUID().toString(), ContactOperationType.ADD,
+                addressBook.getId(), new Contact("Omar Little"), null, Instant.now());
+        try (var log = new ContactOperationLog(replayDirectory, objectMapper, SEGMENT_BYTES)) {
+            log.append(new QueuedContactOperation(applied.getId(), ContactOperationType.ADD, addressBook.getId(),
+                    new Contact("Bubbles"), null, applied.getAcceptedAt()));
+            log.append(notApplied);
+        }
+
+        final var restarted = new ContactWriteBehindQueue(contactOperationService, objectMapper,
+                new SimpleMeterRegistry(), replayDirectory, 1, 10, 10, DataSize.ofBytes(SEGMENT_BYTES));
+        try {
+            restarted.start();
+            assertEquals(ContactOperationStatus.APPLIED, awaitCompletion(restarted, notApplied.getId()).getStatus());
+        } finally {
+            restarted.stop();
+        }
+
+        assertEquals(2, addressBookService.getAddressBook(addressBook.getId()).getContacts().size());
+        try (var log = new ContactOperationLog(replayDirectory, objectMapper, SEGMENT_BYTES)) {
+            assertTrue(log.readAll().isEmpty());
+            assertEquals(1, log.countSegments());
+        }
+    }
+
+    private ContactOperation awaitCompletion(String operationId) {
+        return awaitCompletion(contactWriteBehindQueue, operationId);
+    }
+
+    private static ContactOperation awaitCompletion(ContactWriteBehindQueue queue, String operationId) {
+        final var deadline = Instant.now().plus(TIMEOUT);
+        while (Instant.now().isBefore(deadline)) {
+            final var operation = queue.getOperation(operationId);
+            if (operation.getStatus() != ContactOperationStatus.QUEUED) {
+                return operation;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return fail("Operation " + operationId + " was not applied within " + TIMEOUT);
+    }
+}
@@ -0,0 +1,156 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.jayway.jsonpath.JsonPath;
+import com.rodmccutcheon.addressbook.config.ReadReplicas;
+import com.rodmccutcheon.addressbook.config.ReadYourWritesFilter;
+import com.rodmccutcheon.addressbook.data.StandInReplicator;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.servlet.http.Cookie;
+import java.time.Duration;
+
+import static com.rodmccutcheon.addressbook.controllers.AddressBookController.BASE_URL;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Runs against a primary and a replica H2 database, kept in sync by the stand-in replicator only when a test asks.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:read-replica-primary;MODE=PostgreSQL",
+        "address-book.replicas.urls=jdbc:h2:mem:read-replica-1;MODE=PostgreSQL",
+        "address-book.replicas.max-lag=1s",
+        "address-book.replicas.heartbeat-interval=PT1H",
+        "address-book.replicas.stand-in-replicator=true",
+        "address-book.replicas.stand-in-replication-interval=PT1H"
+})
+@AutoConfigureMockMvc
+class ReadReplicaTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private StandInReplicator standInReplicator;
+
+    @Autowired
+    private ReplicaLagMonitor replicaLagMonitor;
+
+    @Autowired
+    private ReadReplicas readReplicas;
+
+    private AddressBook replicatedAddressBook;
+
+    @BeforeEach
+    void replicate() throws Exception {
+        replicatedAddressBook = addressBookService.createAddressBook(new AddressBook("Replicated"));
+        replicaLagMonitor.refresh();
+        standInReplicator.replicate();
+        replicaLagMonitor.refresh();
+    }
+
+    @Test
+    @DisplayName("Should serve reads from a replica that is close enough behind the primary")
+    void testReadFromReplica() throws Exception {
+        final var unreplicated = addressBookService.createAddressBook(new AddressBook("Not yet replicated"));
+
+        mockMvc.perform(get(BASE_URL + "?includeContacts=false"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", hasItem(replicatedAddressBook.getId().intValue())))
+                .andExpect(jsonPath("$[*].id", not(hasItem(unreplicated.getId().intValue()))));
+    }
+
+    @Test
+    @DisplayName("Should serve reads from the primary while the replica lags too far behind")
+    void testReadFromPrimaryWhenReplicaLags() throws Exception {
+        final var unreplicated = addressBookService.createAddressBook(new AddressBook("Not yet replicated"));
+        Thread.sleep(1100);
+        replicaLagMonitor.refresh();
+
+        assertTrue(readReplicas.getLag(0).orElseThrow().compareTo(Duration.ofSeconds(1)) > 0);
+        mockMvc.perform(get(BASE_URL + "?includeContacts=false"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", hasItem(unreplicated.getId().intValue())));
+    }
+
+    @Test
+    @DisplayName("Should serve reads from the primary while the replica is suspended for replication")
+    void testReadFromPrimaryWhileReplicaSuspended() throws Exception {
+        final var unreplicated = addressBookService.createAddressBook(new AddressBook("Not yet replicated"));
+        readReplicas.suspend(0);
+        try {
+            assertTrue(readReplicas.choose().isEmpty());
+            mockMvc.perform(get(BASE_URL + "?includeContacts=false"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[*].id", hasItem(unreplicated.getId().intValue())));
+        } finally {
+            readReplicas.resume(0);
+        }
+        assertTrue(readReplicas.choose().isPresent());
+    }
+
+    @Test
+    @DisplayName("Should serve a client's reads from the primary after it changes something, so it reads its own writes")
+    void testReadYourWrites() throws Exception {
+        final var response = mockMvc.perform(post(BASE_URL)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"Written\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        final var lastWrite = response.getCookie(ReadYourWritesFilter.LAST_WRITE_COOKIE);
+        assertNotNull(lastWrite);
+        final int written = JsonPath.read(response.getContentAsString(), "$.id");
+
+        mockMvc.perform(get(BASE_URL + "?includeContacts=false").cookie(new Cookie(lastWrite.getName(),
+                        lastWrite.getValue())))
+                .andExpect(jsonPath("$[*].id", hasItem(written)));
+        mockMvc.perform(get(BASE_URL + "?includeContacts=false"))
+                .andExpect(jsonPath("$[*].id", not(hasItem(written))));
+    }
+
+    @Test
+    @DisplayName("Should fill the address book cache from the primary, so a read straight after a change is not stale")
+    void testCacheFilledFromPrimary() throws Exception {
+        final var url = BASE_URL + "/" + replicatedAddressBook.getId();
+        final int version = JsonPath.read(mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Replicated"))
+                .andReturn().getResponse().getContentAsString(), "$.version");
+        final var lastWrite = mockMvc.perform(put(url)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Renamed\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getCookie(ReadYourWritesFilter.LAST_WRITE_COOKIE);
+        assertNotNull(lastWrite);
+        final var eTag = "W/\"" + (version + 1) + "\"";
+
+        // The first read after the change is from a client that did not make it, and so may be sent to the replica
+        mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", eTag))
+                .andExpect(jsonPath("$.name").value("Renamed"));
+        mockMvc.perform(get(url).cookie(new Cookie(lastWrite.getName(), lastWrite.getValue())))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", eTag))
+                .andExpect(jsonPath("$.name").value("Renamed"));
+    }
+}
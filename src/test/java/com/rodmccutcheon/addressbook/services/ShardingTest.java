@@ -0,0 +1,234 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rodmccutcheon.addressbook.config.JdbcUsage;
+import com.rodmccutcheon.addressbook.config.ReplicaContext;
+import com.rodmccutcheon.addressbook.dto.AddressBookSummary;
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import com.rodmccutcheon.addressbook.repositories.AddressBookRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.rodmccutcheon.addressbook.controllers.AddressBookController.BASE_URL;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:sharding-0;MODE=PostgreSQL",
+        "address-book.sharding.urls=jdbc:h2:mem:sharding-1;MODE=PostgreSQL,jdbc:h2:mem:sharding-2;MODE=PostgreSQL"
+})
+@AutoConfigureMockMvc
+class ShardingTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private ContactService contactService;
+
+    @Autowired
+    private UniqueContactsViewService uniqueContactsViewService;
+
+    @Autowired
+    private ShardRebalancingService shardRebalancingService;
+
+    @Autowired
+    private AddressBookRepository addressBookRepository;
+
+    @SpyBean
+    private ShardRouter shardRouter;
+
+    @Test
+    @DisplayName("New address books should be spread over the shards, each allocating ids from its own range")
+    void testAddressBooksSpreadOverShards() {
+        final var shards = new HashSet<Integer>();
+        for (int i = 0; i < 3; i++) {
+            final var addressBook = addressBookService.createAddressBook(new AddressBook("Spread " + i));
+            final int shard = shardRouter.shardOf(addressBook.getId());
+            assertEquals(shard, addressBook.getId() / ShardRouter.ID_RANGE);
+            assertTrue(shardRouter.onShard(shard, () -> addressBookRepository.existsById(addressBook.getId())));
+            shards.add(shard);
+        }
+
+        assertEquals(Set.of(0, 1, 2), shards);
+    }
+
+    @Test
+    @DisplayName("Reads of every shard should go to the primary only when the calling thread's reads do")
+    void testReadEachShardCarriesReplicaContext() {
+        assertEquals(List.of(true, true, true),
+                ReplicaContext.onPrimary(() -> shardRouter.readEachShard(ReplicaContext::isPrimaryOnly)));
+        assertEquals(List.of(false, false, false), shardRouter.readEachShard(ReplicaContext::isPrimaryOnly));
+    }
+
+    @Test
+    @DisplayName("Statements run reading every shard should be counted in the calling thread's JDBC usage")
+    void testReadEachShardCountsJdbcUsage() {
+        JdbcUsage.start();
+        try {
+            shardRouter.readEachShard(addressBookRepository::count);
+        } finally {
+            final var usage = JdbcUsage.stop();
+            assertTrue(usage.getStatements() >= 3);
+        }
+    }
+
+    @Test
+    @DisplayName("Should page through the address books of every shard in id order")
+    void testPageAcrossShards() {
+        for (int i = 0; i < 3; i++) {
+            addressBookService.createAddressBook(new AddressBook("Paged " + i));
+        }
+
+        final var allIds = addressBookService.getAddressBookSummaries(0, 1000).stream()
+                .map(AddressBookSummary::getId)
+                .collect(Collectors.toList());
+        final var firstPage = addressBookService.getAddressBookSummaries(0, 2).stream()
+                .map(AddressBookSummary::getId)
+                .collect(Collectors.toList());
+        final var nextPage = addressBookService.getAddressBooks(firstPage.get(1), 2).stream()
+                .map(AddressBook::getId)
+                .collect(Collectors.toList());
+
+        assertEquals(allIds.stream().sorted().collect(Collectors.toList()), allIds);
+        assertEquals(allIds.subList(0, 2), firstPage);
+        assertEquals(allIds.subList(2, 4), nextPage);
+    }
+
+    @Test
+    @DisplayName("Should gather the unique contacts of every shard, and check and rebuild the view on each")
+    void testUniqueContactsAcrossShards() throws Exception {
+        final var names = new HashSet<String>();
+        for (int i = 0; i < 3; i++) {
+            final var addressBook = addressBookService.createAddressBook(new AddressBook("Unique " + i));
+            final var name = "Unique contact " + i;
+            mockMvc.perform(post(BASE_URL + "/" + addressBook.getId() + "/contact")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(new Contact(name))))
+                    .andExpect(status().isOk());
+            names.add(name);
+        }
+
+        final var uniqueNames = contactService.getUniqueContacts().stream()
+                .map(Contact::getName)
+                .collect(Collectors.toSet());
+
+        assertTrue(uniqueNames.containsAll(names));
+        assertTrue(uniqueContactsViewService.check().isConsistent());
+        assertEquals(uniqueNames.size(), uniqueContactsViewService.rebuild());
+    }
+
+    @Test
+    @DisplayName("Should return a 400 bad request status code when adding a contact from an address book on another shard")
+    void testAttemptToAddContactFromAnotherShard() throws Exception {
+        final var addressBook = addressBookService.createAddressBook(new AddressBook("Source"));
+        final var contact = contactService.addContactToAddressBook(addressBook.getId(), new Contact("Wee-Bey"));
+        var otherAddressBook = addressBookService.createAddressBook(new AddressBook("Other"));
+        while (shardRouter.shardOf(otherAddressBook.getId()) == shardRouter.shardOf(addressBook.getId())) {
+            otherAddressBook = addressBookService.createAddressBook(new AddressBook("Other"));
+        }
+
+        mockMvc.perform(post(BASE_URL + "/" + otherAddressBook.getId() + "/contact")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\":" + contact.getId() + ",\"name\":\"Wee-Bey\"}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Should move an address book with its contacts and changes to another shard")
+    void testMoveAddressBook() throws Exception {
+        final var addressBook = addressBookService.createAddressBook(new AddressBook("Moving"));
+        final var contact = new Contact("Cutty");
+        contact.addPhoneNumber(PhoneNumberType.MOBILE, "+61406747711");
+        contactService.addContactToAddressBook(addressBook.getId(), contact);
+        contactService.addContactToAddressBook(addressBook.getId(), new Contact("Dukie"));
+        final int source = shardRouter.shardOf(addressBook.getId());
+        final int target = (source + 1) % shardRouter.getShards();
+
+        assertEquals(source, shardRebalancingService.moveAddressBook(addressBook.getId(), target));
+
+        assertEquals(target, shardRouter.shardOf(addressBook.getId()));
+        assertFalse(shardRouter.onShard(source, () -> addressBookRepository.existsById(addressBook.getId())));
+        mockMvc.perform(get(BASE_URL + "/" + addressBook.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.contacts.length()", is(2)));
+        mockMvc.perform(get(BASE_URL + "/" + addressBook.getId() + "/changes-since?version=0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.added.length()", is(2)));
+        contactService.deleteContactFromAddressBook(addressBook.getId(), contact.getId());
+        contactService.addContactToAddressBook(addressBook.getId(), new Contact("Namond"));
+        assertEquals(2, addressBookService.getAddressBook(addressBook.getId()).getContacts().size());
+    }
+
+    @Test
+    @DisplayName("Should delete the copy and keep the address book where it was when a move fails after copying it")
+    void testMoveAddressBookFailingAfterCopy() throws Exception {
+        final var addressBook = addressBookService.createAddressBook(new AddressBook("Failing to move"));
+        contactService.addContactToAddressBook(addressBook.getId(), new Contact("Randy"));
+        final int source = shardRouter.shardOf(addressBook.getId());
+        final int target = (source + 1) % shardRouter.getShards();
+        doAnswer(invocation -> {
+            invocation.callRealMethod();
+            throw new IllegalStateException("Failed after recording the move");
+        }).when(shardRouter).recordMove(addressBook.getId(), target);
+
+        assertThrows(IllegalStateException.class, () ->
+                shardRebalancingService.moveAddressBook(addressBook.getId(), target));
+
+        assertEquals(source, shardRouter.shardOf(addressBook.getId()));
+        assertFalse(shardRouter.onShard(target, () -> addressBookRepository.existsById(addressBook.getId())));
+        assertEquals(1, addressBookService.getAddressBook(addressBook.getId()).getContacts().size());
+
+        doCallRealMethod().when(shardRouter).recordMove(addressBook.getId(), target);
+        assertEquals(source, shardRebalancingService.moveAddressBook(addressBook.getId(), target));
+        assertEquals(target, shardRouter.shardOf(addressBook.getId()));
+        assertEquals(1, addressBookService.getAddressBook(addressBook.getId()).getContacts().size());
+    }
+
+    @Test
+    @DisplayName("Should refuse to move an address book that shares contacts with other address books")
+    void testAttemptToMoveAddressBookSharingContacts() {
+        final var addressBook = addressBookService.createAddressBook(new AddressBook("Sharing"));
+        final var contact = contactService.addContactToAddressBook(addressBook.getId(), new Contact("Bodie"));
+        final int shard = shardRouter.shardOf(addressBook.getId());
+        var otherAddressBook = addressBookService.createAddressBook(new AddressBook("Sharing too"));
+        while (shardRouter.shardOf(otherAddressBook.getId()) != shard) {
+            otherAddressBook = addressBookService.createAddressBook(new AddressBook("Sharing too"));
+        }
+        contactService.addContactToAddressBook(otherAddressBook.getId(), contact);
+
+        assertThrows(IllegalStateException.class, () ->
+                shardRebalancingService.moveAddressBook(addressBook.getId(), (shard + 1) % shardRouter.getShards()));
+        assertEquals(shard, shardRouter.shardOf(addressBook.getId()));
+        assertEquals(List.of(contact.getId()), addressBookService.getAddressBook(addressBook.getId()).getContacts()
+                .stream().map(Contact::getId).collect(Collectors.toList()));
+    }
+}
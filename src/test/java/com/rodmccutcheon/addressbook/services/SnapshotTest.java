@@ -0,0 +1,136 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.entities.PhoneNumberType;
+import com.rodmccutcheon.addressbook.repositories.AddressBookSnapshot;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Restoring is switched on, but only happens when {@link SnapshotService#load()} is called on an emptied database, as
+ * there is no snapshot yet when the application starts.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:snapshot;MODE=PostgreSQL",
+        "spring.cache.type=none",
+        "address-book.snapshot.restore-on-startup=true"
+})
+class SnapshotTest {
+
+    private static final Path FILE = Path.of(System.getProperty("java.io.tmpdir"),
+            "address-book-snapshot-test-" + UUID.randomUUID(), "address-books.snapshot");
+    private static final List<String> TABLES = List.of("contact_operation", "address_book_change", "unique_contact",
+            "contact_match_keys", "contact_phone_numbers", "contact_address_books", "contact", "address_book");
+
+    @Autowired
+    private SnapshotService snapshotService;
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private ContactService contactService;
+
+    @Autowired
+    private UniqueContactsViewService uniqueContactsViewService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @DynamicPropertySource
+    static void snapshotFile(DynamicPropertyRegistry registry) {
+        registry.add("address-book.snapshot.file", FILE::toString);
+    }
+
+    @Test
+    @DisplayName("Should save every address book with its contacts and their phone numbers")
+    void testSave() throws Exception {
+        final var addressBook = addressBookService.createAddressBook(new AddressBook("McNulty's address book"));
+        final var stringer = new Contact("Stringer Bell");
+        stringer.addPhoneNumber(PhoneNumberType.MOBILE, "+61406747789");
+        stringer.addPhoneNumber(PhoneNumberType.WORK, "+61398420944");
+        contactService.addContactToAddressBook(addressBook.getId(), stringer);
+
+        final var summary = snapshotService.save();
+
+        assertEquals(summary, snapshotService.getSummary().orElseThrow());
+        try (var snapshot = AddressBookSnapshot.open(FILE)) {
+            final var saved = snapshot.findAddressBook(addressBook.getId()).orElseThrow();
+            assertEquals("McNulty's address book", saved.getName());
+            assertEquals(1, saved.getVersion());
+            assertEquals(stringer.getPhoneNumbers(), saved.getContacts().iterator().next().getPhoneNumbers());
+        }
+    }
+
+    @Test
+    @DisplayName("Should restore an emptied database from the snapshot, then carry on allocating ids after it")
+    void testRestore() throws Exception {
+        final var addressBook = addressBookService.createAddressBook(new AddressBook("Bunk's address book"));
+        final var otherAddressBook = addressBookService.createAddressBook(new AddressBook("Kima's address book"));
+        final var omar = new Contact("Omar");
+        omar.addPhoneNumber(PhoneNumberType.OTHER, "+61406747700");
+        contactService.addContactToAddressBook(addressBook.getId(), omar);
+        final var bubbles = contactService.addContactToAddressBook(addressBook.getId(), new Contact("Bubbles"));
+        contactService.addContactToAddressBook(otherAddressBook.getId(), bubbles);
+        contactService.deleteContactFromAddressBook(addressBook.getId(),
+                contactService.addContactToAddressBook(addressBook.getId(), new Contact("Wallace")).getId());
+        final var before = addressBookService.getAddressBook(addressBook.getId());
+        final var otherBefore = addressBookService.getAddressBook(otherAddressBook.getId());
+        final var changesBefore = addressBookService.getChangesSince(addressBook.getId(), 0);
+        snapshotService.save();
+
+        emptyDatabase();
+        snapshotService.load();
+
+        final var after = addressBookService.getAddressBook(addressBook.getId());
+        assertEquals(before.getVersion(), after.getVersion());
+        assertEquals(describe(before), describe(after));
+        assertEquals(describe(otherBefore), describe(addressBookService.getAddressBook(otherAddressBook.getId())));
+        assertEquals(changesBefore, addressBookService.getChangesSince(addressBook.getId(), 0));
+        assertTrue(uniqueContactsViewService.check().isConsistent());
+        final long nextContactId = new JdbcTemplate(dataSource).queryForObject("select next value for contact_seq",
+                Long.class);
+        assertTrue(nextContactId > bubbles.getId());
+    }
+
+    @Test
+    @DisplayName("Should not restore the snapshot over a database that already holds address books")
+    void testRestoreOnlyIntoEmptyDatabase() throws Exception {
+        final var addressBook = addressBookService.createAddressBook(new AddressBook("Freamon's address book"));
+        snapshotService.save();
+        addressBookService.updateAddressBook(addressBook.getId(), new AddressBook("Lester's address book"));
+
+        snapshotService.load();
+
+        assertEquals("Lester's address book", addressBookService.getAddressBook(addressBook.getId()).getName());
+    }
+
+    private void emptyDatabase() {
+        final var jdbcTemplate = new JdbcTemplate(dataSource);
+        TABLES.forEach(table -> jdbcTemplate.execute("delete from " + table));
+    }
+
+    private static List<String> describe(AddressBook addressBook) {
+        return addressBook.getContacts().stream()
+                .sorted(Comparator.comparing(Contact::getId))
+                .map(contact -> contact.getId() + " " + contact.getName() + " " + contact.getVersion() + " "
+                        + contact.getPhoneNumbers())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,105 @@
+package com.rodmccutcheon.addressbook.services;
+
+import com.rodmccutcheon.addressbook.entities.AddressBook;
+import com.rodmccutcheon.addressbook.entities.Contact;
+import com.rodmccutcheon.addressbook.repositories.MembershipIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:unique-contacts-view;MODE=PostgreSQL")
+class UniqueContactsViewServiceTest {
+
+    @Autowired
+    private UniqueContactsViewService uniqueContactsViewService;
+
+    @Autowired
+    private AddressBookService addressBookService;
+
+    @Autowired
+    private ContactService contactService;
+
+    @Autowired
+    private ContactImportService contactImportService;
+
+    @Autowired
+    private MembershipIndex membershipIndex;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private AddressBook addressBook;
+    private AddressBook addressBook2;
+
+    @BeforeEach
+    void createAddressBooks() {
+        addressBook = addressBookService.createAddressBook(new AddressBook("McNulty's address book"));
+        addressBook2 = addressBookService.createAddressBook(new AddressBook("Bunk's address book"));
+    }
+
+    @AfterEach
+    void deleteAddressBooks() {
+        addressBookService.deleteAddressBook(addressBook.getId());
+        addressBookService.deleteAddressBook(addressBook2.getId());
+    }
+
+    @Test
+    @DisplayName("Should keep the view and the membership index consistent as contacts are added, shared, imported " +
+            "and removed")
+    void testViewIsMaintainedIncrementally() throws Exception {
+        final var bubbles = contactService.addContactToAddressBook(addressBook.getId(), new Contact("Bubbles"));
+        contactService.addContactToAddressBook(addressBook2.getId(), bubbles);
+        contactService.addContactToAddressBook(addressBook2.getId(), bubbles);
+        final var omar = contactService.addContactToAddressBook(addressBook2.getId(), new Contact("Omar"));
+        contactImportService.importContacts(addressBook.getId(),
+                new ByteArrayInputStream("[{\"name\":\"Kima\"},{\"name\":\"Prez\"}]".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(2, addressBookCount(bubbles.getId()));
+        assertEquals(2, membershipIndex.countAddressBooks(bubbles.getId()));
+        assertEquals(3, membershipIndex.countContacts(addressBook.getId()));
+
+        contactService.deleteContactFromAddressBook(addressBook.getId(), bubbles.getId());
+        contactService.deleteContactFromAddressBook(addressBook2.getId(), omar.getId());
+
+        assertEquals(1, addressBookCount(bubbles.getId()));
+        assertEquals(3, contactService.getUniqueContacts().size());
+        assertTrue(uniqueContactsViewService.check().isConsistent());
+        assertArrayEquals(new long[]{addressBook2.getId()}, membershipIndex.getAddressBookIds(bubbles.getId()));
+        assertEquals(3, membershipIndex.countUniqueContacts());
+        assertEquals(3, membershipIndex.countMemberships());
+    }
+
+    @Test
+    @DisplayName("Should report the contacts the view is wrong about and recover them on rebuild")
+    void testCheckAndRebuild() {
+        final var bubbles = contactService.addContactToAddressBook(addressBook.getId(), new Contact("Bubbles"));
+        contactService.addContactToAddressBook(addressBook2.getId(), bubbles);
+        final var omar = contactService.addContactToAddressBook(addressBook.getId(), new Contact("Omar"));
+        jdbcTemplate.update("update unique_contact set address_book_count = 5 where contact_id = ?", bubbles.getId());
+        jdbcTemplate.update("delete from unique_contact where contact_id = ?", omar.getId());
+
+        assertEquals(List.of(bubbles.getId(), omar.getId()),
+                uniqueContactsViewService.check().getInconsistentContactIds().stream().sorted().toList());
+
+        assertEquals(2, uniqueContactsViewService.rebuild());
+        assertTrue(uniqueContactsViewService.check().isConsistent());
+        assertEquals(2, addressBookCount(bubbles.getId()));
+        assertEquals(2, membershipIndex.countAddressBooks(bubbles.getId()));
+    }
+
+    private int addressBookCount(long contactId) {
+        return jdbcTemplate.queryForObject("select address_book_count from unique_contact where contact_id = ?",
+                Integer.class, contactId);
+    }
+}